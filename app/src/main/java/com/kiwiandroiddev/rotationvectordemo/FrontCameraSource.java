@@ -0,0 +1,172 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Streams the front camera's preview frames into a {@link CameraFrameSink}, for head tracking.
+ *
+ * The camera is opened on a thread of its own, so the preview callbacks arrive there rather
+ * than on the main thread. Frames come in NV21, whose first plane is exactly the luma the
+ * tracker wants, through a few callback buffers allocated once and handed back to the camera as
+ * soon as the sink returns. The preview goes to a texture nobody draws, as there's nothing to
+ * show.
+ *
+ * Preview callbacks don't carry a capture time, so frames are stamped when they arrive, which
+ * is a little later than they were taken. The camera's field of view and mounting are passed
+ * on to the {@link ViewerFusion} so it can turn positions in the frame into directions.
+ */
+// android.hardware.Camera on purpose: most front cameras on API 21 are LEGACY, where camera2
+// is a wrapper around it, and its reused callback buffers are all the tracker needs
+@SuppressWarnings("deprecation")
+public class FrontCameraSource implements Camera.PreviewCallback {
+
+    private static final String TAG = "FrontCameraSource";
+
+    // the smallest preview at least this wide, tracking only needs a fraction of it
+    private static final int MIN_PREVIEW_WIDTH = 320;
+
+    private static final int CALLBACK_BUFFERS = 3;
+
+    private final CameraFrameSink mSink;
+    private final ViewerFusion mViewerFusion;
+
+    // camera thread only, from open to release
+    private Camera mCamera;
+    private SurfaceTexture mPreviewTexture;
+    private int mWidth;
+    private int mHeight;
+
+    private HandlerThread mThread;
+    private Handler mHandler;
+
+    public FrontCameraSource(CameraFrameSink sink, ViewerFusion viewerFusion) {
+        mSink = sink;
+        mViewerFusion = viewerFusion;
+    }
+
+    /**
+     * Opens the camera and starts the preview, in the background. Main thread.
+     */
+    public void start() {
+        if (mThread != null) {
+            return;
+        }
+        mThread = new HandlerThread("FrontCamera");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                open();
+            }
+        });
+    }
+
+    /**
+     * Releases the camera and waits for the thread to finish. Main thread.
+     */
+    public void stop() {
+        if (mThread == null) {
+            return;
+        }
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        });
+        mThread.quitSafely();
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mThread = null;
+        mHandler = null;
+    }
+
+    private void open() {
+        final Camera.CameraInfo info = new Camera.CameraInfo();
+        int id = -1;
+        for (int i = 0; i < Camera.getNumberOfCameras(); i++) {
+            Camera.getCameraInfo(i, info);
+            if (info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+                id = i;
+                break;
+            }
+        }
+        if (id == -1) {
+            Log.w(TAG, "No front camera, head tracking is off");
+            return;
+        }
+
+        try {
+            mCamera = Camera.open(id);
+            final Camera.Parameters parameters = mCamera.getParameters();
+            Camera.Size previewSize = null;
+            for (Camera.Size size : parameters.getSupportedPreviewSizes()) {
+                if (size.width >= MIN_PREVIEW_WIDTH && (previewSize == null || size.width < previewSize.width)) {
+                    previewSize = size;
+                }
+            }
+            if (previewSize != null) {
+                parameters.setPreviewSize(previewSize.width, previewSize.height);
+            }
+            parameters.setPreviewFormat(ImageFormat.NV21);
+            mCamera.setParameters(parameters);
+
+            final Camera.Size size = mCamera.getParameters().getPreviewSize();
+            mWidth = size.width;
+            mHeight = size.height;
+            mViewerFusion.setCameraGeometry((float) Math.toRadians(parameters.getHorizontalViewAngle()),
+                    (float) Math.toRadians(parameters.getVerticalViewAngle()), info.orientation);
+
+            final int bufferSize = mWidth * mHeight * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8;
+            for (int i = 0; i < CALLBACK_BUFFERS; i++) {
+                mCamera.addCallbackBuffer(new byte[bufferSize]);
+            }
+            mCamera.setPreviewCallbackWithBuffer(this);
+            mPreviewTexture = new SurfaceTexture(0);
+            mCamera.setPreviewTexture(mPreviewTexture);
+            mCamera.startPreview();
+            Log.i(TAG, "Head tracking from the front camera at " + mWidth + "x" + mHeight);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't start the front camera preview, head tracking is off", e);
+            close();
+        } catch (RuntimeException e) {
+            // what Camera throws when it's in use or the parameters aren't supported
+            Log.w(TAG, "Couldn't open the front camera, head tracking is off", e);
+            close();
+        }
+    }
+
+    private void close() {
+        if (mCamera != null) {
+            mCamera.setPreviewCallbackWithBuffer(null);
+            mCamera.stopPreview();
+            mCamera.release();
+            mCamera = null;
+        }
+        if (mPreviewTexture != null) {
+            mPreviewTexture.release();
+            mPreviewTexture = null;
+        }
+    }
+
+    /**
+     * Camera thread.
+     */
+    @Override
+    public void onPreviewFrame(byte[] data, Camera camera) {
+        mSink.onCameraFrame(data, mWidth, mHeight, mWidth, SystemClock.elapsedRealtimeNanos());
+        camera.addCallbackBuffer(data);
+    }
+}
@@ -0,0 +1,130 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import android.opengl.GLES20;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * The original OpenGL ES 1.x fixed-function backend: client-side vertex arrays re-specified on
+ * every draw, matrices loaded into the fixed-function stack.
+ */
+public class Gl10SceneRenderer implements SceneRenderer {
+
+    private GL10 mGl;
+    private int mWidth;
+    private int mHeight;
+
+    @Override
+    public void onSurfaceCreated() {
+        mGl = (GL10) ((EGL10) EGLContext.getEGL()).eglGetCurrentContext().getGL();
+
+        // dither is enabled by default, we don't need it
+        mGl.glDisable(GL10.GL_DITHER);
+        mGl.glClearColor(0, 0, 0, 1);
+
+        mGl.glEnable(GL10.GL_CULL_FACE);
+        mGl.glFrontFace(GL10.GL_CW);
+        // scenes can have models in front of each other
+        mGl.glEnable(GL10.GL_DEPTH_TEST);
+        mGl.glDepthFunc(GL10.GL_LESS);
+        mGl.glShadeModel(GL10.GL_SMOOTH);
+        mGl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+        mGl.glEnableClientState(GL10.GL_COLOR_ARRAY);
+    }
+
+    @Override
+    public void onSurfaceChanged(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * Render targets need OES_framebuffer_object in ES 1.x, this always draws at full
+     * resolution.
+     */
+    @Override
+    public float setRenderScale(float scale) {
+        return 1.0f;
+    }
+
+    @Override
+    public void beginFrame(float[] projection) {
+        mGl.glMatrixMode(GL10.GL_PROJECTION);
+        mGl.glLoadMatrixf(projection, 0);
+
+        // undo the last frame's views, if any, the color mask applies to clears too
+        mGl.glViewport(0, 0, mWidth, mHeight);
+        mGl.glColorMask(true, true, true, true);
+
+        // clear screen
+        mGl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
+
+        mGl.glMatrixMode(GL10.GL_MODELVIEW);
+    }
+
+    @Override
+    public void beginView(float[] projection, int x, int width, boolean red, boolean green, boolean blue) {
+        mGl.glMatrixMode(GL10.GL_PROJECTION);
+        mGl.glLoadMatrixf(projection, 0);
+        mGl.glMatrixMode(GL10.GL_MODELVIEW);
+
+        mGl.glViewport(x, 0, width, mHeight);
+        mGl.glColorMask(red, green, blue, true);
+        mGl.glClear(GL10.GL_DEPTH_BUFFER_BIT);
+    }
+
+    @Override
+    public void drawMesh(Mesh mesh, float[] modelView, float[] modelViewProjection) {
+        mGl.glLoadMatrixf(modelView, 0);
+        mGl.glVertexPointer(Mesh.POSITION_COMPONENTS, GL10.GL_FLOAT, Mesh.VERTEX_STRIDE, mesh.getPositions());
+        mGl.glColorPointer(Mesh.COLOR_COMPONENTS, GL10.GL_FLOAT, Mesh.VERTEX_STRIDE, mesh.getColors());
+        mGl.glDrawElements(GL10.GL_TRIANGLES, mesh.getIndexCount(), indexType(mesh), mesh.getIndexData());
+    }
+
+    /**
+     * One draw per instance. The arrays only need specifying once, but the colors can't be
+     * applied: fixed function has no way to multiply a color array by a constant short of
+     * texturing.
+     */
+    @Override
+    public int drawInstances(Mesh mesh, float[] modelViews, float[] modelViewProjections, float[] colors,
+                             int first, int count) {
+        mGl.glVertexPointer(Mesh.POSITION_COMPONENTS, GL10.GL_FLOAT, Mesh.VERTEX_STRIDE, mesh.getPositions());
+        mGl.glColorPointer(Mesh.COLOR_COMPONENTS, GL10.GL_FLOAT, Mesh.VERTEX_STRIDE, mesh.getColors());
+        for (int i = first; i < first + count; i++) {
+            mGl.glLoadMatrixf(modelViews, i * 16);
+            mGl.glDrawElements(GL10.GL_TRIANGLES, mesh.getIndexCount(), indexType(mesh), mesh.getIndexData());
+        }
+        return count;
+    }
+
+    static int indexType(Mesh mesh) {
+        switch (mesh.getIndexSize()) {
+            case 1:
+                return GL10.GL_UNSIGNED_BYTE;
+            case 2:
+                return GL10.GL_UNSIGNED_SHORT;
+            default:
+                // needs OES_element_index_uint on GLES 1.x and 2.0
+                return GLES20.GL_UNSIGNED_INT;
+        }
+    }
+
+    /**
+     * Cube maps need OES_texture_cube_map in ES 1.x, there's no background here.
+     */
+    @Override
+    public boolean setBackground(KtxFile background) {
+        return background == null;
+    }
+
+    @Override
+    public void drawBackground(float[] modelViewProjection) {
+    }
+
+    @Override
+    public void endFrame() {
+    }
+}
@@ -0,0 +1,512 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.IdentityHashMap;
+
+/**
+ * OpenGL ES 2.0 backend. Each mesh is uploaded once into a vertex and index buffer object the
+ * first time it's drawn, after which a draw is just binding those and setting the MVP and color
+ * uniforms. Fixed state (culling, winding, depth test, clear color) is set once per context
+ * rather than per draw.
+ *
+ * Vertex attributes are bound to fixed locations, so subclasses can draw the same bound mesh
+ * with programs of their own.
+ *
+ * Below a render scale of 1 frames are drawn into an off-screen color texture and depth buffer
+ * that much smaller than the surface, then stretched over it with bilinear filtering when the
+ * frame ends. The render target is only reallocated when the scale or surface size changes.
+ *
+ * A background cube map is uploaded level by level and face by face with
+ * glCompressedTexImage2D straight from the {@link KtxFile}'s mapping. ES 2.0 only has ETC1,
+ * so ETC2 files are taken when they're marked as only using ETC1's modes. The skybox is drawn
+ * after the scene at the far plane with depth writes off, so only pixels the scene left uncovered
+ * run its fragment shader.
+ */
+public class Gles2SceneRenderer implements SceneRenderer {
+
+    private static final String TAG = "Gles2SceneRenderer";
+
+    static final int POSITION_ATTRIBUTE = 0;
+    static final int COLOR_ATTRIBUTE = 1;
+
+    private static final String VERTEX_SHADER =
+            "uniform mat4 uMvp;\n" +
+            "uniform vec4 uColor;\n" +
+            "attribute vec4 aPosition;\n" +
+            "attribute vec4 aColor;\n" +
+            "varying vec4 vColor;\n" +
+            "void main() {\n" +
+            "    vColor = aColor * uColor;\n" +
+            "    gl_Position = uMvp * aPosition;\n" +
+            "}\n";
+
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+            "varying vec4 vColor;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = vColor;\n" +
+            "}\n";
+
+    // draws the render target over the whole surface
+    private static final String BLIT_VERTEX_SHADER =
+            "attribute vec4 aPosition;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "void main() {\n" +
+            "    vTexCoord = aPosition.xy * 0.5 + 0.5;\n" +
+            "    gl_Position = aPosition;\n" +
+            "}\n";
+
+    private static final String BLIT_FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+            "uniform sampler2D uTexture;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = texture2D(uTexture, vTexCoord);\n" +
+            "}\n";
+
+    private static final float[] SCREEN_QUAD = {-1, -1, 1, -1, -1, 1, 1, 1};
+
+    // a direction, w = 0, so only the rotation of the matrix applies. z = w puts every
+    // fragment on the far plane, behind anything the scene drew
+    private static final String BACKGROUND_VERTEX_SHADER =
+            "uniform mat4 uMvp;\n" +
+            "attribute vec4 aPosition;\n" +
+            "varying vec3 vDirection;\n" +
+            "void main() {\n" +
+            "    vDirection = aPosition.xyz;\n" +
+            "    gl_Position = (uMvp * vec4(aPosition.xyz, 0.0)).xyww;\n" +
+            "}\n";
+
+    private static final String BACKGROUND_FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+            "uniform samplerCube uTexture;\n" +
+            "varying vec3 vDirection;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = textureCube(uTexture, vDirection);\n" +
+            "}\n";
+
+    // a unit cube's 12 triangles, drawn from inside with culling off
+    private static final float[] BACKGROUND_CUBE = {
+            -1, -1, -1, 1, -1, -1, 1, 1, -1, -1, -1, -1, 1, 1, -1, -1, 1, -1,
+            -1, -1, 1, 1, -1, 1, 1, 1, 1, -1, -1, 1, 1, 1, 1, -1, 1, 1,
+            -1, -1, -1, -1, 1, -1, -1, 1, 1, -1, -1, -1, -1, 1, 1, -1, -1, 1,
+            1, -1, -1, 1, 1, -1, 1, 1, 1, 1, -1, -1, 1, 1, 1, 1, -1, 1,
+            -1, -1, -1, 1, -1, -1, 1, -1, 1, -1, -1, -1, 1, -1, 1, -1, -1, 1,
+            -1, 1, -1, 1, 1, -1, 1, 1, 1, -1, 1, -1, 1, 1, 1, -1, 1, 1,
+    };
+
+    private static final float MIN_RENDER_SCALE = 0.05f;
+
+    private static final float[] WHITE = {1.0f, 1.0f, 1.0f, 1.0f};
+
+    private int mProgram;
+    private int mMvpLocation;
+    private int mColorLocation;
+    private int mCurrentProgram;
+    private int mWidth;
+    private int mHeight;
+
+    private float mRenderScale = 1.0f;
+    private int mBlitProgram;
+    private final FloatBuffer mScreenQuad = ByteBuffer.allocateDirect(SCREEN_QUAD.length * 4)
+            .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    // 0 while drawing straight to the surface
+    private int mFramebuffer;
+    private int mColorTexture;
+    private int mDepthRenderbuffer;
+    // the size frames are drawn at, the surface's or the render target's
+    private int mTargetWidth;
+    private int mTargetHeight;
+
+    private int mBackgroundProgram;
+    private int mBackgroundMvpLocation;
+    private final FloatBuffer mBackgroundCube = ByteBuffer.allocateDirect(BACKGROUND_CUBE.length * 4)
+            .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    // 0 for no background
+    private int mBackgroundTexture;
+
+    // what uColor is set to, so runs of the same color don't keep setting it
+    private final float[] mColor = new float[4];
+
+    // vertex and index buffer object names for each mesh uploaded in the current context
+    private final IdentityHashMap<Mesh, int[]> mBuffers = new IdentityHashMap<Mesh, int[]>();
+    private Mesh mBoundMesh;
+
+    @Override
+    public void onSurfaceCreated() {
+        // buffers from any previous context died with it
+        mBuffers.clear();
+        mBoundMesh = null;
+
+        mProgram = createProgram(VERTEX_SHADER, FRAGMENT_SHADER, "aPosition", "aColor");
+        mMvpLocation = GLES20.glGetUniformLocation(mProgram, "uMvp");
+        mColorLocation = GLES20.glGetUniformLocation(mProgram, "uColor");
+
+        mBlitProgram = createProgram(BLIT_VERTEX_SHADER, BLIT_FRAGMENT_SHADER, "aPosition");
+        GLES20.glUseProgram(mBlitProgram);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mBlitProgram, "uTexture"), 0);
+        mScreenQuad.put(SCREEN_QUAD).position(0);
+
+        mBackgroundProgram = createProgram(BACKGROUND_VERTEX_SHADER, BACKGROUND_FRAGMENT_SHADER, "aPosition");
+        mBackgroundMvpLocation = GLES20.glGetUniformLocation(mBackgroundProgram, "uMvp");
+        GLES20.glUseProgram(mBackgroundProgram);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mBackgroundProgram, "uTexture"), 0);
+        mBackgroundCube.put(BACKGROUND_CUBE).position(0);
+        mBackgroundTexture = 0;
+        // so is the render target
+        mFramebuffer = 0;
+
+        GLES20.glDisable(GLES20.GL_DITHER);
+        GLES20.glClearColor(0, 0, 0, 1);
+        GLES20.glEnable(GLES20.GL_CULL_FACE);
+        GLES20.glFrontFace(GLES20.GL_CW);
+        GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+
+        GLES20.glUseProgram(mProgram);
+        mCurrentProgram = mProgram;
+        GLES20.glUniform4f(mColorLocation, 1.0f, 1.0f, 1.0f, 1.0f);
+        System.arraycopy(WHITE, 0, mColor, 0, 4);
+        GLES20.glEnableVertexAttribArray(POSITION_ATTRIBUTE);
+        GLES20.glEnableVertexAttribArray(COLOR_ATTRIBUTE);
+    }
+
+    @Override
+    public void onSurfaceChanged(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    @Override
+    public float setRenderScale(float scale) {
+        mRenderScale = Math.max(MIN_RENDER_SCALE, Math.min(1.0f, scale));
+        return mRenderScale;
+    }
+
+    @Override
+    public void beginFrame(float[] projection) {
+        updateRenderTarget();
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFramebuffer);
+
+        // undo the last frame's views, if any, the color mask applies to clears too
+        GLES20.glViewport(0, 0, mTargetWidth, mTargetHeight);
+        GLES20.glColorMask(true, true, true, true);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+    }
+
+    @Override
+    public void beginView(float[] projection, int x, int width, boolean red, boolean green, boolean blue) {
+        // views are given in surface pixels
+        final int left = x * mTargetWidth / mWidth;
+        final int right = (x + width) * mTargetWidth / mWidth;
+        GLES20.glViewport(left, 0, right - left, mTargetHeight);
+        GLES20.glColorMask(red, green, blue, true);
+        GLES20.glClear(GLES20.GL_DEPTH_BUFFER_BIT);
+    }
+
+    @Override
+    public void drawMesh(Mesh mesh, float[] modelView, float[] modelViewProjection) {
+        useProgram(mProgram);
+        if (mesh != mBoundMesh) {
+            bindMesh(mesh);
+        }
+        setColor(WHITE, 0);
+        GLES20.glUniformMatrix4fv(mMvpLocation, 1, false, modelViewProjection, 0);
+        GLES20.glDrawElements(GLES20.GL_TRIANGLES, mesh.getIndexCount(), Gl10SceneRenderer.indexType(mesh), 0);
+    }
+
+    /**
+     * One draw per instance, setting the uniforms in between.
+     */
+    @Override
+    public int drawInstances(Mesh mesh, float[] modelViews, float[] modelViewProjections, float[] colors,
+                             int first, int count) {
+        useProgram(mProgram);
+        if (mesh != mBoundMesh) {
+            bindMesh(mesh);
+        }
+        final int indexCount = mesh.getIndexCount();
+        final int indexType = Gl10SceneRenderer.indexType(mesh);
+        for (int i = first; i < first + count; i++) {
+            setColor(colors, i * 4);
+            GLES20.glUniformMatrix4fv(mMvpLocation, 1, false, modelViewProjections, i * 16);
+            GLES20.glDrawElements(GLES20.GL_TRIANGLES, indexCount, indexType, 0);
+        }
+        return count;
+    }
+
+    private void setColor(float[] colors, int offset) {
+        final float[] current = mColor;
+        if (current[0] != colors[offset] || current[1] != colors[offset + 1]
+                || current[2] != colors[offset + 2] || current[3] != colors[offset + 3]) {
+            System.arraycopy(colors, offset, current, 0, 4);
+            GLES20.glUniform4f(mColorLocation, current[0], current[1], current[2], current[3]);
+        }
+    }
+
+    @Override
+    public boolean setBackground(KtxFile background) {
+        if (mBackgroundTexture != 0) {
+            GLES20.glDeleteTextures(1, new int[]{mBackgroundTexture}, 0);
+            mBackgroundTexture = 0;
+        }
+        if (background == null) {
+            return true;
+        }
+        final int format = getUploadFormat(background);
+        if (!background.isCubeMap() || !background.isCompressed() || format == 0) {
+            Log.w(TAG, "Can't draw a background with " + background.faces + " faces in format 0x"
+                    + Integer.toHexString(background.glInternalFormat));
+            return false;
+        }
+
+        int[] name = new int[1];
+        GLES20.glGenTextures(1, name, 0);
+        mBackgroundTexture = name[0];
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_CUBE_MAP, mBackgroundTexture);
+        // clear out anything from before, so a failure below is this texture's
+        while (GLES20.glGetError() != GLES20.GL_NO_ERROR) {
+        }
+        for (int level = 0; level < background.levels; level++) {
+            for (int face = 0; face < background.faces; face++) {
+                final ByteBuffer image = background.getImage(level, face);
+                GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_CUBE_MAP_POSITIVE_X + face, level, format,
+                        background.getLevelWidth(level), background.getLevelHeight(level), 0,
+                        image.remaining(), image);
+            }
+        }
+        // the whole chain or it's incomplete with a mipmapped filter
+        final boolean mipmapped = background.levels > 1
+                && background.getLevelWidth(background.levels - 1) == 1
+                && background.getLevelHeight(background.levels - 1) == 1;
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_CUBE_MAP, GLES20.GL_TEXTURE_MIN_FILTER,
+                mipmapped ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_CUBE_MAP, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_CUBE_MAP, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_CUBE_MAP, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        final int error = GLES20.glGetError();
+        if (error != GLES20.GL_NO_ERROR) {
+            Log.w(TAG, "Background upload failed (" + error + ")");
+            GLES20.glDeleteTextures(1, name, 0);
+            mBackgroundTexture = 0;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the internal format to upload the texture's data as, 0 if this context can't
+     */
+    int getUploadFormat(KtxFile texture) {
+        if (texture.glInternalFormat == KtxFile.GL_ETC1_RGB8_OES) {
+            return KtxFile.GL_ETC1_RGB8_OES;
+        }
+        if (texture.glInternalFormat == KtxFile.GL_COMPRESSED_RGB8_ETC2
+                && "true".equals(texture.getValue(KtxFile.KEY_ETC1_COMPATIBLE))) {
+            return KtxFile.GL_ETC1_RGB8_OES;
+        }
+        return 0;
+    }
+
+    @Override
+    public void drawBackground(float[] modelViewProjection) {
+        if (mBackgroundTexture == 0) {
+            return;
+        }
+        useProgram(mBackgroundProgram);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_CUBE_MAP, mBackgroundTexture);
+        GLES20.glUniformMatrix4fv(mBackgroundMvpLocation, 1, false, modelViewProjection, 0);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glVertexAttribPointer(POSITION_ATTRIBUTE, 3, GLES20.GL_FLOAT, false, 0, mBackgroundCube);
+
+        // the far plane itself has to pass, and nothing should be hidden behind the background
+        GLES20.glDepthFunc(GLES20.GL_LEQUAL);
+        GLES20.glDepthMask(false);
+        GLES20.glDisable(GLES20.GL_CULL_FACE);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, BACKGROUND_CUBE.length / 3);
+        GLES20.glEnable(GLES20.GL_CULL_FACE);
+        GLES20.glDepthMask(true);
+        GLES20.glDepthFunc(GLES20.GL_LESS);
+
+        // the position attribute points at the cube now
+        mBoundMesh = null;
+    }
+
+    void useProgram(int program) {
+        if (program != mCurrentProgram) {
+            GLES20.glUseProgram(program);
+            mCurrentProgram = program;
+        }
+    }
+
+    Mesh getBoundMesh() {
+        return mBoundMesh;
+    }
+
+    @Override
+    public void endFrame() {
+        if (mFramebuffer == 0) {
+            return;
+        }
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GLES20.glViewport(0, 0, mWidth, mHeight);
+        GLES20.glColorMask(true, true, true, true);
+        GLES20.glDisable(GLES20.GL_DEPTH_TEST);
+        // the quad winds counter-clockwise, which is the back with the front face set to CW
+        GLES20.glDisable(GLES20.GL_CULL_FACE);
+
+        useProgram(mBlitProgram);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mColorTexture);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glVertexAttribPointer(POSITION_ATTRIBUTE, 2, GLES20.GL_FLOAT, false, 0, mScreenQuad);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+        GLES20.glEnable(GLES20.GL_CULL_FACE);
+        GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+        // the position attribute points at the quad now
+        mBoundMesh = null;
+    }
+
+    /**
+     * Makes sure the render target matches the scale and surface size, deleting it when
+     * drawing at full resolution.
+     */
+    private void updateRenderTarget() {
+        int width = mWidth;
+        int height = mHeight;
+        if (mRenderScale < 1.0f) {
+            width = Math.max(1, Math.round(mWidth * mRenderScale));
+            height = Math.max(1, Math.round(mHeight * mRenderScale));
+        }
+        final boolean offscreen = width != mWidth || height != mHeight;
+        if (mFramebuffer != 0 && (!offscreen || width != mTargetWidth || height != mTargetHeight)) {
+            deleteRenderTarget();
+        }
+        mTargetWidth = width;
+        mTargetHeight = height;
+        if (!offscreen || mFramebuffer != 0) {
+            return;
+        }
+
+        int[] name = new int[1];
+        GLES20.glGenTextures(1, name, 0);
+        mColorTexture = name[0];
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mColorTexture);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+        // no mipmaps, and clamping, or a non power of two texture is incomplete in ES 2.0
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+        GLES20.glGenRenderbuffers(1, name, 0);
+        mDepthRenderbuffer = name[0];
+        GLES20.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, mDepthRenderbuffer);
+        GLES20.glRenderbufferStorage(GLES20.GL_RENDERBUFFER, GLES20.GL_DEPTH_COMPONENT16, width, height);
+
+        GLES20.glGenFramebuffers(1, name, 0);
+        mFramebuffer = name[0];
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFramebuffer);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, mColorTexture, 0);
+        GLES20.glFramebufferRenderbuffer(GLES20.GL_FRAMEBUFFER, GLES20.GL_DEPTH_ATTACHMENT,
+                GLES20.GL_RENDERBUFFER, mDepthRenderbuffer);
+        final int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+        if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            // draw at full resolution rather than not at all
+            Log.w(TAG, "Render target incomplete (" + status + "), drawing at full resolution");
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+            deleteRenderTarget();
+            mRenderScale = 1.0f;
+            mTargetWidth = mWidth;
+            mTargetHeight = mHeight;
+        }
+    }
+
+    private void deleteRenderTarget() {
+        GLES20.glDeleteFramebuffers(1, new int[]{mFramebuffer}, 0);
+        GLES20.glDeleteTextures(1, new int[]{mColorTexture}, 0);
+        GLES20.glDeleteRenderbuffers(1, new int[]{mDepthRenderbuffer}, 0);
+        mFramebuffer = 0;
+    }
+
+    /**
+     * Binds the mesh's buffers and points the position and color attributes at them.
+     */
+    void bindMesh(Mesh mesh) {
+        int[] buffers = mBuffers.get(mesh);
+        if (buffers == null) {
+            buffers = upload(mesh);
+            mBuffers.put(mesh, buffers);
+        }
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0]);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+        GLES20.glVertexAttribPointer(POSITION_ATTRIBUTE, Mesh.POSITION_COMPONENTS, GLES20.GL_FLOAT, false,
+                Mesh.VERTEX_STRIDE, 0);
+        GLES20.glVertexAttribPointer(COLOR_ATTRIBUTE, Mesh.COLOR_COMPONENTS, GLES20.GL_FLOAT, false,
+                Mesh.VERTEX_STRIDE, Mesh.COLOR_OFFSET);
+        mBoundMesh = mesh;
+    }
+
+    private static int[] upload(Mesh mesh) {
+        int[] buffers = new int[2];
+        GLES20.glGenBuffers(2, buffers, 0);
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mesh.getVertexData().capacity(),
+                mesh.getVertexData(), GLES20.GL_STATIC_DRAW);
+
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+        GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.getIndexData().capacity(),
+                mesh.getIndexData(), GLES20.GL_STATIC_DRAW);
+        return buffers;
+    }
+
+    /**
+     * @param attributes names of the vertex attributes, bound to locations 0, 1, 2... in order
+     */
+    static int createProgram(String vertexSource, String fragmentSource, String... attributes) {
+        int vertexShader = compileShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+        int fragmentShader = compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        for (int i = 0; i < attributes.length; i++) {
+            GLES20.glBindAttribLocation(program, i, attributes[i]);
+        }
+        GLES20.glLinkProgram(program);
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] != GLES20.GL_TRUE) {
+            String log = GLES20.glGetProgramInfoLog(program);
+            GLES20.glDeleteProgram(program);
+            throw new RuntimeException("Could not link program: " + log);
+        }
+        return program;
+    }
+
+    private static int compileShader(int type, String source) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] != GLES20.GL_TRUE) {
+            String log = GLES20.glGetShaderInfoLog(shader);
+            GLES20.glDeleteShader(shader);
+            throw new RuntimeException("Could not compile shader: " + log);
+        }
+        return shader;
+    }
+}
@@ -0,0 +1,204 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * OpenGL ES 3.0 backend: the GLES2 one, plus instanced drawing for meshes that repeat. Once a run
+ * of the same mesh reaches the instancing threshold it's drawn with a single
+ * glDrawElementsInstanced, each instance's MVP matrix and color coming from an instance buffer
+ * rather than uniforms. Shorter runs aren't worth the upload and go through the GLES2 path.
+ *
+ * The instance buffer lives as long as the context and is only reallocated to grow. It's orphaned
+ * at the start of each frame, and of each view after the first in a stereo frame, since the views
+ * all lay their runs out from the same offsets. That way the driver never has to wait for the GPU
+ * to finish with instances already drawn, and nothing drawn earlier in the frame gets overwritten:
+ * within a view each run writes its own part of the buffer. Instances are copied into it from the
+ * {@link RenderQueue}'s arrays through a direct staging buffer, nothing is allocated per frame.
+ *
+ * Background textures in ETC2 are uploaded as they are, without needing to be marked ETC1
+ * compatible.
+ */
+public class Gles3SceneRenderer extends Gles2SceneRenderer {
+
+    // vec4 per instance, then a mat4 taking this location and the next three, one per column
+    private static final int INSTANCE_COLOR_ATTRIBUTE = 2;
+    private static final int INSTANCE_MVP_ATTRIBUTE = 3;
+    private static final int MVP_COLUMNS = 4;
+
+    private static final int MVP_BYTES = 16 * 4;
+    private static final int COLOR_BYTES = 4 * 4;
+
+    private static final String VERTEX_SHADER =
+            "#version 300 es\n" +
+            "in vec4 aPosition;\n" +
+            "in vec4 aColor;\n" +
+            "in vec4 aInstanceColor;\n" +
+            "in mat4 aInstanceMvp;\n" +
+            "out vec4 vColor;\n" +
+            "void main() {\n" +
+            "    vColor = aColor * aInstanceColor;\n" +
+            "    gl_Position = aInstanceMvp * aPosition;\n" +
+            "}\n";
+
+    private static final String FRAGMENT_SHADER =
+            "#version 300 es\n" +
+            "precision mediump float;\n" +
+            "in vec4 vColor;\n" +
+            "out vec4 fragColor;\n" +
+            "void main() {\n" +
+            "    fragColor = vColor;\n" +
+            "}\n";
+
+    private volatile int mInstancingThreshold = DEFAULT_INSTANCING_THRESHOLD;
+
+    private int mInstancedProgram;
+    private int mInstanceBuffer;
+    // in instances. All the matrices come first, then all the colors
+    private int mInstanceCapacity;
+    private FloatBuffer mStaging;
+    // whether anything's been drawn from the buffer's current storage
+    private boolean mInstancesWritten;
+    private boolean mInstanceAttributesEnabled;
+
+    /**
+     * @param threshold how many copies of a mesh in a row get drawn instanced, 0 to never
+     * instance. Can be called from any thread
+     */
+    public void setInstancingThreshold(int threshold) {
+        mInstancingThreshold = threshold;
+    }
+
+    @Override
+    public void onSurfaceCreated() {
+        super.onSurfaceCreated();
+        mInstancedProgram = createProgram(VERTEX_SHADER, FRAGMENT_SHADER,
+                "aPosition", "aColor", "aInstanceColor", "aInstanceMvp");
+
+        int[] buffers = new int[1];
+        GLES20.glGenBuffers(1, buffers, 0);
+        mInstanceBuffer = buffers[0];
+        mInstanceCapacity = 0;
+        mInstancesWritten = false;
+        mInstanceAttributesEnabled = false;
+    }
+
+    @Override
+    public void beginFrame(float[] projection) {
+        super.beginFrame(projection);
+        if (mInstanceCapacity > 0) {
+            allocateInstanceBuffer(mInstanceCapacity);
+        }
+    }
+
+    @Override
+    public void beginView(float[] projection, int x, int width, boolean red, boolean green, boolean blue) {
+        super.beginView(projection, x, width, red, green, blue);
+        // this view's runs start from the same offsets as the last one's, which may still be
+        // being drawn
+        if (mInstancesWritten) {
+            allocateInstanceBuffer(mInstanceCapacity);
+        }
+    }
+
+    @Override
+    public void drawMesh(Mesh mesh, float[] modelView, float[] modelViewProjection) {
+        setInstanceAttributesEnabled(false);
+        super.drawMesh(mesh, modelView, modelViewProjection);
+    }
+
+    @Override
+    public void drawBackground(float[] modelViewProjection) {
+        setInstanceAttributesEnabled(false);
+        super.drawBackground(modelViewProjection);
+    }
+
+    /**
+     * ETC2 is core in ES 3.0, its files go up as they are.
+     */
+    @Override
+    int getUploadFormat(KtxFile texture) {
+        if (texture.glInternalFormat == KtxFile.GL_COMPRESSED_RGB8_ETC2) {
+            return KtxFile.GL_COMPRESSED_RGB8_ETC2;
+        }
+        return super.getUploadFormat(texture);
+    }
+
+    @Override
+    public int drawInstances(Mesh mesh, float[] modelViews, float[] modelViewProjections, float[] colors,
+                             int first, int count) {
+        final int threshold = mInstancingThreshold;
+        if (threshold <= 0 || count < threshold) {
+            setInstanceAttributesEnabled(false);
+            return super.drawInstances(mesh, modelViews, modelViewProjections, colors, first, count);
+        }
+
+        if (first + count > mInstanceCapacity) {
+            // anything already drawn from the old storage keeps it until the GPU's done
+            allocateInstanceBuffer(Math.max(first + count, mInstanceCapacity * 2));
+        }
+
+        useProgram(mInstancedProgram);
+        if (mesh != getBoundMesh()) {
+            bindMesh(mesh);
+        }
+
+        final int mvpOffset = first * MVP_BYTES;
+        final int colorOffset = mInstanceCapacity * MVP_BYTES + first * COLOR_BYTES;
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mInstanceBuffer);
+        mStaging.clear();
+        mStaging.put(modelViewProjections, first * 16, count * 16);
+        mStaging.position(0);
+        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, mvpOffset, count * MVP_BYTES, mStaging);
+        mStaging.clear();
+        mStaging.put(colors, first * 4, count * 4);
+        mStaging.position(0);
+        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, colorOffset, count * COLOR_BYTES, mStaging);
+
+        setInstanceAttributesEnabled(true);
+        GLES20.glVertexAttribPointer(INSTANCE_COLOR_ATTRIBUTE, 4, GLES20.GL_FLOAT, false, COLOR_BYTES, colorOffset);
+        for (int column = 0; column < MVP_COLUMNS; column++) {
+            GLES20.glVertexAttribPointer(INSTANCE_MVP_ATTRIBUTE + column, 4, GLES20.GL_FLOAT, false, MVP_BYTES,
+                    mvpOffset + column * 16);
+        }
+
+        GLES30.glDrawElementsInstanced(GLES20.GL_TRIANGLES, mesh.getIndexCount(), Gl10SceneRenderer.indexType(mesh),
+                0, count);
+        mInstancesWritten = true;
+        return 1;
+    }
+
+    private void allocateInstanceBuffer(int capacity) {
+        if (capacity != mInstanceCapacity) {
+            mInstanceCapacity = capacity;
+            mStaging = ByteBuffer.allocateDirect(capacity * MVP_BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mInstanceBuffer);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, capacity * (MVP_BYTES + COLOR_BYTES), null,
+                GLES20.GL_STREAM_DRAW);
+        mInstancesWritten = false;
+    }
+
+    /**
+     * The instance attributes are only enabled around instanced draws, the GLES2 program
+     * doesn't read them.
+     */
+    private void setInstanceAttributesEnabled(boolean enabled) {
+        if (enabled == mInstanceAttributesEnabled) {
+            return;
+        }
+        mInstanceAttributesEnabled = enabled;
+        for (int attribute = INSTANCE_COLOR_ATTRIBUTE; attribute < INSTANCE_MVP_ATTRIBUTE + MVP_COLUMNS; attribute++) {
+            if (enabled) {
+                GLES20.glEnableVertexAttribArray(attribute);
+                GLES30.glVertexAttribDivisor(attribute, 1);
+            } else {
+                GLES20.glDisableVertexAttribArray(attribute);
+            }
+        }
+    }
+}
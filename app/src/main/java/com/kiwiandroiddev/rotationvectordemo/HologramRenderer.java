@@ -0,0 +1,445 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.opengl.GLSurfaceView;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Draws the hologram's scene into a GLSurfaceView from the pose a {@link PoseTracker} publishes,
+ * culled to the frame's frustum and sorted to keep state changes down, once or once per eye
+ * (see {@link StereoProjection}). Shared by the activity and the live wallpaper; whoever owns
+ * the view is responsible for acquiring the tracker with {@link #getPoseExchange()} while the
+ * view is visible.
+ *
+ * Settings can be changed from any thread with {@link #setSettings}, they're picked up at the
+ * start of the next frame. That includes the model, so a view that keeps its EGL context across
+ * pauses still gets a newly chosen model. Models are imported on a background thread, with the
+ * cube drawn in their place until they're ready, and uploaded on the GL thread when first drawn.
+ * The background cube map is picked up the same way, memory-mapped and handed to the backend as
+ * it is, and uploaded again whenever the context is recreated.
+ *
+ * With head tracking on, whoever runs the camera feeds {@link #getViewerFusion()}, and once it's
+ * seen the viewer its offsets are drawn with in place of idle recentering's.
+ *
+ * With frame scheduling on, whoever owns the view asks for frames at vsync through
+ * {@link #getFrameScheduler()}, and each frame gets everything that doesn't need the pose ready,
+ * then waits for the scheduler's latch time and is culled, sorted and drawn with the newest pose
+ * there is by then.
+ */
+public class HologramRenderer implements GLSurfaceView.Renderer {
+
+    private static final String TAG = "HologramRenderer";
+
+    // imports models off the GL thread, one at a time so two views loading the same model
+    // don't both write its cache files
+    private static final ExecutorService MODEL_LOADER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "model loader");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    private final GLSurfaceView mSurfaceView;
+    private final SceneRenderer mSceneRenderer;
+    // this renderer's alone, see PoseTracker
+    private final PoseExchange mPoseExchange = new PoseExchange();
+    private final IdleDetector mIdleDetector;
+    private final File mCacheDir;
+
+    private final FrameTimings mFrameTimings = new FrameTimings();
+    private final FrameMatrices mFrameMatrices = new FrameMatrices();
+    private final FrustumCuller mFrustumCuller = new FrustumCuller();
+    private final RenderQueue mRenderQueue = new RenderQueue();
+    private final StereoProjection mStereoProjection = new StereoProjection();
+    private final ResolutionScaleController mResolutionScaleController = new ResolutionScaleController();
+    // asked on the GL thread with the frame time
+    private final ViewRecenterer mViewRecenterer;
+    // fed from the head tracking thread, stepped on the GL thread with the pose
+    private final ViewerFusion mViewerFusion = new ViewerFusion();
+    // told about vsyncs on the main thread by whoever drives the view, see VsyncFrameDriver
+    private final FrameScheduler mFrameScheduler;
+
+    private volatile HologramSettings mSettings;
+
+    // GL thread only
+    private HologramSettings mAppliedSettings;
+    private FrameScheduler.Mode mFrameSchedulingMode;
+    // the cube while the model's loading
+    private LodChain mModel;
+    private String mModelPath;
+    // the load of mModelPath, null once it's been swapped in
+    private Future<LodChain> mPendingModel;
+    // null until uploaded to the current context
+    private String mBackgroundPath;
+    private SceneNode mScene;
+    private HologramScene.Layout mSceneLayout;
+    private int mViewportHeight = 1;
+
+    // from the last frame, for the frame timings overlay
+    private volatile int mModelsDrawn;
+    private volatile int mDrawCalls;
+    private volatile float mRenderScale = 1.0f;
+
+    /**
+     * @param surfaceView the view this renders into, asked for more frames while recentering
+     * when it only renders on demand
+     * @param cacheDir where imported models are cached
+     */
+    public HologramRenderer(GLSurfaceView surfaceView, SceneRenderer sceneRenderer, PoseTracker tracker,
+                            File cacheDir, HologramSettings settings) {
+        mSurfaceView = surfaceView;
+        mSceneRenderer = sceneRenderer;
+        mIdleDetector = tracker.getIdleDetector();
+        mViewRecenterer = new ViewRecenterer(mIdleDetector);
+        mFrameScheduler = new FrameScheduler(tracker.getClock());
+        mCacheDir = cacheDir;
+        mSettings = settings;
+    }
+
+    public void setSettings(HologramSettings settings) {
+        mSettings = settings;
+    }
+
+    /**
+     * Eases the view back to center straight away rather than waiting for it to go idle, and
+     * drops what head tracking had until the camera sees the viewer again.
+     */
+    public void requestRecenter() {
+        mViewRecenterer.requestReset();
+        mViewerFusion.requestReset();
+    }
+
+    public ViewerFusion getViewerFusion() {
+        return mViewerFusion;
+    }
+
+    /**
+     * @return where this renderer reads the pose, for {@link PoseTracker#acquire}
+     */
+    public PoseExchange getPoseExchange() {
+        return mPoseExchange;
+    }
+
+    public FrameScheduler getFrameScheduler() {
+        return mFrameScheduler;
+    }
+
+    public boolean isCentered() {
+        return mViewRecenterer.isCentered();
+    }
+
+    public FrameTimings getFrameTimings() {
+        return mFrameTimings;
+    }
+
+    /**
+     * @return how many models survived culling last frame, and how many draw calls it took
+     * to draw them, over all views
+     */
+    public String formatDrawSummary() {
+        return mModelsDrawn + " models in " + mDrawCalls + " draw calls at "
+                + Math.round(mRenderScale * 100.0f) + "% resolution";
+    }
+
+    /**
+     * Sets the view up for the given backend and creates it. GLES3 falls back to GLES2 on
+     * devices that don't support it.
+     */
+    public static SceneRenderer createSceneRenderer(Context context, GLSurfaceView view, String backend) {
+        if (HologramSettings.BACKEND_GLES3.equals(backend)) {
+            ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            if (activityManager.getDeviceConfigurationInfo().reqGlEsVersion >= 0x30000) {
+                view.setEGLContextClientVersion(3);
+                return new Gles3SceneRenderer();
+            }
+            Log.w(TAG, "OpenGL ES 3.0 isn't supported, falling back to 2.0");
+            backend = HologramSettings.BACKEND_GLES2;
+        }
+        if (HologramSettings.BACKEND_GLES2.equals(backend)) {
+            view.setEGLContextClientVersion(2);
+            return new Gles2SceneRenderer();
+        }
+        return new Gl10SceneRenderer();
+    }
+
+    @Override
+    public void onDrawFrame(GL10 gl) {
+        final long frameStartNs = SystemClock.elapsedRealtimeNanos();
+        final HologramSettings settings = mSettings;
+        if (settings != mAppliedSettings) {
+            applySettings(settings);
+        }
+        if (mPendingModel != null && mPendingModel.isDone()) {
+            takeLoadedModel();
+        }
+
+        final float[] pose = mPoseExchange.acquire();
+        final long poseTimestamp = mPoseExchange.getTimestamp();
+        mFrameTimings.onFrameStart(frameStartNs, poseTimestamp, mPoseExchange.getPublishedTime());
+
+        // with frame scheduling the pose is sampled again once the frame's prepared, and
+        // everything that depends on it, culling and sorting included, waits until then. A queue
+        // culled with this pose would be drawn from a later one, missing whatever had come into
+        // view in between
+        final boolean scheduled = settings.frameScheduling != FrameScheduler.Mode.OFF;
+        if (scheduled) {
+            mFrameScheduler.beginFrame();
+        }
+
+        // the offsets move too slowly to be worth working out again with the later pose
+        mViewRecenterer.update(frameStartNs, pose[PoseExchange.X_ROT], pose[PoseExchange.Y_ROT]);
+        float xRotOffset = mViewRecenterer.getXOffset();
+        float yRotOffset = mViewRecenterer.getYOffset();
+        if (settings.headTracking) {
+            mViewerFusion.update(poseTimestamp, pose[PoseExchange.X_ROT], pose[PoseExchange.Y_ROT]);
+            if (mViewerFusion.isTracking()) {
+                xRotOffset = mViewerFusion.getXOffset();
+                yRotOffset = mViewerFusion.getYOffset();
+            }
+        }
+        mScene.update();
+
+        float[] framePose = pose;
+        long framePoseTimestamp = poseTimestamp;
+        long latchNs = frameStartNs;
+        long waitedNs = 0;
+        if (scheduled) {
+            final long preparedNs = SystemClock.elapsedRealtimeNanos();
+            waitUntil(mFrameScheduler.onPrepared());
+            framePose = mPoseExchange.acquire();
+            framePoseTimestamp = mPoseExchange.getTimestamp();
+            latchNs = SystemClock.elapsedRealtimeNanos();
+            waitedNs = latchNs - preparedNs;
+            mFrameScheduler.onLatched(framePoseTimestamp);
+        }
+
+        // extrapolate the pose to roughly when this frame will hit the screen. Sensor event
+        // timestamps share the elapsedRealtimeNanos() time base
+        final long targetTimeNs = settings.predictionLookaheadNs > 0 ? latchNs + settings.predictionLookaheadNs : 0;
+        mFrameMatrices.updateFromPose(framePose, framePoseTimestamp, targetTimeNs, xRotOffset, yRotOffset,
+                mStereoProjection.getViewRatio(), settings.rotAxisZOffset, settings.scale);
+        mStereoProjection.update(mFrameMatrices);
+
+        // one traversal whatever the number of views
+        final FrameMatrices cullFrame = mStereoProjection.getCullFrame();
+        mFrustumCuller.setFrustum(cullFrame.modelViewProjection);
+        mRenderQueue.clear();
+        mFrustumCuller.cull(mScene, mRenderQueue);
+        mRenderQueue.sort(cullFrame, mStereoProjection.getViewWidth(), mViewportHeight);
+
+        mSceneRenderer.beginFrame(mFrameMatrices.projection);
+        final boolean stereo = mStereoProjection.getViewCount() > 1;
+        int drawCalls = 0;
+        for (int view = 0; view < mStereoProjection.getViewCount(); view++) {
+            if (stereo) {
+                mStereoProjection.beginView(mSceneRenderer, view);
+            }
+            mRenderQueue.project(mStereoProjection.getView(view));
+            mRenderQueue.draw(mSceneRenderer);
+            mSceneRenderer.drawBackground(mStereoProjection.getView(view).modelViewProjection);
+            drawCalls += mRenderQueue.getDrawCalls();
+        }
+        mSceneRenderer.endFrame();
+        if (scheduled) {
+            mFrameScheduler.endFrame();
+        }
+        mModelsDrawn = mRenderQueue.size();
+        mDrawCalls = drawCalls;
+
+        if (settings.adaptiveResolution) {
+            // the frame's own time, not the interval between frames, which takes in vsync and
+            // any idle time before it. The swap is left out, it's mostly waiting for vsync.
+            // Finishing costs the overlap between this frame's GPU work and the next one's CPU
+            // work, so it's only done while the scale is being adapted
+            gl.glFinish();
+            final long frameTimeNs = SystemClock.elapsedRealtimeNanos() - frameStartNs - waitedNs;
+            if (mResolutionScaleController.onFrame(frameStartNs, frameTimeNs)) {
+                mRenderScale = mSceneRenderer.setRenderScale(mResolutionScaleController.getScale());
+            }
+        }
+
+        mFrameTimings.onFrameEnd(SystemClock.elapsedRealtimeNanos());
+
+        if (settings.renderOnDemand && !mViewRecenterer.isCentered() && mIdleDetector.isIdle(frameStartNs)) {
+            mSurfaceView.requestRender();
+        }
+    }
+
+    /**
+     * Sleeps the GL thread until the frame's pose should be sampled.
+     */
+    private static void waitUntil(long timeNs) {
+        final long waitNs = timeNs - SystemClock.elapsedRealtimeNanos();
+        if (waitNs <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(waitNs / 1000000, (int) (waitNs % 1000000));
+        } catch (InterruptedException e) {
+            // the view's shutting down, the frame's not going to be shown anyway
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void applySettings(HologramSettings settings) {
+        mAppliedSettings = settings;
+        if (settings.frameScheduling != mFrameSchedulingMode) {
+            mFrameSchedulingMode = settings.frameScheduling;
+            mFrameScheduler.setPolicy(mFrameSchedulingMode == FrameScheduler.Mode.LATE_LATCH
+                    ? new LateLatchPolicy() : FrameSchedulingPolicy.IMMEDIATE);
+        }
+        mViewRecenterer.setDuration(settings.recenterDurationNs);
+        mStereoProjection.setMode(settings.stereoMode, settings.interocularDistance);
+        // back to the top of the range, and the controller only moves it with adaptive
+        // resolution on
+        mResolutionScaleController.configure(settings.minRenderScale, settings.maxRenderScale,
+                settings.targetFrameNs);
+        mRenderScale = mSceneRenderer.setRenderScale(mResolutionScaleController.getScale());
+        if (mSceneRenderer instanceof Gles3SceneRenderer) {
+            ((Gles3SceneRenderer) mSceneRenderer).setInstancingThreshold(settings.instancingThreshold);
+        }
+        if (mModel == null || !settings.modelPath.equals(mModelPath)) {
+            loadModel(settings.modelPath);
+            mScene = null;
+        }
+        if (!settings.backgroundPath.equals(mBackgroundPath)) {
+            loadBackground(settings.backgroundPath);
+        }
+        if (mScene == null || settings.sceneLayout != mSceneLayout) {
+            mSceneLayout = settings.sceneLayout;
+            createScene();
+        }
+        setMaxErrorPixels(mScene, settings.lodErrorPixels);
+    }
+
+    @Override
+    public void onSurfaceChanged(GL10 gl, int width, int height) {
+        mSceneRenderer.onSurfaceChanged(width, height);
+        mStereoProjection.setSurfaceSize(width, height);
+        mViewportHeight = height;
+        // the first frames after a resize aren't representative
+        mResolutionScaleController.onFramesInterrupted();
+    }
+
+    @Override
+    public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        mSceneRenderer.onSurfaceCreated();
+        mAppliedSettings = null;
+        // went with the old context
+        mBackgroundPath = null;
+        applySettings(mSettings);
+    }
+
+    /**
+     * Starts loading the model in the background and puts the cube in its place for now. A
+     * first-time import of a large model takes seconds, later loads come straight out of the
+     * mesh cache.
+     */
+    private void loadModel(final String path) {
+        mModelPath = path;
+        if (mPendingModel != null) {
+            // a model chosen before this one, if it's already being imported it finishes into
+            // the cache and is dropped
+            mPendingModel.cancel(false);
+            mPendingModel = null;
+        }
+        mModel = LodChain.single(Cube.create());
+        if (path.isEmpty()) {
+            return;
+        }
+        mPendingModel = MODEL_LOADER.submit(new Callable<LodChain>() {
+            @Override
+            public LodChain call() throws IOException {
+                try {
+                    return MeshLoader.load(new File(path), mCacheDir);
+                } finally {
+                    // picked up at the next frame, which might not come otherwise
+                    mSurfaceView.requestRender();
+                }
+            }
+        });
+    }
+
+    /**
+     * GL thread: swaps the finished load in for the cube, or keeps the cube if it failed.
+     */
+    private void takeLoadedModel() {
+        try {
+            mModel = mPendingModel.get();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Couldn't load model " + mModelPath + ", falling back to cube", e.getCause());
+        } catch (InterruptedException e) {
+            // can't happen once it's done
+            Thread.currentThread().interrupt();
+        }
+        mPendingModel = null;
+        createScene();
+        setMaxErrorPixels(mScene, mAppliedSettings.lodErrorPixels);
+    }
+
+    /**
+     * Nothing is decoded on the way: the file is mapped and its levels go straight from the
+     * mapping to the driver, so this costs about as long as reading the compressed data in.
+     */
+    private void loadBackground(String path) {
+        mBackgroundPath = path;
+        if (path.isEmpty()) {
+            mSceneRenderer.setBackground(null);
+            return;
+        }
+        final long startNs = SystemClock.elapsedRealtimeNanos();
+        try {
+            final KtxFile background = KtxFile.map(new File(path));
+            if (mSceneRenderer.setBackground(background)) {
+                Log.i(TAG, "Background " + path + " loaded in "
+                        + (SystemClock.elapsedRealtimeNanos() - startNs) / 1000000 + " ms, "
+                        + background.getDataSize() / 1024 + " KB");
+            } else {
+                Log.w(TAG, "Background " + path + " isn't supported by this renderer");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't load background " + path, e);
+            mSceneRenderer.setBackground(null);
+        }
+    }
+
+    private void createScene() {
+        mScene = HologramScene.create(mSceneLayout, mModel);
+        // so the queue doesn't grow mid-frame when the whole scene comes into view
+        mRenderQueue.ensureCapacity(countModels(mScene));
+    }
+
+    private static int countModels(SceneNode node) {
+        int models = node.getModel() != null ? 1 : 0;
+        for (int i = 0; i < node.getChildCount(); i++) {
+            models += countModels(node.getChild(i));
+        }
+        return models;
+    }
+
+    private static void setMaxErrorPixels(SceneNode node, float maxErrorPixels) {
+        if (node.getLodSelector() != null) {
+            node.getLodSelector().setMaxErrorPixels(maxErrorPixels);
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            setMaxErrorPixels(node.getChild(i), maxErrorPixels);
+        }
+    }
+}
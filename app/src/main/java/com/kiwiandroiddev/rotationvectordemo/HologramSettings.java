@@ -0,0 +1,129 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import android.content.SharedPreferences;
+
+/**
+ * A snapshot of the hologram's preferences, read in one go so the activity and the wallpaper
+ * engines see the same values and defaults. Immutable, so the GL thread can be handed a new
+ * one at any time.
+ */
+public class HologramSettings {
+
+    public static final String BACKEND_GL10 = "GL10";
+    public static final String BACKEND_GLES2 = "GLES2";
+    public static final String BACKEND_GLES3 = "GLES3";
+
+    private static final double DEG2RAD_FACTOR = Math.PI / 180.0f;
+
+    public final String rendererBackend;
+    public final float rotAxisZOffset;
+    public final float scale;
+    public final String modelPath;
+    public final String backgroundPath;
+    public final float lodErrorPixels;
+    public final long predictionLookaheadNs;
+    public final PosePredictor.Model predictionModel;
+    public final OrientationEngine.Fusion orientationFusion;
+    public final boolean showFrameTimings;
+    public final boolean renderOnDemand;
+    public final float renderEpsilonRads;
+    public final long recenterIdleNs;
+    public final long recenterDurationNs;
+    public final HologramScene.Layout sceneLayout;
+    public final int instancingThreshold;
+    public final StereoProjection.Mode stereoMode;
+    public final float interocularDistance;
+    public final boolean adaptiveResolution;
+    public final float minRenderScale;
+    public final float maxRenderScale;
+    public final long targetFrameNs;
+    public final int sensorSamplingPeriodUs;
+    public final int sensorMaxReportLatencyUs;
+    public final boolean frameAlignedSampling;
+    public final boolean headTracking;
+    public final FrameScheduler.Mode frameScheduling;
+
+    private HologramSettings(SharedPreferences preferences) {
+        rendererBackend = preferences.getString(SettingsActivity.PREF_RENDERER_BACKEND, BACKEND_GLES2);
+        rotAxisZOffset = readFloat(preferences, SettingsActivity.PREF_ROT_Z_OFFSET, "0.0");
+        scale = readFloat(preferences, SettingsActivity.PREF_SCALE, "5.0");
+        modelPath = preferences.getString(SettingsActivity.PREF_MODEL_PATH, "").trim();
+        backgroundPath = preferences.getString(SettingsActivity.PREF_BACKGROUND_PATH, "").trim();
+        lodErrorPixels = readFloat(preferences, SettingsActivity.PREF_LOD_ERROR_PIXELS, "1.0");
+        predictionLookaheadNs = (long) (readFloat(preferences, SettingsActivity.PREF_PREDICTION_LOOKAHEAD_MS, "20") * 1000000.0f);
+        showFrameTimings = preferences.getBoolean(SettingsActivity.PREF_SHOW_FRAME_TIMINGS, false);
+        renderOnDemand = preferences.getBoolean(SettingsActivity.PREF_RENDER_ON_DEMAND, false);
+        renderEpsilonRads = (float) (DEG2RAD_FACTOR * readFloat(preferences, SettingsActivity.PREF_RENDER_EPSILON_DEGREES, "0.1"));
+        recenterIdleNs = (long) (readFloat(preferences, SettingsActivity.PREF_RECENTER_IDLE_SECONDS, "5") * 1e9f);
+        recenterDurationNs = (long) (readFloat(preferences, SettingsActivity.PREF_RECENTER_DURATION_SECONDS, "1.0") * 1e9f);
+        instancingThreshold = (int) readFloat(preferences, SettingsActivity.PREF_INSTANCING_THRESHOLD,
+                Integer.toString(SceneRenderer.DEFAULT_INSTANCING_THRESHOLD));
+        interocularDistance = readFloat(preferences, SettingsActivity.PREF_INTEROCULAR_DISTANCE, "0.1");
+        adaptiveResolution = preferences.getBoolean(SettingsActivity.PREF_ADAPTIVE_RESOLUTION, false);
+        minRenderScale = readFloat(preferences, SettingsActivity.PREF_MIN_RENDER_SCALE, "0.5");
+        maxRenderScale = readFloat(preferences, SettingsActivity.PREF_MAX_RENDER_SCALE, "1.0");
+        targetFrameNs = (long) (readFloat(preferences, SettingsActivity.PREF_TARGET_FRAME_MS, "16.7") * 1000000.0f);
+        // 0 is SENSOR_DELAY_FASTEST
+        sensorSamplingPeriodUs = Math.max(0, (int) (readFloat(preferences, SettingsActivity.PREF_SENSOR_PERIOD_MS, "0") * 1000.0f));
+        sensorMaxReportLatencyUs = Math.max(0, (int) (readFloat(preferences, SettingsActivity.PREF_SENSOR_MAX_REPORT_LATENCY_MS, "0") * 1000.0f));
+        frameAlignedSampling = preferences.getBoolean(SettingsActivity.PREF_FRAME_ALIGNED_SAMPLING, false);
+        headTracking = preferences.getBoolean(SettingsActivity.PREF_HEAD_TRACKING, false);
+
+        PosePredictor.Model model = PosePredictor.Model.CONSTANT_VELOCITY;
+        try {
+            model = PosePredictor.Model.valueOf(preferences.getString(SettingsActivity.PREF_PREDICTION_MODEL, model.name()));
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+        predictionModel = model;
+
+        OrientationEngine.Fusion fusion = OrientationEngine.Fusion.NONE;
+        try {
+            fusion = OrientationEngine.Fusion.valueOf(preferences.getString(SettingsActivity.PREF_ORIENTATION_FUSION, fusion.name()));
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+        orientationFusion = fusion;
+
+        HologramScene.Layout layout = HologramScene.Layout.MODEL;
+        try {
+            layout = HologramScene.Layout.valueOf(preferences.getString(SettingsActivity.PREF_SCENE, layout.name()));
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+        sceneLayout = layout;
+
+        StereoProjection.Mode stereo = StereoProjection.Mode.MONO;
+        try {
+            stereo = StereoProjection.Mode.valueOf(preferences.getString(SettingsActivity.PREF_STEREO_MODE, stereo.name()));
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+        stereoMode = stereo;
+
+        FrameScheduler.Mode scheduling = FrameScheduler.Mode.OFF;
+        try {
+            scheduling = FrameScheduler.Mode.valueOf(preferences.getString(SettingsActivity.PREF_FRAME_SCHEDULING, scheduling.name()));
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+        frameScheduling = scheduling;
+    }
+
+    public static HologramSettings fromPreferences(SharedPreferences preferences) {
+        return new HologramSettings(preferences);
+    }
+
+    /**
+     * Falls back to the default if the stored value doesn't parse, EditTextPreferences
+     * will store anything.
+     */
+    private static float readFloat(SharedPreferences preferences, String key, String defaultValue) {
+        try {
+            return Float.parseFloat(preferences.getString(key, defaultValue));
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+            return Float.parseFloat(defaultValue);
+        }
+    }
+}
@@ -22,26 +22,28 @@ package com.kiwiandroiddev.rotationvectordemo;
 * limitations under the License.
 */
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-import javax.microedition.khronos.egl.EGLConfig;
-import javax.microedition.khronos.opengles.GL10;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
 import android.app.Activity;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
-import android.util.FloatMath;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
 
 /**
  * Wrapper activity demonstrating the use of the new
@@ -55,30 +57,102 @@ import android.widget.Button;
  */
 public class HologramViewActivity extends Activity {
 
-    // Create a constant to convert nanoseconds to seconds.
-    private static final float NS2S = 1.0f / 1000000000.0f;
-    private static final double DEG2RAD_FACTOR = Math.PI / 180.0f;
-    private static final double RAD2DEG_FACTOR = 180.0f / Math.PI;
-
     private static final String TAG = "HologramViewActivity";
 
-    private GLSurfaceView mGLSurfaceView;
-    private SensorManager mSensorManager;
-    private MyRenderer mRenderer;
+    private static final long FRAME_TIMINGS_OVERLAY_INTERVAL_MS = 500;
 
-    private float timestamp;
-    private float currentXRotRads = 0.0f;
-    private float currentYRotRads = 0.0f;
+    private GLSurfaceView mGLSurfaceView;
+    private HologramRenderer mRenderer;
+    private String mRendererBackend;
+
+    // shared with the live wallpaper, held from onResume to onPause
+    private PoseTracker mPoseTracker;
+    private HologramSettings mSettings;
+
+    // decides which sensor events are worth a frame when rendering on demand. Driven from the
+    // main thread, where the sensor events arrive
+    private final RenderDemandController mRenderDemandController = new RenderDemandController(
+            new RenderDemandController.Listener() {
+                @Override
+                public void onRenderRequested() {
+                    mGLSurfaceView.requestRender();
+                }
 
-    private float frustumXOffset = 0.0f;
-    private float frustumYOffset = 0.0f;
-    private float frustumZNear = 1.0f;
+                @Override
+                public void onStateChanged(RenderDemandController.State state) {
+                    mPoseTracker.setLowRate(state == RenderDemandController.State.IDLE);
+                }
+            });
+
+    // non-null while recording. Sensor events arrive on the main thread, same as the menu
+    // callbacks that start and stop recording
+    private SensorTraceRecorder mTraceRecorder;
+    private TextView mFrameTimingsOverlay;
+
+    // runs from onResume to onPause with frame scheduling on, unless rendering on demand
+    private VsyncFrameDriver mVsyncFrameDriver;
+
+    // non-null while head tracking, from onResume to onPause
+    private HeadTrackingPipeline mHeadTracking;
+    private FrontCameraSource mFrontCamera;
+
+    // where the viewer is after each camera frame, on the head tracking thread
+    private final HeadTrackingPipeline.Listener mViewerPositionListener = new HeadTrackingPipeline.Listener() {
+        @Override
+        public void onViewerPosition(long timestampNs, float imageX, float imageY, boolean locked) {
+            mRenderer.getViewerFusion().onViewerPosition(timestampNs, imageX, imageY, locked);
+            // the viewer can move while the device doesn't, which no sensor event would draw
+            if (locked) {
+                mGLSurfaceView.requestRender();
+            }
+        }
+    };
+
+    // told about each sensor event once the tracker has integrated it
+    private final SensorSampleSink mSensorSampleListener = new SensorSampleSink() {
+        @Override
+        public void onSensorSample(int sensorType, long timestampNs, float[] values, int valueCount, int accuracy) {
+            if (sensorType == Sensor.TYPE_GYROSCOPE) {
+                mRenderer.getFrameTimings().onSensorEvent(timestampNs, mPoseTracker.getSampleArrivalTime(),
+                        SystemClock.elapsedRealtimeNanos());
+            }
 
-    private float screenWidthRatio = 1.0f;
+            if (mTraceRecorder != null) {
+                mTraceRecorder.onSensorSample(sensorType, timestampNs, values, valueCount, accuracy);
+            }
 
-    private boolean pendingViewerPositionReset = false;
-    private float mRotAxisZOffset = 0.0f;
-    private float mScale = 5.0f;
+            if (sensorType != Sensor.TYPE_GYROSCOPE || !mSettings.renderOnDemand) {
+                return;
+            }
+            // recentering only moves the view when frames are drawn, so the first one once
+            // the device goes idle has to be asked for. The GL thread keeps them coming
+            if (mPoseTracker.getIdleDetector().isIdle(timestampNs) && !mRenderer.isCentered()) {
+                mRenderDemandController.invalidate();
+            }
+            mRenderDemandController.onPose(timestampNs,
+                    mPoseTracker.getXRotRads(), mPoseTracker.getYRotRads(),
+                    values[0], values[1], values[2]);
+        }
+    };
+
+    private final Runnable mUpdateFrameTimingsOverlay = new Runnable() {
+        @Override
+        public void run() {
+            String summary = mRenderer.getFrameTimings().formatSummary() + "\n" + mRenderer.formatDrawSummary()
+                    + "\n" + mPoseTracker.formatIngestSummary();
+            if (mSettings.renderOnDemand) {
+                summary += "\n" + mRenderDemandController.formatSummary();
+            }
+            if (mHeadTracking != null) {
+                summary += "\n" + mHeadTracking.formatSummary();
+            }
+            if (mSettings.frameScheduling != FrameScheduler.Mode.OFF) {
+                summary += "\n" + mRenderer.getFrameScheduler().formatSummary();
+            }
+            mFrameTimingsOverlay.setText(summary);
+            mFrameTimingsOverlay.postDelayed(this, FRAME_TIMINGS_OVERLAY_INTERVAL_MS);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -86,17 +160,29 @@ public class HologramViewActivity extends Activity {
 
         setContentView(R.layout.activity_main);
 
-        mSensorManager = (SensorManager)getSystemService(SENSOR_SERVICE);
-        mRenderer = new MyRenderer();
+        mPoseTracker = PoseTracker.getInstance(this);
+        mSettings = readSettings();
 
+        // the GL version is fixed for the lifetime of the surface, so the backend is only
+        // read here. onResume restarts the activity if it's changed in the settings
+        mRendererBackend = mSettings.rendererBackend;
         mGLSurfaceView = (GLSurfaceView) findViewById(R.id.glsurfaceview);
+        SceneRenderer sceneRenderer = HologramRenderer.createSceneRenderer(this, mGLSurfaceView, mRendererBackend);
+        mRenderer = new HologramRenderer(mGLSurfaceView, sceneRenderer, mPoseTracker, getCacheDir(), mSettings);
         mGLSurfaceView.setRenderer(mRenderer);
+        mVsyncFrameDriver = new VsyncFrameDriver(this, mGLSurfaceView, mRenderer.getFrameScheduler());
+
+        mFrameTimingsOverlay = (TextView) findViewById(R.id.frame_timings_overlay);
 
         Button resetViewButton = (Button) findViewById(R.id.reset_viewer_position_button);
         resetViewButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                pendingViewerPositionReset = true;
+                mPoseTracker.requestReset();
+                mRenderer.requestRecenter();
+                if (mHeadTracking != null) {
+                    mHeadTracking.getTracker().requestReset();
+                }
             }
         });
     }
@@ -107,6 +193,13 @@ public class HologramViewActivity extends Activity {
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.action_toggle_trace_recording).setTitle(mTraceRecorder != null
+                ? R.string.action_stop_trace_recording : R.string.action_start_trace_recording);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         int id = item.getItemId();
@@ -115,217 +208,173 @@ public class HologramViewActivity extends Activity {
         if (id == R.id.action_settings) {
             startActivity(new Intent(this, SettingsActivity.class));
             return true;
+        } else if (id == R.id.action_dump_frame_timings) {
+            dumpFrameTimings();
+            return true;
+        } else if (id == R.id.action_toggle_trace_recording) {
+            if (mTraceRecorder == null) {
+                startTraceRecording();
+            } else {
+                stopTraceRecording();
+            }
+            return true;
         }
 
         return super.onOptionsItemSelected(item);
     }
 
-    @Override
-    protected void onResume() {
-        super.onResume();
-        mRenderer.start();
-        mGLSurfaceView.onResume();
-
-        initFromPreferences();
+    /**
+     * Writes the frame timing histograms to a text file along with the settings they were
+     * recorded under, so runs with different settings can be compared afterwards.
+     */
+    private void dumpFrameTimings() {
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            dir = getFilesDir();
+        }
+        File file = new File(dir, "frame-timings-" + System.currentTimeMillis() + ".txt");
+        String description = String.format(Locale.US,
+                "renderer %s, instancing threshold %d, prediction %s %d ms, model %s, scene %s\n"
+                        + "sensor period %d us, batching %d us, frame aligned %b\n%s\n%s",
+                mRendererBackend, mSettings.instancingThreshold, mSettings.predictionModel,
+                mSettings.predictionLookaheadNs / 1000000, mSettings.modelPath.isEmpty() ? "cube" : mSettings.modelPath,
+                mSettings.sceneLayout, mSettings.sensorSamplingPeriodUs, mSettings.sensorMaxReportLatencyUs,
+                mSettings.frameAlignedSampling, mRenderer.formatDrawSummary(), mPoseTracker.formatIngestSummary());
+        if (mSettings.renderOnDemand) {
+            description += "\n" + mRenderDemandController.formatSummary();
+        }
+        if (mHeadTracking != null) {
+            description += "\n" + mHeadTracking.formatSummary();
+        }
+        if (mSettings.frameScheduling != FrameScheduler.Mode.OFF) {
+            description += "\nframe scheduling " + mSettings.frameScheduling + "\n"
+                    + mRenderer.getFrameScheduler().formatSummary();
+        }
+        try {
+            Writer out = new BufferedWriter(new FileWriter(file));
+            try {
+                mRenderer.getFrameTimings().writeTo(out, description);
+            } finally {
+                out.close();
+            }
+            Toast.makeText(this, "Frame timings written to " + file, Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't write frame timings", e);
+            Toast.makeText(this, "Couldn't write frame timings: " + e.getMessage(), Toast.LENGTH_LONG).show();
+        }
     }
 
-    private void initFromPreferences() {
-        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+    /**
+     * Starts recording every sensor event to a trace file, for replaying through
+     * {@link TraceTool} on a desktop JVM.
+     */
+    private void startTraceRecording() {
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            dir = getFilesDir();
+        }
+        File file = new File(dir, "sensor-trace-" + System.currentTimeMillis() + SensorTrace.EXTENSION);
         try {
-            mRotAxisZOffset = Float.parseFloat(sharedPreferences.getString(SettingsActivity.PREF_ROT_Z_OFFSET, "0.0"));
-        } catch (NumberFormatException e) {
-            e.printStackTrace();
+            mTraceRecorder = new SensorTraceRecorder(file);
+            Toast.makeText(this, "Recording sensor trace to " + file, Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't start sensor trace", e);
+            Toast.makeText(this, "Couldn't start sensor trace: " + e.getMessage(), Toast.LENGTH_LONG).show();
         }
+    }
 
+    private void stopTraceRecording() {
+        SensorTraceRecorder recorder = mTraceRecorder;
+        mTraceRecorder = null;
         try {
-            mScale = Float.parseFloat(sharedPreferences.getString(SettingsActivity.PREF_SCALE, "5.0"));
-        } catch (NumberFormatException e) {
-            e.printStackTrace();
+            recorder.close();
+            Toast.makeText(this, "Recorded " + recorder.getRecordCount() + " sensor events ("
+                    + recorder.getDroppedCount() + " dropped)", Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't finish sensor trace", e);
+            Toast.makeText(this, "Couldn't finish sensor trace: " + e.getMessage(), Toast.LENGTH_LONG).show();
         }
     }
 
-    @Override
-    protected void onPause() {
-        super.onPause();
-        mRenderer.stop();
-        mGLSurfaceView.onPause();
+    /**
+     * Opens the front camera and tracks the viewer's head in it. The tracker starts from
+     * wherever the viewer is now, as if they'd just pressed reset.
+     */
+    private void startHeadTracking() {
+        mHeadTracking = new HeadTrackingPipeline(new HeadTracker(), mViewerPositionListener, Clock.SYSTEM);
+        mHeadTracking.start();
+        mRenderer.getViewerFusion().requestReset();
+        mFrontCamera = new FrontCameraSource(mHeadTracking, mRenderer.getViewerFusion());
+        mFrontCamera.start();
     }
 
-    class MyRenderer implements GLSurfaceView.Renderer, SensorEventListener {
-        private Cube mCube;
-        private Sensor mRotationVectorSensor;
-
-        public MyRenderer() {
-            // find the rotation-vector sensor
-            mRotationVectorSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
-            mCube = new Cube();
-        }
-
-        public void start() {
-            mSensorManager.registerListener(this, mRotationVectorSensor, SensorManager.SENSOR_DELAY_FASTEST);
+    private void stopHeadTracking() {
+        if (mHeadTracking == null) {
+            return;
         }
+        // the camera first, so nothing's delivered to a stopped pipeline
+        mFrontCamera.stop();
+        mFrontCamera = null;
+        mHeadTracking.stop();
+        mHeadTracking = null;
+    }
 
-        public void stop() {
-            mSensorManager.unregisterListener(this);
-        }
-
-        public void onSensorChanged(SensorEvent event) {
-            // we received a sensor event. it is a good practice to check
-            // that we received the proper event
-            if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE) {
-
-                if (pendingViewerPositionReset) {
-                    currentXRotRads = 0.0f;
-                    currentYRotRads = 0.0f;
-                    frustumXOffset = 0.0f;
-                    frustumYOffset = 0.0f;
-                    frustumZNear = 1.0f;
-                    pendingViewerPositionReset = false;
-                }
-
-                if (timestamp != 0) {
-                    final float dT = (event.timestamp - timestamp) * NS2S;
-
-                    float dXRads = event.values[0] * dT;
-                    float dYRads = event.values[1] * dT;
-
-                    currentXRotRads += dXRads;
-                    currentYRotRads += dYRads;
-
-                    // shorten distance from observer to projection place as it is rotated.
-                    // distance from observer to center of viewport should remain constant
-                    // as a consequence of translating it
-                    float cosTheta = FloatMath.cos(currentYRotRads);
-                    frustumZNear = cosTheta;
-
-                    // TODO include x rotation in this calculation
+    private boolean isVsyncDriven() {
+        return mSettings.frameScheduling != FrameScheduler.Mode.OFF && !mSettings.renderOnDemand;
+    }
 
-                    // translate the viewport along its plane. This has the effect of distorting
-                    // the view more as the device screen is rotated.
-                    frustumYOffset = FloatMath.sin(currentXRotRads);
-                    frustumXOffset = FloatMath.sin(currentYRotRads);
-                }
+    private HologramSettings readSettings() {
+        return HologramSettings.fromPreferences(PreferenceManager.getDefaultSharedPreferences(this));
+    }
 
-                timestamp = event.timestamp;
-            }
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mSettings = readSettings();
+        if (!mRendererBackend.equals(mSettings.rendererBackend)) {
+            recreate();
+            return;
         }
-
-        public void onDrawFrame(GL10 gl) {
-            gl.glMatrixMode(GL10.GL_PROJECTION);
-            gl.glLoadIdentity();
-            gl.glFrustumf(-screenWidthRatio + frustumXOffset,
-                           screenWidthRatio + frustumXOffset,
-                           -1 - frustumYOffset, 1 - frustumYOffset,
-                           frustumZNear, frustumZNear + 100);
-
-            // clear screen
-            gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
-
-            // set-up modelview matrix
-            gl.glMatrixMode(GL10.GL_MODELVIEW);
-            gl.glLoadIdentity();
-
-            gl.glPushMatrix();
-
-            // apply user-defined Z offset for rotation axis
-            gl.glTranslatef(0.0f, 0, mRotAxisZOffset);
-
-            gl.glRotatef((float) (currentXRotRads * RAD2DEG_FACTOR * -1.0f), 1.0f, 0.0f, 0.0f);
-            gl.glRotatef((float) (currentYRotRads * RAD2DEG_FACTOR * -1.0f), 0.0f, 1.0f, 0.0f);
-
-            gl.glTranslatef(0.0f, 0, -mRotAxisZOffset);
-
-            // default Z offset of 3D object from viewport
-            gl.glTranslatef(0.0f, 0, -40.0f);
-
-            gl.glScalef(mScale, mScale, mScale);
-
-            gl.glPushMatrix();
-
-            gl.glRotatef((float) (currentXRotRads * RAD2DEG_FACTOR * 1.0f), 1.0f, 0.0f, 0.0f);
-            gl.glRotatef((float) (currentYRotRads * RAD2DEG_FACTOR * 1.0f), 0.0f, 1.0f, 0.0f);
-
-            // draw our object
-            gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
-            gl.glEnableClientState(GL10.GL_COLOR_ARRAY);
-            mCube.draw(gl);
-            gl.glPopMatrix();
-
-            gl.glPopMatrix();
+        mRenderer.setSettings(mSettings);
+        mRenderDemandController.setEpsilon(mSettings.renderEpsilonRads);
+        mRenderDemandController.reset();
+
+        // rendering on demand already asks for frames only when they're needed, and the
+        // scheduler still samples the pose late in the ones it does ask for
+        final boolean vsyncDriven = isVsyncDriven();
+        mGLSurfaceView.setRenderMode(mSettings.renderOnDemand || vsyncDriven
+                ? GLSurfaceView.RENDERMODE_WHEN_DIRTY : GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        mPoseTracker.addSampleListener(mSensorSampleListener);
+        mPoseTracker.acquire(mSettings, mRenderer.getPoseExchange());
+        mGLSurfaceView.onResume();
+        if (vsyncDriven) {
+            mVsyncFrameDriver.start();
         }
 
-        public void onSurfaceChanged(GL10 gl, int width, int height) {
-            // set view-port
-            gl.glViewport(0, 0, width, height);
-            // set projection matrix
-            screenWidthRatio = (float) width / height;
+        if (mSettings.headTracking) {
+            startHeadTracking();
         }
 
-        public void onSurfaceCreated(GL10 gl, EGLConfig config) {
-            // dither is enabled by default, we don't need it
-            gl.glDisable(GL10.GL_DITHER);
-            gl.glClearColor(0,0,0,1);
+        mFrameTimingsOverlay.setVisibility(mSettings.showFrameTimings ? View.VISIBLE : View.GONE);
+        if (mSettings.showFrameTimings) {
+            mFrameTimingsOverlay.post(mUpdateFrameTimingsOverlay);
         }
+    }
 
-        class Cube {
-            // initialize our cube
-            private FloatBuffer mVertexBuffer;
-            private FloatBuffer mColorBuffer;
-            private ByteBuffer mIndexBuffer;
-
-            public Cube() {
-                final float vertices[] = {
-                        -1, -1, -1,	1, -1, -1,
-                        1, 1, -1,	-1, 1, -1,
-                        -1, -1, 1, 1, -1, 1,
-                        1, 1, 1, -1, 1, 1,
-                };
-                final float colors[] = {
-                        0, 0, 0, 1, 1, 0, 0, 1,
-                        1, 1, 0, 1, 0, 1, 0, 1,
-                        0, 0, 1, 1, 1, 0, 1, 1,
-                        1, 1, 1, 1, 0, 1, 1, 1,
-                };
-//                final float colors[] = {
-//                        0, 0, 1, 1, 0, 0, 1, 1,
-//                        0, 0, 1, 1, 0, 0, 1, 1,
-//                        0, 0, 1, 1, 0, 0, 1, 1,
-//                        0, 0, 1, 1, 0, 0, 1, 1,
-//                };
-                final byte indices[] = {
-                        0, 4, 5, 0, 5, 1,
-                        1, 5, 6, 1, 6, 2,
-                        2, 6, 7, 2, 7, 3,
-                        3, 7, 4, 3, 4, 0,
-                        4, 7, 6, 4, 6, 5,
-                        3, 0, 1, 3, 1, 2
-                };
-                ByteBuffer vbb = ByteBuffer.allocateDirect(vertices.length*4);
-                vbb.order(ByteOrder.nativeOrder());
-                mVertexBuffer = vbb.asFloatBuffer();
-                mVertexBuffer.put(vertices);
-                mVertexBuffer.position(0);
-                ByteBuffer cbb = ByteBuffer.allocateDirect(colors.length*4);
-                cbb.order(ByteOrder.nativeOrder());
-                mColorBuffer = cbb.asFloatBuffer();
-                mColorBuffer.put(colors);
-                mColorBuffer.position(0);
-                mIndexBuffer = ByteBuffer.allocateDirect(indices.length);
-                mIndexBuffer.put(indices);
-                mIndexBuffer.position(0);
-            }
-
-            public void draw(GL10 gl) {
-                gl.glEnable(GL10.GL_CULL_FACE);
-                gl.glFrontFace(GL10.GL_CW);
-                gl.glShadeModel(GL10.GL_SMOOTH);
-                gl.glVertexPointer(3, GL10.GL_FLOAT, 0, mVertexBuffer);
-                gl.glColorPointer(4, GL10.GL_FLOAT, 0, mColorBuffer);
-                gl.glDrawElements(GL10.GL_TRIANGLES, 36, GL10.GL_UNSIGNED_BYTE, mIndexBuffer);
-            }
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mPoseTracker.removeSampleListener(mSensorSampleListener);
+        mPoseTracker.release(mRenderer.getPoseExchange());
+        if (mTraceRecorder != null) {
+            stopTraceRecording();
         }
+        mVsyncFrameDriver.stop();
+        mGLSurfaceView.onPause();
+        mFrameTimingsOverlay.removeCallbacks(mUpdateFrameTimingsOverlay);
+        stopHeadTracking();
 
-        public void onAccuracyChanged(Sensor sensor, int accuracy) {
-        }
+        // the GL thread is paused now, the first frame after resuming shouldn't count the gap
+        mRenderer.getFrameTimings().onFramesInterrupted();
     }
 }
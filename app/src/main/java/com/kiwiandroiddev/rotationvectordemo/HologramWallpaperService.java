@@ -0,0 +1,127 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import android.content.Context;
+import android.opengl.GLSurfaceView;
+import android.preference.PreferenceManager;
+import android.service.wallpaper.WallpaperService;
+import android.view.SurfaceHolder;
+
+/**
+ * The hologram as a live wallpaper. Each engine (the home screen's, and the preview's while the
+ * wallpaper is being picked or its settings are open) draws with its own
+ * {@link HologramRenderer}, but they all read the pose from the one {@link PoseTracker}, so
+ * there's only ever one set of sensor registrations however many engines exist.
+ *
+ * An engine only holds the tracker while it's visible. Once the launcher goes behind an app or
+ * the screen turns off, the sensors are unregistered and the GL thread is paused with its EGL
+ * context kept, so coming back doesn't have to recompile shaders or re-upload the model.
+ */
+public class HologramWallpaperService extends WallpaperService {
+
+    @Override
+    public Engine onCreateEngine() {
+        return new HologramEngine();
+    }
+
+    class HologramEngine extends Engine {
+
+        private PoseTracker mPoseTracker;
+        private WallpaperGLSurfaceView mGLSurfaceView;
+        private HologramRenderer mRenderer;
+        private VsyncFrameDriver mVsyncFrameDriver;
+        private boolean mTracking = false;
+
+        /**
+         * A GLSurfaceView drawing into the wallpaper's surface rather than one of its own. It's
+         * never attached to a window, so the engine has to tell it when it's finished with.
+         */
+        class WallpaperGLSurfaceView extends GLSurfaceView {
+
+            WallpaperGLSurfaceView(Context context) {
+                super(context);
+            }
+
+            @Override
+            public SurfaceHolder getHolder() {
+                return getSurfaceHolder();
+            }
+
+            void onDestroy() {
+                super.onDetachedFromWindow();
+            }
+        }
+
+        @Override
+        public void onCreate(SurfaceHolder surfaceHolder) {
+            super.onCreate(surfaceHolder);
+
+            mPoseTracker = PoseTracker.getInstance(HologramWallpaperService.this);
+            HologramSettings settings = readSettings();
+
+            // the GL version is fixed for the lifetime of the surface, a changed backend is
+            // picked up the next time the wallpaper is set
+            mGLSurfaceView = new WallpaperGLSurfaceView(HologramWallpaperService.this);
+            SceneRenderer sceneRenderer = HologramRenderer.createSceneRenderer(
+                    HologramWallpaperService.this, mGLSurfaceView, settings.rendererBackend);
+            mGLSurfaceView.setPreserveEGLContextOnPause(true);
+            mRenderer = new HologramRenderer(mGLSurfaceView, sceneRenderer, mPoseTracker, getCacheDir(), settings);
+            mGLSurfaceView.setRenderer(mRenderer);
+            mVsyncFrameDriver = new VsyncFrameDriver(HologramWallpaperService.this, mGLSurfaceView,
+                    mRenderer.getFrameScheduler());
+        }
+
+        @Override
+        public void onVisibilityChanged(boolean visible) {
+            super.onVisibilityChanged(visible);
+            if (visible) {
+                startTracking();
+            } else {
+                stopTracking();
+            }
+        }
+
+        @Override
+        public void onDestroy() {
+            stopTracking();
+            mGLSurfaceView.onDestroy();
+            super.onDestroy();
+        }
+
+        private void startTracking() {
+            if (mTracking) {
+                return;
+            }
+            mTracking = true;
+            // the settings may have been changed from the preview's settings button
+            HologramSettings settings = readSettings();
+            mRenderer.setSettings(settings);
+            mPoseTracker.acquire(settings, mRenderer.getPoseExchange());
+            // a wallpaper has nothing to draw on demand for, the view only changes as the
+            // device moves and it stops drawing altogether while hidden. Frames come either
+            // as fast as the view goes or at the vsyncs the scheduler asks for
+            final boolean scheduled = settings.frameScheduling != FrameScheduler.Mode.OFF;
+            mGLSurfaceView.setRenderMode(scheduled
+                    ? GLSurfaceView.RENDERMODE_WHEN_DIRTY : GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+            mGLSurfaceView.onResume();
+            if (scheduled) {
+                mVsyncFrameDriver.start();
+            }
+        }
+
+        private void stopTracking() {
+            if (!mTracking) {
+                return;
+            }
+            mTracking = false;
+            mVsyncFrameDriver.stop();
+            mGLSurfaceView.onPause();
+            mPoseTracker.release(mRenderer.getPoseExchange());
+            mRenderer.getFrameTimings().onFramesInterrupted();
+        }
+
+        private HologramSettings readSettings() {
+            return HologramSettings.fromPreferences(
+                    PreferenceManager.getDefaultSharedPreferences(HologramWallpaperService.this));
+        }
+    }
+}
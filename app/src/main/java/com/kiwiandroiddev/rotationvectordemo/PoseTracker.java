@@ -0,0 +1,294 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The device's pose, shared by everything in the process that draws the hologram: one sensor
+ * subscription and one {@link PoseIntegrator}, however many renderers are reading the pose.
+ * With the wallpaper's preview and home screen engines and the activity all able to exist at
+ * once, that saves integrating the same gyro stream several times over. An exchange only has
+ * room for one reader, so each renderer hands in its own {@link PoseExchange} and the pose is
+ * published to every one held.
+ *
+ * Users {@link #acquire} it while they're visible and {@link #release} it when they aren't. The
+ * sensors are registered while anyone holds it and unregistered as soon as nobody does, so
+ * nothing is spent on sensors while nothing's on screen. The pose carries over, so coming back
+ * is quick and doesn't jump.
+ *
+ * Sensors are registered with explicit sampling periods and, if set, a maximum report latency
+ * that lets the sensor hub hold events back in its FIFO and deliver them in batches, waking the
+ * process up less often. Events are queued in a {@link SensorIngestor} as they arrive and
+ * integrated in one pass once the whole delivery is in, or with frame aligned sampling on, once
+ * a vsync from the events up to that vsync.
+ *
+ * Everything here is called on the main thread, which is also where the sensor events arrive.
+ * Renderers read the pose from their exchanges on their GL threads.
+ */
+public class PoseTracker implements SensorEventListener {
+
+    private static final String TAG = "PoseTracker";
+
+    // what SENSOR_DELAY_UI, GAME and NORMAL ask for, the rates the gyro drops to while idle and
+    // the fusion sensors run at
+    private static final int LOW_RATE_GYRO_PERIOD_US = 66667;
+    private static final int FUSION_PERIOD_US = 20000;
+    private static final int LOW_RATE_FUSION_PERIOD_US = 200000;
+
+    private static PoseTracker sInstance;
+
+    private final SensorManager mSensorManager;
+    private final Sensor mGyroscope;
+    private final Handler mHandler = new Handler();
+
+    private final Clock mClock = new Clock() {
+        @Override
+        public long nanoTime() {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+    };
+    private final PosePredictor mPosePredictor = new PosePredictor();
+    private final PoseIntegrator mPoseIntegrator = new PoseIntegrator(mPosePredictor, mClock);
+    private final IdleDetector mIdleDetector = new IdleDetector();
+    private final SensorIngestor mSensorIngestor;
+
+    // told about every event after it's been integrated
+    private final CopyOnWriteArrayList<SensorSampleSink> mSampleListeners = new CopyOnWriteArrayList<SensorSampleSink>();
+
+    // posted by the first event of a delivery. The events of one delivery are all dispatched
+    // from the same message, so this runs once they're all in
+    private final Runnable mDeliveryEnd = new Runnable() {
+        @Override
+        public void run() {
+            mDeliveryEndPosted = false;
+            mSensorIngestor.onDelivery();
+            if (!mFrameAligned) {
+                mSensorIngestor.drain();
+            }
+        }
+    };
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            // vsync times are in System.nanoTime's time base, sensor timestamps in
+            // elapsedRealtimeNanos', which also counts time spent asleep
+            final long sensorTimeNs = frameTimeNanos + SystemClock.elapsedRealtimeNanos() - System.nanoTime();
+            mSensorIngestor.drainUntil(sensorTimeNs);
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    private int mUsers;
+    private boolean mLowRate;
+    private boolean mDeliveryEndPosted;
+    private OrientationEngine.Fusion mFusion = OrientationEngine.Fusion.NONE;
+    private int mSamplingPeriodUs = SensorManager.SENSOR_DELAY_FASTEST;
+    private int mMaxReportLatencyUs;
+    private boolean mFrameAligned;
+
+    private PoseTracker(Context context) {
+        mSensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        mGyroscope = mSensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+        // room for a full FIFO's worth twice over
+        final int fifoSize = mGyroscope != null ? mGyroscope.getFifoMaxEventCount() : 0;
+        mSensorIngestor = new SensorIngestor(
+                new SensorSampleRing(Math.max(SensorSampleRing.DEFAULT_CAPACITY, 2 * fifoSize)),
+                mPoseIntegrator, new SensorSampleSink() {
+                    @Override
+                    public void onSensorSample(int sensorType, long timestampNs, float[] values, int valueCount, int accuracy) {
+                        if (sensorType == Sensor.TYPE_GYROSCOPE) {
+                            mIdleDetector.onGyroSample(timestampNs, values[0], values[1], values[2]);
+                        }
+                        for (SensorSampleSink listener : mSampleListeners) {
+                            listener.onSensorSample(sensorType, timestampNs, values, valueCount, accuracy);
+                        }
+                    }
+                }, mClock);
+    }
+
+    /**
+     * @return the process's tracker, main thread only
+     */
+    public static PoseTracker getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PoseTracker(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Starts tracking if nobody else is already. Each call must be matched by a
+     * {@link #release} with the same exchange.
+     *
+     * @param settings the fusion, sampling, prediction and idle settings to track with. Applied
+     * straight away if this is the first user, otherwise the next time the sensors are
+     * (re)registered
+     * @param exchange where this user reads the pose, read by nobody else. It's handed the
+     * latest pose straight away
+     */
+    public void acquire(HologramSettings settings, PoseExchange exchange) {
+        mPosePredictor.setModel(settings.predictionModel);
+        mIdleDetector.setWindow(settings.recenterIdleNs);
+        final boolean samplingChanged = settings.sensorSamplingPeriodUs != mSamplingPeriodUs
+                || settings.sensorMaxReportLatencyUs != mMaxReportLatencyUs
+                || settings.frameAlignedSampling != mFrameAligned;
+        if (mUsers++ == 0 || settings.orientationFusion != mFusion || samplingChanged) {
+            // whatever's queued was sampled under the old settings, integrate it first
+            mSensorIngestor.drain();
+            mFusion = settings.orientationFusion;
+            mPoseIntegrator.setFusion(mFusion);
+            mSamplingPeriodUs = settings.sensorSamplingPeriodUs;
+            mMaxReportLatencyUs = settings.sensorMaxReportLatencyUs;
+            setFrameAligned(settings.frameAlignedSampling);
+            mIdleDetector.reset();
+            registerSensors();
+        }
+        mPoseIntegrator.addExchange(exchange);
+    }
+
+    /**
+     * Stops publishing to exchange, which keeps the last pose it had, and stops tracking once
+     * the last user has released it.
+     */
+    public void release(PoseExchange exchange) {
+        if (mUsers == 0) {
+            throw new IllegalStateException("released more often than acquired");
+        }
+        mPoseIntegrator.removeExchange(exchange);
+        if (--mUsers == 0) {
+            mSensorManager.unregisterListener(this);
+            mHandler.removeCallbacks(mDeliveryEnd);
+            mDeliveryEndPosted = false;
+            setFrameAligned(false);
+            // so the pose carries over from the last event that arrived
+            mSensorIngestor.drain();
+            mLowRate = false;
+        }
+    }
+
+    /**
+     * Drops the sensors to lower rates while the device is idle, see
+     * {@link RenderDemandController}. Until the last user releases the tracker.
+     */
+    public void setLowRate(boolean lowRate) {
+        if (lowRate != mLowRate) {
+            mLowRate = lowRate;
+            if (mUsers > 0) {
+                registerSensors();
+            }
+        }
+    }
+
+    public void addSampleListener(SensorSampleSink listener) {
+        mSampleListeners.add(listener);
+    }
+
+    public void removeSampleListener(SensorSampleSink listener) {
+        mSampleListeners.remove(listener);
+    }
+
+    /**
+     * Recenters the view on the next sensor event.
+     */
+    public void requestReset() {
+        mPoseIntegrator.requestReset();
+    }
+
+    public PosePredictor getPosePredictor() {
+        return mPosePredictor;
+    }
+
+    public IdleDetector getIdleDetector() {
+        return mIdleDetector;
+    }
+
+    /**
+     * @return the sensors' clock, elapsedRealtimeNanos
+     */
+    public Clock getClock() {
+        return mClock;
+    }
+
+    /**
+     * @return sensor wakeups and integration cost since the sensors were last registered
+     */
+    public String formatIngestSummary() {
+        return mSensorIngestor.formatSummary();
+    }
+
+    /**
+     * @return from inside a sample listener, when the sample it's being told about arrived in
+     * onSensorChanged, on {@link #getClock()}
+     */
+    public long getSampleArrivalTime() {
+        return mSensorIngestor.getArrivalTime();
+    }
+
+    public float getXRotRads() {
+        return mPoseIntegrator.getXRotRads();
+    }
+
+    public float getYRotRads() {
+        return mPoseIntegrator.getYRotRads();
+    }
+
+    private void setFrameAligned(boolean frameAligned) {
+        if (frameAligned != mFrameAligned) {
+            mFrameAligned = frameAligned;
+            if (frameAligned) {
+                Choreographer.getInstance().postFrameCallback(mFrameCallback);
+            } else {
+                Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            }
+        }
+    }
+
+    private void registerSensors() {
+        mSensorManager.unregisterListener(this);
+        if (mMaxReportLatencyUs > 0 && mGyroscope != null && mGyroscope.getFifoMaxEventCount() == 0) {
+            Log.i(TAG, "Gyroscope has no FIFO, its events won't be batched");
+        }
+        mSensorManager.registerListener(this, mGyroscope,
+                mLowRate ? LOW_RATE_GYRO_PERIOD_US : mSamplingPeriodUs, mMaxReportLatencyUs, mHandler);
+
+        // the fusion sensors only correct slow drift, they needn't be fast. The sample
+        // sink's sensor types are the same numbers as Sensor's
+        for (int type : PoseIntegrator.getRequiredSensors(mFusion)) {
+            if (type == Sensor.TYPE_GYROSCOPE) {
+                continue;
+            }
+            Sensor sensor = mSensorManager.getDefaultSensor(type);
+            if (sensor != null) {
+                mSensorManager.registerListener(this, sensor,
+                        mLowRate ? LOW_RATE_FUSION_PERIOD_US : FUSION_PERIOD_US, mMaxReportLatencyUs, mHandler);
+            } else {
+                Log.w(TAG, "No sensor of type " + type + " for " + mFusion + " fusion");
+            }
+        }
+        mSensorIngestor.resetStatistics();
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        mSensorIngestor.onSensorSample(event.sensor.getType(), event.timestamp, event.values,
+                event.values.length, event.accuracy);
+        if (!mDeliveryEndPosted) {
+            mDeliveryEndPosted = true;
+            mHandler.post(mDeliveryEnd);
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+}
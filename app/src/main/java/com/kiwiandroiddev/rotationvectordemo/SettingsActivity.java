@@ -42,6 +42,31 @@ public class SettingsActivity extends PreferenceActivity {
 
     public static final String PREF_ROT_Z_OFFSET = "pref_rot_z_offset";
     public static final String PREF_SCALE = "pref_scale";
+    public static final String PREF_PREDICTION_LOOKAHEAD_MS = "pref_prediction_lookahead_ms";
+    public static final String PREF_PREDICTION_MODEL = "pref_prediction_model";
+    public static final String PREF_RENDERER_BACKEND = "pref_renderer_backend";
+    public static final String PREF_MODEL_PATH = "pref_model_path";
+    public static final String PREF_BACKGROUND_PATH = "pref_background_path";
+    public static final String PREF_LOD_ERROR_PIXELS = "pref_lod_error_pixels";
+    public static final String PREF_SHOW_FRAME_TIMINGS = "pref_show_frame_timings";
+    public static final String PREF_ORIENTATION_FUSION = "pref_orientation_fusion";
+    public static final String PREF_RENDER_ON_DEMAND = "pref_render_on_demand";
+    public static final String PREF_RENDER_EPSILON_DEGREES = "pref_render_epsilon_degrees";
+    public static final String PREF_RECENTER_IDLE_SECONDS = "pref_recenter_idle_seconds";
+    public static final String PREF_RECENTER_DURATION_SECONDS = "pref_recenter_duration_seconds";
+    public static final String PREF_SCENE = "pref_scene";
+    public static final String PREF_INSTANCING_THRESHOLD = "pref_instancing_threshold";
+    public static final String PREF_STEREO_MODE = "pref_stereo_mode";
+    public static final String PREF_INTEROCULAR_DISTANCE = "pref_interocular_distance";
+    public static final String PREF_ADAPTIVE_RESOLUTION = "pref_adaptive_resolution";
+    public static final String PREF_MIN_RENDER_SCALE = "pref_min_render_scale";
+    public static final String PREF_MAX_RENDER_SCALE = "pref_max_render_scale";
+    public static final String PREF_TARGET_FRAME_MS = "pref_target_frame_ms";
+    public static final String PREF_SENSOR_PERIOD_MS = "pref_sensor_period_ms";
+    public static final String PREF_SENSOR_MAX_REPORT_LATENCY_MS = "pref_sensor_max_report_latency_ms";
+    public static final String PREF_FRAME_ALIGNED_SAMPLING = "pref_frame_aligned_sampling";
+    public static final String PREF_HEAD_TRACKING = "pref_head_tracking";
+    public static final String PREF_FRAME_SCHEDULING = "pref_frame_scheduling";
 
     @Override
     protected void onPostCreate(Bundle savedInstanceState) {
@@ -86,6 +111,26 @@ public class SettingsActivity extends PreferenceActivity {
 //        bindPreferenceSummaryToValue(findPreference("notifications_new_message_ringtone"));
         bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_ROT_Z_OFFSET));
         bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_SCALE));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_PREDICTION_LOOKAHEAD_MS));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_PREDICTION_MODEL));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_RENDERER_BACKEND));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_MODEL_PATH));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_BACKGROUND_PATH));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_LOD_ERROR_PIXELS));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_ORIENTATION_FUSION));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_RENDER_EPSILON_DEGREES));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_RECENTER_IDLE_SECONDS));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_RECENTER_DURATION_SECONDS));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_SCENE));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_INSTANCING_THRESHOLD));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_STEREO_MODE));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_INTEROCULAR_DISTANCE));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_MIN_RENDER_SCALE));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_MAX_RENDER_SCALE));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_TARGET_FRAME_MS));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_SENSOR_PERIOD_MS));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_SENSOR_MAX_REPORT_LATENCY_MS));
+        bindPreferenceSummaryToValue(findPreference(SettingsActivity.PREF_FRAME_SCHEDULING));
     }
 
     /**
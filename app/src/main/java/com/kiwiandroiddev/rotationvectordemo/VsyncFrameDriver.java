@@ -0,0 +1,61 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import android.content.Context;
+import android.opengl.GLSurfaceView;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+/**
+ * Asks a GLSurfaceView for a frame at each vsync its {@link FrameScheduler} thinks is worth
+ * one, in place of letting it render continuously. The view should render when dirty.
+ *
+ * Vsyncs come from the main thread's Choreographer, which is where start and stop are called
+ * from too. The vsync period is the default display's refresh rate as of start.
+ */
+public class VsyncFrameDriver implements Choreographer.FrameCallback {
+
+    private final GLSurfaceView mSurfaceView;
+    private final FrameScheduler mScheduler;
+    private final WindowManager mWindowManager;
+
+    private boolean mRunning;
+
+    public VsyncFrameDriver(Context context, GLSurfaceView surfaceView, FrameScheduler scheduler) {
+        mSurfaceView = surfaceView;
+        mScheduler = scheduler;
+        mWindowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+    }
+
+    public void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        final float refreshRate = mWindowManager.getDefaultDisplay().getRefreshRate();
+        mScheduler.setVsyncPeriod(refreshRate > 0.0f
+                ? (long) (1e9 / refreshRate) : FrameScheduler.DEFAULT_PERIOD_NS);
+        // whatever was asked for before a pause isn't coming
+        mScheduler.onFramesInterrupted();
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    public void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        mScheduler.onFramesInterrupted();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        // vsync times are in System.nanoTime's time base, the scheduler runs on the sensors'
+        final long vsyncNs = frameTimeNanos + SystemClock.elapsedRealtimeNanos() - System.nanoTime();
+        if (mScheduler.onVsync(vsyncNs)) {
+            mSurfaceView.requestRender();
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
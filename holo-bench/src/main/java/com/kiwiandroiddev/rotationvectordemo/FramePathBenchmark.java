@@ -0,0 +1,174 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU side of a frame, everything HologramRenderer does before and around its GL calls: the
+ * frame matrices from a predicted pose, then culling, sorting and projecting the scene, mono
+ * and in stereo. Draws go to a backend that does nothing, so this is the Java cost only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FramePathBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final long PREDICTION_LOOKAHEAD_NS = 20000000L;
+    private static final long FRAME_INTERVAL_NS = 16666667L;
+
+    @Param({"MODEL", "CUBE_FIELD"})
+    public HologramScene.Layout layout;
+
+    private final float[] mPose = new float[PoseExchange.SIZE];
+    private final FrameMatrices mFrameMatrices = new FrameMatrices();
+    private final FrustumCuller mCuller = new FrustumCuller();
+    private final RenderQueue mQueue = new RenderQueue();
+    private final StereoProjection mMono = new StereoProjection();
+    private final StereoProjection mStereo = new StereoProjection();
+    private final SceneRenderer mRenderer = new NullSceneRenderer();
+
+    private SceneNode mScene;
+    private long mFrameTimeNs;
+    private int mFrame;
+
+    @Setup
+    public void setUp() {
+        mScene = HologramScene.create(layout, LodChain.single(Cube.create()));
+        mMono.setSurfaceSize(WIDTH, HEIGHT);
+        mStereo.setMode(StereoProjection.Mode.ANAGLYPH, 0.1f);
+        mStereo.setSurfaceSize(WIDTH, HEIGHT);
+        mPose[PoseExchange.RATE_X] = 0.3f;
+        mPose[PoseExchange.RATE_Y] = -0.5f;
+    }
+
+    /**
+     * The next frame's pose, sweeping the device back and forth through about 30 degrees.
+     */
+    private void nextPose() {
+        mFrameTimeNs += FRAME_INTERVAL_NS;
+        final float phase = (mFrame++ & 255) * (float) (2.0 * Math.PI / 256.0);
+        mPose[PoseExchange.X_ROT] = 0.3f * FastMath.sin(phase);
+        mPose[PoseExchange.Y_ROT] = 0.5f * FastMath.cos(phase);
+    }
+
+    @Benchmark
+    public float[] frameMatrices() {
+        nextPose();
+        mFrameMatrices.updateFromPose(mPose, mFrameTimeNs, mFrameTimeNs + PREDICTION_LOOKAHEAD_NS,
+                0.0f, 0.0f, (float) WIDTH / HEIGHT, 0.0f, 5.0f);
+        return mFrameMatrices.modelViewProjection;
+    }
+
+    /**
+     * Baseline for frameMatrices: the same frame built the way it was before FrameMatrices, with
+     * the android.opengl.Matrix calls, degrees, double trig and new arrays every frame.
+     */
+    @Benchmark
+    public float[] frameMatricesReference() {
+        nextPose();
+        final float dT = PREDICTION_LOOKAHEAD_NS / 1e9f;
+        final float xRot = mPose[PoseExchange.X_ROT] + PosePredictor.extrapolate(mPose[PoseExchange.RATE_X],
+                mPose[PoseExchange.ACCEL_X], dT);
+        final float yRot = mPose[PoseExchange.Y_ROT] + PosePredictor.extrapolate(mPose[PoseExchange.RATE_Y],
+                mPose[PoseExchange.ACCEL_Y], dT);
+        return GlMatrix.frame((float) WIDTH / HEIGHT, (float) Math.sin(yRot), (float) Math.sin(xRot),
+                (float) Math.cos(yRot), xRot, yRot, 0.0f, 5.0f)[2];
+    }
+
+    @Benchmark
+    public int monoFrame() {
+        return frame(mMono);
+    }
+
+    @Benchmark
+    public int stereoFrame() {
+        return frame(mStereo);
+    }
+
+    private int frame(StereoProjection views) {
+        nextPose();
+        mFrameMatrices.updateFromPose(mPose, mFrameTimeNs, mFrameTimeNs + PREDICTION_LOOKAHEAD_NS,
+                0.0f, 0.0f, views.getViewRatio(), 0.0f, 5.0f);
+        views.update(mFrameMatrices);
+        final FrameMatrices cullFrame = views.getCullFrame();
+        mScene.update();
+        mCuller.setFrustum(cullFrame.modelViewProjection);
+        mQueue.clear();
+        mCuller.cull(mScene, mQueue);
+        mQueue.sort(cullFrame, views.getViewWidth(), HEIGHT);
+        mRenderer.beginFrame(mFrameMatrices.projection);
+        int drawCalls = 0;
+        for (int view = 0; view < views.getViewCount(); view++) {
+            if (views.getViewCount() > 1) {
+                views.beginView(mRenderer, view);
+            }
+            mQueue.project(views.getView(view));
+            mQueue.draw(mRenderer);
+            drawCalls += mQueue.getDrawCalls();
+        }
+        mRenderer.endFrame();
+        return drawCalls;
+    }
+
+    private static class NullSceneRenderer implements SceneRenderer {
+        @Override
+        public void onSurfaceCreated() {
+        }
+
+        @Override
+        public void onSurfaceChanged(int width, int height) {
+        }
+
+        @Override
+        public float setRenderScale(float scale) {
+            return 1.0f;
+        }
+
+        @Override
+        public void beginFrame(float[] projection) {
+        }
+
+        @Override
+        public void beginView(float[] projection, int x, int width, boolean red, boolean green, boolean blue) {
+        }
+
+        @Override
+        public void drawMesh(Mesh mesh, float[] modelView, float[] modelViewProjection) {
+        }
+
+        @Override
+        public int drawInstances(Mesh mesh, float[] modelViews, float[] modelViewProjections, float[] colors,
+                                 int first, int count) {
+            return count >= DEFAULT_INSTANCING_THRESHOLD ? 1 : count;
+        }
+
+        @Override
+        public boolean setBackground(KtxFile background) {
+            return true;
+        }
+
+        @Override
+        public void drawBackground(float[] modelViewProjection) {
+        }
+
+        @Override
+        public void endFrame() {
+        }
+    }
+}
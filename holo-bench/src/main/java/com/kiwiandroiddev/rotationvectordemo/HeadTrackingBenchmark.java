@@ -0,0 +1,85 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one front camera frame through head tracking, against its 33 ms budget: downscaling
+ * a 320x240 frame on its own, tracking an already downscaled one, and the whole of it with the
+ * result fused, over a generated sequence of a face on the move (see {@link SyntheticHeadSequence}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeadTrackingBenchmark {
+
+    private static final long FRAME_INTERVAL_NS = 33333333L;
+
+    // a second at 30 fps, cycled through, so the face keeps moving
+    private static final int FRAMES = 30;
+
+    private final byte[][] mFrames = new byte[FRAMES][];
+    private final byte[][] mSmallFrames = new byte[FRAMES][HeadTracker.MAX_PIXELS];
+    private final byte[] mSmall = new byte[HeadTracker.MAX_PIXELS];
+
+    private int mWidth;
+    private int mHeight;
+    private int mFactor;
+    private HeadTracker mTracker;
+    private ViewerFusion mFusion;
+    private HeadTrackingPipeline mPipeline;
+    private long mTimestampNs;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(23);
+        for (int i = 0; i < FRAMES; i++) {
+            final PngImage image = SyntheticHeadSequence.frame(i * FRAME_INTERVAL_NS / 1e9, random);
+            mWidth = image.width;
+            mHeight = image.height;
+            mFrames[i] = SyntheticHeadSequence.luma(image);
+        }
+        mFactor = HeadTracker.scaleFactor(mWidth, mHeight);
+        for (int i = 0; i < FRAMES; i++) {
+            HeadTracker.downscale(mFrames[i], mWidth, mHeight, mWidth, mFactor, mSmallFrames[i]);
+        }
+        mTracker = new HeadTracker();
+        mFusion = new ViewerFusion();
+        mPipeline = new HeadTrackingPipeline(new HeadTracker(), mFusion, Clock.SYSTEM);
+    }
+
+    @Benchmark
+    public byte[] downscale() {
+        HeadTracker.downscale(mFrames[mNext++ % FRAMES], mWidth, mHeight, mWidth, mFactor, mSmall);
+        return mSmall;
+    }
+
+    @Benchmark
+    public boolean track() {
+        mTimestampNs += FRAME_INTERVAL_NS;
+        return mTracker.track(mSmallFrames[mNext++ % FRAMES], mWidth / mFactor, mHeight / mFactor, mTimestampNs);
+    }
+
+    @Benchmark
+    public float frame() {
+        mTimestampNs += FRAME_INTERVAL_NS;
+        mPipeline.onCameraFrame(mFrames[mNext++ % FRAMES], mWidth, mHeight, mWidth, mTimestampNs);
+        mFusion.update(mTimestampNs, 0.0f, 0.0f);
+        return mFusion.getYOffset();
+    }
+}
@@ -0,0 +1,94 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one gyro event from delivery to published pose: integrated straight away as it was
+ * before batching, queued and drained one at a time, and queued and drained a batch at a time,
+ * all per event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorPathBenchmark {
+
+    // 200 Hz, SENSOR_DELAY_FASTEST on a typical phone
+    private static final long GYRO_INTERVAL_NS = 5000000L;
+
+    // what 100 ms of batching delivers at that rate
+    private static final int BATCH = 20;
+
+    // distinct samples, cycled through. A power of two so the index can be masked
+    private static final int SAMPLES = 256;
+
+    private final float[] mRates = new float[SAMPLES * 3];
+    private final float[] mValues = new float[3];
+
+    private PoseIntegrator mIntegrator;
+    private SensorIngestor mIngestor;
+    private long mTimestampNs;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        // a hand-held device swaying, plus gyro noise
+        final Random random = new Random(21);
+        for (int i = 0; i < SAMPLES; i++) {
+            final double phase = 2.0 * Math.PI * i / SAMPLES;
+            mRates[3 * i] = (float) (0.4 * Math.sin(phase) + 0.01 * random.nextGaussian());
+            mRates[3 * i + 1] = (float) (0.6 * Math.cos(phase) + 0.01 * random.nextGaussian());
+            mRates[3 * i + 2] = (float) (0.01 * random.nextGaussian());
+        }
+        mIntegrator = new PoseIntegrator(new PoseExchange(), new PosePredictor(), Clock.SYSTEM);
+        mIngestor = new SensorIngestor(new SensorSampleRing(), mIntegrator, null, Clock.SYSTEM);
+        mTimestampNs = GYRO_INTERVAL_NS;
+    }
+
+    private void deliver(SensorSampleSink sink) {
+        final int i = 3 * (mNext++ & (SAMPLES - 1));
+        mValues[0] = mRates[i];
+        mValues[1] = mRates[i + 1];
+        mValues[2] = mRates[i + 2];
+        mTimestampNs += GYRO_INTERVAL_NS;
+        sink.onSensorSample(SensorSampleSink.TYPE_GYROSCOPE, mTimestampNs, mValues, 3, 3);
+    }
+
+    @Benchmark
+    public float integrateEach() {
+        deliver(mIntegrator);
+        return mIntegrator.getXRotRads();
+    }
+
+    @Benchmark
+    public float ingestEach() {
+        deliver(mIngestor);
+        mIngestor.drain();
+        return mIntegrator.getXRotRads();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public float ingestBatch() {
+        for (int i = 0; i < BATCH; i++) {
+            deliver(mIngestor);
+        }
+        mIngestor.drain();
+        return mIntegrator.getXRotRads();
+    }
+}
@@ -0,0 +1,101 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sine and cosine of the same angle, per angle, with each implementation the sensor path has
+ * used: {@link FastMath} one at a time and in a batch, Math and StrictMath, and FloatMath as it
+ * was when it was removed (Math cast to float). See also "MathTool bench" for a quick run
+ * without JMH.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrigBenchmark {
+
+    private static final int COUNT = 1024;
+
+    private final float[] mAngles = new float[COUNT];
+    private final float[] mOut = new float[2 * COUNT];
+
+    @Setup
+    public void setUp() {
+        // what a tilted device covers
+        final Random random = new Random(19);
+        for (int i = 0; i < COUNT; i++) {
+            mAngles[i] = (float) ((random.nextFloat() * 2.0 - 1.0) * Math.PI / 2.0);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public float[] math() {
+        for (int i = 0; i < COUNT; i++) {
+            mOut[2 * i] = (float) Math.sin(mAngles[i]);
+            mOut[2 * i + 1] = (float) Math.cos(mAngles[i]);
+        }
+        return mOut;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public float[] strictMath() {
+        for (int i = 0; i < COUNT; i++) {
+            mOut[2 * i] = (float) StrictMath.sin(mAngles[i]);
+            mOut[2 * i + 1] = (float) StrictMath.cos(mAngles[i]);
+        }
+        return mOut;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public float[] floatMath() {
+        for (int i = 0; i < COUNT; i++) {
+            mOut[2 * i] = floatMathSin(mAngles[i]);
+            mOut[2 * i + 1] = floatMathCos(mAngles[i]);
+        }
+        return mOut;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public float[] fastMath() {
+        for (int i = 0; i < COUNT; i++) {
+            mOut[2 * i] = FastMath.sin(mAngles[i]);
+            mOut[2 * i + 1] = FastMath.cos(mAngles[i]);
+        }
+        return mOut;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public float[] fastMathBatch() {
+        FastMath.sinCos(mAngles, 0, mOut, 0, COUNT);
+        return mOut;
+    }
+
+    // android.util.FloatMath as of API 22
+    private static float floatMathSin(float angle) {
+        return (float) Math.sin(angle);
+    }
+
+    private static float floatMathCos(float angle) {
+        return (float) Math.cos(angle);
+    }
+}
@@ -0,0 +1,16 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Receives camera frames, whether they come from the device's camera or a recorded sequence
+ * (see HeadTool in holo-tools), so everything downstream can run on a desktop JVM.
+ */
+public interface CameraFrameSink {
+
+    /**
+     * @param luma the frame's Y plane, 8 bits per pixel, e.g. the start of an NV21 preview
+     * buffer. Only valid for the duration of the call, the caller reuses it
+     * @param rowStride bytes from the start of one row to the next, at least width
+     * @param timestampNs when the frame was captured, on the sensor clock
+     */
+    void onCameraFrame(byte[] luma, int width, int height, int rowStride, long timestampNs);
+}
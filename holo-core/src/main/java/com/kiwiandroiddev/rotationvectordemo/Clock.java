@@ -0,0 +1,17 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Source of the current time, so code that timestamps things can be run against a recorded or
+ * simulated timeline as well as the real one.
+ */
+public interface Clock {
+
+    long nanoTime();
+
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+}
@@ -0,0 +1,50 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * The default hologram model: a 2x2x2 cube centered on the origin with a different color at
+ * each corner.
+ */
+public final class Cube {
+
+    private Cube() {
+    }
+
+    public static Mesh create() {
+        final float vertices[] = {
+                -1, -1, -1,	1, -1, -1,
+                1, 1, -1,	-1, 1, -1,
+                -1, -1, 1, 1, -1, 1,
+                1, 1, 1, -1, 1, 1,
+        };
+        final float colors[] = {
+                0, 0, 0, 1, 1, 0, 0, 1,
+                1, 1, 0, 1, 0, 1, 0, 1,
+                0, 0, 1, 1, 1, 0, 1, 1,
+                1, 1, 1, 1, 0, 1, 1, 1,
+        };
+//        final float colors[] = {
+//                0, 0, 1, 1, 0, 0, 1, 1,
+//                0, 0, 1, 1, 0, 0, 1, 1,
+//                0, 0, 1, 1, 0, 0, 1, 1,
+//                0, 0, 1, 1, 0, 0, 1, 1,
+//        };
+        final int indices[] = {
+                0, 4, 5, 0, 5, 1,
+                1, 5, 6, 1, 6, 2,
+                2, 6, 7, 2, 7, 3,
+                3, 7, 4, 3, 4, 0,
+                4, 7, 6, 4, 6, 5,
+                3, 0, 1, 3, 1, 2
+        };
+
+        final int vertexCount = vertices.length / Mesh.POSITION_COMPONENTS;
+        float[] interleaved = new float[vertexCount * Mesh.FLOATS_PER_VERTEX];
+        for (int i = 0; i < vertexCount; i++) {
+            System.arraycopy(vertices, i * Mesh.POSITION_COMPONENTS,
+                    interleaved, i * Mesh.FLOATS_PER_VERTEX, Mesh.POSITION_COMPONENTS);
+            System.arraycopy(colors, i * Mesh.COLOR_COMPONENTS,
+                    interleaved, i * Mesh.FLOATS_PER_VERTEX + Mesh.POSITION_COMPONENTS, Mesh.COLOR_COMPONENTS);
+        }
+        return Mesh.fromArrays(interleaved, indices);
+    }
+}
@@ -0,0 +1,335 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Compresses RGB images to ETC blocks and back, for textures that stay compressed on the GPU at
+ * 4 bits per pixel: an eighth of the memory and bandwidth of RGBA8888.
+ *
+ * Only writes ETC1's individual and differential modes. ETC2 decoders read those unchanged (the
+ * extra ETC2 modes live in bit patterns ETC1 never produces), so the same data can go to an ES
+ * 3.0 context as GL_COMPRESSED_RGB8_ETC2 and to an ES 2.0 one as GL_ETC1_RGB8_OES. Each block
+ * is searched over both subblock layouts, both modes and all eight modifier tables, starting
+ * from the subblock averages and refitting the base colors to the chosen modifiers; good for
+ * backgrounds, not a replacement for a production encoder's quality.
+ *
+ * Blocks are 8 bytes, big-endian as the format defines them, for 4x4 pixels in row-major block
+ * order. Images that aren't a multiple of 4 in size have their edge pixels repeated to fill the
+ * last blocks.
+ */
+public final class EtcCodec {
+
+    public static final int BLOCK_SIZE = 4;
+    public static final int BLOCK_BYTES = 8;
+
+    // per table, the small and large modifier. Pixel index 0 adds the small one, 1 the large,
+    // 2 subtracts the small one and 3 the large
+    private static final int[][] MODIFIERS = {
+            {2, 8}, {5, 17}, {9, 29}, {13, 42}, {18, 60}, {24, 80}, {33, 106}, {47, 183}
+    };
+
+    private EtcCodec() {
+    }
+
+    /**
+     * @return bytes of ETC data for an image of the given size
+     */
+    public static int getEncodedSize(int width, int height) {
+        return blocks(width) * blocks(height) * BLOCK_BYTES;
+    }
+
+    /**
+     * @param argb pixels, top row first. Alpha is ignored
+     */
+    public static byte[] encode(int[] argb, int width, int height) {
+        final byte[] out = new byte[getEncodedSize(width, height)];
+        final int[] block = new int[16 * 3];
+        final int[] scratch = new int[SCRATCH_SIZE];
+        int offset = 0;
+        for (int by = 0; by < blocks(height); by++) {
+            for (int bx = 0; bx < blocks(width); bx++) {
+                for (int y = 0; y < BLOCK_SIZE; y++) {
+                    final int row = Math.min(by * BLOCK_SIZE + y, height - 1) * width;
+                    for (int x = 0; x < BLOCK_SIZE; x++) {
+                        final int pixel = argb[row + Math.min(bx * BLOCK_SIZE + x, width - 1)];
+                        final int i = (y * BLOCK_SIZE + x) * 3;
+                        block[i] = (pixel >> 16) & 0xff;
+                        block[i + 1] = (pixel >> 8) & 0xff;
+                        block[i + 2] = pixel & 0xff;
+                    }
+                }
+                final long bits = encodeBlock(block, scratch);
+                for (int b = 0; b < BLOCK_BYTES; b++) {
+                    out[offset++] = (byte) (bits >>> (56 - 8 * b));
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @return opaque ARGB pixels, top row first
+     */
+    public static int[] decode(byte[] data, int offset, int width, int height) {
+        final int[] argb = new int[width * height];
+        final int[] block = new int[16 * 3];
+        for (int by = 0; by < blocks(height); by++) {
+            for (int bx = 0; bx < blocks(width); bx++) {
+                long bits = 0;
+                for (int b = 0; b < BLOCK_BYTES; b++) {
+                    bits = bits << 8 | (data[offset++] & 0xff);
+                }
+                decodeBlock(bits, block);
+                for (int y = 0; y < BLOCK_SIZE && by * BLOCK_SIZE + y < height; y++) {
+                    for (int x = 0; x < BLOCK_SIZE && bx * BLOCK_SIZE + x < width; x++) {
+                        final int i = (y * BLOCK_SIZE + x) * 3;
+                        argb[(by * BLOCK_SIZE + y) * width + bx * BLOCK_SIZE + x] =
+                                0xff000000 | block[i] << 16 | block[i + 1] << 8 | block[i + 2];
+                    }
+                }
+            }
+        }
+        return argb;
+    }
+
+    private static int blocks(int pixels) {
+        return (pixels + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    // a subblock fit: table, error and indices, then the block's total error
+    private static final int SCRATCH_SIZE = 4;
+
+    // base colors are refitted to the chosen modifiers up to this many times
+    private static final int REFINE_PASSES = 3;
+
+    // never a valid block from the encoder, as it can't have the differential bit clear and
+    // be all ones
+    private static final long NO_FIT = -1L;
+
+    /**
+     * @param rgb 16 pixels, row by row, three components each
+     */
+    static long encodeBlock(int[] rgb, int[] scratch) {
+        long best = 0;
+        long bestError = Long.MAX_VALUE;
+        for (int flip = 0; flip < 2; flip++) {
+            // average of each subblock
+            final int[] average = new int[6];
+            for (int sub = 0; sub < 2; sub++) {
+                int r = 0, g = 0, b = 0;
+                for (int p = 0; p < 8; p++) {
+                    final int i = subblockPixel(flip, sub, p) * 3;
+                    r += rgb[i];
+                    g += rgb[i + 1];
+                    b += rgb[i + 2];
+                }
+                average[sub * 3] = (r + 4) / 8;
+                average[sub * 3 + 1] = (g + 4) / 8;
+                average[sub * 3 + 2] = (b + 4) / 8;
+            }
+
+            for (int differential = 0; differential < 2; differential++) {
+                final int[] target = average.clone();
+                for (int pass = 0; pass < REFINE_PASSES; pass++) {
+                    final long bits = encodeWith(rgb, flip, differential == 1, target, scratch);
+                    if (bits != NO_FIT && scratch[3] < bestError) {
+                        bestError = scratch[3];
+                        best = bits;
+                    }
+                    if (bits == NO_FIT || !refine(rgb, flip, bits, target)) {
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Encodes the block around the given subblock colors, quantized for the mode.
+     *
+     * @param scratch receives the total squared error at index 3
+     * @return the block, or {@link #NO_FIT} if the colors are too far apart for differential
+     * mode
+     */
+    private static long encodeWith(int[] rgb, int flip, boolean differential, int[] target, int[] scratch) {
+        final int[] base = new int[6];
+        final int[] q = new int[6];
+        long header;
+        if (differential) {
+            for (int c = 0; c < 3; c++) {
+                q[c] = quantize(target[c], 5);
+                q[3 + c] = quantize(target[3 + c], 5);
+                final int delta = q[3 + c] - q[c];
+                if (delta < -4 || delta > 3) {
+                    return NO_FIT;
+                }
+            }
+            for (int c = 0; c < 6; c++) {
+                base[c] = q[c] << 3 | q[c] >> 2;
+            }
+            header = (long) q[0] << 59 | (long) ((q[3] - q[0]) & 7) << 56
+                    | (long) q[1] << 51 | (long) ((q[4] - q[1]) & 7) << 48
+                    | (long) q[2] << 43 | (long) ((q[5] - q[2]) & 7) << 40
+                    | 1L << 33;
+        } else {
+            for (int c = 0; c < 6; c++) {
+                q[c] = quantize(target[c], 4);
+                base[c] = q[c] << 4 | q[c];
+            }
+            header = (long) q[0] << 60 | (long) q[3] << 56
+                    | (long) q[1] << 52 | (long) q[4] << 48
+                    | (long) q[2] << 44 | (long) q[5] << 40;
+        }
+        header |= (long) flip << 32;
+
+        int error = 0;
+        long indices = 0;
+        for (int sub = 0; sub < 2; sub++) {
+            fitSubblock(rgb, flip, sub, base, sub * 3, scratch);
+            error += scratch[1];
+            header |= (long) scratch[0] << (sub == 0 ? 37 : 34);
+            for (int p = 0; p < 8; p++) {
+                final int pixel = subblockPixel(flip, sub, p);
+                final int index = (scratch[2] >> (2 * p)) & 3;
+                // pixels are numbered down the columns
+                final int bit = (pixel % BLOCK_SIZE) * BLOCK_SIZE + pixel / BLOCK_SIZE;
+                indices |= (long) (index >> 1) << (16 + bit) | (long) (index & 1) << bit;
+            }
+        }
+        scratch[3] = error;
+        return header | indices;
+    }
+
+    /**
+     * Moves each subblock's color to where the chosen modifiers fit its pixels best: the mean
+     * of each pixel less its modifier. An average base color is only right when the modifiers
+     * cancel out.
+     *
+     * @return whether either color moved
+     */
+    private static boolean refine(int[] rgb, int flip, long bits, int[] target) {
+        boolean moved = false;
+        for (int sub = 0; sub < 2; sub++) {
+            final int table = (int) (bits >>> (sub == 0 ? 37 : 34)) & 7;
+            int r = 0, g = 0, b = 0;
+            for (int p = 0; p < 8; p++) {
+                final int pixel = subblockPixel(flip, sub, p);
+                final int bit = (pixel % BLOCK_SIZE) * BLOCK_SIZE + pixel / BLOCK_SIZE;
+                final int modifier = modifier(table,
+                        ((int) (bits >>> (16 + bit)) & 1) << 1 | (int) (bits >>> bit) & 1);
+                r += rgb[pixel * 3] - modifier;
+                g += rgb[pixel * 3 + 1] - modifier;
+                b += rgb[pixel * 3 + 2] - modifier;
+            }
+            final int[] refined = {clamp(Math.round(r / 8.0f)), clamp(Math.round(g / 8.0f)), clamp(Math.round(b / 8.0f))};
+            for (int c = 0; c < 3; c++) {
+                moved |= refined[c] != target[sub * 3 + c];
+                target[sub * 3 + c] = refined[c];
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Picks the modifier table and per pixel modifiers that best fit one subblock around its
+     * base color.
+     *
+     * @param scratch receives the table, the squared error and the pixels' indices, two bits
+     * each in subblock order
+     */
+    private static void fitSubblock(int[] rgb, int flip, int sub, int[] base, int baseOffset, int[] scratch) {
+        int bestError = Integer.MAX_VALUE;
+        for (int table = 0; table < MODIFIERS.length; table++) {
+            int error = 0;
+            int indices = 0;
+            for (int p = 0; p < 8 && error < bestError; p++) {
+                final int i = subblockPixel(flip, sub, p) * 3;
+                int bestPixelError = Integer.MAX_VALUE;
+                int bestIndex = 0;
+                for (int index = 0; index < 4; index++) {
+                    final int modifier = modifier(table, index);
+                    final int dr = clamp(base[baseOffset] + modifier) - rgb[i];
+                    final int dg = clamp(base[baseOffset + 1] + modifier) - rgb[i + 1];
+                    final int db = clamp(base[baseOffset + 2] + modifier) - rgb[i + 2];
+                    final int pixelError = dr * dr + dg * dg + db * db;
+                    if (pixelError < bestPixelError) {
+                        bestPixelError = pixelError;
+                        bestIndex = index;
+                    }
+                }
+                error += bestPixelError;
+                indices |= bestIndex << (2 * p);
+            }
+            if (error < bestError) {
+                bestError = error;
+                scratch[0] = table;
+                scratch[1] = error;
+                scratch[2] = indices;
+            }
+        }
+    }
+
+    /**
+     * @param rgb receives 16 pixels, row by row, three components each
+     */
+    static void decodeBlock(long bits, int[] rgb) {
+        final int[] base = new int[6];
+        if ((bits & 1L << 33) != 0) {
+            for (int c = 0; c < 3; c++) {
+                final int first = (int) (bits >>> (59 - 8 * c)) & 0x1f;
+                // three bit two's complement
+                final int delta = ((int) (bits >>> (56 - 8 * c)) & 7) << 29 >> 29;
+                final int second = first + delta;
+                base[c] = first << 3 | first >> 2;
+                base[3 + c] = (second & 0x1f) << 3 | (second & 0x1f) >> 2;
+            }
+        } else {
+            for (int c = 0; c < 3; c++) {
+                final int first = (int) (bits >>> (60 - 8 * c)) & 0xf;
+                final int second = (int) (bits >>> (56 - 8 * c)) & 0xf;
+                base[c] = first << 4 | first;
+                base[3 + c] = second << 4 | second;
+            }
+        }
+        final int flip = (int) (bits >>> 32) & 1;
+        for (int sub = 0; sub < 2; sub++) {
+            final int table = (int) (bits >>> (sub == 0 ? 37 : 34)) & 7;
+            for (int p = 0; p < 8; p++) {
+                final int pixel = subblockPixel(flip, sub, p);
+                final int bit = (pixel % BLOCK_SIZE) * BLOCK_SIZE + pixel / BLOCK_SIZE;
+                final int modifier = modifier(table,
+                        ((int) (bits >>> (16 + bit)) & 1) << 1 | (int) (bits >>> bit) & 1);
+                for (int c = 0; c < 3; c++) {
+                    rgb[pixel * 3 + c] = clamp(base[sub * 3 + c] + modifier);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param index msb then lsb, as stored
+     */
+    private static int modifier(int table, int index) {
+        final int magnitude = MODIFIERS[table][index & 1];
+        return (index & 2) == 0 ? magnitude : -magnitude;
+    }
+
+    /**
+     * @return pixel p of subblock sub, as an index into the block's row-major pixels. Without
+     * flip the subblocks are the left and right 2x4 halves, with it the top and bottom 4x2
+     */
+    private static int subblockPixel(int flip, int sub, int p) {
+        if (flip == 0) {
+            return (p / 2) * BLOCK_SIZE + sub * 2 + p % 2;
+        }
+        return (sub * 2 + p / 4) * BLOCK_SIZE + p % 4;
+    }
+
+    private static int quantize(int value, int bits) {
+        final int levels = (1 << bits) - 1;
+        return (value * levels + 127) / 255;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
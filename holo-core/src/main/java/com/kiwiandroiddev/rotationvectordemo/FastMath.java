@@ -0,0 +1,125 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Float sine and cosine from a precomputed table, for the per-event and per-frame trig on the
+ * way from a sensor event to the frame's frustum, where Math's double precision results are
+ * thrown away as soon as they're cast to float.
+ *
+ * The table holds one period of sine at {@link #TABLE_SIZE} points and is read with linear
+ * interpolation, so the error is at most (2 pi / TABLE_SIZE)^2 / 8 plus float rounding: under
+ * {@link #MAX_ERROR} for any input within {@link #MAX_FAST_RADIANS} of zero. That's a few
+ * float ulps of 1, well under a pixel for a frustum offset on any screen. Results never leave
+ * [-1, 1]. Inputs further out, infinities and NaN go to Math so they get the same answer they
+ * always did. Checked by FastMathTest.
+ *
+ * The batch versions run the same lookup over arrays of angles in one straight loop with no
+ * calls left after inlining and no branches besides the range check, which the JIT unrolls.
+ * sinCos reduces each angle once and reads both results from it. For working through many
+ * samples at once.
+ *
+ * Stateless and thread safe, the table is filled once when the class loads (8KB).
+ */
+public final class FastMath {
+
+    // power of two so indices wrap with a mask
+    public static final int TABLE_SIZE = 2048;
+
+    public static final float MAX_ERROR = 1.5e-6f;
+
+    // reduction into the table is done in double, which holds the fraction of an entry well
+    // enough out to here
+    public static final float MAX_FAST_RADIANS = 1.0e6f;
+
+    private static final int MASK = TABLE_SIZE - 1;
+    private static final int QUARTER_TURN = TABLE_SIZE / 4;
+    private static final double ENTRIES_PER_RADIAN = TABLE_SIZE / (2.0 * Math.PI);
+
+    // one extra entry so interpolation never has to wrap
+    private static final float[] SIN = new float[TABLE_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= TABLE_SIZE; i++) {
+            SIN[i] = (float) Math.sin(i * (2.0 * Math.PI / TABLE_SIZE));
+        }
+    }
+
+    private FastMath() {
+    }
+
+    public static float sin(float radians) {
+        if (!(Math.abs(radians) <= MAX_FAST_RADIANS)) {
+            return (float) Math.sin(radians);
+        }
+        return lookup(radians * ENTRIES_PER_RADIAN, 0);
+    }
+
+    public static float cos(float radians) {
+        if (!(Math.abs(radians) <= MAX_FAST_RADIANS)) {
+            return (float) Math.cos(radians);
+        }
+        // cos(x) = sin(x + pi/2), a quarter of the table further on
+        return lookup(radians * ENTRIES_PER_RADIAN, QUARTER_TURN);
+    }
+
+    /**
+     * out[outOffset + i] = sin(radians[offset + i]) for i below count. The arrays can be the
+     * same one.
+     */
+    public static void sin(float[] radians, int offset, float[] out, int outOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            out[outOffset + i] = sin(radians[offset + i]);
+        }
+    }
+
+    /**
+     * out[outOffset + i] = cos(radians[offset + i]) for i below count. The arrays can be the
+     * same one.
+     */
+    public static void cos(float[] radians, int offset, float[] out, int outOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            out[outOffset + i] = cos(radians[offset + i]);
+        }
+    }
+
+    /**
+     * Both at once, the way the rotation helpers in {@link MatrixMath} take them. Interleaves
+     * the results, sine then cosine, so sinCos[outOffset + 2 * i] and sinCos[outOffset + 2 * i + 1] are those of
+     * radians[offset + i].
+     */
+    public static void sinCos(float[] radians, int offset, float[] sinCos, int outOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            final float x = radians[offset + i];
+            final int out = outOffset + 2 * i;
+            if (!(Math.abs(x) <= MAX_FAST_RADIANS)) {
+                sinCos[out] = (float) Math.sin(x);
+                sinCos[out + 1] = (float) Math.cos(x);
+                continue;
+            }
+            // reduced once, then read at the angle and a quarter of the table on, the same
+            // entries and fraction sin() and cos() would find
+            final double entry = x * ENTRIES_PER_RADIAN;
+            final double floor = Math.floor(entry);
+            final float fraction = (float) (entry - floor);
+            final long whole = (long) floor;
+            sinCos[out] = interpolate((int) (whole & MASK), fraction);
+            sinCos[out + 1] = interpolate((int) ((whole + QUARTER_TURN) & MASK), fraction);
+        }
+    }
+
+    /**
+     * @param entry the angle in table entries
+     * @param shift entries to add to it
+     */
+    private static float lookup(double entry, int shift) {
+        final double floor = Math.floor(entry);
+        final float fraction = (float) (entry - floor);
+        // the long keeps negative angles wrapping the right way, the mask brings them into
+        // the table
+        return interpolate((int) (((long) floor + shift) & MASK), fraction);
+    }
+
+    private static float interpolate(int index, float fraction) {
+        final float value = SIN[index];
+        return value + (SIN[index + 1] - value) * fraction;
+    }
+}
@@ -0,0 +1,140 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * The projection and model-view matrices for one hologram frame, built directly into
+ * preallocated arrays instead of through the fixed-function matrix stack.
+ *
+ * Produces the same matrices as the original GL10 call sequence:
+ * <pre>
+ *   glFrustumf(-ratio + xOffset, ratio + xOffset, -1 - yOffset, 1 - yOffset, zNear, zNear + 100)
+ *
+ *   glTranslatef(0, 0, rotAxisZOffset)
+ *   glRotatef(-xRot, 1, 0, 0)
+ *   glRotatef(-yRot, 0, 1, 0)
+ *   glTranslatef(0, 0, -rotAxisZOffset)
+ *   glTranslatef(0, 0, -40)
+ *   glScalef(scale, scale, scale)
+ *   glRotatef(xRot, 1, 0, 0)
+ *   glRotatef(yRot, 0, 1, 0)
+ * </pre>
+ * along with their product, for shader-based renderers that take a single MVP.
+ */
+public class FrameMatrices {
+
+    // default Z offset of 3D object from viewport
+    public static final float OBJECT_Z_OFFSET = -40.0f;
+    public static final float FRUSTUM_DEPTH = 100.0f;
+
+    private static final float NS2S = 1.0f / 1000000000.0f;
+
+    public final float[] projection = new float[16];
+    public final float[] modelView = new float[16];
+    public final float[] modelViewProjection = new float[16];
+
+    private final float[] mFrustum = new float[3];
+
+    // what the projection was last built from, for updateForEye
+    private float mFrustumXOffset;
+    private float mFrustumYOffset;
+    private float mFrustumZNear = 1.0f;
+
+    /**
+     * Builds the matrices for a pose snapshot from a {@link PoseExchange}, first extrapolating
+     * it to targetTimeNs with the rates and accelerations it carries.
+     *
+     * @param poseTimestampNs sensor timestamp of the pose, 0 if there isn't one yet
+     * @param targetTimeNs when the frame is expected to be seen, on the sensor clock, or 0 to
+     * draw the pose as it is
+     * @param xRotOffsetRads subtracted from the pose's x rotation, along with yRotOffsetRads from
+     * the y rotation, to draw it relative to some other neutral position, see
+     * {@link ViewRecenterer}
+     */
+    public void updateFromPose(float[] pose, long poseTimestampNs, long targetTimeNs,
+                               float xRotOffsetRads, float yRotOffsetRads,
+                               float screenWidthRatio, float rotAxisZOffset, float scale) {
+        float xRotRads = pose[PoseExchange.X_ROT] - xRotOffsetRads;
+        float yRotRads = pose[PoseExchange.Y_ROT] - yRotOffsetRads;
+        float xOffset = pose[PoseExchange.FRUSTUM_X_OFFSET];
+        float yOffset = pose[PoseExchange.FRUSTUM_Y_OFFSET];
+        float zNear = pose[PoseExchange.FRUSTUM_Z_NEAR];
+
+        final boolean predict = targetTimeNs != 0 && poseTimestampNs != 0;
+        if (predict || xRotOffsetRads != 0.0f || yRotOffsetRads != 0.0f) {
+            if (predict) {
+                float dT = (targetTimeNs - poseTimestampNs) * NS2S;
+                xRotRads += PosePredictor.extrapolate(pose[PoseExchange.RATE_X], pose[PoseExchange.ACCEL_X], dT);
+                yRotRads += PosePredictor.extrapolate(pose[PoseExchange.RATE_Y], pose[PoseExchange.ACCEL_Y], dT);
+            }
+
+            PoseIntegrator.frustumForRotation(xRotRads, yRotRads, mFrustum);
+            xOffset = mFrustum[PoseIntegrator.FRUSTUM_X_OFFSET];
+            yOffset = mFrustum[PoseIntegrator.FRUSTUM_Y_OFFSET];
+            zNear = mFrustum[PoseIntegrator.FRUSTUM_Z_NEAR];
+        }
+
+        update(screenWidthRatio, xOffset, yOffset, zNear, xRotRads, yRotRads, rotAxisZOffset, scale);
+    }
+
+    public void update(float screenWidthRatio, float frustumXOffset, float frustumYOffset, float frustumZNear,
+                       float xRotRads, float yRotRads, float rotAxisZOffset, float scale) {
+        setProjection(screenWidthRatio, frustumXOffset, frustumYOffset, frustumZNear);
+
+        final float sinX = FastMath.sin(xRotRads);
+        final float cosX = FastMath.cos(xRotRads);
+        final float sinY = FastMath.sin(yRotRads);
+        final float cosY = FastMath.cos(yRotRads);
+
+        final float[] m = modelView;
+        MatrixMath.setIdentity(m);
+
+        // rotate the viewer about a user-defined point along Z...
+        m[14] = rotAxisZOffset;
+        MatrixMath.rotateX(m, -sinX, cosX);
+        MatrixMath.rotateY(m, -sinY, cosY);
+        MatrixMath.translate(m, 0.0f, 0.0f, OBJECT_Z_OFFSET - rotAxisZOffset);
+
+        MatrixMath.scale(m, scale);
+
+        // ...and counter-rotate the object so it stays facing the same way in the world
+        MatrixMath.rotateX(m, sinX, cosX);
+        MatrixMath.rotateY(m, sinY, cosY);
+
+        MatrixMath.multiply(modelViewProjection, projection, modelView);
+    }
+
+    /**
+     * Builds the matrices for an eye eyeX to the right of the one center was built for, in the
+     * units of the frustum offsets (half the screen's height). The eye looks through the same
+     * screen, so its frustum is the center one's with the window slid the other way, and the
+     * scene is shifted by -eyeX in front of it. Anything in the plane of the screen lands on the
+     * same pixels for both eyes; nearer and further points separate.
+     *
+     * @param screenWidthRatio width over height of the view the eye is drawn into
+     */
+    public void updateForEye(FrameMatrices center, float screenWidthRatio, float eyeX) {
+        setProjection(screenWidthRatio, center.mFrustumXOffset - eyeX, center.mFrustumYOffset,
+                center.mFrustumZNear);
+
+        // translate(-eyeX, 0, 0) * center.modelView, only the first row changes
+        final float[] m = modelView;
+        System.arraycopy(center.modelView, 0, m, 0, 16);
+        m[0] -= eyeX * m[3];
+        m[4] -= eyeX * m[7];
+        m[8] -= eyeX * m[11];
+        m[12] -= eyeX * m[15];
+
+        MatrixMath.multiply(modelViewProjection, projection, modelView);
+    }
+
+    private void setProjection(float screenWidthRatio, float frustumXOffset, float frustumYOffset,
+                               float frustumZNear) {
+        mFrustumXOffset = frustumXOffset;
+        mFrustumYOffset = frustumYOffset;
+        mFrustumZNear = frustumZNear;
+        MatrixMath.setFrustum(projection,
+                -screenWidthRatio + frustumXOffset,
+                screenWidthRatio + frustumXOffset,
+                -1 - frustumYOffset, 1 - frustumYOffset,
+                frustumZNear, frustumZNear + FRUSTUM_DEPTH);
+    }
+}
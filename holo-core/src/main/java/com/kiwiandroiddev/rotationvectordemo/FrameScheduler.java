@@ -0,0 +1,226 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.Locale;
+
+/**
+ * Lines frames up with the display's vsync, and splits each frame into a part that doesn't
+ * need the pose and a late part that does.
+ *
+ * Without it a frame samples the pose whenever the render thread happens to wake up, so the
+ * pose is a different age each frame when it reaches the screen and the hologram jitters.
+ * With it, frames are only started from vsync callbacks (on Android a Choreographer's), each
+ * aimed at the vsync after the one that started it, and a {@link FrameSchedulingPolicy}
+ * decides whether a vsync is worth a frame and when the pose is sampled. A vsync arriving
+ * while the last frame is still being drawn is skipped rather than queued. A frame that starts
+ * after its deadline has passed is aimed at the next vsync it can still make, and counted as
+ * retargeted.
+ *
+ * The renderer calls, on the GL thread: {@link #beginFrame()}, then prepares everything that
+ * doesn't depend on the pose (settings, models, the scene's bounds), then {@link #onPrepared()}
+ * and waits until the latch time it returns, samples the pose, calls {@link #onLatched}, works
+ * out the projection, culls, sorts and submits, and calls {@link #endFrame()}. Culling goes
+ * after the latch along with the rest: a queue culled with an earlier pose would leave out
+ * whatever the later one brings into view. The pose's age at submission, the
+ * time from its sensor event to the end of the frame's GL calls, is recorded in
+ * {@link #poseAgeAtSubmit}; the swap and the compositor come on top of it.
+ *
+ * Vsyncs come in on the main thread, frames run on the GL thread. Times are all on the
+ * scheduler's {@link Clock}, which has to be the sensors' clock for pose ages to mean anything.
+ * Nothing is allocated per frame.
+ */
+public class FrameScheduler {
+
+    public enum Mode {
+        // frames whenever the render thread runs, the pose sampled at the start
+        OFF,
+        // frames started at vsync, the pose sampled once the frame's ready
+        VSYNC,
+        // frames started at vsync, the pose sampled as late as possible
+        LATE_LATCH
+    }
+
+    public static final long DEFAULT_PERIOD_NS = 16666667L;
+
+    // a frame asked for this many vsyncs ago and still not drawn, because the surface was
+    // paused say, is given up on
+    private static final int STALE_PERIODS = 4;
+
+    public final LatencyHistogram poseAgeAtSubmit = new LatencyHistogram("pose at submit");
+    public final LatencyHistogram latchToDeadline = new LatencyHistogram("latch slack");
+
+    private final Clock mClock;
+
+    private volatile FrameSchedulingPolicy mPolicy = FrameSchedulingPolicy.IMMEDIATE;
+    private volatile long mPeriodNs = DEFAULT_PERIOD_NS;
+
+    // the vsync the frame being drawn or about to be was asked for at, 0 for none. Set on the
+    // main thread, cleared on the GL thread once the frame's submitted
+    private volatile long mRequestedVsyncNs;
+    private volatile long mLastVsyncNs;
+
+    // main thread
+    private long mVsyncs;
+    private long mSkippedBusy;
+    private long mSkippedLate;
+
+    // GL thread
+    private FrameSchedulingPolicy mFramePolicy;
+    private long mStartNs;
+    private long mReadyNs;
+    private long mLatchNs;
+    private long mDeadlineNs;
+    private long mPoseTimestampNs;
+    private long mFrames;
+    private long mMissed;
+    private long mRetargeted;
+
+    public FrameScheduler(Clock clock) {
+        mClock = clock;
+    }
+
+    /**
+     * Any thread, takes effect from the next vsync.
+     */
+    public void setPolicy(FrameSchedulingPolicy policy) {
+        mPolicy = policy;
+    }
+
+    public FrameSchedulingPolicy getPolicy() {
+        return mPolicy;
+    }
+
+    /**
+     * @param periodNs time between vsyncs, e.g. from the display's refresh rate. Any thread
+     */
+    public void setVsyncPeriod(long periodNs) {
+        mPeriodNs = periodNs;
+    }
+
+    public long getVsyncPeriod() {
+        return mPeriodNs;
+    }
+
+    /**
+     * Main thread, at each vsync.
+     *
+     * @param vsyncNs the vsync's time on this scheduler's clock
+     * @return whether to start a frame for it
+     */
+    public boolean onVsync(long vsyncNs) {
+        final long nowNs = mClock.nanoTime();
+        final long periodNs = mPeriodNs;
+        mLastVsyncNs = vsyncNs;
+        mVsyncs++;
+
+        final long requestedNs = mRequestedVsyncNs;
+        if (requestedNs != 0 && vsyncNs - requestedNs < STALE_PERIODS * periodNs) {
+            mSkippedBusy++;
+            return false;
+        }
+        if (!mPolicy.shouldRender(vsyncNs, nowNs, periodNs)) {
+            mSkippedLate++;
+            return false;
+        }
+        mRequestedVsyncNs = vsyncNs;
+        return true;
+    }
+
+    /**
+     * Main thread: forget any frame asked for, e.g. when the surface is paused or resumed, so
+     * the next vsync isn't skipped waiting for a frame that's never coming.
+     */
+    public void onFramesInterrupted() {
+        mRequestedVsyncNs = 0;
+    }
+
+    /**
+     * GL thread, first thing in a frame.
+     */
+    public void beginFrame() {
+        mFramePolicy = mPolicy;
+        final long nowNs = mClock.nanoTime();
+        final long periodNs = mPeriodNs;
+        mStartNs = nowNs;
+        mPoseTimestampNs = 0;
+
+        long vsyncNs = mRequestedVsyncNs;
+        if (vsyncNs == 0) {
+            // not started from a vsync, aim at the next one
+            vsyncNs = mLastVsyncNs != 0 ? mLastVsyncNs : nowNs;
+        }
+        mDeadlineNs = vsyncNs + periodNs;
+        if (nowNs >= mDeadlineNs) {
+            mDeadlineNs += ((nowNs - mDeadlineNs) / periodNs + 1) * periodNs;
+            mRetargeted++;
+        }
+        mLatchNs = mFramePolicy.getLatchTime(mDeadlineNs, nowNs);
+    }
+
+    /**
+     * GL thread, once everything that doesn't need the pose is done.
+     *
+     * @return when to sample the pose: the planned latch time, or now if preparing took longer
+     */
+    public long onPrepared() {
+        mReadyNs = mClock.nanoTime();
+        mLatchNs = Math.max(mLatchNs, mReadyNs);
+        return mLatchNs;
+    }
+
+    /**
+     * GL thread, right after sampling the pose.
+     *
+     * @param poseTimestampNs the sampled pose's sensor timestamp, 0 if there isn't one yet
+     */
+    public void onLatched(long poseTimestampNs) {
+        mLatchNs = mClock.nanoTime();
+        mPoseTimestampNs = poseTimestampNs;
+        latchToDeadline.record(mDeadlineNs - mLatchNs);
+    }
+
+    /**
+     * GL thread, once the frame's GL calls have all been made.
+     */
+    public void endFrame() {
+        final long submittedNs = mClock.nanoTime();
+        if (mPoseTimestampNs != 0) {
+            poseAgeAtSubmit.record(submittedNs - mPoseTimestampNs);
+        }
+        if (submittedNs > mDeadlineNs) {
+            mMissed++;
+        }
+        mFrames++;
+        mFramePolicy.onFrameDone(mStartNs, mReadyNs, mLatchNs, submittedNs);
+        mRequestedVsyncNs = 0;
+    }
+
+    /**
+     * @return when the frame being drawn has to be submitted by. GL thread
+     */
+    public long getDeadline() {
+        return mDeadlineNs;
+    }
+
+    public long getFrames() {
+        return mFrames;
+    }
+
+    public long getMissed() {
+        return mMissed;
+    }
+
+    public long getSkipped() {
+        return mSkippedBusy + mSkippedLate;
+    }
+
+    public long getRetargeted() {
+        return mRetargeted;
+    }
+
+    public String formatSummary() {
+        return String.format(Locale.US,
+                "vsync %d frames of %d vsyncs, skipped %d busy %d late, %d missed, %d retargeted\n%s\n%s",
+                mFrames, mVsyncs, mSkippedBusy, mSkippedLate, mMissed, mRetargeted,
+                poseAgeAtSubmit.formatSummary(), latchToDeadline.formatSummary());
+    }
+}
@@ -0,0 +1,53 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Decides for a {@link FrameScheduler} which vsyncs get a frame and when in each frame the pose
+ * is sampled. Times are on whatever clock the scheduler runs on, so a policy can be driven by
+ * a simulated one, as FrameSchedulerTest does.
+ */
+public interface FrameSchedulingPolicy {
+
+    /**
+     * Main thread, at a vsync, when no earlier frame is still being drawn.
+     *
+     * @param nowNs when the vsync's callback is running, which can be well after the vsync
+     * @return whether to start a frame to be shown at the vsync after this one
+     */
+    boolean shouldRender(long vsyncNs, long nowNs, long periodNs);
+
+    /**
+     * GL thread, at the start of a frame.
+     *
+     * @param deadlineNs when the frame has to be submitted by to be shown on time, the next vsync
+     * @return when to sample the pose, nowNs or later. Everything that doesn't need it is
+     * prepared before then, the rest of the frame is culled, sorted and submitted after
+     */
+    long getLatchTime(long deadlineNs, long nowNs);
+
+    /**
+     * GL thread, once a frame's been submitted, for policies that learn how long frames take.
+     *
+     * @param readyNs when it was prepared, up to which point the pose wasn't needed
+     * @param latchNs when the pose was sampled
+     */
+    void onFrameDone(long startNs, long readyNs, long latchNs, long submittedNs);
+
+    /**
+     * Draws at every vsync it's asked to and samples the pose as soon as the frame's ready.
+     */
+    FrameSchedulingPolicy IMMEDIATE = new FrameSchedulingPolicy() {
+        @Override
+        public boolean shouldRender(long vsyncNs, long nowNs, long periodNs) {
+            return true;
+        }
+
+        @Override
+        public long getLatchTime(long deadlineNs, long nowNs) {
+            return nowNs;
+        }
+
+        @Override
+        public void onFrameDone(long startNs, long readyNs, long latchNs, long submittedNs) {
+        }
+    };
+}
@@ -0,0 +1,127 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The timings that make up the lag between moving the device and seeing the hologram respond,
+ * each kept in a {@link LatencyHistogram}:
+ * <ul>
+ *   <li>sensor delivery: sensor event timestamp to onSensorChanged running</li>
+ *   <li>sensor integration: onSensorChanged to the event being integrated, which batching and
+ *   frame aligned sampling hold back</li>
+ *   <li>pose age: a pose being published to the onDrawFrame that consumes it</li>
+ *   <li>sensor to draw: sensor event timestamp to that onDrawFrame, the three above combined.
+ *   The nearest measurable thing to sensor-to-photon; the display adds a frame or two on top</li>
+ *   <li>draw CPU: time spent inside onDrawFrame</li>
+ *   <li>frame interval: between the starts of consecutive frames</li>
+ *   <li>frame jitter: change in frame interval from one frame to the next</li>
+ * </ul>
+ * All times are on the elapsedRealtimeNanos() clock, the one sensor timestamps use.
+ *
+ * The sensor histograms are recorded on the thread that integrates the events, everything else
+ * on the GL thread. Nothing here allocates while recording.
+ */
+public class FrameTimings {
+
+    public final LatencyHistogram sensorDelivery = new LatencyHistogram("sensor delivery");
+    public final LatencyHistogram sensorIntegration = new LatencyHistogram("sensor integration");
+    public final LatencyHistogram poseAge = new LatencyHistogram("pose age");
+    public final LatencyHistogram sensorToDraw = new LatencyHistogram("sensor to draw");
+    public final LatencyHistogram drawCpu = new LatencyHistogram("draw cpu");
+    public final LatencyHistogram frameInterval = new LatencyHistogram("frame interval");
+    public final LatencyHistogram frameJitter = new LatencyHistogram("frame jitter");
+
+    private final LatencyHistogram[] mAll = {
+            sensorDelivery, sensorIntegration, poseAge, sensorToDraw, drawCpu, frameInterval, frameJitter
+    };
+
+    // GL thread only
+    private long mFrameStartNs;
+    private long mLastFrameStartNs;
+    private long mLastFrameIntervalNs;
+
+    /**
+     * Integrating thread: an event has been integrated.
+     *
+     * @param arrivedNs when it was delivered to onSensorChanged
+     */
+    public void onSensorEvent(long eventTimestampNs, long arrivedNs, long nowNs) {
+        sensorDelivery.record(arrivedNs - eventTimestampNs);
+        sensorIntegration.record(nowNs - arrivedNs);
+    }
+
+    /**
+     * GL thread: a frame has started and acquired the given pose.
+     *
+     * @param poseTimestampNs sensor timestamp of the pose, 0 if there isn't one yet
+     * @param posePublishedNs when the pose was published by the sensor thread, 0 if unknown
+     */
+    public void onFrameStart(long nowNs, long poseTimestampNs, long posePublishedNs) {
+        mFrameStartNs = nowNs;
+        if (poseTimestampNs != 0) {
+            sensorToDraw.record(nowNs - poseTimestampNs);
+        }
+        if (posePublishedNs != 0) {
+            poseAge.record(nowNs - posePublishedNs);
+        }
+
+        if (mLastFrameStartNs != 0) {
+            long interval = nowNs - mLastFrameStartNs;
+            frameInterval.record(interval);
+            if (mLastFrameIntervalNs != 0) {
+                frameJitter.record(Math.abs(interval - mLastFrameIntervalNs));
+            }
+            mLastFrameIntervalNs = interval;
+        }
+        mLastFrameStartNs = nowNs;
+    }
+
+    /**
+     * GL thread: the frame started by the last {@link #onFrameStart} has finished drawing.
+     */
+    public void onFrameEnd(long nowNs) {
+        drawCpu.record(nowNs - mFrameStartNs);
+    }
+
+    /**
+     * GL thread: forget the previous frame, e.g. after the surface was paused, so the gap isn't
+     * recorded as one very long frame.
+     */
+    public void onFramesInterrupted() {
+        mLastFrameStartNs = 0;
+        mLastFrameIntervalNs = 0;
+    }
+
+    /**
+     * Clears every histogram. Only safe while neither thread is recording, e.g. while paused.
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : mAll) {
+            histogram.reset();
+        }
+        onFramesInterrupted();
+    }
+
+    public String formatSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (LatencyHistogram histogram : mAll) {
+            if (summary.length() > 0) {
+                summary.append('\n');
+            }
+            summary.append(histogram.formatSummary());
+        }
+        return summary.toString();
+    }
+
+    /**
+     * @param description what was being measured, e.g. the predictor and renderer settings
+     */
+    public void writeTo(Writer out, String description) throws IOException {
+        out.write("# " + description + "\n");
+        for (LatencyHistogram histogram : mAll) {
+            out.write("\n");
+            histogram.writeTo(out);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Decides which of a scene's nodes are worth drawing this frame by testing their bounding
+ * spheres against the view frustum.
+ *
+ * The planes are pulled straight out of the frame's model-view-projection matrix, so they're
+ * in the same space as the scene's bounding spheres and follow the hologram's off-axis,
+ * asymmetric frustum exactly, whatever the device's rotation. Whole branches are skipped when
+ * their sphere is outside, and branches entirely inside are accepted without testing the
+ * nodes below them.
+ */
+public class FrustumCuller {
+
+    private static final int PLANE_COUNT = 6;
+
+    // a, b, c, d for each plane, normalized and facing inwards
+    private final float[] mPlanes = new float[PLANE_COUNT * 4];
+
+    private int mNodesTested;
+    private int mNodesCulled;
+
+    /**
+     * @param modelViewProjection column-major matrix the scene root is drawn with
+     */
+    public void setFrustum(float[] modelViewProjection) {
+        final float[] m = modelViewProjection;
+        // row i of the matrix is m[i], m[4 + i], m[8 + i], m[12 + i]. Each plane is the
+        // w row plus or minus one of the others
+        for (int plane = 0; plane < PLANE_COUNT; plane++) {
+            final int row = plane / 2;
+            final float sign = (plane & 1) == 0 ? 1.0f : -1.0f;
+            final float a = m[3] + sign * m[row];
+            final float b = m[7] + sign * m[4 + row];
+            final float c = m[11] + sign * m[8 + row];
+            final float d = m[15] + sign * m[12 + row];
+            final float inverseLength = 1.0f / (float) Math.sqrt(a * a + b * b + c * c);
+            mPlanes[plane * 4] = a * inverseLength;
+            mPlanes[plane * 4 + 1] = b * inverseLength;
+            mPlanes[plane * 4 + 2] = c * inverseLength;
+            mPlanes[plane * 4 + 3] = d * inverseLength;
+        }
+    }
+
+    /**
+     * @return whether any part of the sphere might be inside the frustum
+     */
+    public boolean isVisible(float x, float y, float z, float radius) {
+        for (int i = 0; i < PLANE_COUNT * 4; i += 4) {
+            if (mPlanes[i] * x + mPlanes[i + 1] * y + mPlanes[i + 2] * z + mPlanes[i + 3] < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether all of the sphere is inside the frustum
+     */
+    private boolean isInside(float x, float y, float z, float radius) {
+        for (int i = 0; i < PLANE_COUNT * 4; i += 4) {
+            if (mPlanes[i] * x + mPlanes[i + 1] * y + mPlanes[i + 2] * z + mPlanes[i + 3] < radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds every node under root that has a model and might be visible to the queue. The
+     * scene must be up to date, see {@link SceneNode#update()}.
+     */
+    public void cull(SceneNode root, RenderQueue queue) {
+        cull(root, queue, false);
+    }
+
+    private void cull(SceneNode node, RenderQueue queue, boolean inside) {
+        final float radius = node.getBoundsRadius();
+        if (radius < 0.0f) {
+            return;
+        }
+        if (!inside) {
+            mNodesTested++;
+            final float x = node.getBoundsX();
+            final float y = node.getBoundsY();
+            final float z = node.getBoundsZ();
+            if (!isVisible(x, y, z, radius)) {
+                mNodesCulled++;
+                return;
+            }
+            inside = isInside(x, y, z, radius);
+        }
+        if (node.getModel() != null) {
+            queue.add(node);
+        }
+        for (int i = 0, count = node.getChildCount(); i < count; i++) {
+            cull(node.getChild(i), queue, inside);
+        }
+    }
+
+    /**
+     * @return how many bounding spheres have been tested since the last reset
+     */
+    public int getNodesTested() {
+        return mNodesTested;
+    }
+
+    /**
+     * @return how many of the tested spheres were outside, counting a culled branch once
+     */
+    public int getNodesCulled() {
+        return mNodesCulled;
+    }
+
+    public void resetStatistics() {
+        mNodesTested = 0;
+        mNodesCulled = 0;
+    }
+}
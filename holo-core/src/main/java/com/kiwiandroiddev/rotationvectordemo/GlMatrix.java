@@ -0,0 +1,149 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * The android.opengl.Matrix calls a hologram frame used to be built with, ported as they are
+ * in AOSP so {@link FrameMatrices} can be checked against them off the device: angles in
+ * degrees, sines and cosines in double, a fresh temp matrix per rotation. Also benchmarked by
+ * holo-bench as the baseline FrameMatrices replaced. Nothing on the device uses it.
+ */
+public final class GlMatrix {
+
+    private GlMatrix() {
+    }
+
+    /**
+     * The frame's projection, model-view and their product, in new arrays, built with the old
+     * call sequence listed on {@link FrameMatrices}.
+     */
+    public static float[][] frame(float screenWidthRatio, float frustumXOffset, float frustumYOffset,
+                                  float frustumZNear, float xRotRads, float yRotRads, float rotAxisZOffset,
+                                  float scale) {
+        final float[] projection = new float[16];
+        frustumM(projection, -screenWidthRatio + frustumXOffset, screenWidthRatio + frustumXOffset,
+                -1 - frustumYOffset, 1 - frustumYOffset,
+                frustumZNear, frustumZNear + FrameMatrices.FRUSTUM_DEPTH);
+
+        final float xRotDegrees = (float) Math.toDegrees(xRotRads);
+        final float yRotDegrees = (float) Math.toDegrees(yRotRads);
+        final float[] modelView = new float[16];
+        setIdentityM(modelView);
+        translateM(modelView, 0.0f, 0.0f, rotAxisZOffset);
+        rotateM(modelView, -xRotDegrees, 1.0f, 0.0f, 0.0f);
+        rotateM(modelView, -yRotDegrees, 0.0f, 1.0f, 0.0f);
+        translateM(modelView, 0.0f, 0.0f, -rotAxisZOffset);
+        translateM(modelView, 0.0f, 0.0f, FrameMatrices.OBJECT_Z_OFFSET);
+        scaleM(modelView, scale, scale, scale);
+        rotateM(modelView, xRotDegrees, 1.0f, 0.0f, 0.0f);
+        rotateM(modelView, yRotDegrees, 0.0f, 1.0f, 0.0f);
+
+        final float[] modelViewProjection = new float[16];
+        multiplyMM(modelViewProjection, projection, modelView);
+        return new float[][]{projection, modelView, modelViewProjection};
+    }
+
+    static void setIdentityM(float[] m) {
+        for (int i = 0; i < 16; i++) {
+            m[i] = 0;
+        }
+        for (int i = 0; i < 16; i += 5) {
+            m[i] = 1.0f;
+        }
+    }
+
+    static void frustumM(float[] m, float left, float right, float bottom, float top, float near, float far) {
+        final float rWidth = 1.0f / (right - left);
+        final float rHeight = 1.0f / (top - bottom);
+        final float rDepth = 1.0f / (near - far);
+        m[0] = 2.0f * (near * rWidth);
+        m[5] = 2.0f * (near * rHeight);
+        m[8] = (right + left) * rWidth;
+        m[9] = (top + bottom) * rHeight;
+        m[10] = (far + near) * rDepth;
+        m[14] = 2.0f * (far * near * rDepth);
+        m[11] = -1.0f;
+        m[1] = 0.0f;
+        m[2] = 0.0f;
+        m[3] = 0.0f;
+        m[4] = 0.0f;
+        m[6] = 0.0f;
+        m[7] = 0.0f;
+        m[12] = 0.0f;
+        m[13] = 0.0f;
+        m[15] = 0.0f;
+    }
+
+    static void translateM(float[] m, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            m[12 + i] += m[i] * x + m[4 + i] * y + m[8 + i] * z;
+        }
+    }
+
+    static void scaleM(float[] m, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            m[i] *= x;
+            m[4 + i] *= y;
+            m[8 + i] *= z;
+        }
+    }
+
+    static void rotateM(float[] m, float a, float x, float y, float z) {
+        final float[] temp = new float[32];
+        setRotateM(temp, a, x, y, z);
+        multiplyMM(temp, 16, m, temp);
+        System.arraycopy(temp, 16, m, 0, 16);
+    }
+
+    static void setRotateM(float[] rm, float a, float x, float y, float z) {
+        rm[3] = 0;
+        rm[7] = 0;
+        rm[11] = 0;
+        rm[12] = 0;
+        rm[13] = 0;
+        rm[14] = 0;
+        rm[15] = 1;
+        a *= (float) (Math.PI / 180.0f);
+        final float s = (float) Math.sin(a);
+        final float c = (float) Math.cos(a);
+        if (1.0f == x && 0.0f == y && 0.0f == z) {
+            rm[5] = c;
+            rm[10] = c;
+            rm[6] = s;
+            rm[9] = -s;
+            rm[1] = 0;
+            rm[2] = 0;
+            rm[4] = 0;
+            rm[8] = 0;
+            rm[0] = 1;
+        } else if (0.0f == x && 1.0f == y && 0.0f == z) {
+            rm[0] = c;
+            rm[10] = c;
+            rm[8] = s;
+            rm[2] = -s;
+            rm[1] = 0;
+            rm[4] = 0;
+            rm[6] = 0;
+            rm[9] = 0;
+            rm[5] = 1;
+        } else {
+            // the frame only ever rotates about X or Y
+            throw new IllegalArgumentException("only X and Y axis rotations are ported");
+        }
+    }
+
+    static void multiplyMM(float[] result, float[] lhs, float[] rhs) {
+        multiplyMM(result, 0, lhs, rhs);
+    }
+
+    private static void multiplyMM(float[] result, int resultOffset, float[] lhs, float[] rhs) {
+        for (int i = 0; i < 4; i++) {
+            final float rhs0 = rhs[4 * i];
+            final float rhs1 = rhs[4 * i + 1];
+            final float rhs2 = rhs[4 * i + 2];
+            final float rhs3 = rhs[4 * i + 3];
+            for (int j = 0; j < 4; j++) {
+                result[resultOffset + 4 * i + j] =
+                        lhs[j] * rhs0 + lhs[4 + j] * rhs1 + lhs[8 + j] * rhs2 + lhs[12 + j] * rhs3;
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Follows the viewer's face across front camera frames, to tell where they are relative to the
+ * screen rather than only how the device has turned.
+ *
+ * Each frame is box filtered down to about {@link #TARGET_WIDTH} pixels wide, which is plenty to
+ * place a face at arm's length and makes the rest cheap. On a reset the patch in the middle of
+ * the frame is taken as the template, on the assumption that the viewer is looking at the screen
+ * straight on at that moment (the same assumption the gyro's reset makes). After that the
+ * template is looked for in a window around where it was last seen, by normalized
+ * cross-correlation, which doesn't mind the exposure changing, and the best match is refined to
+ * a fraction of a pixel from its neighbours' scores. Good matches blend into the template a
+ * little at a time, so it keeps up with the face turning and the light changing. If the match
+ * gets too poor it's counted as lost and the whole frame is searched until it's found again.
+ *
+ * Positions are reported relative to where the template was taken, in half frame widths and
+ * heights, so they're proportional to the tangent of the angle off the camera's axis. Nothing
+ * is allocated per frame: the downscaled frame and the template live in buffers sized for the
+ * largest frame this will downscale to. Frames can come straight in through
+ * {@link #onCameraFrame}, or be downscaled on one thread and tracked on another as
+ * {@link HeadTrackingPipeline} does. Either way, one thread at a time.
+ */
+public class HeadTracker implements CameraFrameSink {
+
+    public static final int TARGET_WIDTH = 80;
+
+    // what the downscaled buffers are sized for, 160x120
+    public static final int MAX_PIXELS = 160 * 120;
+
+    // side of the square template, about the middle of a face at arm's length in an 80 pixel
+    // wide frame
+    static final int TEMPLATE_SIZE = 20;
+    private static final int TEMPLATE_PIXELS = TEMPLATE_SIZE * TEMPLATE_SIZE;
+
+    // how far from the last position to look, in downscaled pixels. A head moving 10% of the
+    // frame's width in a frame at 30 fps is moving fast
+    private static final int SEARCH_RADIUS = 8;
+
+    // correlation below which the face counts as lost, and above which the match is trusted
+    // enough to blend into the template
+    private static final float MIN_SCORE = 0.5f;
+    private static final float UPDATE_SCORE = 0.85f;
+    private static final float TEMPLATE_UPDATE_RATE = 0.1f;
+
+    private final AtomicBoolean mPendingReset = new AtomicBoolean(true);
+
+    private final byte[] mSmall = new byte[MAX_PIXELS];
+
+    // raw intensities, and the same less their mean, which is what's correlated against
+    private final float[] mTemplate = new float[TEMPLATE_PIXELS];
+    private final float[] mTemplateZeroMean = new float[TEMPLATE_PIXELS];
+    private float mTemplateNorm;
+
+    // top left corner of the template in the last frame, and where it was taken
+    private float mPositionX;
+    private float mPositionY;
+    private float mReferenceX;
+    private float mReferenceY;
+    private int mWidth;
+    private int mHeight;
+
+    private boolean mLocked;
+    private float mScore;
+    private long mTimestampNs;
+
+    /**
+     * Takes a new template from the middle of the next frame, from any thread. For when the
+     * viewer is straight in front of the screen.
+     */
+    public void requestReset() {
+        mPendingReset.set(true);
+    }
+
+    /**
+     * @return by how much frames of the given size are divided in each direction
+     */
+    public static int scaleFactor(int width, int height) {
+        int factor = Math.max(1, width / TARGET_WIDTH);
+        while ((width / factor) * (height / factor) > MAX_PIXELS) {
+            factor++;
+        }
+        return factor;
+    }
+
+    /**
+     * Box filters a frame down by {@link #scaleFactor}, dropping any rows and columns left over.
+     *
+     * @param out at least (width / factor) * (height / factor) bytes, rows packed together
+     */
+    public static void downscale(byte[] luma, int width, int height, int rowStride, int factor, byte[] out) {
+        final int outWidth = width / factor;
+        final int outHeight = height / factor;
+        final int area = factor * factor;
+        for (int y = 0; y < outHeight; y++) {
+            final int rowStart = y * factor * rowStride;
+            for (int x = 0; x < outWidth; x++) {
+                int sum = 0;
+                int row = rowStart + x * factor;
+                for (int sy = 0; sy < factor; sy++) {
+                    for (int sx = 0; sx < factor; sx++) {
+                        sum += luma[row + sx] & 0xff;
+                    }
+                    row += rowStride;
+                }
+                out[y * outWidth + x] = (byte) ((sum + area / 2) / area);
+            }
+        }
+    }
+
+    @Override
+    public void onCameraFrame(byte[] luma, int width, int height, int rowStride, long timestampNs) {
+        final int factor = scaleFactor(width, height);
+        downscale(luma, width, height, rowStride, factor, mSmall);
+        track(mSmall, width / factor, height / factor, timestampNs);
+    }
+
+    /**
+     * Finds the face in a downscaled frame.
+     *
+     * @param small rows packed together, see {@link #downscale}
+     * @return whether it was found
+     */
+    public boolean track(byte[] small, int width, int height, long timestampNs) {
+        mTimestampNs = timestampNs;
+        if (width < TEMPLATE_SIZE || height < TEMPLATE_SIZE) {
+            mLocked = false;
+            mScore = 0.0f;
+            return false;
+        }
+        if (mPendingReset.getAndSet(false) || width != mWidth || height != mHeight) {
+            mWidth = width;
+            mHeight = height;
+            mReferenceX = mPositionX = (width - TEMPLATE_SIZE) / 2;
+            mReferenceY = mPositionY = (height - TEMPLATE_SIZE) / 2;
+            takeTemplate(small, (int) mPositionX, (int) mPositionY, 1.0f);
+            mLocked = mTemplateNorm > 0.0f;
+            mScore = mLocked ? 1.0f : 0.0f;
+            return mLocked;
+        }
+        if (mTemplateNorm == 0.0f) {
+            // nothing to go on in a flat template until the next reset
+            mLocked = false;
+            mScore = 0.0f;
+            return false;
+        }
+
+        // the window the template's corner is searched over, or the whole frame when lost
+        final int maxX = width - TEMPLATE_SIZE;
+        final int maxY = height - TEMPLATE_SIZE;
+        int x0 = 0, x1 = maxX, y0 = 0, y1 = maxY;
+        if (mLocked) {
+            final int centerX = Math.round(mPositionX);
+            final int centerY = Math.round(mPositionY);
+            x0 = Math.max(0, centerX - SEARCH_RADIUS);
+            x1 = Math.min(maxX, centerX + SEARCH_RADIUS);
+            y0 = Math.max(0, centerY - SEARCH_RADIUS);
+            y1 = Math.min(maxY, centerY + SEARCH_RADIUS);
+        }
+
+        float bestScore = -1.0f;
+        int bestX = x0, bestY = y0;
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                final float score = correlate(small, width, x, y);
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestX = x;
+                    bestY = y;
+                }
+            }
+        }
+
+        mScore = bestScore;
+        mLocked = bestScore >= MIN_SCORE;
+        if (!mLocked) {
+            return false;
+        }
+
+        // a parabola through the peak and its neighbours puts the peak between pixels
+        float offsetX = 0.0f, offsetY = 0.0f;
+        if (bestX > 0 && bestX < maxX) {
+            offsetX = peakOffset(correlate(small, width, bestX - 1, bestY), bestScore,
+                    correlate(small, width, bestX + 1, bestY));
+        }
+        if (bestY > 0 && bestY < maxY) {
+            offsetY = peakOffset(correlate(small, width, bestX, bestY - 1), bestScore,
+                    correlate(small, width, bestX, bestY + 1));
+        }
+        mPositionX = bestX + offsetX;
+        mPositionY = bestY + offsetY;
+
+        if (bestScore >= UPDATE_SCORE) {
+            takeTemplate(small, bestX, bestY, TEMPLATE_UPDATE_RATE);
+        }
+        return true;
+    }
+
+    /**
+     * @return the normalized cross-correlation of the template with the frame at the given
+     * corner, from -1 to 1
+     */
+    private float correlate(byte[] small, int width, int left, int top) {
+        int sum = 0;
+        int sumSquares = 0;
+        float sumProducts = 0.0f;
+        int t = 0;
+        for (int y = 0; y < TEMPLATE_SIZE; y++) {
+            int i = (top + y) * width + left;
+            for (int x = 0; x < TEMPLATE_SIZE; x++) {
+                final int value = small[i++] & 0xff;
+                sum += value;
+                sumSquares += value * value;
+                // the template's mean is zero, so the frame's mean drops out of this
+                sumProducts += value * mTemplateZeroMean[t++];
+            }
+        }
+        final float variance = sumSquares - (float) sum * sum / TEMPLATE_PIXELS;
+        if (variance <= 0.0f) {
+            return 0.0f;
+        }
+        return sumProducts / ((float) Math.sqrt(variance) * mTemplateNorm);
+    }
+
+    private static float peakOffset(float before, float peak, float after) {
+        final float curvature = before - 2.0f * peak + after;
+        if (curvature >= 0.0f) {
+            return 0.0f;
+        }
+        return Math.max(-0.5f, Math.min(0.5f, 0.5f * (before - after) / curvature));
+    }
+
+    /**
+     * Blends the patch at the given corner into the template, or replaces it with a rate of 1.
+     */
+    private void takeTemplate(byte[] small, int left, int top, float rate) {
+        float sum = 0.0f;
+        int t = 0;
+        for (int y = 0; y < TEMPLATE_SIZE; y++) {
+            int i = (top + y) * mWidth + left;
+            for (int x = 0; x < TEMPLATE_SIZE; x++) {
+                mTemplate[t] += rate * ((small[i++] & 0xff) - mTemplate[t]);
+                sum += mTemplate[t++];
+            }
+        }
+        final float mean = sum / TEMPLATE_PIXELS;
+        float sumSquares = 0.0f;
+        for (int i = 0; i < TEMPLATE_PIXELS; i++) {
+            final float value = mTemplate[i] - mean;
+            mTemplateZeroMean[i] = value;
+            sumSquares += value * value;
+        }
+        // below a grey level of spread it's noise, and a match against it means nothing
+        mTemplateNorm = sumSquares >= TEMPLATE_PIXELS ? (float) Math.sqrt(sumSquares) : 0.0f;
+    }
+
+    /**
+     * @return whether the face was found in the last frame. Its position is held where it was
+     * last seen while it isn't
+     */
+    public boolean isLocked() {
+        return mLocked;
+    }
+
+    /**
+     * @return how well the last frame matched, from -1 to 1
+     */
+    public float getScore() {
+        return mScore;
+    }
+
+    public long getTimestamp() {
+        return mTimestampNs;
+    }
+
+    /**
+     * @return how far right of where the template was taken the face is in the frame, in half
+     * frame widths
+     */
+    public float getImageX() {
+        return mWidth == 0 ? 0.0f : (mPositionX - mReferenceX) * 2.0f / mWidth;
+    }
+
+    /**
+     * @return how far down, in half frame heights
+     */
+    public float getImageY() {
+        return mHeight == 0 ? 0.0f : (mPositionY - mReferenceY) * 2.0f / mHeight;
+    }
+}
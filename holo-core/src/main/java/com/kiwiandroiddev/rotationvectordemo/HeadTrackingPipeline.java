@@ -0,0 +1,210 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.Locale;
+
+/**
+ * Runs a {@link HeadTracker} over camera frames on a worker thread of its own, so neither the
+ * camera's thread nor the GL thread ever waits on it, and tells a {@link Listener} where the
+ * viewer is after each frame.
+ *
+ * A frame is downscaled into one of three preallocated buffers as it's delivered, which is
+ * quick and lets the camera have its buffer straight back, and handed to the worker like
+ * {@link PoseExchange} hands poses over: the newest frame waiting replaces any older one, which
+ * is counted as dropped, so a slow frame makes the tracker skip ahead rather than fall behind.
+ * Nothing is allocated per frame on either side.
+ *
+ * Each frame's processing time, downscaling plus tracking, is recorded against a budget of one
+ * frame at 30 fps, see {@link #formatSummary()}. Until {@link #start()} is called frames are
+ * processed on the thread that delivers them instead, which is how HeadTool replays
+ * recorded sequences and how the benchmark times it.
+ */
+public class HeadTrackingPipeline implements CameraFrameSink {
+
+    public static final long FRAME_BUDGET_NS = 33000000L;
+
+    public interface Listener {
+        /**
+         * Called after each frame, on the worker thread.
+         *
+         * @param imageX where the face is, see {@link HeadTracker#getImageX()}
+         * @param locked false if the face wasn't found, in which case the position is where it
+         * was last seen
+         */
+        void onViewerPosition(long timestampNs, float imageX, float imageY, boolean locked);
+    }
+
+    private static final int SLOTS = 3;
+
+    private final HeadTracker mTracker;
+    private final Listener mListener;
+    private final Clock mClock;
+
+    private final byte[][] mSlots = new byte[SLOTS][HeadTracker.MAX_PIXELS];
+    private final int[] mWidths = new int[SLOTS];
+    private final int[] mHeights = new int[SLOTS];
+    private final long[] mTimestamps = new long[SLOTS];
+    private final long[] mDownscaleNs = new long[SLOTS];
+
+    private final Object mLock = new Object();
+
+    // slot being filled by the delivering thread, and being tracked by the worker
+    private int mWriting = 0;
+    private int mReading = 1;
+    // guarded by mLock, -1 when there's nothing new
+    private int mPending = -1;
+    private boolean mRunning;
+    private Thread mWorker;
+
+    // delivering thread
+    private long mFrameCount;
+    private long mDropped;
+
+    // tracking thread
+    private final LatencyHistogram mProcessingTimes = new LatencyHistogram("head tracking");
+    private long mOverBudget;
+    private long mLockedFrames;
+
+    /**
+     * @param clock times the processing
+     */
+    public HeadTrackingPipeline(HeadTracker tracker, Listener listener, Clock clock) {
+        mTracker = tracker;
+        mListener = listener;
+        mClock = clock;
+    }
+
+    public HeadTracker getTracker() {
+        return mTracker;
+    }
+
+    /**
+     * Starts the worker thread. Frames are processed where they're delivered until then.
+     */
+    public void start() {
+        synchronized (mLock) {
+            if (mWorker != null) {
+                return;
+            }
+            mRunning = true;
+            mPending = -1;
+            mWorker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            }, "HeadTracking");
+        }
+        mWorker.start();
+    }
+
+    /**
+     * Stops the worker and waits for it to finish the frame it's on, dropping any still waiting.
+     */
+    public void stop() {
+        final Thread worker;
+        synchronized (mLock) {
+            worker = mWorker;
+            mWorker = null;
+            mRunning = false;
+            mLock.notifyAll();
+        }
+        if (worker == null) {
+            return;
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void onCameraFrame(byte[] luma, int width, int height, int rowStride, long timestampNs) {
+        final long startNs = mClock.nanoTime();
+        final int factor = HeadTracker.scaleFactor(width, height);
+        final int slot = mWriting;
+        HeadTracker.downscale(luma, width, height, rowStride, factor, mSlots[slot]);
+        mWidths[slot] = width / factor;
+        mHeights[slot] = height / factor;
+        mTimestamps[slot] = timestampNs;
+        mDownscaleNs[slot] = mClock.nanoTime() - startNs;
+        mFrameCount++;
+
+        synchronized (mLock) {
+            if (mRunning) {
+                if (mPending != -1) {
+                    mDropped++;
+                    mWriting = mPending;
+                } else {
+                    // the one neither side is holding
+                    mWriting = 3 - slot - mReading;
+                }
+                mPending = slot;
+                mLock.notifyAll();
+                return;
+            }
+        }
+        process(slot);
+    }
+
+    private void work() {
+        while (true) {
+            synchronized (mLock) {
+                while (mRunning && mPending == -1) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!mRunning) {
+                    return;
+                }
+                // the slot just finished with becomes free for the writer
+                mReading = mPending;
+                mPending = -1;
+            }
+            process(mReading);
+        }
+    }
+
+    private void process(int slot) {
+        final long startNs = mClock.nanoTime();
+        final boolean locked = mTracker.track(mSlots[slot], mWidths[slot], mHeights[slot], mTimestamps[slot]);
+        final long processingNs = mDownscaleNs[slot] + mClock.nanoTime() - startNs;
+        mProcessingTimes.record(processingNs);
+        if (processingNs > FRAME_BUDGET_NS) {
+            mOverBudget++;
+        }
+        if (locked) {
+            mLockedFrames++;
+        }
+        if (mListener != null) {
+            mListener.onViewerPosition(mTimestamps[slot], mTracker.getImageX(), mTracker.getImageY(), locked);
+        }
+    }
+
+    /**
+     * @return the time each frame took, downscaling and tracking. Recorded on the tracking thread
+     */
+    public LatencyHistogram getProcessingTimes() {
+        return mProcessingTimes;
+    }
+
+    public long getOverBudgetCount() {
+        return mOverBudget;
+    }
+
+    public long getDroppedCount() {
+        return mDropped;
+    }
+
+    public String formatSummary() {
+        final long processed = mProcessingTimes.getTotalCount();
+        return String.format(Locale.US,
+                "head %d frames, %d dropped, p50 %.2f p99 %.2f ms of %d, %d over, locked %.0f%%",
+                mFrameCount, mDropped, mProcessingTimes.getValueAtPercentile(50) / 1e6,
+                mProcessingTimes.getValueAtPercentile(99) / 1e6, FRAME_BUDGET_NS / 1000000, mOverBudget,
+                processed == 0 ? 0.0 : 100.0 * mLockedFrames / processed);
+    }
+}
@@ -0,0 +1,60 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * The scenes the hologram can show, built as {@link SceneNode} trees around the chosen model.
+ */
+public final class HologramScene {
+
+    public enum Layout {
+        // the model on its own, as the hologram has always been
+        MODEL,
+        // the model in front of a wall of small cubes, most of which are off screen at any
+        // one time
+        CUBE_FIELD
+    }
+
+    // cubes along each side of the field, and how far apart and how big they are, in model
+    // units. The cube model is 2 units across
+    private static final int FIELD_SIZE = 32;
+    private static final float FIELD_SPACING = 1.0f;
+    private static final float FIELD_CUBE_SCALE = 0.2f;
+    private static final float FIELD_Z = -4.0f;
+
+    private HologramScene() {
+    }
+
+    public static SceneNode create(Layout layout, LodChain model) {
+        SceneNode root = new SceneNode();
+        root.addChild(new SceneNode(model));
+        if (layout == Layout.CUBE_FIELD) {
+            root.addChild(createCubeField(LodChain.single(Cube.create())));
+        }
+        return root;
+    }
+
+    /**
+     * A grid of cubes in the plane z = FIELD_Z, one group per row so the culler can drop rows
+     * above and below the screen in one go. All the cubes share one mesh, so the field is drawn
+     * instanced on backends that can.
+     */
+    private static SceneNode createCubeField(LodChain cube) {
+        SceneNode field = new SceneNode();
+        field.setPosition(0.0f, 0.0f, FIELD_Z);
+        final float origin = -0.5f * (FIELD_SIZE - 1) * FIELD_SPACING;
+        for (int row = 0; row < FIELD_SIZE; row++) {
+            SceneNode rowNode = new SceneNode();
+            rowNode.setPosition(0.0f, origin + row * FIELD_SPACING, 0.0f);
+            for (int column = 0; column < FIELD_SIZE; column++) {
+                SceneNode node = new SceneNode(cube);
+                node.setPosition(origin + column * FIELD_SPACING, 0.0f, 0.0f);
+                node.setScale(FIELD_CUBE_SCALE);
+                // shaded across the field, so it shows if instances get each other's colors
+                node.setColor(0.4f + 0.6f * column / (FIELD_SIZE - 1), 0.4f + 0.6f * row / (FIELD_SIZE - 1),
+                        1.0f, 1.0f);
+                rowNode.addChild(node);
+            }
+            field.addChild(rowNode);
+        }
+        return field;
+    }
+}
@@ -0,0 +1,58 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Tells when the device has been left alone: idle once the gyro rate hasn't gone above a
+ * threshold for a whole time window.
+ *
+ * Only remembers when the last motion was, so asking doesn't need a timer. Whoever wants to know
+ * asks with their own clock, e.g. the GL thread with the frame time, which has to share the
+ * sensor timestamps' time base (elapsedRealtimeNanos on Android). Samples come from one thread,
+ * {@link #isIdle} can be called from any.
+ */
+public class IdleDetector {
+
+    // rad/s. Well above gyro noise, well below anything a hand holding the device does
+    public static final float DEFAULT_MOTION_THRESHOLD = 0.1f;
+    public static final long DEFAULT_WINDOW_NS = 5000000000L;
+
+    private float mMotionThreshold = DEFAULT_MOTION_THRESHOLD;
+    private volatile long mWindowNs = DEFAULT_WINDOW_NS;
+
+    // sensor timestamp of the last sample above the threshold, or of the first sample, 0 before
+    // any have arrived
+    private volatile long mLastMotionNs;
+
+    public void setMotionThreshold(float radsPerSecond) {
+        mMotionThreshold = radsPerSecond;
+    }
+
+    /**
+     * @param windowNs how long the device has to stay still to count as idle, 0 to never be
+     */
+    public void setWindow(long windowNs) {
+        mWindowNs = windowNs;
+    }
+
+    public void onGyroSample(long timestampNs, float rateX, float rateY, float rateZ) {
+        final float threshold = mMotionThreshold;
+        if (mLastMotionNs == 0 || rateX * rateX + rateY * rateY + rateZ * rateZ > threshold * threshold) {
+            mLastMotionNs = timestampNs;
+        }
+    }
+
+    /**
+     * Starts over as if the device had just moved.
+     */
+    public void reset() {
+        mLastMotionNs = 0;
+    }
+
+    /**
+     * @param nowNs the current time on the sensor clock
+     */
+    public boolean isIdle(long nowNs) {
+        final long windowNs = mWindowNs;
+        final long lastMotionNs = mLastMotionNs;
+        return windowNs > 0 && lastMotionNs != 0 && nowNs - lastMotionNs >= windowNs;
+    }
+}
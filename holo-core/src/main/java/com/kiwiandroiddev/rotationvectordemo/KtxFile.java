@@ -0,0 +1,322 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A texture in the Khronos KTX 1.1 container, the standard way to ship compressed GL textures:
+ * a header holding the exact arguments glCompressedTexImage2D wants, then every mip level of
+ * every face ready to upload.
+ *
+ * Layout, in the writer's byte order (always little-endian here, readers handle either):
+ * <pre>
+ *   0   identifier AB "KTX 11" BB 0D 0A 1A 0A
+ *   12  int   endianness, 0x04030201
+ *   16  int   glType, glTypeSize, glFormat (0, 1, 0 for compressed data)
+ *   28  int   glInternalFormat, glBaseInternalFormat
+ *   36  int   pixel width, height, depth (0 for 2D)
+ *   48  int   array elements (0 for none), faces (1, or 6 for a cube map), mip levels
+ *   60  int   key/value data bytes
+ *   64  key/value pairs, each a size, "key\0value\0" and padding to 4 bytes
+ *       per level: int image size (of one face), then each face, padded to 4 bytes
+ * </pre>
+ * Reading memory-maps the file and slices each image straight out of the mapping like
+ * {@link MeshCache}, so a texture goes from disk to the driver without being decoded or copied
+ * on the Java heap. Only 2D textures and cube maps, no arrays or 3D textures.
+ */
+public final class KtxFile {
+
+    public static final String EXTENSION = ".ktx";
+
+    public static final int GL_RGB = 0x1907;
+    public static final int GL_ETC1_RGB8_OES = 0x8D64;
+    public static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+
+    public static final int CUBE_FACES = 6;
+
+    /**
+     * Set to "true" on ETC2 data that only uses ETC1's modes, so it can also be uploaded as
+     * GL_ETC1_RGB8_OES on ES 2.0. What {@link EtcCodec} writes
+     */
+    public static final String KEY_ETC1_COMPATIBLE = "holo.etc1Compatible";
+
+    private static final byte[] IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+    private static final int ENDIANNESS = 0x04030201;
+    private static final int HEADER_SIZE = 64;
+
+    public final int glType;
+    public final int glFormat;
+    public final int glInternalFormat;
+    public final int glBaseInternalFormat;
+    public final int width;
+    public final int height;
+    public final int faces;
+    public final int levels;
+
+    private final ByteBuffer[] mImages;
+    private final Map<String, String> mKeyValues;
+
+    private KtxFile(int glType, int glFormat, int glInternalFormat, int glBaseInternalFormat,
+                    int width, int height, int faces, int levels, ByteBuffer[] images,
+                    Map<String, String> keyValues) {
+        this.glType = glType;
+        this.glFormat = glFormat;
+        this.glInternalFormat = glInternalFormat;
+        this.glBaseInternalFormat = glBaseInternalFormat;
+        this.width = width;
+        this.height = height;
+        this.faces = faces;
+        this.levels = levels;
+        mImages = images;
+        mKeyValues = keyValues;
+    }
+
+    public boolean isCubeMap() {
+        return faces == CUBE_FACES;
+    }
+
+    public boolean isCompressed() {
+        return glType == 0;
+    }
+
+    public int getLevelWidth(int level) {
+        return Math.max(1, width >> level);
+    }
+
+    public int getLevelHeight(int level) {
+        return Math.max(1, height >> level);
+    }
+
+    /**
+     * @param face 0 for a 2D texture. For a cube map, in GL's order: +X, -X, +Y, -Y, +Z, -Z
+     * @return the image's bytes, a view of the file's data positioned at 0
+     */
+    public ByteBuffer getImage(int level, int face) {
+        return mImages[level * faces + face].duplicate();
+    }
+
+    /**
+     * @return null if the file doesn't have the key
+     */
+    public String getValue(String key) {
+        return mKeyValues.get(key);
+    }
+
+    public Map<String, String> getKeyValues() {
+        return Collections.unmodifiableMap(mKeyValues);
+    }
+
+    /**
+     * @return bytes of image data over all levels and faces, which for compressed formats is
+     * what the texture takes in GPU memory
+     */
+    public long getDataSize() {
+        long size = 0;
+        for (ByteBuffer image : mImages) {
+            size += image.remaining();
+        }
+        return size;
+    }
+
+    /**
+     * Writes compressed texture data.
+     *
+     * @param images per level then per face, each face's compressed bytes
+     * @param keyValues written in iteration order, may be empty
+     */
+    public static void write(File file, int glInternalFormat, int glBaseInternalFormat, int width, int height,
+                             byte[][][] images, Map<String, String> keyValues) throws IOException {
+        final int levels = images.length;
+        final int faces = images[0].length;
+        if (faces != 1 && faces != CUBE_FACES) {
+            throw new IllegalArgumentException(faces + " faces, must be 1 or " + CUBE_FACES);
+        }
+
+        int keyValueBytes = 0;
+        for (Map.Entry<String, String> entry : keyValues.entrySet()) {
+            keyValueBytes += 4 + pad4(keyValueSize(entry));
+        }
+        int size = HEADER_SIZE + keyValueBytes;
+        for (byte[][] level : images) {
+            size += 4;
+            for (byte[] face : level) {
+                size += pad4(face.length);
+            }
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        out.put(IDENTIFIER);
+        out.putInt(ENDIANNESS);
+        // glType, glTypeSize and glFormat as the spec has them for compressed data
+        out.putInt(0);
+        out.putInt(1);
+        out.putInt(0);
+        out.putInt(glInternalFormat);
+        out.putInt(glBaseInternalFormat);
+        out.putInt(width);
+        out.putInt(height);
+        out.putInt(0);
+        out.putInt(0);
+        out.putInt(faces);
+        out.putInt(levels);
+        out.putInt(keyValueBytes);
+        for (Map.Entry<String, String> entry : keyValues.entrySet()) {
+            out.putInt(keyValueSize(entry));
+            out.put(entry.getKey().getBytes("UTF-8"));
+            out.put((byte) 0);
+            out.put(entry.getValue().getBytes("UTF-8"));
+            out.put((byte) 0);
+            out.position(pad4(out.position()));
+        }
+        for (byte[][] level : images) {
+            if (level.length != faces) {
+                throw new IllegalArgumentException("every level must have " + faces + " faces");
+            }
+            out.putInt(level[0].length);
+            for (byte[] face : level) {
+                out.put(face);
+                out.position(pad4(out.position()));
+            }
+        }
+        out.flip();
+
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Maps a KTX file. The mapping stays valid after the file is closed, for as long as the
+     * returned texture is reachable.
+     */
+    public static KtxFile map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MappedByteBuffer data;
+        try {
+            data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        return fromBuffer(data);
+    }
+
+    /**
+     * Wraps a texture held in KTX format, without copying its image data.
+     */
+    public static KtxFile fromBuffer(ByteBuffer data) throws IOException {
+        if (data.capacity() < HEADER_SIZE) {
+            throw new IOException("not a KTX file");
+        }
+        for (int i = 0; i < IDENTIFIER.length; i++) {
+            if (data.get(i) != IDENTIFIER[i]) {
+                throw new IOException("not a KTX file");
+            }
+        }
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        if (data.getInt(12) != ENDIANNESS) {
+            data.order(ByteOrder.BIG_ENDIAN);
+            if (data.getInt(12) != ENDIANNESS) {
+                throw new IOException("KTX file has a bad endianness field");
+            }
+        }
+        final int glType = data.getInt(16);
+        final int glFormat = data.getInt(24);
+        final int glInternalFormat = data.getInt(28);
+        final int glBaseInternalFormat = data.getInt(32);
+        final int width = data.getInt(36);
+        final int height = data.getInt(40);
+        final int depth = data.getInt(44);
+        final int arrayElements = data.getInt(48);
+        final int faces = data.getInt(52);
+        // 0 asks the loader to generate the chain, which the caller can do after uploading level 0
+        final int levels = Math.max(1, data.getInt(56));
+        final int keyValueBytes = data.getInt(60);
+        if (depth > 1 || arrayElements > 0 || (faces != 1 && faces != CUBE_FACES)) {
+            throw new IOException("unsupported KTX texture: depth " + depth + ", array elements "
+                    + arrayElements + ", faces " + faces);
+        }
+        if (width <= 0 || height <= 0 || levels > 32 || keyValueBytes < 0
+                || HEADER_SIZE + (long) keyValueBytes > data.capacity()) {
+            throw new IOException("corrupt KTX header");
+        }
+
+        final Map<String, String> keyValues = new LinkedHashMap<String, String>();
+        int offset = HEADER_SIZE;
+        final int keyValueEnd = HEADER_SIZE + keyValueBytes;
+        while (offset + 4 <= keyValueEnd) {
+            final int size = data.getInt(offset);
+            offset += 4;
+            if (size < 0 || offset + size > keyValueEnd) {
+                throw new IOException("corrupt KTX key/value data");
+            }
+            final byte[] pair = new byte[size];
+            for (int i = 0; i < size; i++) {
+                pair[i] = data.get(offset + i);
+            }
+            int keyEnd = 0;
+            while (keyEnd < size && pair[keyEnd] != 0) {
+                keyEnd++;
+            }
+            int valueEnd = size;
+            // values are usually, not always, null terminated
+            if (valueEnd > keyEnd + 1 && pair[valueEnd - 1] == 0) {
+                valueEnd--;
+            }
+            final int valueStart = Math.min(keyEnd + 1, size);
+            keyValues.put(new String(pair, 0, keyEnd, "UTF-8"),
+                    new String(pair, valueStart, valueEnd - valueStart, "UTF-8"));
+            offset += pad4(size);
+        }
+        offset = keyValueEnd;
+
+        final ByteBuffer[] images = new ByteBuffer[levels * faces];
+        for (int level = 0; level < levels; level++) {
+            if (offset + 4 > data.capacity()) {
+                throw new IOException("truncated KTX file");
+            }
+            final int imageSize = data.getInt(offset);
+            offset += 4;
+            for (int face = 0; face < faces; face++) {
+                if (imageSize < 0 || offset + (long) imageSize > data.capacity()) {
+                    throw new IOException("truncated KTX file");
+                }
+                images[level * faces + face] = slice(data, offset, imageSize);
+                offset += pad4(imageSize);
+            }
+        }
+        return new KtxFile(glType, glFormat, glInternalFormat, glBaseInternalFormat, width, height, faces, levels,
+                images, keyValues);
+    }
+
+    private static ByteBuffer slice(ByteBuffer data, int offset, int length) {
+        ByteBuffer view = data.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+
+    private static int keyValueSize(Map.Entry<String, String> entry) throws IOException {
+        return entry.getKey().getBytes("UTF-8").length + 1 + entry.getValue().getBytes("UTF-8").length + 1;
+    }
+
+    private static int pad4(int size) {
+        return (size + 3) & ~3;
+    }
+}
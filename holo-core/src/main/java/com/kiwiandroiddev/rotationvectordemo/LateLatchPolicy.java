@@ -0,0 +1,88 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.Arrays;
+
+/**
+ * Samples the pose as late as it can and still make the frame's deadline, so the pose a frame
+ * is drawn with is as fresh as possible when it's shown, and about the same age every frame.
+ *
+ * The latch is set to the deadline less how long submitting (latching to the end of the GL
+ * calls, culling and sorting included) has taken, less a margin for the sleep overshooting and
+ * the compositor. How long is the {@link #PERCENTILE}th percentile over the last
+ * {@link #WINDOW} frames: going by the longest would let one slow frame pull the latch early for
+ * the whole window, for the sake of the odd frame that's slow again. A vsync whose callback runs
+ * too late to prepare and submit a frame in time, going by preparation the same way, isn't
+ * drawn for at all: the next vsync draws the same frame with a newer pose. Never two in a row
+ * though: the estimates only come down as frames are drawn, so after a slow frame they could
+ * otherwise stop every frame for good. If frames take longer than a vsync period anyway, every
+ * vsync is drawn for rather than none.
+ *
+ * Estimates are written on the GL thread and read on the main thread.
+ */
+public class LateLatchPolicy implements FrameSchedulingPolicy {
+
+    public static final long DEFAULT_MARGIN_NS = 2000000L;
+
+    // half a second at 60 fps
+    static final int WINDOW = 32;
+    static final int PERCENTILE = 90;
+
+    // until the first frames have been timed
+    private static final long INITIAL_ESTIMATE_NS = 4000000L;
+
+    private final long mMarginNs;
+
+    // GL thread only
+    private final long[] mPrepareNs = new long[WINDOW];
+    private final long[] mSubmitNs = new long[WINDOW];
+    private final long[] mSorted = new long[WINDOW];
+    private int mNext;
+    private int mCount;
+
+    private volatile long mPrepareEstimateNs = INITIAL_ESTIMATE_NS;
+    private volatile long mSubmitEstimateNs = INITIAL_ESTIMATE_NS;
+
+    // main thread only
+    private boolean mSkippedLast;
+
+    public LateLatchPolicy() {
+        this(DEFAULT_MARGIN_NS);
+    }
+
+    public LateLatchPolicy(long marginNs) {
+        mMarginNs = marginNs;
+    }
+
+    @Override
+    public boolean shouldRender(long vsyncNs, long nowNs, long periodNs) {
+        final long neededNs = mPrepareEstimateNs + mSubmitEstimateNs + mMarginNs;
+        final boolean render = mSkippedLast || neededNs >= periodNs || nowNs + neededNs <= vsyncNs + periodNs;
+        mSkippedLast = !render;
+        return render;
+    }
+
+    @Override
+    public long getLatchTime(long deadlineNs, long nowNs) {
+        return Math.max(nowNs, deadlineNs - mSubmitEstimateNs - mMarginNs);
+    }
+
+    @Override
+    public void onFrameDone(long startNs, long readyNs, long latchNs, long submittedNs) {
+        mPrepareNs[mNext] = readyNs - startNs;
+        mSubmitNs[mNext] = submittedNs - latchNs;
+        mNext = (mNext + 1) % WINDOW;
+        mCount = Math.min(WINDOW, mCount + 1);
+        mPrepareEstimateNs = percentile(mPrepareNs);
+        mSubmitEstimateNs = percentile(mSubmitNs);
+    }
+
+    private long percentile(long[] durationsNs) {
+        System.arraycopy(durationsNs, 0, mSorted, 0, mCount);
+        Arrays.sort(mSorted, 0, mCount);
+        return mSorted[(mCount * PERCENTILE + 99) / 100 - 1];
+    }
+
+    public long getSubmitEstimate() {
+        return mSubmitEstimateNs;
+    }
+}
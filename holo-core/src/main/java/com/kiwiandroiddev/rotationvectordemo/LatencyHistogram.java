@@ -0,0 +1,162 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Fixed-size histogram of durations in nanoseconds, in the style of HdrHistogram: buckets are
+ * linear within each power of two, so every recorded value is kept to within a constant
+ * relative error (1/{@link #SUB_BUCKETS}, about 3%) from a nanosecond up to minutes.
+ *
+ * All storage is allocated up front and {@link #record(long)} only increments a counter, so it
+ * can be called from the sensor and GL threads every event without producing garbage.
+ *
+ * Each histogram should be recorded into by a single thread. Reading from another thread (for
+ * the debug overlay, say) sees counts that may be a few events behind one another, which is
+ * fine for display but means a summary isn't an atomic snapshot.
+ */
+public class LatencyHistogram {
+
+    // linear buckets per power of two. 32 keeps the relative error within ~3%
+    private static final int SUB_BUCKET_BITS = 5;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // values up to 2^MAX_VALUE_BITS ns (~9 minutes) are tracked exactly, larger ones are clamped
+    private static final int MAX_VALUE_BITS = 39;
+    private static final long MAX_TRACKABLE_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+    private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final String mName;
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mTotalCount;
+    private long mSum;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax = Long.MIN_VALUE;
+
+    public LatencyHistogram(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @param valueNs negative values (clock skew between sensor and system time) count as zero
+     */
+    public void record(long valueNs) {
+        long value = Math.max(0, Math.min(valueNs, MAX_TRACKABLE_VALUE));
+        mCounts[bucketIndex(value)]++;
+        mTotalCount++;
+        mSum += value;
+        if (value < mMin) {
+            mMin = value;
+        }
+        if (value > mMax) {
+            mMax = value;
+        }
+    }
+
+    public void reset() {
+        Arrays.fill(mCounts, 0);
+        mTotalCount = 0;
+        mSum = 0;
+        mMin = Long.MAX_VALUE;
+        mMax = Long.MIN_VALUE;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // the power of two above the linear range that value falls in, 1 for [32, 64)
+        int magnitude = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> (magnitude - 1)) - SUB_BUCKETS;
+        return magnitude * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the smallest value that maps to the bucket
+     */
+    static long bucketLowerBound(int index) {
+        int magnitude = index / SUB_BUCKETS;
+        int subBucket = index % SUB_BUCKETS;
+        if (magnitude == 0) {
+            return subBucket;
+        }
+        return (long) (SUB_BUCKETS + subBucket) << (magnitude - 1);
+    }
+
+    static long bucketUpperBound(int index) {
+        return bucketLowerBound(index + 1) - 1;
+    }
+
+    public long getTotalCount() {
+        return mTotalCount;
+    }
+
+    public long getMin() {
+        return mTotalCount == 0 ? 0 : mMin;
+    }
+
+    public long getMax() {
+        return mTotalCount == 0 ? 0 : mMax;
+    }
+
+    public double getMean() {
+        return mTotalCount == 0 ? 0.0 : (double) mSum / mTotalCount;
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return the upper end of the bucket holding that percentile, so the true value is never
+     * understated by more than the bucket width
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (mTotalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * mTotalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), mMax);
+            }
+        }
+        return mMax;
+    }
+
+    /**
+     * One line summary in milliseconds, e.g. for the debug overlay.
+     */
+    public String formatSummary() {
+        return String.format(Locale.US, "%-14s n=%-6d p50 %6.2f  p90 %6.2f  p99 %6.2f  max %6.2f ms",
+                mName, mTotalCount,
+                getValueAtPercentile(50) / 1e6, getValueAtPercentile(90) / 1e6,
+                getValueAtPercentile(99) / 1e6, getMax() / 1e6);
+    }
+
+    /**
+     * Writes the summary followed by every non-empty bucket as "lower_ns upper_ns count", so
+     * dumps from different settings can be compared or plotted.
+     */
+    public void writeTo(Writer out) throws IOException {
+        out.write(String.format(Locale.US, "# %s count %d min %d mean %.0f max %d ns\n",
+                mName, mTotalCount, getMin(), getMean(), getMax()));
+        double[] percentiles = {50, 90, 95, 99, 99.9};
+        for (double percentile : percentiles) {
+            out.write(String.format(Locale.US, "# p%s %d ns\n",
+                    percentile == (long) percentile ? Long.toString((long) percentile) : Double.toString(percentile),
+                    getValueAtPercentile(percentile)));
+        }
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (mCounts[i] != 0) {
+                out.write(bucketLowerBound(i) + " " + bucketUpperBound(i) + " " + mCounts[i] + "\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Successively simpler versions of one model, finest first. Each level knows how far it may
+ * deviate from the full detail model ({@link Mesh#getGeometricError()}), which is what the
+ * {@link LodSelector} uses to decide when a level is indistinguishable on screen.
+ */
+public class LodChain {
+
+    // each level has about this fraction of the triangles of the one before
+    public static final float LEVEL_RATIO = 0.5f;
+
+    // don't bother simplifying below this many triangles
+    public static final int MIN_TRIANGLES = 64;
+
+    public static final int MAX_LEVELS = 8;
+
+    private final Mesh[] mLevels;
+
+    public LodChain(Mesh[] levels) {
+        if (levels.length == 0) {
+            throw new IllegalArgumentException("LOD chain needs at least one level");
+        }
+        mLevels = levels.clone();
+    }
+
+    public static LodChain single(Mesh mesh) {
+        return new LodChain(new Mesh[]{mesh});
+    }
+
+    /**
+     * Builds the simplified levels for a mesh that's already been prepared for display. Each
+     * level is simplified from the one before and then optimized for the vertex cache.
+     *
+     * @return the levels, starting with base itself
+     */
+    public static List<MeshData> buildLevels(MeshData base) {
+        List<MeshData> levels = new ArrayList<MeshData>();
+        levels.add(base);
+
+        MeshData previous = base;
+        while (levels.size() < MAX_LEVELS) {
+            int target = (int) (previous.getTriangleCount() * LEVEL_RATIO);
+            if (target < MIN_TRIANGLES) {
+                break;
+            }
+            MeshData level = MeshSimplifier.simplify(previous, target);
+            // stop once the simplifier can't make meaningful progress, e.g. on a cube
+            if (level.getTriangleCount() > previous.getTriangleCount() * (1.0f + LEVEL_RATIO) / 2.0f) {
+                break;
+            }
+            MeshOptimizer.optimize(level);
+            levels.add(level);
+            previous = level;
+        }
+        return levels;
+    }
+
+    public int getLevelCount() {
+        return mLevels.length;
+    }
+
+    public Mesh getLevel(int level) {
+        return mLevels[level];
+    }
+}
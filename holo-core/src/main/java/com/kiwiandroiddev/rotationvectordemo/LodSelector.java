@@ -0,0 +1,102 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Picks which level of a {@link LodChain} to draw by projecting each level's geometric error
+ * onto the screen: the coarsest level whose error would cover no more than a set number of
+ * pixels looks the same as full detail.
+ *
+ * The projection is the frame's actual off-axis frustum, so the pixel scale follows the
+ * viewer's head offset, and the model's size comes from the model-view matrix, so mScale and
+ * the distance to the object are both accounted for.
+ *
+ * Keeps the last choice and only moves to a coarser level once it's comfortably within the
+ * error budget, so a model sitting right on a threshold doesn't flicker between levels.
+ */
+public class LodSelector {
+
+    // a coarser level must be under this fraction of the budget before switching to it
+    private static final float COARSEN_HYSTERESIS = 0.8f;
+
+    private float mMaxErrorPixels = 1.0f;
+    private int mLevel = 0;
+
+    /**
+     * @param maxErrorPixels how many pixels of error are acceptable. Zero or less always
+     * selects full detail.
+     */
+    public void setMaxErrorPixels(float maxErrorPixels) {
+        mMaxErrorPixels = maxErrorPixels;
+    }
+
+    public void reset() {
+        mLevel = 0;
+    }
+
+    /**
+     * @param projection column-major projection matrix of the frame
+     * @param modelView column-major model-view matrix the chain will be drawn with
+     * @return the level to draw
+     */
+    public int select(LodChain chain, float[] projection, float[] modelView, int viewportWidth, int viewportHeight) {
+        if (mMaxErrorPixels <= 0.0f || chain.getLevelCount() == 1) {
+            mLevel = 0;
+            return mLevel;
+        }
+
+        final float pixelsPerUnit = pixelsPerUnitAtUnitDepth(projection, viewportWidth, viewportHeight)
+                / nearestDepth(chain.getLevel(0).getBounds(), modelView);
+        final float modelScale = modelScale(modelView);
+
+        int level = 0;
+        for (int i = chain.getLevelCount() - 1; i > 0; i--) {
+            float errorPixels = chain.getLevel(i).getGeometricError() * modelScale * pixelsPerUnit;
+            float budget = i > mLevel ? mMaxErrorPixels * COARSEN_HYSTERESIS : mMaxErrorPixels;
+            if (errorPixels <= budget) {
+                level = i;
+                break;
+            }
+        }
+        mLevel = level;
+        return mLevel;
+    }
+
+    /**
+     * How many pixels one eye-space unit covers at a depth of one, taking the larger of the
+     * horizontal and vertical scales since the frustum needn't be square.
+     */
+    static float pixelsPerUnitAtUnitDepth(float[] projection, int viewportWidth, int viewportHeight) {
+        return Math.max(Math.abs(projection[0]) * viewportWidth, Math.abs(projection[5]) * viewportHeight) * 0.5f;
+    }
+
+    /**
+     * Eye-space depth of the nearest point of the model's bounding sphere, treating anything
+     * at or behind the eye as very close so full detail gets picked.
+     */
+    static float nearestDepth(float[] bounds, float[] modelView) {
+        float centerX = (bounds[0] + bounds[3]) * 0.5f;
+        float centerY = (bounds[1] + bounds[4]) * 0.5f;
+        float centerZ = (bounds[2] + bounds[5]) * 0.5f;
+        float extentX = bounds[3] - bounds[0];
+        float extentY = bounds[4] - bounds[1];
+        float extentZ = bounds[5] - bounds[2];
+        float radius = (float) Math.sqrt(extentX * extentX + extentY * extentY + extentZ * extentZ) * 0.5f;
+
+        float depth = -(modelView[2] * centerX + modelView[6] * centerY + modelView[10] * centerZ + modelView[14]);
+        depth -= radius * modelScale(modelView);
+        return Math.max(depth, 1e-3f);
+    }
+
+    /**
+     * Largest axis scale of the model-view matrix, i.e. how big one model unit is in eye space.
+     */
+    static float modelScale(float[] modelView) {
+        float scale = 0.0f;
+        for (int column = 0; column < 3; column++) {
+            float x = modelView[column * 4];
+            float y = modelView[column * 4 + 1];
+            float z = modelView[column * 4 + 2];
+            scale = Math.max(scale, x * x + y * y + z * z);
+        }
+        return (float) Math.sqrt(scale);
+    }
+}
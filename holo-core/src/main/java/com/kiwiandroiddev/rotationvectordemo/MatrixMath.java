@@ -0,0 +1,119 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Allocation-free 4x4 matrix helpers over column-major float[16] arrays, the layout expected by
+ * glLoadMatrixf and glUniformMatrix4fv.
+ *
+ * The transform methods post-multiply in place, i.e. translate(m, ...) leaves m = m * T, which
+ * matches how the fixed-function glTranslatef/glRotatef/glScalef calls compose. Rotations take
+ * a precomputed sine and cosine so callers that rotate by the same angle more than once (as the
+ * hologram model-view does) only evaluate them once.
+ */
+public final class MatrixMath {
+
+    private MatrixMath() {
+    }
+
+    public static void setIdentity(float[] m) {
+        m[0] = 1; m[4] = 0; m[8] = 0;  m[12] = 0;
+        m[1] = 0; m[5] = 1; m[9] = 0;  m[13] = 0;
+        m[2] = 0; m[6] = 0; m[10] = 1; m[14] = 0;
+        m[3] = 0; m[7] = 0; m[11] = 0; m[15] = 1;
+    }
+
+    /**
+     * Same matrix as glFrustumf.
+     */
+    public static void setFrustum(float[] m, float left, float right, float bottom, float top,
+                                  float near, float far) {
+        final float rWidth = 1.0f / (right - left);
+        final float rHeight = 1.0f / (top - bottom);
+        final float rDepth = 1.0f / (far - near);
+
+        m[0] = 2.0f * near * rWidth;
+        m[1] = 0;
+        m[2] = 0;
+        m[3] = 0;
+
+        m[4] = 0;
+        m[5] = 2.0f * near * rHeight;
+        m[6] = 0;
+        m[7] = 0;
+
+        m[8] = (right + left) * rWidth;
+        m[9] = (top + bottom) * rHeight;
+        m[10] = -(far + near) * rDepth;
+        m[11] = -1.0f;
+
+        m[12] = 0;
+        m[13] = 0;
+        m[14] = -2.0f * far * near * rDepth;
+        m[15] = 0;
+    }
+
+    /**
+     * m = m * T(x, y, z)
+     */
+    public static void translate(float[] m, float x, float y, float z) {
+        for (int row = 0; row < 4; row++) {
+            m[12 + row] += m[row] * x + m[4 + row] * y + m[8 + row] * z;
+        }
+    }
+
+    /**
+     * m = m * Rx, where Rx rotates about the X axis by the angle with the given sine and cosine
+     */
+    public static void rotateX(float[] m, float sin, float cos) {
+        for (int row = 0; row < 4; row++) {
+            final float c1 = m[4 + row];
+            final float c2 = m[8 + row];
+            m[4 + row] = c1 * cos + c2 * sin;
+            m[8 + row] = c2 * cos - c1 * sin;
+        }
+    }
+
+    /**
+     * m = m * Ry, where Ry rotates about the Y axis by the angle with the given sine and cosine
+     */
+    public static void rotateY(float[] m, float sin, float cos) {
+        for (int row = 0; row < 4; row++) {
+            final float c0 = m[row];
+            final float c2 = m[8 + row];
+            m[row] = c0 * cos - c2 * sin;
+            m[8 + row] = c0 * sin + c2 * cos;
+        }
+    }
+
+    /**
+     * m = m * S(s, s, s)
+     */
+    public static void scale(float[] m, float s) {
+        for (int i = 0; i < 12; i++) {
+            m[i] *= s;
+        }
+    }
+
+    /**
+     * result = lhs * rhs. result must not be the same array as either operand.
+     */
+    public static void multiply(float[] result, float[] lhs, float[] rhs) {
+        multiply(result, 0, lhs, rhs);
+    }
+
+    /**
+     * result = lhs * rhs, written to the 16 floats of result starting at resultOffset, e.g. one
+     * matrix of many packed back to back. result must not be the same array as either operand.
+     */
+    public static void multiply(float[] result, int resultOffset, float[] lhs, float[] rhs) {
+        for (int col = 0; col < 4; col++) {
+            final float r0 = rhs[col * 4];
+            final float r1 = rhs[col * 4 + 1];
+            final float r2 = rhs[col * 4 + 2];
+            final float r3 = rhs[col * 4 + 3];
+            for (int row = 0; row < 4; row++) {
+                result[resultOffset + col * 4 + row] =
+                        lhs[row] * r0 + lhs[4 + row] * r1 + lhs[8 + row] * r2 + lhs[12 + row] * r3;
+            }
+        }
+    }
+}
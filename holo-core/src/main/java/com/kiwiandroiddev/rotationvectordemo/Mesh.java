@@ -0,0 +1,164 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Indexed triangle geometry ready to hand to GL: interleaved vertices (position xyz followed by
+ * color rgba, all floats) and 8, 16 or 32-bit indices, both in direct native-order buffers.
+ *
+ * Immutable once created, so renderers can upload it once and key GPU-side copies by identity.
+ */
+public class Mesh {
+
+    public static final int POSITION_COMPONENTS = 3;
+    public static final int COLOR_COMPONENTS = 4;
+    public static final int FLOATS_PER_VERTEX = POSITION_COMPONENTS + COLOR_COMPONENTS;
+    public static final int VERTEX_STRIDE = FLOATS_PER_VERTEX * 4;
+    public static final int COLOR_OFFSET = POSITION_COMPONENTS * 4;
+
+    private final ByteBuffer mVertexData;
+    private final ByteBuffer mIndexData;
+    private final int mVertexCount;
+    private final int mIndexCount;
+    private final int mIndexSize;
+
+    // min xyz then max xyz
+    private final float[] mBounds;
+
+    // see MeshData.geometricError
+    private final float mGeometricError;
+
+    // views onto mVertexData for client-side vertex arrays
+    private final FloatBuffer mPositions;
+    private final FloatBuffer mColors;
+
+    /**
+     * @param vertexData interleaved vertices, see {@link #VERTEX_STRIDE}
+     * @param indexData vertex indices, each indexSize bytes
+     * @param indexSize 1, 2 or 4
+     * @param bounds min x, y, z followed by max x, y, z
+     */
+    public Mesh(ByteBuffer vertexData, ByteBuffer indexData, int indexSize, float[] bounds) {
+        this(vertexData, indexData, indexSize, bounds, 0.0f);
+    }
+
+    /**
+     * @param geometricError how far this geometry may deviate from the full detail model, in
+     * model units. Zero for full detail.
+     */
+    public Mesh(ByteBuffer vertexData, ByteBuffer indexData, int indexSize, float[] bounds, float geometricError) {
+        if (indexSize != 1 && indexSize != 2 && indexSize != 4) {
+            throw new IllegalArgumentException("unsupported index size: " + indexSize);
+        }
+        mVertexData = vertexData.order(ByteOrder.nativeOrder());
+        mIndexData = indexData.order(ByteOrder.nativeOrder());
+        mVertexCount = vertexData.capacity() / VERTEX_STRIDE;
+        mIndexCount = indexData.capacity() / indexSize;
+        mIndexSize = indexSize;
+        mBounds = bounds.clone();
+        mGeometricError = geometricError;
+
+        mPositions = mVertexData.asFloatBuffer();
+        mColors = mVertexData.asFloatBuffer();
+        mColors.position(POSITION_COMPONENTS);
+    }
+
+    /**
+     * Packs vertex and index arrays into a mesh, using the smallest index type that can address
+     * every vertex.
+     *
+     * @param vertices interleaved vertices, {@link #FLOATS_PER_VERTEX} floats each
+     */
+    public static Mesh fromArrays(float[] vertices, int[] indices) {
+        return fromArrays(vertices, indices, 0.0f);
+    }
+
+    public static Mesh fromArrays(float[] vertices, int[] indices, float geometricError) {
+        final int vertexCount = vertices.length / FLOATS_PER_VERTEX;
+
+        ByteBuffer vertexData = ByteBuffer.allocateDirect(vertices.length * 4).order(ByteOrder.nativeOrder());
+        vertexData.asFloatBuffer().put(vertices);
+
+        final int indexSize = indexSizeFor(vertexCount);
+        ByteBuffer indexData = ByteBuffer.allocateDirect(indices.length * indexSize).order(ByteOrder.nativeOrder());
+        for (int index : indices) {
+            if (indexSize == 1) {
+                indexData.put((byte) index);
+            } else if (indexSize == 2) {
+                indexData.putShort((short) index);
+            } else {
+                indexData.putInt(index);
+            }
+        }
+        indexData.position(0);
+
+        return new Mesh(vertexData, indexData, indexSize, computeBounds(vertices), geometricError);
+    }
+
+    public static int indexSizeFor(int vertexCount) {
+        if (vertexCount <= 0x100) {
+            return 1;
+        } else if (vertexCount <= 0x10000) {
+            return 2;
+        }
+        return 4;
+    }
+
+    public static float[] computeBounds(float[] vertices) {
+        float[] bounds = {
+                Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+                -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE
+        };
+        for (int i = 0; i + POSITION_COMPONENTS <= vertices.length; i += FLOATS_PER_VERTEX) {
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[axis] = Math.min(bounds[axis], vertices[i + axis]);
+                bounds[3 + axis] = Math.max(bounds[3 + axis], vertices[i + axis]);
+            }
+        }
+        return bounds;
+    }
+
+    public ByteBuffer getVertexData() {
+        return mVertexData;
+    }
+
+    public ByteBuffer getIndexData() {
+        return mIndexData;
+    }
+
+    public FloatBuffer getPositions() {
+        return mPositions;
+    }
+
+    public FloatBuffer getColors() {
+        return mColors;
+    }
+
+    public int getVertexCount() {
+        return mVertexCount;
+    }
+
+    public int getIndexCount() {
+        return mIndexCount;
+    }
+
+    /**
+     * @return bytes per index: 1, 2 or 4
+     */
+    public int getIndexSize() {
+        return mIndexSize;
+    }
+
+    /**
+     * @return min x, y, z followed by max x, y, z. Not a copy, don't modify.
+     */
+    public float[] getBounds() {
+        return mBounds;
+    }
+
+    public float getGeometricError() {
+        return mGeometricError;
+    }
+}
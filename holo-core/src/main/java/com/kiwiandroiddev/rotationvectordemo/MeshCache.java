@@ -0,0 +1,172 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Compact binary mesh format that can be handed to GL without any parsing.
+ *
+ * Layout, all little-endian:
+ * <pre>
+ *   0   magic "HMSH"
+ *   4   int   format version
+ *   8   int   vertex count
+ *   12  int   index count
+ *   16  int   bytes per index, 2 or 4 depending on vertex count
+ *   20  int   bytes per vertex ({@link Mesh#VERTEX_STRIDE})
+ *   24  float min x, y, z, max x, y, z
+ *   48  float geometric error, see {@link MeshData#geometricError}
+ *   52  reserved, keeps the vertex data 16-byte aligned
+ *   64  interleaved vertices, as in {@link Mesh}
+ *       indices
+ * </pre>
+ * Version 1 files had no geometric error and a 48-byte header; they're still readable.
+ * Reading memory-maps the file and slices the vertex and index sections straight out of the
+ * mapping, so loading even a very large model only costs the page faults for its data.
+ */
+public final class MeshCache {
+
+    public static final String EXTENSION = ".hmesh";
+
+    private static final int MAGIC = 'H' | 'M' << 8 | 'S' << 16 | 'H' << 24;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int VERSION_1_HEADER_SIZE = 48;
+
+    private MeshCache() {
+    }
+
+    public static void write(MeshData mesh, File file) throws IOException {
+        final int vertexCount = mesh.getVertexCount();
+        final int indexSize = vertexCount <= 0x10000 ? 2 : 4;
+        final float[] bounds = mesh.computeBounds();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(vertexCount);
+        header.putInt(mesh.indices.length);
+        header.putInt(indexSize);
+        header.putInt(Mesh.VERTEX_STRIDE);
+        for (float bound : bounds) {
+            header.putFloat(bound);
+        }
+        header.putFloat(mesh.geometricError);
+        header.position(HEADER_SIZE);
+        header.flip();
+
+        ByteBuffer vertices = ByteBuffer.allocate(mesh.vertices.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        vertices.asFloatBuffer().put(mesh.vertices);
+
+        ByteBuffer indices = ByteBuffer.allocate(mesh.indices.length * indexSize).order(ByteOrder.LITTLE_ENDIAN);
+        if (indexSize == 2) {
+            ShortBuffer shorts = indices.asShortBuffer();
+            for (int index : mesh.indices) {
+                shorts.put((short) index);
+            }
+        } else {
+            indices.asIntBuffer().put(mesh.indices);
+        }
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel channel = out.getChannel();
+            writeFully(channel, header);
+            writeFully(channel, vertices);
+            writeFully(channel, indices);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Maps a mesh written by {@link #write(MeshData, File)}. The mapping stays valid after the
+     * file is closed, for as long as the returned mesh is reachable.
+     */
+    public static Mesh map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MappedByteBuffer data;
+        try {
+            data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        return fromBuffer(data);
+    }
+
+    /**
+     * Wraps a mesh held in the cache format in a direct buffer, without copying it.
+     */
+    public static Mesh fromBuffer(ByteBuffer data) throws IOException {
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        if (data.capacity() < VERSION_1_HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IOException("not a mesh cache file");
+        }
+        final int version = data.getInt(4);
+        if (version != VERSION && version != 1) {
+            throw new IOException("unsupported mesh cache version " + version);
+        }
+        final int headerSize = version == 1 ? VERSION_1_HEADER_SIZE : HEADER_SIZE;
+        if (data.capacity() < headerSize) {
+            throw new IOException("truncated mesh cache file");
+        }
+        final int vertexCount = data.getInt(8);
+        final int indexCount = data.getInt(12);
+        final int indexSize = data.getInt(16);
+        if (data.getInt(20) != Mesh.VERTEX_STRIDE || (indexSize != 2 && indexSize != 4)) {
+            throw new IOException("unsupported mesh layout");
+        }
+        float[] bounds = new float[6];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = data.getFloat(24 + i * 4);
+        }
+        final float geometricError = version == 1 ? 0.0f : data.getFloat(48);
+
+        final int vertexBytes = vertexCount * Mesh.VERTEX_STRIDE;
+        final int indexBytes = indexCount * indexSize;
+        if (data.capacity() < headerSize + vertexBytes + indexBytes) {
+            throw new IOException("truncated mesh cache file");
+        }
+
+        ByteBuffer vertices = slice(data, headerSize, vertexBytes);
+        ByteBuffer indices = slice(data, headerSize + vertexBytes, indexBytes);
+
+        if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+            vertices = swapToNative(vertices, 4);
+            indices = swapToNative(indices, indexSize);
+        }
+        return new Mesh(vertices, indices, indexSize, bounds, geometricError);
+    }
+
+    private static ByteBuffer slice(ByteBuffer data, int offset, int length) {
+        ByteBuffer view = data.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+
+    // only needed on big-endian hosts, which no Android device is
+    private static ByteBuffer swapToNative(ByteBuffer littleEndian, int elementSize) {
+        littleEndian.order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer copy = ByteBuffer.allocateDirect(littleEndian.capacity()).order(ByteOrder.nativeOrder());
+        if (elementSize == 2) {
+            copy.asShortBuffer().put(littleEndian.asShortBuffer());
+        } else {
+            copy.asIntBuffer().put(littleEndian.asIntBuffer());
+        }
+        return copy;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
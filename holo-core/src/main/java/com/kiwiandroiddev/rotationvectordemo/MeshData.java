@@ -0,0 +1,89 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Editable triangle mesh in plain arrays, the form geometry takes between being imported and
+ * being packed into a {@link Mesh} or written to the {@link MeshCache}.
+ *
+ * Vertices are interleaved the same way as in {@link Mesh}: xyz then rgba. Triangles are
+ * wound clockwise when viewed from the front, which is what the renderers cull against.
+ */
+public class MeshData {
+
+    public float[] vertices;
+    public int[] indices;
+
+    // false if the source had no vertex colors and the color components are just placeholders
+    public boolean hasColors;
+
+    // how far, in model units, this geometry may deviate from the model it was simplified from
+    public float geometricError = 0.0f;
+
+    public MeshData(float[] vertices, int[] indices) {
+        this(vertices, indices, true);
+    }
+
+    public MeshData(float[] vertices, int[] indices, boolean hasColors) {
+        this.vertices = vertices;
+        this.indices = indices;
+        this.hasColors = hasColors;
+    }
+
+    public int getVertexCount() {
+        return vertices.length / Mesh.FLOATS_PER_VERTEX;
+    }
+
+    public int getTriangleCount() {
+        return indices.length / 3;
+    }
+
+    public float[] computeBounds() {
+        return Mesh.computeBounds(vertices);
+    }
+
+    /**
+     * Centers the mesh on the origin and scales it uniformly so its longest side spans
+     * [-1, 1], the same size as the built-in {@link Cube}.
+     */
+    public void fitToUnitCube() {
+        final float[] bounds = computeBounds();
+        float extent = 0.0f;
+        for (int axis = 0; axis < 3; axis++) {
+            extent = Math.max(extent, bounds[3 + axis] - bounds[axis]);
+        }
+        if (extent <= 0.0f) {
+            return;
+        }
+
+        final float scale = 2.0f / extent;
+        final float centerX = (bounds[0] + bounds[3]) * 0.5f;
+        final float centerY = (bounds[1] + bounds[4]) * 0.5f;
+        final float centerZ = (bounds[2] + bounds[5]) * 0.5f;
+        for (int i = 0; i < vertices.length; i += Mesh.FLOATS_PER_VERTEX) {
+            vertices[i] = (vertices[i] - centerX) * scale;
+            vertices[i + 1] = (vertices[i + 1] - centerY) * scale;
+            vertices[i + 2] = (vertices[i + 2] - centerZ) * scale;
+        }
+    }
+
+    /**
+     * Colors each vertex by its position within the mesh bounds, the same scheme as the
+     * built-in {@link Cube} whose corners run from black at (-1, -1, -1) to white at (1, 1, 1).
+     * Without lighting, this is what makes an uncolored model's shape readable.
+     */
+    public void colorByPosition() {
+        final float[] bounds = computeBounds();
+        for (int i = 0; i < vertices.length; i += Mesh.FLOATS_PER_VERTEX) {
+            for (int axis = 0; axis < 3; axis++) {
+                float extent = bounds[3 + axis] - bounds[axis];
+                vertices[i + Mesh.POSITION_COMPONENTS + axis] =
+                        extent > 0.0f ? (vertices[i + axis] - bounds[axis]) / extent : 0.5f;
+            }
+            vertices[i + Mesh.POSITION_COMPONENTS + 3] = 1.0f;
+        }
+        hasColors = true;
+    }
+
+    public Mesh toMesh() {
+        return Mesh.fromArrays(vertices, indices, geometricError);
+    }
+}
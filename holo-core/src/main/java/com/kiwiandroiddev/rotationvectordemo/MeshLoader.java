@@ -0,0 +1,92 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Loads a model for display, going through the {@link MeshCache} so that OBJ/PLY text only has
+ * to be parsed the first time a given file is seen.
+ *
+ * Imported models are centered and scaled to the same size as the built-in {@link Cube},
+ * colored by position if the source had no vertex colors, and reordered by the
+ * {@link MeshOptimizer} before being cached. Their simplified {@link LodChain} levels are built
+ * at the same time and cached alongside, one file per level.
+ */
+public final class MeshLoader {
+
+    private MeshLoader() {
+    }
+
+    /**
+     * @param source an .obj, .ply or {@link MeshCache#EXTENSION} file. Cache files are used as
+     * they are, as a single level.
+     * @param cacheDir where to keep converted meshes
+     */
+    public static LodChain load(File source, File cacheDir) throws IOException {
+        if (source.getName().toLowerCase(Locale.US).endsWith(MeshCache.EXTENSION)) {
+            return LodChain.single(MeshCache.map(source));
+        }
+
+        // level 0 is written last, so if it exists the whole chain does
+        if (!cacheFileFor(source, cacheDir, 0).exists()) {
+            MeshData mesh = importMesh(source);
+            prepare(mesh);
+            MeshOptimizer.optimize(mesh);
+
+            List<MeshData> levels = LodChain.buildLevels(mesh);
+            for (int level = levels.size() - 1; level >= 0; level--) {
+                writeCacheFile(levels.get(level), cacheFileFor(source, cacheDir, level));
+            }
+        }
+
+        List<Mesh> levels = new ArrayList<Mesh>();
+        File levelFile;
+        while ((levelFile = cacheFileFor(source, cacheDir, levels.size())).exists()) {
+            levels.add(MeshCache.map(levelFile));
+        }
+        return new LodChain(levels.toArray(new Mesh[levels.size()]));
+    }
+
+    private static void writeCacheFile(MeshData mesh, File cached) throws IOException {
+        // write under a temporary name so a half-written file is never mistaken for a cache hit
+        File temp = new File(cached.getParentFile(), cached.getName() + ".tmp");
+        MeshCache.write(mesh, temp);
+        if (!temp.renameTo(cached)) {
+            temp.delete();
+            throw new IOException("couldn't write " + cached);
+        }
+    }
+
+    public static MeshData importMesh(File source) throws IOException {
+        String name = source.getName().toLowerCase(Locale.US);
+        if (name.endsWith(".obj")) {
+            return ObjImporter.read(source);
+        } else if (name.endsWith(".ply")) {
+            return PlyImporter.read(source);
+        }
+        throw new IOException("unsupported model format: " + source.getName());
+    }
+
+    /**
+     * Everything done to an imported mesh before it's optimized and cached.
+     */
+    public static void prepare(MeshData mesh) {
+        mesh.fitToUnitCube();
+        if (!mesh.hasColors) {
+            mesh.colorByPosition();
+        }
+    }
+
+    /**
+     * Cache entries are keyed by the source's path, size and modification time, so editing or
+     * replacing the model invalidates its entry.
+     */
+    static File cacheFileFor(File source, File cacheDir, int level) {
+        String key = source.getAbsolutePath() + ':' + source.length() + ':' + source.lastModified();
+        return new File(cacheDir, source.getName() + '-' + Integer.toHexString(key.hashCode())
+                + ".lod" + level + MeshCache.EXTENSION);
+    }
+}
@@ -0,0 +1,482 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Offline reordering of imported meshes for faster drawing, run once at import time before a
+ * mesh is cached:
+ * <ol>
+ *   <li>triangle order for the post-transform vertex cache (Tom Forsyth's linear-speed
+ *   algorithm), so fewer vertices get shaded more than once</li>
+ *   <li>overdraw: the cache-friendly order is cut into clusters which are then sorted so the
+ *   most outward-facing ones are drawn first and occlude the rest</li>
+ *   <li>vertex fetch: vertices are renumbered in the order they're first used, so the vertex
+ *   buffer is read roughly sequentially (and unused vertices are dropped)</li>
+ * </ol>
+ * None of this changes what's drawn, only the order it's drawn in.
+ */
+public final class MeshOptimizer {
+
+    // cache size the reordering is tuned for; GPUs vary but 16-32 entries is typical
+    private static final int FORSYTH_CACHE_SIZE = 32;
+    private static final float FORSYTH_CACHE_DECAY_POWER = 1.5f;
+    private static final float FORSYTH_LAST_TRI_SCORE = 0.75f;
+    private static final float FORSYTH_VALENCE_BOOST_SCALE = 2.0f;
+    private static final float FORSYTH_VALENCE_BOOST_POWER = 0.5f;
+    private static final int FORSYTH_MAX_VALENCE = 64;
+
+    // FIFO cache size assumed when measuring ACMR/ATVR and finding cluster boundaries
+    public static final int ANALYSIS_CACHE_SIZE = 16;
+
+    // how much worse than the cluster's own ACMR a soft cluster boundary is allowed to make things
+    private static final float OVERDRAW_THRESHOLD = 1.05f;
+
+    private static final float[] sCachePositionScores = new float[FORSYTH_CACHE_SIZE];
+    private static final float[] sValenceScores = new float[FORSYTH_MAX_VALENCE];
+
+    static {
+        for (int i = 0; i < FORSYTH_CACHE_SIZE; i++) {
+            if (i < 3) {
+                // vertices of the last triangle get a fixed score, so the next triangle doesn't
+                // just reuse the same edge and strip along forever
+                sCachePositionScores[i] = FORSYTH_LAST_TRI_SCORE;
+            } else {
+                float scaler = 1.0f / (FORSYTH_CACHE_SIZE - 3);
+                sCachePositionScores[i] = (float) Math.pow(1.0f - (i - 3) * scaler, FORSYTH_CACHE_DECAY_POWER);
+            }
+        }
+        for (int i = 0; i < FORSYTH_MAX_VALENCE; i++) {
+            // boost vertices with few triangles left so they get finished off
+            sValenceScores[i] = i == 0 ? 0.0f :
+                    FORSYTH_VALENCE_BOOST_SCALE * (float) Math.pow(i, -FORSYTH_VALENCE_BOOST_POWER);
+        }
+    }
+
+    /**
+     * Average cache miss ratio (misses per triangle, 0.5-3) and average transform to vertex
+     * ratio (misses per vertex, ideally 1) of an index buffer, for a FIFO cache.
+     */
+    public static class CacheStatistics {
+        public final float acmr;
+        public final float atvr;
+
+        public CacheStatistics(float acmr, float atvr) {
+            this.acmr = acmr;
+            this.atvr = atvr;
+        }
+    }
+
+    public static class Report {
+        public final int triangles;
+        public final CacheStatistics before;
+        public final CacheStatistics after;
+
+        Report(int triangles, CacheStatistics before, CacheStatistics after) {
+            this.triangles = triangles;
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d triangles, ACMR %.3f -> %.3f, ATVR %.3f -> %.3f",
+                    triangles, before.acmr, after.acmr, before.atvr, after.atvr);
+        }
+    }
+
+    private MeshOptimizer() {
+    }
+
+    /**
+     * Runs all three optimization stages on the mesh in place.
+     */
+    public static Report optimize(MeshData mesh) {
+        final int vertexCount = mesh.getVertexCount();
+        CacheStatistics before = analyzeVertexCache(mesh.indices, vertexCount, ANALYSIS_CACHE_SIZE);
+
+        mesh.indices = optimizeVertexCache(mesh.indices, vertexCount);
+        mesh.indices = optimizeOverdraw(mesh.indices, mesh.vertices, ANALYSIS_CACHE_SIZE, OVERDRAW_THRESHOLD);
+        optimizeVertexFetch(mesh);
+
+        CacheStatistics after = analyzeVertexCache(mesh.indices, mesh.getVertexCount(), ANALYSIS_CACHE_SIZE);
+        return new Report(mesh.getTriangleCount(), before, after);
+    }
+
+    /**
+     * Optimizes a batch of meshes in parallel, e.g. when preprocessing a whole model library.
+     *
+     * @return one report per mesh, in the same order
+     */
+    public static Report[] optimizeAll(final List<MeshData> meshes, ForkJoinPool pool) {
+        final Report[] reports = new Report[meshes.size()];
+        pool.invoke(new OptimizeTask(meshes, reports, 0, meshes.size()));
+        return reports;
+    }
+
+    private static class OptimizeTask extends RecursiveAction {
+        // ForkJoinTask is Serializable, these never are serialized
+        private static final long serialVersionUID = 1L;
+
+        private final List<MeshData> mMeshes;
+        private final Report[] mReports;
+        private final int mStart;
+        private final int mEnd;
+
+        OptimizeTask(List<MeshData> meshes, Report[] reports, int start, int end) {
+            mMeshes = meshes;
+            mReports = reports;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (mEnd - mStart == 1) {
+                mReports[mStart] = optimize(mMeshes.get(mStart));
+                return;
+            }
+            int middle = (mStart + mEnd) >>> 1;
+            invokeAll(new OptimizeTask(mMeshes, mReports, mStart, middle),
+                    new OptimizeTask(mMeshes, mReports, middle, mEnd));
+        }
+    }
+
+    public static CacheStatistics analyzeVertexCache(int[] indices, int vertexCount, int cacheSize) {
+        // time at which each vertex entered the FIFO, it's still cached if fewer than cacheSize
+        // vertices have entered since
+        int[] entered = new int[vertexCount];
+        Arrays.fill(entered, Integer.MIN_VALUE / 2);
+        int clock = 0;
+        int misses = 0;
+        for (int index : indices) {
+            if (clock - entered[index] >= cacheSize) {
+                entered[index] = ++clock;
+                misses++;
+            }
+        }
+
+        int triangles = indices.length / 3;
+        return new CacheStatistics(
+                triangles > 0 ? (float) misses / triangles : 0.0f,
+                vertexCount > 0 ? (float) misses / vertexCount : 0.0f);
+    }
+
+    /**
+     * Reorders triangles for the post-transform vertex cache.
+     *
+     * @return the reordered index buffer
+     */
+    public static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+        final int triangleCount = indices.length / 3;
+
+        // triangles using each vertex, as slices of one array
+        int[] valence = new int[vertexCount];
+        for (int index : indices) {
+            valence[index]++;
+        }
+        int[] adjacencyOffsets = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) {
+            adjacencyOffsets[v + 1] = adjacencyOffsets[v] + valence[v];
+        }
+        int[] adjacency = new int[indices.length];
+        int[] filled = new int[vertexCount];
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            adjacency[adjacencyOffsets[v] + filled[v]++] = i / 3;
+        }
+        // valence now counts the triangles still to be emitted for each vertex
+
+        float[] vertexScores = new float[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            vertexScores[v] = vertexScore(-1, valence[v]);
+        }
+
+        float[] triangleScores = new float[triangleCount];
+        boolean[] emitted = new boolean[triangleCount];
+        for (int t = 0; t < triangleCount; t++) {
+            triangleScores[t] = vertexScores[indices[t * 3]] + vertexScores[indices[t * 3 + 1]] + vertexScores[indices[t * 3 + 2]];
+        }
+
+        int[] cache = new int[FORSYTH_CACHE_SIZE + 3];
+        int[] newCache = new int[FORSYTH_CACHE_SIZE + 3];
+        int cacheCount = 0;
+
+        int[] result = new int[triangleCount * 3];
+        int nextUnemitted = 0;
+        int best = -1;
+
+        for (int out = 0; out < triangleCount; out++) {
+            if (best < 0) {
+                // nothing in the cache to continue from, start at the first unemitted triangle
+                while (emitted[nextUnemitted]) {
+                    nextUnemitted++;
+                }
+                best = nextUnemitted;
+            }
+
+            emitted[best] = true;
+            int newCacheCount = 0;
+            for (int corner = 0; corner < 3; corner++) {
+                int v = indices[best * 3 + corner];
+                result[out * 3 + corner] = v;
+                newCache[newCacheCount++] = v;
+
+                // this triangle no longer needs the vertex
+                int start = adjacencyOffsets[v];
+                int end = start + valence[v];
+                for (int a = start; a < end; a++) {
+                    if (adjacency[a] == best) {
+                        adjacency[a] = adjacency[end - 1];
+                        break;
+                    }
+                }
+                valence[v]--;
+            }
+
+            // the emitted triangle's vertices go to the front of the LRU cache, then the rest
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                if (v != newCache[0] && v != newCache[1] && v != newCache[2]) {
+                    newCache[newCacheCount++] = v;
+                }
+                if (newCacheCount == newCache.length) {
+                    break;
+                }
+            }
+            int[] swap = cache;
+            cache = newCache;
+            newCache = swap;
+            cacheCount = newCacheCount;
+
+            // rescore the cached vertices (entries past FORSYTH_CACHE_SIZE just fell out of the
+            // cache) and everything touching them, and pick the best of those triangles to emit next
+            best = -1;
+            float bestScore = -1.0f;
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                int position = i < FORSYTH_CACHE_SIZE ? i : -1;
+                float oldScore = vertexScores[v];
+                float newScore = vertexScore(position, valence[v]);
+                vertexScores[v] = newScore;
+                float delta = newScore - oldScore;
+
+                int start = adjacencyOffsets[v];
+                int end = start + valence[v];
+                for (int a = start; a < end; a++) {
+                    int t = adjacency[a];
+                    triangleScores[t] += delta;
+                }
+            }
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                int start = adjacencyOffsets[v];
+                int end = start + valence[v];
+                for (int a = start; a < end; a++) {
+                    int t = adjacency[a];
+                    if (triangleScores[t] > bestScore) {
+                        bestScore = triangleScores[t];
+                        best = t;
+                    }
+                }
+            }
+            if (cacheCount > FORSYTH_CACHE_SIZE) {
+                cacheCount = FORSYTH_CACHE_SIZE;
+            }
+        }
+        return result;
+    }
+
+    private static float vertexScore(int cachePosition, int remainingTriangles) {
+        if (remainingTriangles == 0) {
+            return -1.0f;
+        }
+        float score = cachePosition >= 0 ? sCachePositionScores[cachePosition] : 0.0f;
+        return score + sValenceScores[Math.min(remainingTriangles, FORSYTH_MAX_VALENCE - 1)];
+    }
+
+    /**
+     * Splits a vertex-cache-optimized index buffer into clusters, at points where the cache
+     * would be cold anyway or where splitting costs little, and sorts the clusters so that the
+     * most outward-facing ones come first.
+     *
+     * @param threshold how much worse than its own ACMR a cluster may get from being split
+     * @return the reordered index buffer
+     */
+    public static int[] optimizeOverdraw(int[] indices, float[] vertices, int cacheSize, float threshold) {
+        final int triangleCount = indices.length / 3;
+        if (triangleCount < 2) {
+            return indices;
+        }
+        final int vertexCount = vertices.length / Mesh.FLOATS_PER_VERTEX;
+
+        // hard boundaries: triangles where all three vertices miss the cache
+        int[] clusters = new int[triangleCount + 1];
+        int clusterCount = 0;
+        int[] entered = new int[vertexCount];
+        Arrays.fill(entered, Integer.MIN_VALUE / 2);
+        int clock = 0;
+        for (int t = 0; t < triangleCount; t++) {
+            int misses = 0;
+            for (int corner = 0; corner < 3; corner++) {
+                int v = indices[t * 3 + corner];
+                if (clock - entered[v] >= cacheSize) {
+                    entered[v] = ++clock;
+                    misses++;
+                }
+            }
+            if (t == 0 || misses == 3) {
+                clusters[clusterCount++] = t;
+            }
+        }
+        clusters[clusterCount] = triangleCount;
+
+        // soft boundaries: split inside a hard cluster wherever the running ACMR since the last
+        // split is already within threshold of the whole cluster's
+        int[] softClusters = new int[triangleCount + 1];
+        int softCount = 0;
+        for (int c = 0; c < clusterCount; c++) {
+            int start = clusters[c];
+            int end = clusters[c + 1];
+            float clusterAcmr = clusterAcmr(indices, start, end, vertexCount, cacheSize, entered);
+
+            softClusters[softCount++] = start;
+            Arrays.fill(entered, Integer.MIN_VALUE / 2);
+            clock = 0;
+            int misses = 0;
+            int splitStart = start;
+            for (int t = start; t < end; t++) {
+                for (int corner = 0; corner < 3; corner++) {
+                    int v = indices[t * 3 + corner];
+                    if (clock - entered[v] >= cacheSize) {
+                        entered[v] = ++clock;
+                        misses++;
+                    }
+                }
+                int done = t + 1 - splitStart;
+                if (t + 1 < end && done >= cacheSize && (float) misses / done <= clusterAcmr * threshold) {
+                    softClusters[softCount++] = t + 1;
+                    splitStart = t + 1;
+                    misses = 0;
+                    Arrays.fill(entered, Integer.MIN_VALUE / 2);
+                    clock = 0;
+                }
+            }
+        }
+        softClusters[softCount] = triangleCount;
+
+        // sort by how much each cluster faces away from the mesh center
+        float[] meshCentroid = new float[3];
+        for (int v = 0; v < vertexCount; v++) {
+            meshCentroid[0] += vertices[v * Mesh.FLOATS_PER_VERTEX];
+            meshCentroid[1] += vertices[v * Mesh.FLOATS_PER_VERTEX + 1];
+            meshCentroid[2] += vertices[v * Mesh.FLOATS_PER_VERTEX + 2];
+        }
+        for (int axis = 0; axis < 3; axis++) {
+            meshCentroid[axis] /= Math.max(1, vertexCount);
+        }
+
+        final long[] keyed = new long[softCount];
+        for (int c = 0; c < softCount; c++) {
+            float sortKey = clusterSortKey(indices, vertices, softClusters[c], softClusters[c + 1], meshCentroid);
+            // descending by key, ties kept in original order
+            keyed[c] = ((long) sortableBits(-sortKey) << 32) | c;
+        }
+        Arrays.sort(keyed);
+
+        int[] result = new int[indices.length];
+        int out = 0;
+        for (long key : keyed) {
+            int c = (int) key;
+            int start = softClusters[c] * 3;
+            int length = softClusters[c + 1] * 3 - start;
+            System.arraycopy(indices, start, result, out, length);
+            out += length;
+        }
+        return result;
+    }
+
+    private static float clusterAcmr(int[] indices, int start, int end, int vertexCount, int cacheSize, int[] entered) {
+        Arrays.fill(entered, Integer.MIN_VALUE / 2);
+        int clock = 0;
+        int misses = 0;
+        for (int i = start * 3; i < end * 3; i++) {
+            int v = indices[i];
+            if (clock - entered[v] >= cacheSize) {
+                entered[v] = ++clock;
+                misses++;
+            }
+        }
+        return (float) misses / (end - start);
+    }
+
+    private static float clusterSortKey(int[] indices, float[] vertices, int start, int end, float[] meshCentroid) {
+        float cx = 0, cy = 0, cz = 0, nx = 0, ny = 0, nz = 0, totalArea = 0;
+        for (int t = start; t < end; t++) {
+            int a = indices[t * 3] * Mesh.FLOATS_PER_VERTEX;
+            int b = indices[t * 3 + 1] * Mesh.FLOATS_PER_VERTEX;
+            int c = indices[t * 3 + 2] * Mesh.FLOATS_PER_VERTEX;
+            float abx = vertices[b] - vertices[a], aby = vertices[b + 1] - vertices[a + 1], abz = vertices[b + 2] - vertices[a + 2];
+            float acx = vertices[c] - vertices[a], acy = vertices[c + 1] - vertices[a + 1], acz = vertices[c + 2] - vertices[a + 2];
+            // clockwise front faces, so ac x ab points outwards
+            float x = acy * abz - acz * aby;
+            float y = acz * abx - acx * abz;
+            float z = acx * aby - acy * abx;
+            float area = (float) Math.sqrt(x * x + y * y + z * z);
+
+            cx += (vertices[a] + vertices[b] + vertices[c]) * area;
+            cy += (vertices[a + 1] + vertices[b + 1] + vertices[c + 1]) * area;
+            cz += (vertices[a + 2] + vertices[b + 2] + vertices[c + 2]) * area;
+            nx += x;
+            ny += y;
+            nz += z;
+            totalArea += area;
+        }
+        if (totalArea <= 0.0f) {
+            return 0.0f;
+        }
+        float scale = 1.0f / (3.0f * totalArea);
+        cx = cx * scale - meshCentroid[0];
+        cy = cy * scale - meshCentroid[1];
+        cz = cz * scale - meshCentroid[2];
+        float normalLength = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (normalLength <= 0.0f) {
+            return 0.0f;
+        }
+        return (cx * nx + cy * ny + cz * nz) / normalLength;
+    }
+
+    // float bits reordered so that comparing them as signed ints matches comparing the floats
+    private static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits >= 0 ? bits : bits ^ 0x7fffffff;
+    }
+
+    /**
+     * Renumbers the mesh's vertices in order of first use by the index buffer, dropping any that
+     * aren't used at all.
+     */
+    public static void optimizeVertexFetch(MeshData mesh) {
+        final int vertexCount = mesh.getVertexCount();
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+
+        float[] vertices = new float[mesh.vertices.length];
+        int next = 0;
+        int[] indices = mesh.indices;
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            if (remap[v] < 0) {
+                remap[v] = next;
+                System.arraycopy(mesh.vertices, v * Mesh.FLOATS_PER_VERTEX,
+                        vertices, next * Mesh.FLOATS_PER_VERTEX, Mesh.FLOATS_PER_VERTEX);
+                next++;
+            }
+            indices[i] = remap[v];
+        }
+        mesh.vertices = next == vertexCount ? vertices : Arrays.copyOf(vertices, next * Mesh.FLOATS_PER_VERTEX);
+    }
+}
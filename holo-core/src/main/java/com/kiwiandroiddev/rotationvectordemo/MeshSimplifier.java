@@ -0,0 +1,653 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Quadric error metric mesh simplification (Garland and Heckbert), by repeatedly collapsing
+ * the edge whose removal moves the surface the least.
+ *
+ * Each vertex accumulates the planes of the triangles around it as a quadric; the cost of
+ * collapsing an edge is the sum of squared distances from the merged vertex to all of those
+ * planes. Boundary edges get an extra perpendicular plane so open meshes don't shrink away
+ * from their borders, and collapses that would flip a triangle over are refused. Vertices that
+ * are exactly identical (position and color) are welded first, so a model that repeats
+ * vertices, e.g. around the poles of a UV sphere, doesn't look torn apart to the simplifier.
+ *
+ * Deterministic: ties between equal-cost collapses are broken by vertex index, and nothing
+ * depends on hashing or iteration order of unordered collections, so the same input always
+ * gives the same output.
+ */
+public class MeshSimplifier {
+
+    // weight of the planes that pin boundary edges in place, relative to face planes
+    private static final double BOUNDARY_WEIGHT = 100.0;
+
+    // below this a candidate quadric is treated as singular and the optimal point isn't solved for
+    private static final double SINGULAR_EPSILON = 1e-12;
+
+    // a triangle whose edges are closer to parallel than this, as a sine, is taken to be a line,
+    // float positions aren't precise enough to say otherwise
+    private static final double COLLINEAR_SINE = 1e-6;
+
+    private final float[] mVertices;
+    private final int mVertexCount;
+    private final int[] mIndices;
+    private final boolean[] mTriangleDead;
+    private int mLiveTriangles;
+
+    // symmetric 4x4 per vertex: a2 ab ac ad b2 bc bd c2 cd d2
+    private final double[] mQuadrics;
+
+    private final int[][] mVertexTriangles;
+    private final int[] mVertexTriangleCounts;
+    private final int[] mVersions;
+    private final boolean[] mVertexDead;
+
+    // scratch for gathering a vertex's neighbours without duplicates
+    private final int[] mNeighbourStamps;
+    private int mStamp = 0;
+
+    private final CollapseHeap mHeap = new CollapseHeap();
+    private final double[] mTarget = new double[3];
+
+    // scratch for normal calculations, all on the simplifying thread
+    private final double[] mNormalBefore = new double[3];
+    private final double[] mNormalAfter = new double[3];
+    private final double[] mCornerPositions = new double[9];
+    private final int[] mCorners = new int[3];
+
+    private double mMaxError = 0.0;
+
+    private MeshSimplifier(MeshData mesh) {
+        mVertices = mesh.vertices.clone();
+        mVertexCount = mesh.getVertexCount();
+        mIndices = mesh.indices.clone();
+        weldIdenticalVertices();
+        final int triangleCount = mIndices.length / 3;
+        mTriangleDead = new boolean[triangleCount];
+        mLiveTriangles = triangleCount;
+
+        mQuadrics = new double[mVertexCount * 10];
+        mVertexTriangleCounts = new int[mVertexCount];
+        mVertexTriangles = new int[mVertexCount][];
+        mVersions = new int[mVertexCount];
+        mVertexDead = new boolean[mVertexCount];
+        mNeighbourStamps = new int[mVertexCount];
+
+        for (int index : mIndices) {
+            mVertexTriangleCounts[index]++;
+        }
+        for (int v = 0; v < mVertexCount; v++) {
+            mVertexTriangles[v] = new int[Math.max(4, mVertexTriangleCounts[v])];
+            mVertexTriangleCounts[v] = 0;
+        }
+        for (int t = 0; t < triangleCount; t++) {
+            if (isDegenerate(t)) {
+                mTriangleDead[t] = true;
+                mLiveTriangles--;
+                continue;
+            }
+            for (int corner = 0; corner < 3; corner++) {
+                int v = mIndices[t * 3 + corner];
+                mVertexTriangles[v][mVertexTriangleCounts[v]++] = t;
+            }
+            addFaceQuadric(t);
+        }
+        addBoundaryQuadrics();
+    }
+
+    /**
+     * Simplifies the mesh down to at most targetTriangles triangles, or as close as possible
+     * without flipping faces. The input is left untouched.
+     *
+     * The result's {@link MeshData#geometricError} is the input's plus the furthest any
+     * collapse moved the surface, so it stays a bound when simplifying an already simplified
+     * mesh.
+     */
+    public static MeshData simplify(MeshData mesh, int targetTriangles) {
+        MeshSimplifier simplifier = new MeshSimplifier(mesh);
+        simplifier.run(targetTriangles);
+        MeshData simplified = simplifier.compact();
+        simplified.hasColors = mesh.hasColors;
+        simplified.geometricError = mesh.geometricError + (float) Math.sqrt(simplifier.mMaxError);
+        return simplified;
+    }
+
+    private void run(int targetTriangles) {
+        for (int v = 0; v < mVertexCount; v++) {
+            pushNeighbours(v, true);
+        }
+
+        while (mLiveTriangles > targetTriangles && !mHeap.isEmpty()) {
+            int entry = mHeap.pop();
+            int a = mHeap.a[entry];
+            int b = mHeap.b[entry];
+            if (mVertexDead[a] || mVertexDead[b]
+                    || mHeap.versionA[entry] != mVersions[a] || mHeap.versionB[entry] != mVersions[b]) {
+                // stale, one of the vertices has changed since this was queued
+                continue;
+            }
+
+            double cost = collapseTarget(a, b, mTarget);
+            if (flipsTriangle(a, b, mTarget) || flipsTriangle(b, a, mTarget)) {
+                continue;
+            }
+            collapse(a, b, mTarget);
+            mMaxError = Math.max(mMaxError, cost);
+        }
+    }
+
+    /**
+     * Merges b into a, moving a to target.
+     */
+    private void collapse(int a, int b, double[] target) {
+        final int aOffset = a * Mesh.FLOATS_PER_VERTEX;
+        final int bOffset = b * Mesh.FLOATS_PER_VERTEX;
+
+        // blend color by how far along the edge the merged vertex ended up
+        double edgeX = mVertices[bOffset] - mVertices[aOffset];
+        double edgeY = mVertices[bOffset + 1] - mVertices[aOffset + 1];
+        double edgeZ = mVertices[bOffset + 2] - mVertices[aOffset + 2];
+        double edgeLengthSquared = edgeX * edgeX + edgeY * edgeY + edgeZ * edgeZ;
+        double t = 0.0;
+        if (edgeLengthSquared > 0.0) {
+            t = ((target[0] - mVertices[aOffset]) * edgeX + (target[1] - mVertices[aOffset + 1]) * edgeY
+                    + (target[2] - mVertices[aOffset + 2]) * edgeZ) / edgeLengthSquared;
+            t = Math.max(0.0, Math.min(1.0, t));
+        }
+        for (int c = Mesh.POSITION_COMPONENTS; c < Mesh.FLOATS_PER_VERTEX; c++) {
+            mVertices[aOffset + c] += (float) ((mVertices[bOffset + c] - mVertices[aOffset + c]) * t);
+        }
+        mVertices[aOffset] = (float) target[0];
+        mVertices[aOffset + 1] = (float) target[1];
+        mVertices[aOffset + 2] = (float) target[2];
+
+        for (int i = 0; i < 10; i++) {
+            mQuadrics[a * 10 + i] += mQuadrics[b * 10 + i];
+        }
+
+        // hand b's triangles over to a, dropping the ones that shared the collapsed edge
+        final int[] bTriangles = mVertexTriangles[b];
+        for (int i = 0; i < mVertexTriangleCounts[b]; i++) {
+            int triangle = bTriangles[i];
+            if (mTriangleDead[triangle]) {
+                continue;
+            }
+            boolean hasA = false;
+            for (int corner = 0; corner < 3; corner++) {
+                int index = triangle * 3 + corner;
+                if (mIndices[index] == a) {
+                    hasA = true;
+                } else if (mIndices[index] == b) {
+                    mIndices[index] = a;
+                }
+            }
+            if (hasA) {
+                mTriangleDead[triangle] = true;
+                mLiveTriangles--;
+            } else {
+                addVertexTriangle(a, triangle);
+            }
+        }
+        mVertexDead[b] = true;
+        mVertexTriangleCounts[b] = 0;
+        mVersions[a]++;
+        mVersions[b]++;
+
+        // neighbours' own versions are unchanged, so refresh every pair involving a
+        pushNeighbours(a, false);
+    }
+
+    private void addVertexTriangle(int v, int triangle) {
+        if (mVertexTriangleCounts[v] == mVertexTriangles[v].length) {
+            // drop dead triangles before growing
+            int live = 0;
+            for (int i = 0; i < mVertexTriangleCounts[v]; i++) {
+                if (!mTriangleDead[mVertexTriangles[v][i]]) {
+                    mVertexTriangles[v][live++] = mVertexTriangles[v][i];
+                }
+            }
+            mVertexTriangleCounts[v] = live;
+            if (live == mVertexTriangles[v].length) {
+                mVertexTriangles[v] = Arrays.copyOf(mVertexTriangles[v], live * 2);
+            }
+        }
+        mVertexTriangles[v][mVertexTriangleCounts[v]++] = triangle;
+    }
+
+    /**
+     * Queues a collapse for every edge from v.
+     *
+     * @param onlyHigher queue only edges to higher-numbered neighbours, so the initial pass
+     * queues each edge once
+     */
+    private void pushNeighbours(int v, boolean onlyHigher) {
+        mStamp++;
+        mNeighbourStamps[v] = mStamp;
+        for (int i = 0; i < mVertexTriangleCounts[v]; i++) {
+            int triangle = mVertexTriangles[v][i];
+            if (mTriangleDead[triangle]) {
+                continue;
+            }
+            for (int corner = 0; corner < 3; corner++) {
+                int neighbour = mIndices[triangle * 3 + corner];
+                if (mNeighbourStamps[neighbour] == mStamp || (onlyHigher && neighbour < v)) {
+                    continue;
+                }
+                mNeighbourStamps[neighbour] = mStamp;
+
+                int a = Math.min(v, neighbour);
+                int b = Math.max(v, neighbour);
+                double cost = collapseTarget(a, b, mTarget);
+                mHeap.push(cost, a, b, mVersions[a], mVersions[b]);
+            }
+        }
+    }
+
+    /**
+     * Picks where the merged vertex of edge (a, b) should go: the point minimizing the combined
+     * quadric if it's well defined, otherwise the better of the endpoints and midpoint.
+     *
+     * @return the quadric error at that point
+     */
+    private double collapseTarget(int a, int b, double[] target) {
+        final double[] q = mQuadrics;
+        final int qa = a * 10;
+        final int qb = b * 10;
+        double q0 = q[qa] + q[qb], q1 = q[qa + 1] + q[qb + 1], q2 = q[qa + 2] + q[qb + 2], q3 = q[qa + 3] + q[qb + 3];
+        double q4 = q[qa + 4] + q[qb + 4], q5 = q[qa + 5] + q[qb + 5], q6 = q[qa + 6] + q[qb + 6];
+        double q7 = q[qa + 7] + q[qb + 7], q8 = q[qa + 8] + q[qb + 8], q9 = q[qa + 9] + q[qb + 9];
+
+        // solve the 3x3 system A x = -b by Cramer's rule
+        double det = q0 * (q4 * q7 - q5 * q5) - q1 * (q1 * q7 - q5 * q2) + q2 * (q1 * q5 - q4 * q2);
+        if (Math.abs(det) > SINGULAR_EPSILON) {
+            double rx = -q3, ry = -q6, rz = -q8;
+            double x = (rx * (q4 * q7 - q5 * q5) - q1 * (ry * q7 - q5 * rz) + q2 * (ry * q5 - q4 * rz)) / det;
+            double y = (q0 * (ry * q7 - rz * q5) - rx * (q1 * q7 - q5 * q2) + q2 * (q1 * rz - ry * q2)) / det;
+            double z = (q0 * (q4 * rz - q5 * ry) - q1 * (q1 * rz - ry * q2) + rx * (q1 * q5 - q4 * q2)) / det;
+            // only trust it if it's near the edge, far-flung optima come from near-singular quadrics
+            if (isNearEdge(a, b, x, y, z)) {
+                target[0] = x;
+                target[1] = y;
+                target[2] = z;
+                return Math.max(0.0, evaluate(q0, q1, q2, q3, q4, q5, q6, q7, q8, q9, x, y, z));
+            }
+        }
+
+        final int aOffset = a * Mesh.FLOATS_PER_VERTEX;
+        final int bOffset = b * Mesh.FLOATS_PER_VERTEX;
+        double bestError = Double.MAX_VALUE;
+        for (int candidate = 0; candidate < 3; candidate++) {
+            double weight = candidate * 0.5;
+            double x = mVertices[aOffset] + (mVertices[bOffset] - mVertices[aOffset]) * weight;
+            double y = mVertices[aOffset + 1] + (mVertices[bOffset + 1] - mVertices[aOffset + 1]) * weight;
+            double z = mVertices[aOffset + 2] + (mVertices[bOffset + 2] - mVertices[aOffset + 2]) * weight;
+            double error = evaluate(q0, q1, q2, q3, q4, q5, q6, q7, q8, q9, x, y, z);
+            if (error < bestError) {
+                bestError = error;
+                target[0] = x;
+                target[1] = y;
+                target[2] = z;
+            }
+        }
+        return Math.max(0.0, bestError);
+    }
+
+    private boolean isNearEdge(int a, int b, double x, double y, double z) {
+        final int aOffset = a * Mesh.FLOATS_PER_VERTEX;
+        final int bOffset = b * Mesh.FLOATS_PER_VERTEX;
+        double ex = mVertices[bOffset] - mVertices[aOffset];
+        double ey = mVertices[bOffset + 1] - mVertices[aOffset + 1];
+        double ez = mVertices[bOffset + 2] - mVertices[aOffset + 2];
+        double mx = x - (mVertices[aOffset] + mVertices[bOffset]) * 0.5;
+        double my = y - (mVertices[aOffset + 1] + mVertices[bOffset + 1]) * 0.5;
+        double mz = z - (mVertices[aOffset + 2] + mVertices[bOffset + 2]) * 0.5;
+        return mx * mx + my * my + mz * mz <= ex * ex + ey * ey + ez * ez;
+    }
+
+    private static double evaluate(double q0, double q1, double q2, double q3, double q4, double q5,
+                                   double q6, double q7, double q8, double q9, double x, double y, double z) {
+        return q0 * x * x + 2 * q1 * x * y + 2 * q2 * x * z + 2 * q3 * x
+                + q4 * y * y + 2 * q5 * y * z + 2 * q6 * y
+                + q7 * z * z + 2 * q8 * z + q9;
+    }
+
+    /**
+     * Whether moving vertex v to target would turn any of its triangles (other than ones that
+     * also use other, which disappear in the collapse) upside down.
+     */
+    private boolean flipsTriangle(int v, int other, double[] target) {
+        for (int i = 0; i < mVertexTriangleCounts[v]; i++) {
+            int triangle = mVertexTriangles[v][i];
+            if (mTriangleDead[triangle]) {
+                continue;
+            }
+            int base = triangle * 3;
+            int i0 = mIndices[base], i1 = mIndices[base + 1], i2 = mIndices[base + 2];
+            if (i0 == other || i1 == other || i2 == other) {
+                continue;
+            }
+
+            final double[] before = mNormalBefore;
+            final double[] after = mNormalAfter;
+            normal(i0, i1, i2, -1, null, before);
+            normal(i0, i1, i2, v, target, after);
+            double beforeLengthSquared = before[0] * before[0] + before[1] * before[1] + before[2] * before[2];
+            // a sliver with no area has no facing to flip
+            if (beforeLengthSquared > 0.0
+                    && before[0] * after[0] + before[1] * after[1] + before[2] * after[2] <= 0.0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Unnormalized normal of a triangle, optionally with one vertex moved to a new position.
+     */
+    private void normal(int i0, int i1, int i2, int moved, double[] movedTo, double[] out) {
+        final double[] p = mCornerPositions;
+        final int[] corners = mCorners;
+        corners[0] = i0;
+        corners[1] = i1;
+        corners[2] = i2;
+        for (int c = 0; c < 3; c++) {
+            int offset = corners[c] * Mesh.FLOATS_PER_VERTEX;
+            for (int axis = 0; axis < 3; axis++) {
+                p[c * 3 + axis] = corners[c] == moved ? movedTo[axis] : mVertices[offset + axis];
+            }
+        }
+        double abx = p[3] - p[0], aby = p[4] - p[1], abz = p[5] - p[2];
+        double acx = p[6] - p[0], acy = p[7] - p[1], acz = p[8] - p[2];
+        out[0] = aby * acz - abz * acy;
+        out[1] = abz * acx - abx * acz;
+        out[2] = abx * acy - aby * acx;
+    }
+
+    /**
+     * Points every index at the first of any group of identical vertices. The duplicates are
+     * left unreferenced and dropped when compacting.
+     */
+    private void weldIdenticalVertices() {
+        Integer[] order = new Integer[mVertexCount];
+        for (int v = 0; v < mVertexCount; v++) {
+            order[v] = v;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                int result = compareVertices(lhs, rhs);
+                return result != 0 ? result : lhs.compareTo(rhs);
+            }
+        });
+
+        int[] canonical = new int[mVertexCount];
+        for (int i = 0; i < mVertexCount; i++) {
+            boolean duplicate = i > 0 && compareVertices(order[i - 1], order[i]) == 0;
+            canonical[order[i]] = duplicate ? canonical[order[i - 1]] : order[i];
+        }
+        for (int i = 0; i < mIndices.length; i++) {
+            mIndices[i] = canonical[mIndices[i]];
+        }
+    }
+
+    private int compareVertices(int a, int b) {
+        final int aOffset = a * Mesh.FLOATS_PER_VERTEX;
+        final int bOffset = b * Mesh.FLOATS_PER_VERTEX;
+        for (int c = 0; c < Mesh.FLOATS_PER_VERTEX; c++) {
+            int result = Float.compare(mVertices[aOffset + c], mVertices[bOffset + c]);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Whether a triangle has no area, either by repeating a vertex or, like those between the
+     * not quite identical vertices at a UV sphere's poles, by having its corners in a line as
+     * near as float positions can tell. Either way there's nothing to draw and no plane for its
+     * quadric.
+     */
+    private boolean isDegenerate(int triangle) {
+        int base = triangle * 3;
+        if (mIndices[base] == mIndices[base + 1] || mIndices[base + 1] == mIndices[base + 2]
+                || mIndices[base] == mIndices[base + 2]) {
+            return true;
+        }
+        final double[] n = mNormalBefore;
+        normal(mIndices[base], mIndices[base + 1], mIndices[base + 2], -1, null, n);
+        // the cross product over the two edges' lengths is the sine of the angle between them
+        final double[] p = mCornerPositions;
+        final double ab = (p[3] - p[0]) * (p[3] - p[0]) + (p[4] - p[1]) * (p[4] - p[1]) + (p[5] - p[2]) * (p[5] - p[2]);
+        final double ac = (p[6] - p[0]) * (p[6] - p[0]) + (p[7] - p[1]) * (p[7] - p[1]) + (p[8] - p[2]) * (p[8] - p[2]);
+        return n[0] * n[0] + n[1] * n[1] + n[2] * n[2] <= COLLINEAR_SINE * COLLINEAR_SINE * ab * ac;
+    }
+
+    private void addFaceQuadric(int triangle) {
+        final double[] n = mNormalBefore;
+        int base = triangle * 3;
+        normal(mIndices[base], mIndices[base + 1], mIndices[base + 2], -1, null, n);
+        double length = Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+        if (length == 0.0) {
+            return;
+        }
+        int offset = mIndices[base] * Mesh.FLOATS_PER_VERTEX;
+        double a = n[0] / length, b = n[1] / length, c = n[2] / length;
+        double d = -(a * mVertices[offset] + b * mVertices[offset + 1] + c * mVertices[offset + 2]);
+        for (int corner = 0; corner < 3; corner++) {
+            addPlane(mIndices[base + corner], a, b, c, d, 1.0);
+        }
+    }
+
+    /**
+     * Edges used by only one triangle get a plane through the edge, perpendicular to that
+     * triangle, added to both endpoints.
+     */
+    private void addBoundaryQuadrics() {
+        final int triangleCount = mIndices.length / 3;
+        long[] edges = new long[triangleCount * 3];
+        int edgeCount = 0;
+        for (int t = 0; t < triangleCount; t++) {
+            if (mTriangleDead[t]) {
+                continue;
+            }
+            for (int corner = 0; corner < 3; corner++) {
+                int a = mIndices[t * 3 + corner];
+                int b = mIndices[t * 3 + (corner + 1) % 3];
+                edges[edgeCount++] = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+            }
+        }
+        long[] sorted = Arrays.copyOf(edges, edgeCount);
+        Arrays.sort(sorted);
+
+        for (int t = 0; t < triangleCount; t++) {
+            if (mTriangleDead[t]) {
+                continue;
+            }
+            for (int corner = 0; corner < 3; corner++) {
+                int a = mIndices[t * 3 + corner];
+                int b = mIndices[t * 3 + (corner + 1) % 3];
+                long key = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+                int found = Arrays.binarySearch(sorted, key);
+                boolean shared = (found > 0 && sorted[found - 1] == key)
+                        || (found + 1 < sorted.length && sorted[found + 1] == key);
+                if (!shared) {
+                    addBoundaryPlane(t, a, b);
+                }
+            }
+        }
+    }
+
+    private void addBoundaryPlane(int triangle, int a, int b) {
+        final double[] n = mNormalBefore;
+        int base = triangle * 3;
+        normal(mIndices[base], mIndices[base + 1], mIndices[base + 2], -1, null, n);
+        int aOffset = a * Mesh.FLOATS_PER_VERTEX;
+        int bOffset = b * Mesh.FLOATS_PER_VERTEX;
+        double ex = mVertices[bOffset] - mVertices[aOffset];
+        double ey = mVertices[bOffset + 1] - mVertices[aOffset + 1];
+        double ez = mVertices[bOffset + 2] - mVertices[aOffset + 2];
+        // edge x normal lies in the triangle's plane, perpendicular to the edge
+        double px = ey * n[2] - ez * n[1];
+        double py = ez * n[0] - ex * n[2];
+        double pz = ex * n[1] - ey * n[0];
+        double length = Math.sqrt(px * px + py * py + pz * pz);
+        if (length == 0.0) {
+            return;
+        }
+        px /= length;
+        py /= length;
+        pz /= length;
+        double d = -(px * mVertices[aOffset] + py * mVertices[aOffset + 1] + pz * mVertices[aOffset + 2]);
+        addPlane(a, px, py, pz, d, BOUNDARY_WEIGHT);
+        addPlane(b, px, py, pz, d, BOUNDARY_WEIGHT);
+    }
+
+    private void addPlane(int v, double a, double b, double c, double d, double weight) {
+        final int q = v * 10;
+        mQuadrics[q] += weight * a * a;
+        mQuadrics[q + 1] += weight * a * b;
+        mQuadrics[q + 2] += weight * a * c;
+        mQuadrics[q + 3] += weight * a * d;
+        mQuadrics[q + 4] += weight * b * b;
+        mQuadrics[q + 5] += weight * b * c;
+        mQuadrics[q + 6] += weight * b * d;
+        mQuadrics[q + 7] += weight * c * c;
+        mQuadrics[q + 8] += weight * c * d;
+        mQuadrics[q + 9] += weight * d * d;
+    }
+
+    private MeshData compact() {
+        int[] remap = new int[mVertexCount];
+        Arrays.fill(remap, -1);
+        float[] vertices = new float[mVertices.length];
+        int[] indices = new int[mLiveTriangles * 3];
+        int vertexCount = 0;
+        int out = 0;
+        for (int t = 0; t < mTriangleDead.length; t++) {
+            if (mTriangleDead[t]) {
+                continue;
+            }
+            for (int corner = 0; corner < 3; corner++) {
+                int v = mIndices[t * 3 + corner];
+                if (remap[v] < 0) {
+                    remap[v] = vertexCount;
+                    System.arraycopy(mVertices, v * Mesh.FLOATS_PER_VERTEX,
+                            vertices, vertexCount * Mesh.FLOATS_PER_VERTEX, Mesh.FLOATS_PER_VERTEX);
+                    vertexCount++;
+                }
+                indices[out++] = remap[v];
+            }
+        }
+        return new MeshData(Arrays.copyOf(vertices, vertexCount * Mesh.FLOATS_PER_VERTEX), indices);
+    }
+
+    /**
+     * Binary min-heap of candidate collapses, ordered by cost and then by vertex indices so the
+     * order is fully determined by the input.
+     *
+     * Entries live in slots that don't move; the heap itself is an array of slots with a copy
+     * of each one's cost alongside, so sifting only touches the slot's fields on a tie.
+     */
+    private static class CollapseHeap {
+        double[] cost = new double[1024];
+        int[] a = new int[1024];
+        int[] b = new int[1024];
+        int[] versionA = new int[1024];
+        int[] versionB = new int[1024];
+
+        // heap of entry slots and their costs, and slots free for reuse
+        int[] heap = new int[1024];
+        double[] heapCost = new double[1024];
+        int size = 0;
+        int[] free = new int[1024];
+        int freeCount = 0;
+        int used = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(double entryCost, int entryA, int entryB, int entryVersionA, int entryVersionB) {
+            int slot;
+            if (freeCount > 0) {
+                slot = free[--freeCount];
+            } else {
+                if (used == cost.length) {
+                    int capacity = used * 2;
+                    cost = Arrays.copyOf(cost, capacity);
+                    a = Arrays.copyOf(a, capacity);
+                    b = Arrays.copyOf(b, capacity);
+                    versionA = Arrays.copyOf(versionA, capacity);
+                    versionB = Arrays.copyOf(versionB, capacity);
+                    heap = Arrays.copyOf(heap, capacity);
+                    heapCost = Arrays.copyOf(heapCost, capacity);
+                    free = Arrays.copyOf(free, capacity);
+                }
+                slot = used++;
+            }
+            cost[slot] = entryCost;
+            a[slot] = entryA;
+            b[slot] = entryB;
+            versionA[slot] = entryVersionA;
+            versionB[slot] = entryVersionB;
+
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!less(entryCost, slot, heapCost[parent], heap[parent])) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                heapCost[i] = heapCost[parent];
+                i = parent;
+            }
+            heap[i] = slot;
+            heapCost[i] = entryCost;
+        }
+
+        /**
+         * @return the slot of the cheapest entry. Its fields stay valid until the next push.
+         */
+        int pop() {
+            int top = heap[0];
+            size--;
+            int last = heap[size];
+            double lastCost = heapCost[size];
+            int i = 0;
+            while (true) {
+                int child = i * 2 + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && less(heapCost[child + 1], heap[child + 1], heapCost[child], heap[child])) {
+                    child++;
+                }
+                if (!less(heapCost[child], heap[child], lastCost, last)) {
+                    break;
+                }
+                heap[i] = heap[child];
+                heapCost[i] = heapCost[child];
+                i = child;
+            }
+            if (size > 0) {
+                heap[i] = last;
+                heapCost[i] = lastCost;
+            }
+            free[freeCount++] = top;
+            return top;
+        }
+
+        private boolean less(double xCost, int x, double yCost, int y) {
+            if (xCost != yCost) {
+                return xCost < yCost;
+            }
+            if (a[x] != a[y]) {
+                return a[x] < a[y];
+            }
+            return b[x] < b[y];
+        }
+    }
+}
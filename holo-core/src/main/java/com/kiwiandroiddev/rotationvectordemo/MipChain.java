@@ -0,0 +1,94 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the full mipmap chain for an image, down to 1x1, the way glGenerateMipmap would but
+ * offline, so compressed textures can ship every level instead of the GPU generating them (which
+ * it can't do for compressed formats anyway).
+ *
+ * Each level is a box filter over the one above, averaging in linear light rather than on the
+ * sRGB values directly so distant detail doesn't darken. Odd sizes fold the last row or column
+ * into the one before it, so nothing is dropped.
+ */
+public final class MipChain {
+
+    private static final float[] TO_LINEAR = new float[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            TO_LINEAR[i] = (float) toLinear(i / 255.0);
+        }
+    }
+
+    private MipChain() {
+    }
+
+    /**
+     * @return the number of levels in a full chain for an image of the given size
+     */
+    public static int levelCount(int width, int height) {
+        int levels = 1;
+        while (width > 1 || height > 1) {
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+            levels++;
+        }
+        return levels;
+    }
+
+    /**
+     * @return base first, then each smaller level down to 1x1
+     */
+    public static List<PngImage> build(PngImage base) {
+        final List<PngImage> levels = new ArrayList<PngImage>(levelCount(base.width, base.height));
+        levels.add(base);
+        PngImage level = base;
+        while (level.width > 1 || level.height > 1) {
+            level = downsample(level);
+            levels.add(level);
+        }
+        return levels;
+    }
+
+    /**
+     * @return the next level down: half the size, rounded down and at least 1
+     */
+    public static PngImage downsample(PngImage image) {
+        final int width = Math.max(1, image.width / 2);
+        final int height = Math.max(1, image.height / 2);
+        final int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            final int y0 = y * image.height / height;
+            final int y1 = (y + 1) * image.height / height;
+            for (int x = 0; x < width; x++) {
+                final int x0 = x * image.width / width;
+                final int x1 = (x + 1) * image.width / width;
+                float a = 0.0f, r = 0.0f, g = 0.0f, b = 0.0f;
+                for (int sy = y0; sy < y1; sy++) {
+                    for (int sx = x0; sx < x1; sx++) {
+                        final int pixel = image.argb[sy * image.width + sx];
+                        a += pixel >>> 24;
+                        r += TO_LINEAR[(pixel >> 16) & 0xff];
+                        g += TO_LINEAR[(pixel >> 8) & 0xff];
+                        b += TO_LINEAR[pixel & 0xff];
+                    }
+                }
+                final float scale = 1.0f / ((y1 - y0) * (x1 - x0));
+                argb[y * width + x] = Math.round(a * scale) << 24 | toSrgb(r * scale) << 16
+                        | toSrgb(g * scale) << 8 | toSrgb(b * scale);
+            }
+        }
+        return new PngImage(width, height, argb);
+    }
+
+    private static double toLinear(double srgb) {
+        return srgb <= 0.04045 ? srgb / 12.92 : Math.pow((srgb + 0.055) / 1.055, 2.4);
+    }
+
+    private static int toSrgb(float linear) {
+        final double srgb = linear <= 0.0031308 ? linear * 12.92 : 1.055 * Math.pow(linear, 1.0 / 2.4) - 0.055;
+        return Math.max(0, Math.min(255, (int) Math.round(srgb * 255.0)));
+    }
+}
@@ -0,0 +1,161 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads the geometry out of a Wavefront OBJ file.
+ *
+ * Only vertex positions (with the common "v x y z r g b" vertex color extension) and faces are
+ * used; texture coordinates, normals, groups and materials are ignored. Polygons are split into
+ * triangle fans, and their winding is flipped from OBJ's counter-clockwise convention to the
+ * clockwise one the renderers cull against.
+ */
+public final class ObjImporter {
+
+    private ObjImporter() {
+    }
+
+    public static MeshData read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "US-ASCII");
+        try {
+            return read(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public static MeshData read(Reader source) throws IOException {
+        BufferedReader reader = new BufferedReader(source, 64 * 1024);
+
+        float[] vertices = new float[1024 * Mesh.FLOATS_PER_VERTEX];
+        int vertexCount = 0;
+        int[] indices = new int[1024 * 3];
+        int indexCount = 0;
+        boolean hasColors = false;
+
+        int[] polygon = new int[16];
+        final float[] values = new float[6];
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int pos = skipSpaces(line, 0);
+            if (pos + 1 >= line.length() || !isSpace(line.charAt(pos + 1))) {
+                continue;
+            }
+
+            char type = line.charAt(pos);
+            if (type == 'v') {
+                int count = 0;
+                pos = skipSpaces(line, pos + 1);
+                while (pos < line.length() && count < values.length) {
+                    int end = tokenEnd(line, pos);
+                    values[count++] = parseFloat(line, pos, end, lineNumber);
+                    pos = skipSpaces(line, end);
+                }
+                if (count < 3) {
+                    throw new IOException("line " + lineNumber + ": vertex needs at least 3 coordinates");
+                }
+
+                if (vertexCount * Mesh.FLOATS_PER_VERTEX == vertices.length) {
+                    vertices = Arrays.copyOf(vertices, vertices.length * 2);
+                }
+                int offset = vertexCount * Mesh.FLOATS_PER_VERTEX;
+                vertices[offset] = values[0];
+                vertices[offset + 1] = values[1];
+                vertices[offset + 2] = values[2];
+                if (count >= 6) {
+                    vertices[offset + 3] = values[3];
+                    vertices[offset + 4] = values[4];
+                    vertices[offset + 5] = values[5];
+                    hasColors = true;
+                } else {
+                    vertices[offset + 3] = vertices[offset + 4] = vertices[offset + 5] = 1.0f;
+                }
+                vertices[offset + 6] = 1.0f;
+                vertexCount++;
+
+            } else if (type == 'f') {
+                int corners = 0;
+                pos = skipSpaces(line, pos + 1);
+                while (pos < line.length()) {
+                    int end = tokenEnd(line, pos);
+                    // only the position index matters, stop at any /texture/normal part
+                    int slash = line.indexOf('/', pos);
+                    int index = parseInt(line, pos, slash >= 0 && slash < end ? slash : end, lineNumber);
+                    index = index < 0 ? vertexCount + index : index - 1;
+                    if (index < 0 || index >= vertexCount) {
+                        throw new IOException("line " + lineNumber + ": vertex index out of range");
+                    }
+                    if (corners == polygon.length) {
+                        polygon = Arrays.copyOf(polygon, corners * 2);
+                    }
+                    polygon[corners++] = index;
+                    pos = skipSpaces(line, end);
+                }
+
+                for (int i = 1; i + 1 < corners; i++) {
+                    if (indexCount + 3 > indices.length) {
+                        indices = Arrays.copyOf(indices, indices.length * 2);
+                    }
+                    indices[indexCount++] = polygon[0];
+                    indices[indexCount++] = polygon[i + 1];
+                    indices[indexCount++] = polygon[i];
+                }
+            }
+        }
+
+        return new MeshData(Arrays.copyOf(vertices, vertexCount * Mesh.FLOATS_PER_VERTEX),
+                Arrays.copyOf(indices, indexCount), hasColors);
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static int skipSpaces(String line, int pos) {
+        while (pos < line.length() && isSpace(line.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int tokenEnd(String line, int pos) {
+        while (pos < line.length() && !isSpace(line.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static float parseFloat(String line, int start, int end, int lineNumber) throws IOException {
+        try {
+            return Float.parseFloat(line.substring(start, end));
+        } catch (NumberFormatException e) {
+            throw new IOException("line " + lineNumber + ": bad number " + line.substring(start, end));
+        }
+    }
+
+    private static int parseInt(String line, int start, int end, int lineNumber) throws IOException {
+        boolean negative = start < end && line.charAt(start) == '-';
+        int pos = negative ? start + 1 : start;
+        if (pos >= end) {
+            throw new IOException("line " + lineNumber + ": missing vertex index");
+        }
+        int value = 0;
+        for (; pos < end; pos++) {
+            int digit = line.charAt(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IOException("line " + lineNumber + ": bad vertex index " + line.substring(start, end));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,321 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Tracks the device's orientation from its sensors as a quaternion, relative to the orientation
+ * it had when last {@link #reset()}.
+ *
+ * The gyro's full three-axis angular velocity is integrated exactly for each sample (the
+ * rotation over the sample interval is applied as a quaternion, not as small angle increments),
+ * with timestamps kept as longs and the state in doubles, so neither time nor orientation
+ * loses precision over long sessions.
+ *
+ * Gyro-only integration drifts without bound. Optionally the drift is corrected with:
+ * <ul>
+ *   <li>{@link Fusion#ACCELEROMETER}: a Mahony complementary filter that pulls the estimated
+ *   gravity direction towards the measured one and learns the gyro bias. Bounds drift in tilt,
+ *   but nothing can correct rotation about the gravity axis this way.</li>
+ *   <li>{@link Fusion#ROTATION_VECTOR}: blends towards the platform's fused absolute
+ *   orientation with a time constant of {@link #ROTATION_VECTOR_TIME_CONSTANT_S}. Bounds drift
+ *   on every axis, at the cost of inheriting that sensor's latency and magnetic disturbances
+ *   at low frequencies.</li>
+ * </ul>
+ *
+ * Allocates nothing per sample. All methods must be called from the thread delivering the
+ * samples.
+ */
+public class OrientationEngine implements SensorSampleSink {
+
+    public enum Fusion {
+        NONE, ACCELEROMETER, ROTATION_VECTOR
+    }
+
+    private static final double NS2S = 1.0 / 1000000000.0;
+
+    // Mahony filter gains. Kp sets how fast tilt converges on gravity (~1/Kp seconds),
+    // Ki how fast gyro bias is learned
+    private static final double ACCEL_KP = 0.5;
+    private static final double ACCEL_KI = 0.02;
+
+    // accelerometer readings further than this fraction from 1 g are the device being moved,
+    // not gravity, and are ignored
+    private static final double ACCEL_GRAVITY_TOLERANCE = 0.15;
+    private static final double STANDARD_GRAVITY = 9.80665;
+
+    // gyro intervals longer than this are gaps (sensor paused), not motion to integrate
+    private static final long MAX_GYRO_INTERVAL_NS = 200000000L;
+
+    public static final double ROTATION_VECTOR_TIME_CONSTANT_S = 1.0;
+
+    private Fusion mFusion = Fusion.NONE;
+
+    // absolute orientation, body to world, as w x y z. The world frame is arbitrary until a
+    // gravity or rotation vector reading pins it down
+    private double mW = 1.0, mX = 0.0, mY = 0.0, mZ = 0.0;
+    // the absolute orientation at the last reset
+    private double mRefW = 1.0, mRefX = 0.0, mRefY = 0.0, mRefZ = 0.0;
+
+    private long mLastGyroTimestamp;
+    private long mLastRotationVectorTimestamp;
+    private boolean mWorldAligned;
+
+    // latest accelerometer reading as a unit vector, consumed by the next gyro sample
+    private double mAccelX, mAccelY, mAccelZ;
+    private boolean mHasAccel;
+
+    // gyro bias learned by the accelerometer fusion, rad/s
+    private double mBiasX, mBiasY, mBiasZ;
+
+    // relative orientation decomposed into the two angles the renderer uses
+    private float mXRotRads;
+    private float mYRotRads;
+
+    public void setFusion(Fusion fusion) {
+        if (fusion != mFusion) {
+            mFusion = fusion;
+            mWorldAligned = false;
+            mHasAccel = false;
+            mBiasX = mBiasY = mBiasZ = 0.0;
+            mLastRotationVectorTimestamp = 0;
+        }
+    }
+
+    public Fusion getFusion() {
+        return mFusion;
+    }
+
+    /**
+     * Makes the current orientation the reference that {@link #getXRotRads()} and
+     * {@link #getYRotRads()} are measured from.
+     */
+    public void reset() {
+        mRefW = mW;
+        mRefX = mX;
+        mRefY = mY;
+        mRefZ = mZ;
+        mXRotRads = 0.0f;
+        mYRotRads = 0.0f;
+    }
+
+    @Override
+    public void onSensorSample(int sensorType, long timestampNs, float[] values, int valueCount, int accuracy) {
+        switch (sensorType) {
+            case TYPE_GYROSCOPE:
+                onGyro(timestampNs, values[0], values[1], values[2]);
+                break;
+            case TYPE_ACCELEROMETER:
+                if (mFusion == Fusion.ACCELEROMETER) {
+                    onAccelerometer(values[0], values[1], values[2]);
+                }
+                break;
+            case TYPE_ROTATION_VECTOR:
+                if (mFusion == Fusion.ROTATION_VECTOR) {
+                    onRotationVector(timestampNs, values, valueCount);
+                }
+                break;
+        }
+    }
+
+    private void onGyro(long timestampNs, double rateX, double rateY, double rateZ) {
+        final long previous = mLastGyroTimestamp;
+        mLastGyroTimestamp = timestampNs;
+        if (previous == 0 || timestampNs - previous <= 0 || timestampNs - previous > MAX_GYRO_INTERVAL_NS) {
+            return;
+        }
+        final double dT = (timestampNs - previous) * NS2S;
+
+        if (mFusion == Fusion.ACCELEROMETER && mHasAccel) {
+            // gravity's direction in the body frame according to the current estimate: the
+            // world up axis (z) rotated into the body frame, i.e. the third row of the matrix
+            final double upX = 2.0 * (mX * mZ - mW * mY);
+            final double upY = 2.0 * (mY * mZ + mW * mX);
+            final double upZ = 1.0 - 2.0 * (mX * mX + mY * mY);
+
+            // rotating by measured x estimated turns the estimate towards the measurement
+            final double errorX = mAccelY * upZ - mAccelZ * upY;
+            final double errorY = mAccelZ * upX - mAccelX * upZ;
+            final double errorZ = mAccelX * upY - mAccelY * upX;
+
+            mBiasX -= ACCEL_KI * errorX * dT;
+            mBiasY -= ACCEL_KI * errorY * dT;
+            mBiasZ -= ACCEL_KI * errorZ * dT;
+            rateX += ACCEL_KP * errorX;
+            rateY += ACCEL_KP * errorY;
+            rateZ += ACCEL_KP * errorZ;
+            mHasAccel = false;
+        }
+        rateX -= mBiasX;
+        rateY -= mBiasY;
+        rateZ -= mBiasZ;
+
+        // rotate by |w| dT about w, applied in the body frame: q = q * dq
+        final double rate = Math.sqrt(rateX * rateX + rateY * rateY + rateZ * rateZ);
+        final double halfAngle = rate * dT * 0.5;
+        final double dw = Math.cos(halfAngle);
+        // sin(x)/x, with its limit near zero so a still device doesn't divide by zero
+        final double s = rate > 1e-9 ? Math.sin(halfAngle) / rate : dT * 0.5;
+        final double dx = rateX * s, dy = rateY * s, dz = rateZ * s;
+
+        final double w = mW * dw - mX * dx - mY * dy - mZ * dz;
+        final double x = mW * dx + mX * dw + mY * dz - mZ * dy;
+        final double y = mW * dy - mX * dz + mY * dw + mZ * dx;
+        final double z = mW * dz + mX * dy - mY * dx + mZ * dw;
+        setOrientation(w, x, y, z);
+        updateAngles();
+    }
+
+    private void onAccelerometer(double ax, double ay, double az) {
+        final double norm = Math.sqrt(ax * ax + ay * ay + az * az);
+        if (Math.abs(norm / STANDARD_GRAVITY - 1.0) > ACCEL_GRAVITY_TOLERANCE) {
+            return;
+        }
+        mAccelX = ax / norm;
+        mAccelY = ay / norm;
+        mAccelZ = az / norm;
+        mHasAccel = true;
+
+        if (!mWorldAligned) {
+            // pin world up to the measured gravity straight away rather than converging on it
+            // from an arbitrary start. Up in world coordinates according to the estimate:
+            final double ux = (1.0 - 2.0 * (mY * mY + mZ * mZ)) * mAccelX + 2.0 * (mX * mY - mW * mZ) * mAccelY
+                    + 2.0 * (mX * mZ + mW * mY) * mAccelZ;
+            final double uy = 2.0 * (mX * mY + mW * mZ) * mAccelX + (1.0 - 2.0 * (mX * mX + mZ * mZ)) * mAccelY
+                    + 2.0 * (mY * mZ - mW * mX) * mAccelZ;
+            final double uz = 2.0 * (mX * mZ - mW * mY) * mAccelX + 2.0 * (mY * mZ + mW * mX) * mAccelY
+                    + (1.0 - 2.0 * (mX * mX + mY * mY)) * mAccelZ;
+            // shortest rotation taking u to +z: axis u x z, half angle via (1 + u.z)
+            double cw = 1.0 + uz;
+            double cx = uy;
+            double cy = -ux;
+            double cz = 0.0;
+            if (cw < 1e-9) {
+                // upside down, any horizontal axis will do
+                cw = 0.0;
+                cx = 1.0;
+                cy = 0.0;
+            }
+            final double cNorm = Math.sqrt(cw * cw + cx * cx + cy * cy + cz * cz);
+            rotateWorld(cw / cNorm, cx / cNorm, cy / cNorm, cz / cNorm);
+            mWorldAligned = true;
+        }
+    }
+
+    private void onRotationVector(long timestampNs, float[] values, int valueCount) {
+        double x = values[0], y = values[1], z = values[2];
+        double w = valueCount >= 4 ? values[3] : Math.sqrt(Math.max(0.0, 1.0 - x * x - y * y - z * z));
+        final double norm = Math.sqrt(w * w + x * x + y * y + z * z);
+        if (norm < 1e-9) {
+            return;
+        }
+        w /= norm;
+        x /= norm;
+        y /= norm;
+        z /= norm;
+
+        final long previous = mLastRotationVectorTimestamp;
+        mLastRotationVectorTimestamp = timestampNs;
+
+        if (!mWorldAligned) {
+            // change of world frame that takes the estimate onto the sensor's: c = rv * q^-1
+            final double cw = w * mW + x * mX + y * mY + z * mZ;
+            final double cx = -w * mX + x * mW - y * mZ + z * mY;
+            final double cy = -w * mY + x * mZ + y * mW - z * mX;
+            final double cz = -w * mZ - x * mY + y * mX + z * mW;
+            rotateWorld(cw, cx, cy, cz);
+            mWorldAligned = true;
+            return;
+        }
+        if (previous == 0 || timestampNs <= previous) {
+            return;
+        }
+
+        // normalized lerp towards the sensor, taking the short way round
+        final double dT = Math.min((timestampNs - previous) * NS2S, ROTATION_VECTOR_TIME_CONSTANT_S);
+        double alpha = dT / (ROTATION_VECTOR_TIME_CONSTANT_S + dT);
+        if (mW * w + mX * x + mY * y + mZ * z < 0.0) {
+            alpha = -alpha;
+        }
+        final double blend = Math.abs(alpha);
+        setOrientation(mW * (1.0 - blend) + w * alpha, mX * (1.0 - blend) + x * alpha,
+                mY * (1.0 - blend) + y * alpha, mZ * (1.0 - blend) + z * alpha);
+        updateAngles();
+    }
+
+    /**
+     * Re-expresses the orientation in a rotated world frame, q' = c * q, rotating the reference
+     * the same way so the relative orientation doesn't jump.
+     */
+    private void rotateWorld(double cw, double cx, double cy, double cz) {
+        setOrientation(cw * mW - cx * mX - cy * mY - cz * mZ,
+                cw * mX + cx * mW + cy * mZ - cz * mY,
+                cw * mY - cx * mZ + cy * mW + cz * mX,
+                cw * mZ + cx * mY - cy * mX + cz * mW);
+
+        final double rw = cw * mRefW - cx * mRefX - cy * mRefY - cz * mRefZ;
+        final double rx = cw * mRefX + cx * mRefW + cy * mRefZ - cz * mRefY;
+        final double ry = cw * mRefY - cx * mRefZ + cy * mRefW + cz * mRefX;
+        final double rz = cw * mRefZ + cx * mRefY - cy * mRefX + cz * mRefW;
+        final double norm = Math.sqrt(rw * rw + rx * rx + ry * ry + rz * rz);
+        mRefW = rw / norm;
+        mRefX = rx / norm;
+        mRefY = ry / norm;
+        mRefZ = rz / norm;
+    }
+
+    private void setOrientation(double w, double x, double y, double z) {
+        final double norm = Math.sqrt(w * w + x * x + y * y + z * z);
+        mW = w / norm;
+        mX = x / norm;
+        mY = y / norm;
+        mZ = z / norm;
+    }
+
+    /**
+     * Decomposes the orientation relative to the reference as R = Rx(a) Ry(b) Rz(c) and keeps
+     * a and b, which for small rotations are the integrals of the x and y rates the original
+     * Euler integration tracked.
+     */
+    private void updateAngles() {
+        // r = ref^-1 * q
+        final double w = mRefW * mW + mRefX * mX + mRefY * mY + mRefZ * mZ;
+        final double x = mRefW * mX - mRefX * mW - mRefY * mZ + mRefZ * mY;
+        final double y = mRefW * mY + mRefX * mZ - mRefY * mW - mRefZ * mX;
+        final double z = mRefW * mZ - mRefX * mY + mRefY * mX - mRefZ * mW;
+
+        final double r02 = 2.0 * (x * z + w * y);
+        final double r12 = 2.0 * (y * z - w * x);
+        final double r22 = 1.0 - 2.0 * (x * x + y * y);
+        mYRotRads = (float) Math.asin(Math.max(-1.0, Math.min(1.0, r02)));
+        mXRotRads = (float) Math.atan2(-r12, r22);
+    }
+
+    public float getXRotRads() {
+        return mXRotRads;
+    }
+
+    public float getYRotRads() {
+        return mYRotRads;
+    }
+
+    public long getLastGyroTimestamp() {
+        return mLastGyroTimestamp;
+    }
+
+    /**
+     * @param out receives the orientation relative to the reference as w, x, y, z
+     */
+    public void getRelativeQuaternion(float[] out) {
+        out[0] = (float) (mRefW * mW + mRefX * mX + mRefY * mY + mRefZ * mZ);
+        out[1] = (float) (mRefW * mX - mRefX * mW - mRefY * mZ + mRefZ * mY);
+        out[2] = (float) (mRefW * mY + mRefX * mZ - mRefY * mW - mRefZ * mX);
+        out[3] = (float) (mRefW * mZ - mRefX * mY + mRefY * mX - mRefZ * mW);
+    }
+
+    /**
+     * @param out receives the gyro bias learned by accelerometer fusion, rad/s about x, y, z
+     */
+    public void getGyroBias(float[] out) {
+        out[0] = (float) mBiasX;
+        out[1] = (float) mBiasY;
+        out[2] = (float) mBiasZ;
+    }
+}
@@ -0,0 +1,300 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the geometry out of a Stanford PLY file, in any of the ascii, binary_little_endian or
+ * binary_big_endian encodings.
+ *
+ * Uses the vertex x, y, z and optional red, green, blue, alpha properties and the face
+ * vertex_indices (or vertex_index) list. Every other element and property is skipped. As with
+ * {@link ObjImporter}, polygons become clockwise triangle fans.
+ */
+public final class PlyImporter {
+
+    private static final int FORMAT_ASCII = 0;
+    private static final int FORMAT_BINARY_LE = 1;
+    private static final int FORMAT_BINARY_BE = 2;
+
+    private static class Property {
+        String name;
+        String type;
+        // only set for list properties
+        String countType;
+    }
+
+    private static class Element {
+        String name;
+        int count;
+        final List<Property> properties = new ArrayList<Property>();
+    }
+
+    private PlyImporter() {
+    }
+
+    public static MeshData read(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static MeshData read(InputStream source) throws IOException {
+        DataInputStream in = new DataInputStream(source);
+
+        if (!"ply".equals(readLine(in))) {
+            throw new IOException("not a PLY file");
+        }
+
+        int format = -1;
+        List<Element> elements = new ArrayList<Element>();
+        String line;
+        while (!"end_header".equals(line = readLine(in))) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields[0].equals("format")) {
+                if (fields[1].equals("ascii")) {
+                    format = FORMAT_ASCII;
+                } else if (fields[1].equals("binary_little_endian")) {
+                    format = FORMAT_BINARY_LE;
+                } else if (fields[1].equals("binary_big_endian")) {
+                    format = FORMAT_BINARY_BE;
+                } else {
+                    throw new IOException("unsupported PLY format " + fields[1]);
+                }
+            } else if (fields[0].equals("element")) {
+                Element element = new Element();
+                element.name = fields[1];
+                element.count = Integer.parseInt(fields[2]);
+                elements.add(element);
+            } else if (fields[0].equals("property")) {
+                if (elements.isEmpty()) {
+                    throw new IOException("property outside of an element");
+                }
+                Property property = new Property();
+                if (fields[1].equals("list")) {
+                    property.countType = fields[2];
+                    property.type = fields[3];
+                    property.name = fields[4];
+                } else {
+                    property.type = fields[1];
+                    property.name = fields[2];
+                }
+                elements.get(elements.size() - 1).properties.add(property);
+            }
+        }
+        if (format < 0) {
+            throw new IOException("PLY header has no format");
+        }
+
+        ValueReader values = format == FORMAT_ASCII ? new AsciiValueReader(in) : new BinaryValueReader(in, format == FORMAT_BINARY_LE);
+
+        float[] vertices = new float[0];
+        int[] indices = new int[0];
+        int indexCount = 0;
+        boolean hasColors = false;
+        int[] polygon = new int[16];
+
+        for (Element element : elements) {
+            if (element.name.equals("vertex")) {
+                vertices = new float[element.count * Mesh.FLOATS_PER_VERTEX];
+                int[] slots = new int[element.properties.size()];
+                float[] scales = new float[slots.length];
+                for (int p = 0; p < slots.length; p++) {
+                    Property property = element.properties.get(p);
+                    slots[p] = vertexSlot(property.name);
+                    // integer color channels are 0-255, float ones already 0-1
+                    scales[p] = slots[p] >= Mesh.POSITION_COMPONENTS && isIntegerType(property.type) ? 1.0f / 255.0f : 1.0f;
+                    if (slots[p] >= Mesh.POSITION_COMPONENTS && slots[p] < Mesh.POSITION_COMPONENTS + 3) {
+                        hasColors = true;
+                    }
+                }
+
+                for (int v = 0; v < element.count; v++) {
+                    int offset = v * Mesh.FLOATS_PER_VERTEX;
+                    vertices[offset + 3] = vertices[offset + 4] = vertices[offset + 5] = vertices[offset + 6] = 1.0f;
+                    for (int p = 0; p < slots.length; p++) {
+                        Property property = element.properties.get(p);
+                        if (property.countType != null) {
+                            skipList(values, property);
+                        } else if (slots[p] >= 0) {
+                            vertices[offset + slots[p]] = (float) values.read(property.type) * scales[p];
+                        } else {
+                            values.read(property.type);
+                        }
+                    }
+                }
+
+            } else if (element.name.equals("face")) {
+                indices = new int[element.count * 3];
+                int vertexCount = vertices.length / Mesh.FLOATS_PER_VERTEX;
+
+                for (int f = 0; f < element.count; f++) {
+                    for (Property property : element.properties) {
+                        boolean isIndexList = property.countType != null &&
+                                (property.name.equals("vertex_indices") || property.name.equals("vertex_index"));
+                        if (!isIndexList) {
+                            if (property.countType != null) {
+                                skipList(values, property);
+                            } else {
+                                values.read(property.type);
+                            }
+                            continue;
+                        }
+
+                        int corners = (int) values.read(property.countType);
+                        if (corners > polygon.length) {
+                            polygon = new int[corners];
+                        }
+                        for (int c = 0; c < corners; c++) {
+                            int index = (int) values.read(property.type);
+                            if (index < 0 || index >= vertexCount) {
+                                throw new IOException("face " + f + " references missing vertex " + index);
+                            }
+                            polygon[c] = index;
+                        }
+                        for (int i = 1; i + 1 < corners; i++) {
+                            if (indexCount + 3 > indices.length) {
+                                indices = Arrays.copyOf(indices, Math.max(16, indices.length * 2));
+                            }
+                            indices[indexCount++] = polygon[0];
+                            indices[indexCount++] = polygon[i + 1];
+                            indices[indexCount++] = polygon[i];
+                        }
+                    }
+                }
+
+            } else {
+                for (int i = 0; i < element.count; i++) {
+                    for (Property property : element.properties) {
+                        if (property.countType != null) {
+                            skipList(values, property);
+                        } else {
+                            values.read(property.type);
+                        }
+                    }
+                }
+            }
+        }
+
+        return new MeshData(vertices, Arrays.copyOf(indices, indexCount), hasColors);
+    }
+
+    private static int vertexSlot(String name) {
+        if (name.equals("x")) return 0;
+        if (name.equals("y")) return 1;
+        if (name.equals("z")) return 2;
+        if (name.equals("red") || name.equals("r")) return 3;
+        if (name.equals("green") || name.equals("g")) return 4;
+        if (name.equals("blue") || name.equals("b")) return 5;
+        if (name.equals("alpha") || name.equals("a")) return 6;
+        return -1;
+    }
+
+    private static boolean isIntegerType(String type) {
+        return !(type.equals("float") || type.equals("float32") || type.equals("double") || type.equals("float64"));
+    }
+
+    private static void skipList(ValueReader values, Property property) throws IOException {
+        int count = (int) values.read(property.countType);
+        for (int i = 0; i < count; i++) {
+            values.read(property.type);
+        }
+    }
+
+    private static String readLine(DataInputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new EOFException("unexpected end of PLY header");
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    private interface ValueReader {
+        double read(String type) throws IOException;
+    }
+
+    private static class BinaryValueReader implements ValueReader {
+        private final DataInputStream mIn;
+        private final boolean mLittleEndian;
+
+        BinaryValueReader(DataInputStream in, boolean littleEndian) {
+            mIn = in;
+            mLittleEndian = littleEndian;
+        }
+
+        @Override
+        public double read(String type) throws IOException {
+            if (type.equals("char") || type.equals("int8")) {
+                return mIn.readByte();
+            } else if (type.equals("uchar") || type.equals("uint8")) {
+                return mIn.readUnsignedByte();
+            } else if (type.equals("short") || type.equals("int16")) {
+                short value = mIn.readShort();
+                return mLittleEndian ? Short.reverseBytes(value) : value;
+            } else if (type.equals("ushort") || type.equals("uint16")) {
+                short value = mIn.readShort();
+                return (mLittleEndian ? Short.reverseBytes(value) : value) & 0xffff;
+            } else if (type.equals("int") || type.equals("int32")) {
+                int value = mIn.readInt();
+                return mLittleEndian ? Integer.reverseBytes(value) : value;
+            } else if (type.equals("uint") || type.equals("uint32")) {
+                int value = mIn.readInt();
+                return (mLittleEndian ? Integer.reverseBytes(value) : value) & 0xffffffffL;
+            } else if (type.equals("float") || type.equals("float32")) {
+                int bits = mIn.readInt();
+                return Float.intBitsToFloat(mLittleEndian ? Integer.reverseBytes(bits) : bits);
+            } else if (type.equals("double") || type.equals("float64")) {
+                long bits = mIn.readLong();
+                return Double.longBitsToDouble(mLittleEndian ? Long.reverseBytes(bits) : bits);
+            }
+            throw new IOException("unknown PLY property type " + type);
+        }
+    }
+
+    private static class AsciiValueReader implements ValueReader {
+        private final DataInputStream mIn;
+        private final StringBuilder mToken = new StringBuilder();
+
+        AsciiValueReader(DataInputStream in) {
+            mIn = in;
+        }
+
+        @Override
+        public double read(String type) throws IOException {
+            mToken.setLength(0);
+            int c;
+            do {
+                c = mIn.read();
+            } while (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+            while (c >= 0 && c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                mToken.append((char) c);
+                c = mIn.read();
+            }
+            if (mToken.length() == 0) {
+                throw new EOFException("unexpected end of PLY data");
+            }
+            try {
+                return Double.parseDouble(mToken.toString());
+            } catch (NumberFormatException e) {
+                throw new IOException("bad PLY value " + mToken);
+            }
+        }
+    }
+}
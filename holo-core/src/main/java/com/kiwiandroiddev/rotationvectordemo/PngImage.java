@@ -0,0 +1,282 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An ARGB image, top row first, that can be written to and read back from a PNG file. For
+ * saving {@link SoftwareRasterizer} frames and comparing them against golden images, without
+ * needing javax.imageio (which Android doesn't have) or android.graphics (which a desktop JVM
+ * doesn't).
+ *
+ * Writes 8-bit RGBA, or 8-bit grayscale for an image that's all opaque grays, such as a camera
+ * frame's luma, at a quarter of the size before compression. Reads 8-bit grayscale, RGB and
+ * RGBA without interlacing, which covers what this writes and what image editors save golden
+ * images as.
+ */
+public class PngImage {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    private static final int COLOR_TYPE_GRAY = 0;
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_RGBA = 6;
+
+    public final int width;
+    public final int height;
+    public final int[] argb;
+
+    public PngImage(int width, int height, int[] argb) {
+        if (argb.length != width * height) {
+            throw new IllegalArgumentException(argb.length + " pixels for a " + width + "x" + height + " image");
+        }
+        this.width = width;
+        this.height = height;
+        this.argb = argb;
+    }
+
+    public void write(File file) throws IOException {
+        final boolean gray = isOpaqueGray();
+        final int channels = gray ? 1 : 4;
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(height * (1 + width * channels));
+        byte[] row = new byte[1 + width * channels];
+        for (int y = 0; y < height; y++) {
+            // filter type 1, each byte less the one a pixel to its left, which compresses
+            // smooth and noisy images alike better than none
+            row[0] = 1;
+            for (int x = 0; x < width; x++) {
+                final int pixel = argb[y * width + x];
+                if (gray) {
+                    row[1 + x] = (byte) pixel;
+                    continue;
+                }
+                row[1 + x * 4] = (byte) (pixel >> 16);
+                row[2 + x * 4] = (byte) (pixel >> 8);
+                row[3 + x * 4] = (byte) pixel;
+                row[4 + x * 4] = (byte) (pixel >>> 24);
+            }
+            for (int i = row.length - 1; i > channels; i--) {
+                row[i] -= row[i - channels];
+            }
+            raw.write(row, 0, row.length);
+        }
+
+        Deflater deflater = new Deflater();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try {
+            deflater.setInput(raw.toByteArray());
+            deflater.finish();
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.write(SIGNATURE);
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+            DataOutputStream headerOut = new DataOutputStream(header);
+            headerOut.writeInt(width);
+            headerOut.writeInt(height);
+            headerOut.writeByte(8);
+            headerOut.writeByte(gray ? COLOR_TYPE_GRAY : COLOR_TYPE_RGBA);
+            // compression, filter and interlace methods
+            headerOut.writeByte(0);
+            headerOut.writeByte(0);
+            headerOut.writeByte(0);
+            writeChunk(out, "IHDR", header.toByteArray());
+            writeChunk(out, "IDAT", compressed.toByteArray());
+            writeChunk(out, "IEND", new byte[0]);
+        } finally {
+            out.close();
+        }
+    }
+
+    private boolean isOpaqueGray() {
+        for (int pixel : argb) {
+            final int blue = pixel & 0xff;
+            if (pixel >>> 24 != 0xff || ((pixel >> 16) & 0xff) != blue || ((pixel >> 8) & 0xff) != blue) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        out.writeInt(data.length);
+        out.write(typeBytes);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    public static PngImage read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static PngImage read(DataInputStream in) throws IOException {
+        byte[] signature = new byte[SIGNATURE.length];
+        in.readFully(signature);
+        for (int i = 0; i < SIGNATURE.length; i++) {
+            if (signature[i] != SIGNATURE[i]) {
+                throw new IOException("not a PNG file");
+            }
+        }
+
+        int width = 0;
+        int height = 0;
+        int colorType = -1;
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        while (true) {
+            final int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                throw new IOException("PNG file ends without an IEND chunk");
+            }
+            byte[] typeBytes = new byte[4];
+            in.readFully(typeBytes);
+            String type = new String(typeBytes, "US-ASCII");
+            byte[] data = new byte[length];
+            in.readFully(data);
+            in.readInt();
+
+            if (type.equals("IHDR")) {
+                DataInputStream header = new DataInputStream(new ByteArrayInputStream(data));
+                width = header.readInt();
+                height = header.readInt();
+                int bitDepth = header.readUnsignedByte();
+                colorType = header.readUnsignedByte();
+                header.readUnsignedByte();
+                header.readUnsignedByte();
+                int interlace = header.readUnsignedByte();
+                if (bitDepth != 8 || (colorType != COLOR_TYPE_GRAY && colorType != COLOR_TYPE_RGB
+                        && colorType != COLOR_TYPE_RGBA) || interlace != 0) {
+                    throw new IOException("unsupported PNG: bit depth " + bitDepth + ", color type " + colorType
+                            + ", interlace " + interlace);
+                }
+            } else if (type.equals("IDAT")) {
+                compressed.write(data);
+            } else if (type.equals("IEND")) {
+                break;
+            }
+        }
+        if (colorType < 0) {
+            throw new IOException("PNG file has no IHDR chunk");
+        }
+
+        final int channels = colorType == COLOR_TYPE_RGBA ? 4 : colorType == COLOR_TYPE_RGB ? 3 : 1;
+        final int stride = width * channels;
+        byte[] raw = inflate(compressed.toByteArray(), height * (1 + stride));
+
+        int[] argb = new int[width * height];
+        byte[] previous = new byte[stride];
+        byte[] current = new byte[stride];
+        for (int y = 0; y < height; y++) {
+            final int filter = raw[y * (1 + stride)];
+            System.arraycopy(raw, y * (1 + stride) + 1, current, 0, stride);
+            unfilter(filter, current, previous, channels);
+            for (int x = 0; x < width; x++) {
+                final int p = x * channels;
+                if (channels == 1) {
+                    final int luma = current[p] & 0xff;
+                    argb[y * width + x] = 0xff000000 | luma << 16 | luma << 8 | luma;
+                    continue;
+                }
+                final int alpha = channels == 4 ? current[p + 3] & 0xff : 0xff;
+                argb[y * width + x] = alpha << 24 | (current[p] & 0xff) << 16 | (current[p + 1] & 0xff) << 8
+                        | (current[p + 2] & 0xff);
+            }
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return new PngImage(width, height, argb);
+    }
+
+    private static byte[] inflate(byte[] compressed, int size) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[size];
+            int offset = 0;
+            while (offset < size) {
+                int count = inflater.inflate(raw, offset, size - offset);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("PNG image data is truncated");
+                }
+                offset += count;
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("PNG image data is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void unfilter(int filter, byte[] row, byte[] previous, int channels) throws IOException {
+        for (int i = 0; i < row.length; i++) {
+            final int left = i >= channels ? row[i - channels] & 0xff : 0;
+            final int up = previous[i] & 0xff;
+            final int upLeft = i >= channels ? previous[i - channels] & 0xff : 0;
+            final int predictor;
+            switch (filter) {
+                case 0:
+                    predictor = 0;
+                    break;
+                case 1:
+                    predictor = left;
+                    break;
+                case 2:
+                    predictor = up;
+                    break;
+                case 3:
+                    predictor = (left + up) >> 1;
+                    break;
+                case 4:
+                    predictor = paeth(left, up, upLeft);
+                    break;
+                default:
+                    throw new IOException("unknown PNG filter type " + filter);
+            }
+            row[i] = (byte) (row[i] + predictor);
+        }
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        final int p = left + up - upLeft;
+        final int pLeft = Math.abs(p - left);
+        final int pUp = Math.abs(p - up);
+        final int pUpLeft = Math.abs(p - upLeft);
+        if (pLeft <= pUp && pLeft <= pUpLeft) {
+            return left;
+        }
+        return pUp <= pUpLeft ? up : upLeft;
+    }
+}
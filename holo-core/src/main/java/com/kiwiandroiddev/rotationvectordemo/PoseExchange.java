@@ -0,0 +1,105 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands the latest pose from the sensor thread to the GL thread without locks or allocation.
+ *
+ * A triple buffer over three preallocated float arrays: the writer fills the back buffer and
+ * {@link #publish(long) publishes} it by swapping it with the middle buffer, the reader
+ * {@link #acquire() acquires} the newest published buffer by swapping the middle buffer with its
+ * front buffer. Each side only ever touches the buffer it owns, so the reader always sees every
+ * field of a pose from the same sensor event, no matter how the threads interleave.
+ *
+ * Supports exactly one writer thread and one reader thread. Readers of the same pose each need
+ * their own exchange, see {@link PoseIntegrator#addExchange}.
+ */
+public class PoseExchange {
+
+    // indices into a pose snapshot
+    public static final int X_ROT = 0;
+    public static final int Y_ROT = 1;
+    public static final int FRUSTUM_X_OFFSET = 2;
+    public static final int FRUSTUM_Y_OFFSET = 3;
+    public static final int FRUSTUM_Z_NEAR = 4;
+    public static final int RATE_X = 5;
+    public static final int RATE_Y = 6;
+    public static final int ACCEL_X = 7;
+    public static final int ACCEL_Y = 8;
+
+    public static final int SIZE = 9;
+
+    // middle buffer index in the low bits, set when it holds a pose the reader hasn't taken yet
+    private static final int DIRTY = 0x4;
+    private static final int INDEX_MASK = 0x3;
+
+    private final float[][] mPoses = new float[3][SIZE];
+    private final long[] mTimestamps = new long[3];
+    private final long[] mPublishedTimes = new long[3];
+
+    private final AtomicInteger mMiddle = new AtomicInteger(1);
+
+    // owned by the writer
+    private int mBack = 0;
+    // owned by the reader
+    private int mFront = 2;
+
+    public PoseExchange() {
+        for (float[] pose : mPoses) {
+            pose[FRUSTUM_Z_NEAR] = 1.0f;
+        }
+    }
+
+    /**
+     * Writer side: the buffer to fill in before the next {@link #publish(long)}. Its contents
+     * are undefined, so every field should be written.
+     */
+    public float[] beginWrite() {
+        return mPoses[mBack];
+    }
+
+    /**
+     * Writer side: make the pose written since {@link #beginWrite()} visible to the reader.
+     *
+     * @param timestampNs sensor timestamp the pose corresponds to
+     */
+    public void publish(long timestampNs) {
+        publish(timestampNs, 0);
+    }
+
+    /**
+     * @param publishedNs when the pose was published, for measuring how long it waits to be
+     * drawn
+     */
+    public void publish(long timestampNs, long publishedNs) {
+        mTimestamps[mBack] = timestampNs;
+        mPublishedTimes[mBack] = publishedNs;
+        mBack = mMiddle.getAndSet(mBack | DIRTY) & INDEX_MASK;
+    }
+
+    /**
+     * Reader side: the most recently published pose. Stays valid and unchanged until the next
+     * call to acquire().
+     */
+    public float[] acquire() {
+        if ((mMiddle.get() & DIRTY) != 0) {
+            mFront = mMiddle.getAndSet(mFront) & INDEX_MASK;
+        }
+        return mPoses[mFront];
+    }
+
+    /**
+     * Reader side: timestamp of the pose last returned by {@link #acquire()}.
+     */
+    public long getTimestamp() {
+        return mTimestamps[mFront];
+    }
+
+    /**
+     * Reader side: publish time of the pose last returned by {@link #acquire()}, or 0 if it
+     * wasn't given one.
+     */
+    public long getPublishedTime() {
+        return mPublishedTimes[mFront];
+    }
+}
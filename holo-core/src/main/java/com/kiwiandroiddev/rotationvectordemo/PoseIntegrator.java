@@ -0,0 +1,223 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Turns sensor events into viewer poses: tracks the rotation of the device with an
+ * {@link OrientationEngine}, works out the off-axis frustum that rotation implies, and publishes
+ * both to the GL threads through {@link PoseExchange}s, once per gyro event or once per batch of
+ * them (see {@link #beginBatch()}). An exchange only has room for one reader, so each renderer
+ * brings its own and the pose is published to all of them, see {@link #addExchange}.
+ *
+ * Free of Android dependencies so the same code that runs on the device can be driven from a
+ * recorded trace by the {@link TraceReplayer}.
+ */
+public class PoseIntegrator implements SensorSampleSink {
+
+    // indices into the array filled by frustumForRotation
+    public static final int FRUSTUM_X_OFFSET = 0;
+    public static final int FRUSTUM_Y_OFFSET = 1;
+    public static final int FRUSTUM_Z_NEAR = 2;
+
+    private static final PoseExchange[] NO_EXCHANGES = new PoseExchange[0];
+
+    private final PosePredictor mPosePredictor;
+    private final Clock mClock;
+
+    private final AtomicBoolean mPendingReset = new AtomicBoolean(false);
+
+    // only touched by the sensor thread
+    private final OrientationEngine mOrientationEngine = new OrientationEngine();
+    private final float[] mFrustum = new float[3];
+    private boolean mBatching;
+    // timestamp of the latest pose held back for the end of the batch, 0 for none
+    private long mBatchPoseTimestamp;
+    // timestamp of the latest pose published, 0 for none yet
+    private long mPublishedTimestamp;
+    // an array rather than a list so publishing doesn't allocate an iterator
+    private PoseExchange[] mExchanges = NO_EXCHANGES;
+
+    /**
+     * @param clock time base for the publish times handed to the exchanges, should be the one
+     * the frames are timed with
+     */
+    public PoseIntegrator(PosePredictor posePredictor, Clock clock) {
+        mPosePredictor = posePredictor;
+        mClock = clock;
+    }
+
+    /**
+     * For a single reader, publishing to poseExchange from the start.
+     */
+    public PoseIntegrator(PoseExchange poseExchange, PosePredictor posePredictor, Clock clock) {
+        this(posePredictor, clock);
+        mExchanges = new PoseExchange[]{poseExchange};
+    }
+
+    /**
+     * Starts publishing to exchange, handing it the latest pose straight away if there is one.
+     * Sensor thread, with exchange's reader not yet reading or happy to see the pose change
+     * under it.
+     */
+    public void addExchange(PoseExchange exchange) {
+        for (PoseExchange added : mExchanges) {
+            if (added == exchange) {
+                return;
+            }
+        }
+        final PoseExchange[] exchanges = new PoseExchange[mExchanges.length + 1];
+        System.arraycopy(mExchanges, 0, exchanges, 0, mExchanges.length);
+        exchanges[mExchanges.length] = exchange;
+        mExchanges = exchanges;
+        if (mPublishedTimestamp != 0) {
+            writePose(exchange, mPublishedTimestamp, mClock.nanoTime());
+        }
+    }
+
+    /**
+     * Stops publishing to exchange, which keeps the last pose it was given. Sensor thread.
+     */
+    public void removeExchange(PoseExchange exchange) {
+        for (int i = 0; i < mExchanges.length; i++) {
+            if (mExchanges[i] == exchange) {
+                final PoseExchange[] exchanges = new PoseExchange[mExchanges.length - 1];
+                System.arraycopy(mExchanges, 0, exchanges, 0, i);
+                System.arraycopy(mExchanges, i + 1, exchanges, i, exchanges.length - i);
+                mExchanges = exchanges;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Recenters the view on the next event, from any thread.
+     */
+    public void requestReset() {
+        mPendingReset.set(true);
+    }
+
+    /**
+     * Sensor thread, or before events start arriving. See {@link #getRequiredSensors}.
+     */
+    public void setFusion(OrientationEngine.Fusion fusion) {
+        mOrientationEngine.setFusion(fusion);
+    }
+
+    /**
+     * @return the sensor types that need to be delivered for the given fusion mode, see
+     * {@link SensorSampleSink}
+     */
+    public static int[] getRequiredSensors(OrientationEngine.Fusion fusion) {
+        switch (fusion) {
+            case ACCELEROMETER:
+                return new int[]{TYPE_GYROSCOPE, TYPE_ACCELEROMETER};
+            case ROTATION_VECTOR:
+                return new int[]{TYPE_GYROSCOPE, TYPE_ROTATION_VECTOR};
+            default:
+                return new int[]{TYPE_GYROSCOPE};
+        }
+    }
+
+    /**
+     * Holds back publishing until {@link #endBatch()}, so a batch of events worked through in
+     * one go publishes only the pose at its end. Every event is still integrated and fed to
+     * the predictor. Sensor thread.
+     */
+    public void beginBatch() {
+        mBatching = true;
+    }
+
+    /**
+     * Publishes the latest pose from the batch, if it changed the pose at all.
+     */
+    public void endBatch() {
+        mBatching = false;
+        if (mBatchPoseTimestamp != 0) {
+            publishPose(mBatchPoseTimestamp);
+            mBatchPoseTimestamp = 0;
+        }
+    }
+
+    public float getXRotRads() {
+        return mOrientationEngine.getXRotRads();
+    }
+
+    public float getYRotRads() {
+        return mOrientationEngine.getYRotRads();
+    }
+
+    @Override
+    public void onSensorSample(int sensorType, long timestampNs, float[] values, int valueCount, int accuracy) {
+        final boolean firstGyroSample = mOrientationEngine.getLastGyroTimestamp() == 0;
+        mOrientationEngine.onSensorSample(sensorType, timestampNs, values, valueCount, accuracy);
+        if (sensorType != TYPE_GYROSCOPE) {
+            return;
+        }
+
+        if (mPendingReset.getAndSet(false)) {
+            mOrientationEngine.reset();
+            mPosePredictor.reset();
+            onPoseChanged(timestampNs);
+        }
+
+        if (!firstGyroSample) {
+            mPosePredictor.addSample(timestampNs, values[0], values[1]);
+            onPoseChanged(timestampNs);
+        }
+    }
+
+    /**
+     * The frustum the viewer sees through the screen at the given device rotation.
+     *
+     * @param out receives the frustum's x and y offsets and near plane distance, see
+     * {@link #FRUSTUM_X_OFFSET}
+     */
+    public static void frustumForRotation(float xRotRads, float yRotRads, float[] out) {
+        // shorten distance from observer to projection place as it is rotated.
+        // distance from observer to center of viewport should remain constant
+        // as a consequence of translating it
+        out[FRUSTUM_Z_NEAR] = FastMath.cos(yRotRads);
+
+        // TODO include x rotation in this calculation
+
+        // translate the viewport along its plane. This has the effect of distorting
+        // the view more as the device screen is rotated.
+        out[FRUSTUM_Y_OFFSET] = FastMath.sin(xRotRads);
+        out[FRUSTUM_X_OFFSET] = FastMath.sin(yRotRads);
+    }
+
+    private void onPoseChanged(long timestampNs) {
+        if (mBatching) {
+            mBatchPoseTimestamp = timestampNs;
+        } else {
+            publishPose(timestampNs);
+        }
+    }
+
+    private void publishPose(long timestampNs) {
+        mPublishedTimestamp = timestampNs;
+        final long publishedNs = mClock.nanoTime();
+        final PoseExchange[] exchanges = mExchanges;
+        for (int i = 0; i < exchanges.length; i++) {
+            writePose(exchanges[i], timestampNs, publishedNs);
+        }
+    }
+
+    private void writePose(PoseExchange exchange, long timestampNs, long publishedNs) {
+        final float xRotRads = mOrientationEngine.getXRotRads();
+        final float yRotRads = mOrientationEngine.getYRotRads();
+        frustumForRotation(xRotRads, yRotRads, mFrustum);
+
+        float[] pose = exchange.beginWrite();
+        pose[PoseExchange.X_ROT] = xRotRads;
+        pose[PoseExchange.Y_ROT] = yRotRads;
+        pose[PoseExchange.FRUSTUM_X_OFFSET] = mFrustum[FRUSTUM_X_OFFSET];
+        pose[PoseExchange.FRUSTUM_Y_OFFSET] = mFrustum[FRUSTUM_Y_OFFSET];
+        pose[PoseExchange.FRUSTUM_Z_NEAR] = mFrustum[FRUSTUM_Z_NEAR];
+        pose[PoseExchange.RATE_X] = mPosePredictor.getRate(PosePredictor.AXIS_X);
+        pose[PoseExchange.RATE_Y] = mPosePredictor.getRate(PosePredictor.AXIS_Y);
+        pose[PoseExchange.ACCEL_X] = mPosePredictor.getAcceleration(PosePredictor.AXIS_X);
+        pose[PoseExchange.ACCEL_Y] = mPosePredictor.getAcceleration(PosePredictor.AXIS_Y);
+        exchange.publish(timestampNs, publishedNs);
+    }
+}
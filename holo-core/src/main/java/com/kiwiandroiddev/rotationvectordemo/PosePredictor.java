@@ -0,0 +1,283 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Extrapolates the device rotation forward to the time a frame will actually be displayed,
+ * to hide the lag between the gyroscope reporting a rotation and the scene reflecting it.
+ *
+ * Keeps a short ring buffer of timestamped angular velocities (as reported by the gyroscope,
+ * about the device's X and Y axes) and predicts how much further the device will have turned
+ * by a given time, using one of a few selectable {@link Model motion models}.
+ *
+ * Has no Android dependencies so it can be run off-device against recorded gyro traces,
+ * see PredictionErrorReport.
+ *
+ * Not thread-safe: samples should be added and predictions made from the same thread, or the
+ * caller should hand the {@link #getRate(int) rate} and {@link #getAcceleration(int) acceleration}
+ * estimates across threads itself and use {@link #extrapolate(float, float, float)}.
+ */
+public class PosePredictor {
+
+    public enum Model {
+        /** assume the device keeps turning at the last reported rate */
+        CONSTANT_VELOCITY,
+        /** fit the rate of change of angular velocity over a short window and extrapolate it */
+        CONSTANT_ACCELERATION,
+        /** per-axis Kalman filter over angular velocity and acceleration */
+        KALMAN
+    }
+
+    public static final int AXIS_X = 0;
+    public static final int AXIS_Y = 1;
+
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private static final float NS2S = 1.0f / 1000000000.0f;
+
+    // a noisy acceleration estimate extrapolated much further than a few frames does more harm
+    // than good, so predictions are clamped to this lookahead
+    private static final float MAX_LOOKAHEAD_S = 0.1f;
+
+    // samples older than this (relative to the newest) are ignored when fitting acceleration
+    private static final long ACCEL_WINDOW_NS = 40000000L;
+
+    // gaps longer than this between samples (e.g. sensor paused) restart the model
+    private static final long MAX_SAMPLE_GAP_NS = 200000000L;
+
+    // Kalman tuning: spectral density of angular jerk (rad^2/s^5) and gyro rate noise variance (rad^2/s^2)
+    private static final float KALMAN_JERK_NOISE = 2000.0f;
+    private static final float KALMAN_RATE_NOISE = 0.0004f;
+
+    private final long[] mTimestamps;
+    private final float[] mRatesX;
+    private final float[] mRatesY;
+    private int mHead = -1;
+    private int mCount = 0;
+
+    private Model mModel = Model.CONSTANT_VELOCITY;
+
+    private final float[] mRate = new float[2];
+    private final float[] mAccel = new float[2];
+
+    // Kalman state is (rate, acceleration) per axis, with a 2x2 covariance stored row-major
+    private final float[] mKalmanCovX = new float[4];
+    private final float[] mKalmanCovY = new float[4];
+
+    public PosePredictor() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PosePredictor(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2");
+        }
+        mTimestamps = new long[capacity];
+        mRatesX = new float[capacity];
+        mRatesY = new float[capacity];
+    }
+
+    public Model getModel() {
+        return mModel;
+    }
+
+    public void setModel(Model model) {
+        if (model != mModel) {
+            mModel = model;
+            reset();
+        }
+    }
+
+    /**
+     * Forget all samples, e.g. when the viewer position is reset or the sensor is restarted.
+     */
+    public void reset() {
+        mHead = -1;
+        mCount = 0;
+        mRate[AXIS_X] = mRate[AXIS_Y] = 0.0f;
+        mAccel[AXIS_X] = mAccel[AXIS_Y] = 0.0f;
+    }
+
+    /**
+     * @param timestampNs sensor event timestamp
+     * @param rateX angular velocity about the X axis in rad/s
+     * @param rateY angular velocity about the Y axis in rad/s
+     */
+    public void addSample(long timestampNs, float rateX, float rateY) {
+        if (mCount > 0) {
+            long gap = timestampNs - mTimestamps[mHead];
+            if (gap <= 0) {
+                // duplicate or out-of-order event, nothing sensible to learn from it
+                return;
+            }
+            if (gap > MAX_SAMPLE_GAP_NS) {
+                reset();
+            }
+        }
+
+        final float dT = mCount > 0 ? (timestampNs - mTimestamps[mHead]) * NS2S : 0.0f;
+
+        mHead = (mHead + 1) % mTimestamps.length;
+        mTimestamps[mHead] = timestampNs;
+        mRatesX[mHead] = rateX;
+        mRatesY[mHead] = rateY;
+        if (mCount < mTimestamps.length) {
+            mCount++;
+        }
+
+        switch (mModel) {
+            case CONSTANT_VELOCITY:
+                mRate[AXIS_X] = rateX;
+                mRate[AXIS_Y] = rateY;
+                mAccel[AXIS_X] = mAccel[AXIS_Y] = 0.0f;
+                break;
+            case CONSTANT_ACCELERATION:
+                mRate[AXIS_X] = rateX;
+                mRate[AXIS_Y] = rateY;
+                fitAcceleration();
+                break;
+            case KALMAN:
+                if (mCount == 1) {
+                    initKalman(mKalmanCovX, AXIS_X, rateX);
+                    initKalman(mKalmanCovY, AXIS_Y, rateY);
+                } else {
+                    kalmanStep(mKalmanCovX, AXIS_X, dT, rateX);
+                    kalmanStep(mKalmanCovY, AXIS_Y, dT, rateY);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Predicts how much further the device will have rotated between the newest sample and
+     * the given time.
+     *
+     * @param targetTimeNs time to predict for, in the same time base as the sensor timestamps
+     * @param outDelta receives the extra rotation in radians about the X and Y axes
+     * @return false if there are no samples to predict from, in which case outDelta is zeroed
+     */
+    public boolean predictDelta(long targetTimeNs, float[] outDelta) {
+        if (mCount == 0) {
+            outDelta[AXIS_X] = outDelta[AXIS_Y] = 0.0f;
+            return false;
+        }
+
+        float dT = (targetTimeNs - mTimestamps[mHead]) * NS2S;
+        outDelta[AXIS_X] = extrapolate(mRate[AXIS_X], mAccel[AXIS_X], dT);
+        outDelta[AXIS_Y] = extrapolate(mRate[AXIS_Y], mAccel[AXIS_Y], dT);
+        return true;
+    }
+
+    /**
+     * @return timestamp of the newest sample, or 0 if there isn't one
+     */
+    public long getLastTimestamp() {
+        return mCount > 0 ? mTimestamps[mHead] : 0L;
+    }
+
+    /**
+     * @return current angular velocity estimate about the given axis in rad/s
+     */
+    public float getRate(int axis) {
+        return mRate[axis];
+    }
+
+    /**
+     * @return current angular acceleration estimate about the given axis in rad/s^2
+     * (always 0 for {@link Model#CONSTANT_VELOCITY})
+     */
+    public float getAcceleration(int axis) {
+        return mAccel[axis];
+    }
+
+    /**
+     * Rotation accumulated after dT seconds at the given rate and acceleration. dT is clamped to
+     * [0, {@link #MAX_LOOKAHEAD_S}].
+     */
+    public static float extrapolate(float rate, float accel, float dT) {
+        if (dT <= 0.0f) {
+            return 0.0f;
+        }
+        if (dT > MAX_LOOKAHEAD_S) {
+            dT = MAX_LOOKAHEAD_S;
+        }
+        return rate * dT + 0.5f * accel * dT * dT;
+    }
+
+    /**
+     * Least-squares slope of angular velocity against time over the samples in the last
+     * {@link #ACCEL_WINDOW_NS}.
+     */
+    private void fitAcceleration() {
+        final long newest = mTimestamps[mHead];
+        final int capacity = mTimestamps.length;
+
+        int n = 0;
+        float sumT = 0, sumTT = 0, sumX = 0, sumTX = 0, sumY = 0, sumTY = 0;
+        for (int i = 0, index = mHead; i < mCount; i++, index = (index - 1 + capacity) % capacity) {
+            long age = newest - mTimestamps[index];
+            if (age > ACCEL_WINDOW_NS) {
+                break;
+            }
+            // time relative to the newest sample keeps the sums small enough for float precision
+            float t = -age * NS2S;
+            sumT += t;
+            sumTT += t * t;
+            sumX += mRatesX[index];
+            sumTX += t * mRatesX[index];
+            sumY += mRatesY[index];
+            sumTY += t * mRatesY[index];
+            n++;
+        }
+
+        float denominator = n * sumTT - sumT * sumT;
+        if (n < 3 || denominator <= 0.0f) {
+            mAccel[AXIS_X] = mAccel[AXIS_Y] = 0.0f;
+            return;
+        }
+        mAccel[AXIS_X] = (n * sumTX - sumT * sumX) / denominator;
+        mAccel[AXIS_Y] = (n * sumTY - sumT * sumY) / denominator;
+    }
+
+    private void initKalman(float[] cov, int axis, float rate) {
+        mRate[axis] = rate;
+        mAccel[axis] = 0.0f;
+        cov[0] = KALMAN_RATE_NOISE;
+        cov[1] = 0.0f;
+        cov[2] = 0.0f;
+        cov[3] = 100.0f;
+    }
+
+    /**
+     * One predict/update cycle of a constant-acceleration Kalman filter whose only measurement
+     * is the gyro rate.
+     */
+    private void kalmanStep(float[] cov, int axis, float dT, float measuredRate) {
+        // predict: rate += accel * dT
+        float rate = mRate[axis] + mAccel[axis] * dT;
+        float accel = mAccel[axis];
+
+        // P = F P F^T + Q, with F = [1 dT; 0 1] and Q from white-noise jerk
+        float p00 = cov[0] + dT * (cov[2] + cov[1]) + dT * dT * cov[3];
+        float p01 = cov[1] + dT * cov[3];
+        float p10 = cov[2] + dT * cov[3];
+        float p11 = cov[3];
+        float dT2 = dT * dT;
+        p00 += KALMAN_JERK_NOISE * dT2 * dT / 3.0f;
+        p01 += KALMAN_JERK_NOISE * dT2 / 2.0f;
+        p10 += KALMAN_JERK_NOISE * dT2 / 2.0f;
+        p11 += KALMAN_JERK_NOISE * dT;
+
+        // update with H = [1 0]
+        float s = p00 + KALMAN_RATE_NOISE;
+        float k0 = p00 / s;
+        float k1 = p10 / s;
+        float innovation = measuredRate - rate;
+
+        mRate[axis] = rate + k0 * innovation;
+        mAccel[axis] = accel + k1 * innovation;
+
+        cov[0] = (1.0f - k0) * p00;
+        cov[1] = (1.0f - k0) * p01;
+        cov[2] = p10 - k1 * p00;
+        cov[3] = p11 - k1 * p01;
+    }
+}
@@ -0,0 +1,227 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.Locale;
+
+/**
+ * Decides when a frame is worth drawing, for rendering on demand instead of continuously.
+ *
+ * Fed every pose the {@link PoseIntegrator} publishes, it asks for a frame only when the pose
+ * has moved more than an angular epsilon from the one last drawn. Separately it watches the
+ * gyro rate to tell when the device has been put down: once the smoothed rate has stayed below
+ * the idle threshold for the idle delay it goes {@link State#IDLE}, so the caller can slow the
+ * sensors down, and it only goes back to {@link State#ACTIVE} when the rate rises above the
+ * higher wake threshold. The gap between the two thresholds and the delay keep sensor noise and
+ * small hand tremors from flipping it back and forth.
+ *
+ * Requests closer together than a frame interval would be coalesced into one frame by the
+ * display anyway, so a pose that moves before the last frame's interval is up waits for the
+ * next pose after it, which then gets drawn.
+ *
+ * Frames are still requested while idle if the pose creeps past the epsilon, e.g. from gyro
+ * bias, so the picture never goes stale. Keeps count of the frames requested in each state for
+ * {@link #getFramesPerMinute}.
+ *
+ * Free of Android dependencies so it can be driven from a recorded trace, see TraceTool.
+ * Not thread safe, everything should be called from the thread sensor events arrive on.
+ */
+public class RenderDemandController {
+
+    public enum State {
+        ACTIVE,
+        IDLE
+    }
+
+    public interface Listener {
+        /**
+         * A frame should be drawn with the latest pose.
+         */
+        void onRenderRequested();
+
+        /**
+         * The device has gone idle or started moving again.
+         */
+        void onStateChanged(State state);
+    }
+
+    // about a pixel of frustum shift at 1080 pixels high
+    public static final float DEFAULT_EPSILON_RADS = (float) Math.toRadians(0.1);
+
+    // gyro rates in rad/s. A phone lying on a table reads well under the idle rate, one held in
+    // a hand rarely stays under it for long
+    public static final float DEFAULT_IDLE_RATE = 0.05f;
+    public static final float DEFAULT_WAKE_RATE = 0.15f;
+    public static final long DEFAULT_IDLE_DELAY_NS = 2000000000L;
+
+    public static final long DEFAULT_FRAME_INTERVAL_NS = 16666667L;
+
+    // time constant of the gyro rate smoothing, long enough to average out noise and short
+    // enough that waking up isn't noticeably late
+    private static final long RATE_SMOOTHING_NS = 100000000L;
+
+    private static final double NS_PER_MINUTE = 60e9;
+
+    private final Listener mListener;
+
+    private float mEpsilonRads = DEFAULT_EPSILON_RADS;
+    private float mIdleRate = DEFAULT_IDLE_RATE;
+    private float mWakeRate = DEFAULT_WAKE_RATE;
+    private long mIdleDelayNs = DEFAULT_IDLE_DELAY_NS;
+    private long mFrameIntervalNs = DEFAULT_FRAME_INTERVAL_NS;
+
+    private State mState = State.ACTIVE;
+    private long mLastTimestampNs;
+    private float mSmoothedRate;
+    private long mStillSinceNs;
+    private boolean mRenderPending = true;
+    private float mRenderedXRotRads;
+    private float mRenderedYRotRads;
+    private long mRenderedTimestampNs;
+
+    // indexed by State.ordinal()
+    private final long[] mFrameCounts = new long[State.values().length];
+    private final long[] mTimeInStateNs = new long[State.values().length];
+
+    public RenderDemandController(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @param epsilonRads how far either rotation has to move before it's worth another frame
+     */
+    public void setEpsilon(float epsilonRads) {
+        mEpsilonRads = Math.max(0.0f, epsilonRads);
+    }
+
+    public float getEpsilon() {
+        return mEpsilonRads;
+    }
+
+    /**
+     * @param idleRate gyro rate in rad/s the device has to stay under to go idle
+     * @param wakeRate gyro rate in rad/s that wakes it up again, at least the idle rate
+     * @param idleDelayNs how long the rate has to stay under idleRate before going idle
+     */
+    public void setIdleThresholds(float idleRate, float wakeRate, long idleDelayNs) {
+        mIdleRate = idleRate;
+        mWakeRate = Math.max(idleRate, wakeRate);
+        mIdleDelayNs = idleDelayNs;
+    }
+
+    /**
+     * @param frameIntervalNs the display's refresh period, the closest frames can be together
+     */
+    public void setFrameInterval(long frameIntervalNs) {
+        mFrameIntervalNs = frameIntervalNs;
+    }
+
+    public State getState() {
+        return mState;
+    }
+
+    /**
+     * Starts over as active with a frame due on the next pose, without telling the listener.
+     * For when sensor delivery restarts, e.g. on resume. Counts are kept, see
+     * {@link #resetCounts()}.
+     */
+    public void reset() {
+        mState = State.ACTIVE;
+        mLastTimestampNs = 0;
+        mSmoothedRate = 0.0f;
+        mStillSinceNs = 0;
+        mRenderPending = true;
+        mRenderedTimestampNs = 0;
+    }
+
+    /**
+     * Asks for a frame on the next pose whether or not it has moved, for when something other
+     * than the pose has changed what's on screen.
+     */
+    public void invalidate() {
+        mRenderPending = true;
+    }
+
+    /**
+     * Call for each pose published, with the gyro reading it came from.
+     */
+    public void onPose(long timestampNs, float xRotRads, float yRotRads, float rateX, float rateY, float rateZ) {
+        final float rate = (float) Math.sqrt(rateX * rateX + rateY * rateY + rateZ * rateZ);
+        if (mLastTimestampNs == 0) {
+            mSmoothedRate = rate;
+        } else if (timestampNs > mLastTimestampNs) {
+            final long dT = timestampNs - mLastTimestampNs;
+            mTimeInStateNs[mState.ordinal()] += dT;
+            mSmoothedRate += (rate - mSmoothedRate) * Math.min(1.0f, (float) dT / RATE_SMOOTHING_NS);
+        }
+        mLastTimestampNs = timestampNs;
+
+        final boolean frameDue = mRenderedTimestampNs == 0
+                || timestampNs - mRenderedTimestampNs >= mFrameIntervalNs;
+        if (frameDue && (mRenderPending
+                || Math.abs(xRotRads - mRenderedXRotRads) > mEpsilonRads
+                || Math.abs(yRotRads - mRenderedYRotRads) > mEpsilonRads)) {
+            mRenderPending = false;
+            mRenderedXRotRads = xRotRads;
+            mRenderedYRotRads = yRotRads;
+            mRenderedTimestampNs = timestampNs;
+            mFrameCounts[mState.ordinal()]++;
+            mListener.onRenderRequested();
+        }
+
+        if (mState == State.ACTIVE) {
+            if (mSmoothedRate >= mIdleRate) {
+                mStillSinceNs = 0;
+            } else if (mStillSinceNs == 0) {
+                mStillSinceNs = timestampNs;
+            } else if (timestampNs - mStillSinceNs >= mIdleDelayNs) {
+                setState(State.IDLE);
+            }
+        } else if (mSmoothedRate > mWakeRate) {
+            mStillSinceNs = 0;
+            setState(State.ACTIVE);
+        }
+    }
+
+    private void setState(State state) {
+        mState = state;
+        mListener.onStateChanged(state);
+    }
+
+    public void resetCounts() {
+        for (int i = 0; i < mFrameCounts.length; i++) {
+            mFrameCounts[i] = 0;
+            mTimeInStateNs[i] = 0;
+        }
+    }
+
+    /**
+     * @return frames requested while in the given state
+     */
+    public long getFrameCount(State state) {
+        return mFrameCounts[state.ordinal()];
+    }
+
+    /**
+     * @return sensor time spent in the given state
+     */
+    public long getTimeInState(State state) {
+        return mTimeInStateNs[state.ordinal()];
+    }
+
+    /**
+     * @return average frames requested per minute spent in the given state, 0 if it's never
+     * been in it
+     */
+    public double getFramesPerMinute(State state) {
+        final long timeNs = mTimeInStateNs[state.ordinal()];
+        return timeNs > 0 ? mFrameCounts[state.ordinal()] * NS_PER_MINUTE / timeNs : 0.0;
+    }
+
+    public String formatSummary() {
+        StringBuilder builder = new StringBuilder("render on demand, ").append(mState.name().toLowerCase(Locale.US));
+        for (State state : State.values()) {
+            builder.append(String.format(Locale.US, "\n  %-6s %7.0f frames/min over %6.1f s",
+                    state.name().toLowerCase(Locale.US), getFramesPerMinute(state), getTimeInState(state) / 1e9));
+        }
+        return builder.toString();
+    }
+}
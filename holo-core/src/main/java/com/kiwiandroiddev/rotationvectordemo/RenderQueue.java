@@ -0,0 +1,178 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.Arrays;
+
+/**
+ * The nodes that survived culling this frame, put in the order that's cheapest to draw them in.
+ *
+ * Draws are grouped by mesh, the one piece of state the backends change between draws (the
+ * GLES2 one rebinds buffers and attribute pointers, the GL10 one re-specifies its arrays), and
+ * within a mesh go front to back so the depth test throws out hidden fragments early. The
+ * order only depends on the scene and the pose, not on how the scene graph happens to be
+ * built, and sorting is a single primitive sort of packed keys.
+ *
+ * Allocation-free after warm-up: the queue's arrays grow, by doubling, to the most nodes ever
+ * added in one frame, unless they're sized for the scene up front with
+ * {@link #ensureCapacity}. Past a few hundred nodes Arrays.sort may still take a temporary
+ * array for input that's already in long ordered runs.
+ *
+ * Each run of the same mesh goes to the backend in one {@link SceneRenderer#drawInstances}
+ * call, with its matrices and colors packed back to back in primitive arrays, so backends that
+ * can instance can upload them as they are.
+ */
+public class RenderQueue {
+
+    // low bits of a sort key, the item's position in the queue
+    private static final int INDEX_BITS = 20;
+    private static final int MAX_ITEMS = 1 << INDEX_BITS;
+
+    // next bits up, quantized eye space depth of the node's bounding sphere center. zNear is
+    // never more than 1 so this covers the whole frustum
+    private static final int DEPTH_BITS = 12;
+    private static final int DEPTH_BUCKETS = 1 << DEPTH_BITS;
+    private static final float MAX_SORT_DEPTH = FrameMatrices.FRUSTUM_DEPTH + 1.0f;
+
+    // in the order they were added
+    private SceneNode[] mNodes = new SceneNode[64];
+    private Mesh[] mNodeMeshes = new Mesh[64];
+    private long[] mKeys = new long[64];
+    private int mCount;
+
+    // in drawing order, once sorted
+    private Mesh[] mMeshes = new Mesh[64];
+    private float[] mModelViews = new float[64 * 16];
+    private float[] mModelViewProjections = new float[64 * 16];
+    private float[] mColors = new float[64 * 4];
+
+    private final float[] mModelView = new float[16];
+
+    private int mMeshChanges;
+    private int mDrawCalls;
+
+    public void clear() {
+        // don't hang on to nodes that may have since been removed from the scene
+        Arrays.fill(mNodes, 0, mCount, null);
+        Arrays.fill(mNodeMeshes, 0, mCount, null);
+        Arrays.fill(mMeshes, 0, mCount, null);
+        mCount = 0;
+    }
+
+    public void add(SceneNode node) {
+        if (mCount == MAX_ITEMS) {
+            throw new IllegalStateException("more than " + MAX_ITEMS + " nodes visible");
+        }
+        if (mCount == mNodes.length) {
+            grow(Math.min(mNodes.length * 2, MAX_ITEMS));
+        }
+        mNodes[mCount++] = node;
+    }
+
+    /**
+     * Makes room for the given number of nodes now rather than while frames are being drawn,
+     * e.g. every node with a model in a newly built scene.
+     */
+    public void ensureCapacity(int nodes) {
+        if (nodes > mNodes.length) {
+            grow(Math.min(nodes, MAX_ITEMS));
+        }
+    }
+
+    private void grow(int capacity) {
+        mNodes = Arrays.copyOf(mNodes, capacity);
+        mNodeMeshes = Arrays.copyOf(mNodeMeshes, capacity);
+        mKeys = Arrays.copyOf(mKeys, capacity);
+        mMeshes = Arrays.copyOf(mMeshes, capacity);
+        mModelViews = Arrays.copyOf(mModelViews, capacity * 16);
+        mModelViewProjections = Arrays.copyOf(mModelViewProjections, capacity * 16);
+        mColors = Arrays.copyOf(mColors, capacity * 4);
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Works out each node's level of detail for this frame and sorts them into drawing order.
+     * Follow with {@link #project} before drawing.
+     */
+    public void sort(FrameMatrices frame, int viewportWidth, int viewportHeight) {
+        final float[] view = frame.modelView;
+        for (int i = 0; i < mCount; i++) {
+            final SceneNode node = mNodes[i];
+            final LodChain model = node.getModel();
+            final LodSelector lodSelector = node.getLodSelector();
+            int level = 0;
+            if (lodSelector != null) {
+                MatrixMath.multiply(mModelView, view, node.getWorldMatrix());
+                level = lodSelector.select(model, frame.projection, mModelView, viewportWidth, viewportHeight);
+            }
+            final Mesh mesh = model.getLevel(level);
+            mNodeMeshes[i] = mesh;
+
+            final float depth = -(view[2] * node.getBoundsX() + view[6] * node.getBoundsY()
+                    + view[10] * node.getBoundsZ() + view[14]);
+            final int depthBucket = (int) Math.max(0.0f, Math.min(DEPTH_BUCKETS - 1,
+                    depth / MAX_SORT_DEPTH * DEPTH_BUCKETS));
+
+            // identity hash codes can collide, which only costs an extra rebind
+            mKeys[i] = (System.identityHashCode(mesh) & 0xffffffffL) << (DEPTH_BITS + INDEX_BITS)
+                    | (long) depthBucket << INDEX_BITS | i;
+        }
+        Arrays.sort(mKeys, 0, mCount);
+
+        for (int position = 0; position < mCount; position++) {
+            final int index = (int) (mKeys[position] & (MAX_ITEMS - 1));
+            mMeshes[position] = mNodeMeshes[index];
+            System.arraycopy(mNodes[index].getColor(), 0, mColors, position * 4, 4);
+        }
+    }
+
+    /**
+     * Lays out the sorted nodes' matrices for drawing with the given frame's. Drawing the same
+     * queue into more than one view, like the eyes of a stereo frame, only needs this redone
+     * between views; the culling, levels of detail and order carry over.
+     */
+    public void project(FrameMatrices frame) {
+        for (int position = 0; position < mCount; position++) {
+            final float[] world = mNodes[(int) (mKeys[position] & (MAX_ITEMS - 1))].getWorldMatrix();
+            MatrixMath.multiply(mModelViews, position * 16, frame.modelView, world);
+            MatrixMath.multiply(mModelViewProjections, position * 16, frame.modelViewProjection, world);
+        }
+    }
+
+    /**
+     * Draws the queue in the order {@link #sort} left it in, with the matrices from the last
+     * {@link #project}.
+     */
+    public void draw(SceneRenderer renderer) {
+        mMeshChanges = 0;
+        mDrawCalls = 0;
+        int first = 0;
+        while (first < mCount) {
+            final Mesh mesh = mMeshes[first];
+            int end = first + 1;
+            while (end < mCount && mMeshes[end] == mesh) {
+                end++;
+            }
+            mMeshChanges++;
+            mDrawCalls += renderer.drawInstances(mesh, mModelViews, mModelViewProjections, mColors,
+                    first, end - first);
+            first = end;
+        }
+    }
+
+    /**
+     * @return how many times the last draw switched from one mesh to another, including
+     * the first
+     */
+    public int getMeshChanges() {
+        return mMeshChanges;
+    }
+
+    /**
+     * @return how many draw calls the backend made for the last draw, of one view
+     */
+    public int getDrawCalls() {
+        return mDrawCalls;
+    }
+}
@@ -0,0 +1,176 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.Arrays;
+
+/**
+ * Picks the fraction of the surface's resolution to render at so frames keep to a target time,
+ * from how long recent frames took to draw: from the start of the frame until the GPU has
+ * finished it, leaving out any time spent waiting, for vsync or anything else.
+ *
+ * How much a step up will cost isn't something the frame times can say, GPUs clock down when
+ * they have time to spare. So the controller works on windows of frames: a window that's
+ * clearly over the target scales down straight away, by about what it would take to fit if the
+ * frame is fill bound; a run of windows on target earns a small step up to probe for headroom.
+ * Windows in between leave the scale alone, and the measurements start over after every change
+ * so a window never mixes two scales.
+ *
+ * A probe that has to be undone straight away means the scale is sitting just under what the
+ * device can do, so the wait before the next probe doubles each time that happens. Without that
+ * the scale would step up and back down every couple of seconds forever; with it the probes
+ * fade out, and a probe that sticks halves the wait again.
+ *
+ * Scales are multiples of {@link #SCALE_STEP}, so the render target is only ever reallocated
+ * for a real change. Pure Java and single threaded, the renderer feeds it from the GL thread.
+ */
+public class ResolutionScaleController {
+
+    public static final float SCALE_STEP = 0.05f;
+
+    // frames per decision, about half a second at 60Hz
+    static final int WINDOW_FRAMES = 30;
+
+    // judged by the frame at this fraction of the way up the window, so the odd hitch doesn't
+    // cost resolution
+    private static final float PERCENTILE = 0.8f;
+
+    // over the target the frames are missing vsync and it scales down, under this fraction of
+    // it counts as on target with room to spare; between the two nothing changes
+    private static final float DOWN_THRESHOLD = 1.0f;
+    private static final float ON_TARGET_THRESHOLD = 0.85f;
+
+    // a step down never goes below this fraction of the current scale, whatever the load
+    private static final float MAX_DOWN_FACTOR = 0.7f;
+
+    // windows on target before probing upwards, and how far failed probes can push that out
+    private static final int MIN_PROBE_DELAY_WINDOWS = 2;
+    private static final int MAX_PROBE_DELAY_WINDOWS = 64;
+
+    // anything longer was the app being paused mid-frame, not a slow frame
+    private static final long MAX_FRAME_NS = 250000000L;
+
+    // a frame starting this long after the one before follows an idle stretch, e.g. with render
+    // on demand, and takes longer than it would have with everything warmed up
+    static final long IDLE_GAP_NS = 100000000L;
+
+    private float mMinScale = 0.5f;
+    private float mMaxScale = 1.0f;
+    private long mTargetFrameNs = 16666667L;
+
+    private float mScale = 1.0f;
+    private final long[] mWindow = new long[WINDOW_FRAMES];
+    private final long[] mSorted = new long[WINDOW_FRAMES];
+    private int mWindowCount;
+    private long mLastFrameStartNs;
+    private int mWindowsOnTarget;
+    private int mProbeDelayWindows = MIN_PROBE_DELAY_WINDOWS;
+    private boolean mProbing;
+    private int mChanges;
+
+    /**
+     * Sets the limits and target and starts again from the largest scale.
+     */
+    public void configure(float minScale, float maxScale, long targetFrameNs) {
+        mMinScale = quantize(Math.max(SCALE_STEP, Math.min(minScale, maxScale)));
+        mMaxScale = quantize(Math.max(mMinScale, maxScale));
+        mTargetFrameNs = Math.max(1, targetFrameNs);
+        mScale = mMaxScale;
+        mWindowsOnTarget = 0;
+        mProbeDelayWindows = MIN_PROBE_DELAY_WINDOWS;
+        mProbing = false;
+        mWindowCount = 0;
+        mLastFrameStartNs = 0;
+    }
+
+    public float getScale() {
+        return mScale;
+    }
+
+    /**
+     * @return how many times the scale has changed, for checking it settles
+     */
+    public int getChanges() {
+        return mChanges;
+    }
+
+    /**
+     * Forget the frames so far, e.g. after the surface was paused or resized.
+     */
+    public void onFramesInterrupted() {
+        mWindowCount = 0;
+        mLastFrameStartNs = 0;
+    }
+
+    /**
+     * @param frameStartNs when the frame started, to tell frames after an idle stretch, which
+     * are left out
+     * @param frameTimeNs how long the frame took to draw, CPU and GPU, without waits
+     * @return whether the scale changed
+     */
+    public boolean onFrame(long frameStartNs, long frameTimeNs) {
+        final long lastFrameStartNs = mLastFrameStartNs;
+        mLastFrameStartNs = frameStartNs;
+        if (lastFrameStartNs == 0 || frameStartNs - lastFrameStartNs > IDLE_GAP_NS) {
+            return false;
+        }
+        if (frameTimeNs <= 0 || frameTimeNs > MAX_FRAME_NS) {
+            return false;
+        }
+        mWindow[mWindowCount++] = frameTimeNs;
+        if (mWindowCount < WINDOW_FRAMES) {
+            return false;
+        }
+        mWindowCount = 0;
+
+        System.arraycopy(mWindow, 0, mSorted, 0, WINDOW_FRAMES);
+        Arrays.sort(mSorted);
+        final float load = (float) mSorted[(int) (PERCENTILE * (WINDOW_FRAMES - 1))] / mTargetFrameNs;
+
+        if (load > DOWN_THRESHOLD) {
+            mWindowsOnTarget = 0;
+            if (mProbing) {
+                // the step up was one too many, the one before was fine
+                mProbing = false;
+                mProbeDelayWindows = Math.min(MAX_PROBE_DELAY_WINDOWS, mProbeDelayWindows * 2);
+                return setScale(mScale - SCALE_STEP);
+            }
+            // fill bound work goes with the pixel count, the square of the scale
+            final float factor = Math.max(MAX_DOWN_FACTOR, (float) Math.sqrt(1.0f / load));
+            return setScale(Math.min(mScale - SCALE_STEP, quantizeDown(mScale * factor)));
+        }
+
+        if (load > ON_TARGET_THRESHOLD) {
+            mWindowsOnTarget = 0;
+            return false;
+        }
+
+        if (mProbing) {
+            // the last step up held
+            mProbing = false;
+            mProbeDelayWindows = Math.max(MIN_PROBE_DELAY_WINDOWS, mProbeDelayWindows / 2);
+        }
+        if (++mWindowsOnTarget >= mProbeDelayWindows && mScale < mMaxScale) {
+            mWindowsOnTarget = 0;
+            mProbing = true;
+            return setScale(mScale + SCALE_STEP);
+        }
+        return false;
+    }
+
+    private boolean setScale(float scale) {
+        scale = Math.max(mMinScale, Math.min(mMaxScale, quantize(scale)));
+        if (scale == mScale) {
+            return false;
+        }
+        mScale = scale;
+        mChanges++;
+        return true;
+    }
+
+    private static float quantize(float scale) {
+        return Math.round(scale / SCALE_STEP) * SCALE_STEP;
+    }
+
+    private static float quantizeDown(float scale) {
+        return (float) Math.floor(scale / SCALE_STEP + 1e-3f) * SCALE_STEP;
+    }
+}
@@ -0,0 +1,308 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.ArrayList;
+
+/**
+ * A node in the hologram's scene: a position, rotation and uniform scale relative to its
+ * parent, and optionally a model to draw there, tinted some color. Nodes without a model just
+ * group their children so they can be moved, and culled, together.
+ *
+ * World matrices and bounding spheres are cached and only recomputed for the parts of the tree
+ * that changed since the last {@link #update()}. Changing a node flags it and its ancestors, so
+ * an update only walks down the branches that lead to a change; a still scene costs next to
+ * nothing however large it is.
+ *
+ * Each node's bounding sphere covers its own model and everything under it, in the same space
+ * as the scene's root (the space a lone model is drawn in), so {@link FrustumCuller} can throw
+ * out a whole branch with one test.
+ *
+ * Not thread safe, the GL thread owns the scene.
+ */
+public class SceneNode {
+
+    private final ArrayList<SceneNode> mChildren = new ArrayList<SceneNode>();
+    private SceneNode mParent;
+
+    private LodChain mModel;
+    private LodSelector mLodSelector;
+
+    private float mX, mY, mZ;
+    private float mSinX = 0.0f, mCosX = 1.0f;
+    private float mSinY = 0.0f, mCosY = 1.0f;
+    private float mScale = 1.0f;
+
+    // multiplies the model's vertex colors
+    private final float[] mColor = {1.0f, 1.0f, 1.0f, 1.0f};
+
+    private final float[] mLocal = new float[16];
+    private final float[] mWorld = new float[16];
+
+    // world space bounding sphere of this node's model and all its descendants. A negative
+    // radius means there's nothing to draw here or below
+    private float mBoundsX, mBoundsY, mBoundsZ;
+    private float mBoundsRadius = -1.0f;
+
+    // this node's transform changed, and one of its descendants did
+    private boolean mLocalDirty = true;
+    private boolean mChildDirty = false;
+
+    public SceneNode() {
+        MatrixMath.setIdentity(mLocal);
+        MatrixMath.setIdentity(mWorld);
+    }
+
+    public SceneNode(LodChain model) {
+        this();
+        setModel(model);
+    }
+
+    public void addChild(SceneNode child) {
+        if (child.mParent != null) {
+            throw new IllegalArgumentException("node already has a parent");
+        }
+        child.mParent = this;
+        mChildren.add(child);
+        // its world matrix is relative to its old place, if any
+        child.markDirty();
+    }
+
+    public void removeChild(SceneNode child) {
+        if (mChildren.remove(child)) {
+            child.mParent = null;
+            child.markDirty();
+            markDirty();
+        }
+    }
+
+    public int getChildCount() {
+        return mChildren.size();
+    }
+
+    public SceneNode getChild(int index) {
+        return mChildren.get(index);
+    }
+
+    public SceneNode getParent() {
+        return mParent;
+    }
+
+    /**
+     * @param model what to draw at this node, or null for a group
+     */
+    public void setModel(LodChain model) {
+        mModel = model;
+        // hysteresis needs the selector to remember each model's level, but single-level
+        // models don't need one at all
+        mLodSelector = model != null && model.getLevelCount() > 1 ? new LodSelector() : null;
+        markDirty();
+    }
+
+    public LodChain getModel() {
+        return mModel;
+    }
+
+    /**
+     * @return what decides this node's level of detail, null if its model only has the one
+     */
+    LodSelector getLodSelector() {
+        return mLodSelector;
+    }
+
+    public void setPosition(float x, float y, float z) {
+        mX = x;
+        mY = y;
+        mZ = z;
+        markDirty();
+    }
+
+    /**
+     * Rotates about X then Y, the same order the hologram model-view uses.
+     */
+    public void setRotation(float xRotRads, float yRotRads) {
+        mSinX = FastMath.sin(xRotRads);
+        mCosX = FastMath.cos(xRotRads);
+        mSinY = FastMath.sin(yRotRads);
+        mCosY = FastMath.cos(yRotRads);
+        markDirty();
+    }
+
+    public void setScale(float scale) {
+        mScale = scale;
+        markDirty();
+    }
+
+    /**
+     * Tints the model, its vertex colors are multiplied by this. White by default.
+     */
+    public void setColor(float red, float green, float blue, float alpha) {
+        mColor[0] = red;
+        mColor[1] = green;
+        mColor[2] = blue;
+        mColor[3] = alpha;
+    }
+
+    /**
+     * @return RGBA tint. Not a copy
+     */
+    public float[] getColor() {
+        return mColor;
+    }
+
+    /**
+     * @return column-major transform from this node's space to the scene root's, as of the
+     * last update. Not a copy
+     */
+    public float[] getWorldMatrix() {
+        return mWorld;
+    }
+
+    public float getBoundsX() {
+        return mBoundsX;
+    }
+
+    public float getBoundsY() {
+        return mBoundsY;
+    }
+
+    public float getBoundsZ() {
+        return mBoundsZ;
+    }
+
+    /**
+     * @return radius of the sphere around this node's model and its descendants, negative if
+     * none of them have anything to draw
+     */
+    public float getBoundsRadius() {
+        return mBoundsRadius;
+    }
+
+    private void markDirty() {
+        mLocalDirty = true;
+        for (SceneNode node = mParent; node != null && !node.mChildDirty; node = node.mParent) {
+            node.mChildDirty = true;
+        }
+    }
+
+    /**
+     * Brings the world matrices and bounds of this node and its descendants up to date. Call
+     * on the root once a frame, before culling.
+     */
+    public void update() {
+        update(mParent != null ? mParent.mWorld : null, false);
+    }
+
+    /**
+     * @param parentWorld the parent's world matrix, null for the root
+     * @param parentChanged the parent's world matrix changed since this was last updated
+     * @return whether this node's bounds changed, so the parent's need redoing
+     */
+    private boolean update(float[] parentWorld, boolean parentChanged) {
+        if (!parentChanged && !mLocalDirty && !mChildDirty) {
+            return false;
+        }
+
+        final boolean worldChanged = parentChanged || mLocalDirty;
+        if (mLocalDirty) {
+            final float[] m = mLocal;
+            MatrixMath.setIdentity(m);
+            MatrixMath.translate(m, mX, mY, mZ);
+            MatrixMath.rotateX(m, mSinX, mCosX);
+            MatrixMath.rotateY(m, mSinY, mCosY);
+            MatrixMath.scale(m, mScale);
+            mLocalDirty = false;
+        }
+        if (worldChanged) {
+            if (parentWorld != null) {
+                MatrixMath.multiply(mWorld, parentWorld, mLocal);
+            } else {
+                System.arraycopy(mLocal, 0, mWorld, 0, 16);
+            }
+        }
+
+        boolean childBoundsChanged = false;
+        for (int i = 0, count = mChildren.size(); i < count; i++) {
+            childBoundsChanged |= mChildren.get(i).update(mWorld, worldChanged);
+        }
+        mChildDirty = false;
+
+        if (worldChanged || childBoundsChanged) {
+            updateBounds();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The model's box turned into a sphere and moved into world space, grown to take in each
+     * child's sphere. Not the tightest sphere around them all, but close, and cheap to redo.
+     */
+    private void updateBounds() {
+        mBoundsRadius = -1.0f;
+        if (mModel != null) {
+            final float[] box = mModel.getLevel(0).getBounds();
+            final float centerX = (box[0] + box[3]) * 0.5f;
+            final float centerY = (box[1] + box[4]) * 0.5f;
+            final float centerZ = (box[2] + box[5]) * 0.5f;
+            final float extentX = box[3] - box[0];
+            final float extentY = box[4] - box[1];
+            final float extentZ = box[5] - box[2];
+            final float[] w = mWorld;
+            mBoundsX = w[0] * centerX + w[4] * centerY + w[8] * centerZ + w[12];
+            mBoundsY = w[1] * centerX + w[5] * centerY + w[9] * centerZ + w[13];
+            mBoundsZ = w[2] * centerX + w[6] * centerY + w[10] * centerZ + w[14];
+            mBoundsRadius = 0.5f * (float) Math.sqrt(extentX * extentX + extentY * extentY + extentZ * extentZ)
+                    * maxAxisScale(w);
+        }
+        for (int i = 0, count = mChildren.size(); i < count; i++) {
+            SceneNode child = mChildren.get(i);
+            if (child.mBoundsRadius >= 0.0f) {
+                enclose(child.mBoundsX, child.mBoundsY, child.mBoundsZ, child.mBoundsRadius);
+            }
+        }
+    }
+
+    /**
+     * Grows the bounding sphere just enough to contain another one.
+     */
+    private void enclose(float x, float y, float z, float radius) {
+        if (mBoundsRadius < 0.0f) {
+            mBoundsX = x;
+            mBoundsY = y;
+            mBoundsZ = z;
+            mBoundsRadius = radius;
+            return;
+        }
+        final float dx = x - mBoundsX;
+        final float dy = y - mBoundsY;
+        final float dz = z - mBoundsZ;
+        final float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (distance + radius <= mBoundsRadius) {
+            return;
+        }
+        if (distance + mBoundsRadius <= radius) {
+            mBoundsX = x;
+            mBoundsY = y;
+            mBoundsZ = z;
+            mBoundsRadius = radius;
+            return;
+        }
+        final float newRadius = (distance + mBoundsRadius + radius) * 0.5f;
+        // slide the center towards the other sphere, far enough to reach its far side
+        final float t = (newRadius - mBoundsRadius) / distance;
+        mBoundsX += dx * t;
+        mBoundsY += dy * t;
+        mBoundsZ += dz * t;
+        mBoundsRadius = newRadius;
+    }
+
+    /**
+     * @return the largest scale along any of the matrix's axes, so a sphere transformed by it
+     * stays inside a sphere of that many times the radius
+     */
+    private static float maxAxisScale(float[] m) {
+        final float x = m[0] * m[0] + m[1] * m[1] + m[2] * m[2];
+        final float y = m[4] * m[4] + m[5] * m[5] + m[6] * m[6];
+        final float z = m[8] * m[8] + m[9] * m[9] + m[10] * m[10];
+        return (float) Math.sqrt(Math.max(x, Math.max(y, z)));
+    }
+}
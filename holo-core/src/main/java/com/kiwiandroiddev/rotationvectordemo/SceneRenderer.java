@@ -0,0 +1,87 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * A rendering backend. The GLSurfaceView.Renderer works out what to draw and with which
+ * matrices each frame, and hands the actual drawing to one of these so different GL versions
+ * can be swapped in and compared.
+ *
+ * All methods are called on the GL thread with the backend's context current.
+ */
+public interface SceneRenderer {
+
+    // fewest instances of a mesh worth a single instanced draw call, for backends that have them
+    int DEFAULT_INSTANCING_THRESHOLD = 8;
+
+    /**
+     * The GL context was (re)created, any GPU-side resources from a previous context are gone.
+     */
+    void onSurfaceCreated();
+
+    void onSurfaceChanged(int width, int height);
+
+    /**
+     * Draws frames from the next {@link #beginFrame} on at a fraction of the surface's
+     * resolution, stretched to fill it, to save fill rate. Backends without render targets
+     * stay at full resolution.
+     *
+     * @return the scale frames will be drawn at
+     */
+    float setRenderScale(float scale);
+
+    /**
+     * Clears the frame and sets up for drawing with the given projection, over the whole
+     * surface.
+     */
+    void beginFrame(float[] projection);
+
+    /**
+     * Narrows the following draws to one view of a stereo frame: columns x to x + width - 1 of
+     * the surface, writing only the given color channels, with the depth buffer cleared so
+     * views don't hide each other. Lasts until the next view or frame.
+     *
+     * @param projection replaces the one passed to {@link #beginFrame(float[])}
+     */
+    void beginView(float[] projection, int x, int width, boolean red, boolean green, boolean blue);
+
+    /**
+     * @param modelView column-major model-view matrix
+     * @param modelViewProjection the projection passed to {@link #beginFrame(float[])} times modelView
+     */
+    void drawMesh(Mesh mesh, float[] modelView, float[] modelViewProjection);
+
+    /**
+     * Draws instances first to first + count - 1 of the mesh, each with its own matrices and
+     * color. Backends that can draw them all with one call do once there are enough of them to
+     * be worth it, the others draw them one at a time.
+     *
+     * @param modelViews column-major model-view matrices, 16 floats per instance
+     * @param modelViewProjections the projection passed to {@link #beginFrame(float[])} times
+     * each model-view, 16 floats per instance
+     * @param colors RGBA multipliers for the mesh's vertex colors, 4 floats per instance
+     * @return how many draw calls it took
+     */
+    int drawInstances(Mesh mesh, float[] modelViews, float[] modelViewProjections, float[] colors,
+                      int first, int count);
+
+    /**
+     * Draws the given cube map behind everything from now on, or nothing for null. Takes what
+     * it needs straight away, the texture doesn't have to be kept. Gone with the context like
+     * any other GPU-side resource, so it has to be set again after {@link #onSurfaceCreated()}.
+     *
+     * @return false if this backend can't draw it, e.g. it isn't a cube map or is in a format
+     * the context doesn't support. There's no background then
+     */
+    boolean setBackground(KtxFile background);
+
+    /**
+     * Fills whatever the current view's draws didn't cover with the background, through the
+     * same projection as the scene. Only the rotation of the model-view counts, the background
+     * is infinitely far away, so call it once per view after the scene for the depth test to
+     * save the covered pixels.
+     *
+     * @param modelViewProjection the projection times the scene's model-view
+     */
+    void drawBackground(float[] modelViewProjection);
+
+    void endFrame();
+}
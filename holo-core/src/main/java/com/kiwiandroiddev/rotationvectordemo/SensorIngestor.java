@@ -0,0 +1,152 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.Locale;
+
+/**
+ * Takes sensor events in as they're delivered and integrates them later in passes, rather than
+ * integrating each one inside its own callback.
+ *
+ * Events go into a {@link SensorSampleRing} as they arrive. Whoever drives this then drains it
+ * either once per delivery, so a batch flushed out of the sensor hub's FIFO is integrated in
+ * one pass and publishes a single pose (see {@link PoseIntegrator#beginBatch()}), or once per
+ * frame with {@link #drainUntil}, so each frame's pose is integrated from exactly the events
+ * up to its vsync and no further.
+ *
+ * Each event is stamped with when it was delivered, so the listener can tell how long it was
+ * held back, see {@link #getArrivalTime()}. Keeps count of deliveries, which is how often the
+ * sensors woke the process up, and of the time spent draining, for {@link #formatSummary()}.
+ * Free of Android dependencies so it can be driven from a recorded trace, see TraceTool.
+ * Events come from one thread and are drained on one thread, which may be the same one.
+ */
+public class SensorIngestor implements SensorSampleSink {
+
+    private final SensorSampleRing mRing;
+    private final PoseIntegrator mPoseIntegrator;
+    private final Clock mClock;
+
+    // told about every event once it's been integrated, may be null
+    private final SensorSampleSink mListener;
+
+    private final SensorSampleSink mIntegrate = new SensorSampleSink() {
+        @Override
+        public void onSensorSample(int sensorType, long timestampNs, float[] values, int valueCount, int accuracy) {
+            mPoseIntegrator.onSensorSample(sensorType, timestampNs, values, valueCount, accuracy);
+            if (mListener != null) {
+                mListener.onSensorSample(sensorType, timestampNs, values, valueCount, accuracy);
+            }
+        }
+    };
+
+    // draining thread only, since the last resetStatistics
+    private long mStatisticsStartNs;
+    private long mDeliveries;
+    private long mPasses;
+    private long mSamples;
+    private long mDrainNs;
+    private long mDroppedAtStart;
+
+    /**
+     * @param clock times the passes and the rates in the summary
+     */
+    public SensorIngestor(SensorSampleRing ring, PoseIntegrator poseIntegrator, SensorSampleSink listener,
+                          Clock clock) {
+        mRing = ring;
+        mPoseIntegrator = poseIntegrator;
+        mListener = listener;
+        mClock = clock;
+        resetStatistics();
+    }
+
+    /**
+     * Delivery thread, queues the event for the next pass, stamped with when it arrived.
+     */
+    @Override
+    public void onSensorSample(int sensorType, long timestampNs, float[] values, int valueCount, int accuracy) {
+        mRing.onSensorSample(sensorType, timestampNs, values, valueCount, accuracy, mClock.nanoTime());
+    }
+
+    /**
+     * Delivery thread, counts a wakeup: call once per run of events that arrived together.
+     */
+    public void onDelivery() {
+        mDeliveries++;
+    }
+
+    /**
+     * Integrates everything queued.
+     *
+     * @return how many events that was
+     */
+    public int drain() {
+        return drainUntil(Long.MAX_VALUE);
+    }
+
+    /**
+     * Integrates the queued events up to the given time in the sensors' time base, leaving
+     * later ones for the next pass.
+     *
+     * @return how many were integrated
+     */
+    public int drainUntil(long timestampNs) {
+        if (mRing.size() == 0) {
+            return 0;
+        }
+        final long startNs = mClock.nanoTime();
+        mPoseIntegrator.beginBatch();
+        final int count = mRing.drainUntil(timestampNs, mIntegrate);
+        mPoseIntegrator.endBatch();
+        mDrainNs += mClock.nanoTime() - startNs;
+        mPasses++;
+        mSamples += count;
+        return count;
+    }
+
+    /**
+     * Drops anything queued without integrating it.
+     */
+    public void clear() {
+        mRing.clear();
+    }
+
+    public void resetStatistics() {
+        mStatisticsStartNs = mClock.nanoTime();
+        mDeliveries = 0;
+        mPasses = 0;
+        mSamples = 0;
+        mDrainNs = 0;
+        mDroppedAtStart = mRing.getDroppedCount();
+    }
+
+    /**
+     * Draining thread, from inside the listener.
+     *
+     * @return when the event the listener is being told about was delivered, on the clock
+     */
+    public long getArrivalTime() {
+        return mRing.getArrivalTime();
+    }
+
+    public long getDeliveries() {
+        return mDeliveries;
+    }
+
+    public long getSamples() {
+        return mSamples;
+    }
+
+    /**
+     * @return average time to integrate an event, including the listener, since the
+     * statistics were last reset
+     */
+    public double getNsPerSample() {
+        return mSamples == 0 ? 0.0 : (double) mDrainNs / mSamples;
+    }
+
+    public String formatSummary() {
+        final double seconds = Math.max(1, mClock.nanoTime() - mStatisticsStartNs) / 1e9;
+        return String.format(Locale.US,
+                "sensors %.0f wakeups/s, %.0f events/s in %.0f passes/s, %.2f us per event, %d dropped",
+                mDeliveries / seconds, mSamples / seconds, mPasses / seconds, getNsPerSample() / 1000.0,
+                mRing.getDroppedCount() - mDroppedAtStart);
+    }
+}
@@ -0,0 +1,161 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed size queue of sensor samples between the thread they're delivered on and the one that
+ * integrates them, so a batch flushed out of the sensor hub's FIFO can be taken in as fast as
+ * it arrives and worked through afterwards in one go.
+ *
+ * Samples are kept in preallocated primitive arrays, one slot per sample, so queuing one is a
+ * few array stores and nothing is allocated per event. Like {@link SensorTraceRecorder}'s ring,
+ * a sample that doesn't fit is dropped and counted rather than blocking the sensor thread.
+ * Each sample can carry the time it was queued, so the consumer can tell how long it waited.
+ *
+ * One producer thread and one consumer thread, which may be the same one.
+ */
+public class SensorSampleRing implements SensorSampleSink {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // gyro and accelerometer samples have three, rotation vectors five. Anything past this is
+    // cut off
+    public static final int MAX_VALUES = 8;
+
+    private final int mMask;
+    private final int[] mTypes;
+    private final long[] mTimestamps;
+    private final float[] mValues;
+    private final byte[] mValueCounts;
+    private final byte[] mAccuracies;
+    private final long[] mArrivals;
+
+    // samples ever put in and taken out, masked to get slots, see SensorTraceRecorder
+    private final AtomicLong mWritten = new AtomicLong();
+    private final AtomicLong mRead = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    // consumer only, handed to the sink
+    private final float[] mScratch = new float[MAX_VALUES];
+    private long mArrivalNs;
+
+    public SensorSampleRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity samples, rounded up to a power of two
+     */
+    public SensorSampleRing(int capacity) {
+        capacity = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mMask = capacity - 1;
+        mTypes = new int[capacity];
+        mTimestamps = new long[capacity];
+        mValues = new float[capacity * MAX_VALUES];
+        mValueCounts = new byte[capacity];
+        mAccuracies = new byte[capacity];
+        mArrivals = new long[capacity];
+    }
+
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * Producer side, queues the sample without an arrival time.
+     */
+    @Override
+    public void onSensorSample(int sensorType, long timestampNs, float[] values, int valueCount, int accuracy) {
+        onSensorSample(sensorType, timestampNs, values, valueCount, accuracy, 0);
+    }
+
+    /**
+     * Producer side, queues the sample.
+     *
+     * @param arrivalNs when it was delivered, for {@link #getArrivalTime()}
+     */
+    public void onSensorSample(int sensorType, long timestampNs, float[] values, int valueCount, int accuracy,
+                               long arrivalNs) {
+        final long written = mWritten.get();
+        if (written - mRead.get() > mMask) {
+            mDroppedCount.incrementAndGet();
+            return;
+        }
+        final int slot = (int) (written & mMask);
+        final int count = Math.min(valueCount, MAX_VALUES);
+        mTypes[slot] = sensorType;
+        mTimestamps[slot] = timestampNs;
+        System.arraycopy(values, 0, mValues, slot * MAX_VALUES, count);
+        mValueCounts[slot] = (byte) count;
+        mAccuracies[slot] = (byte) accuracy;
+        mArrivals[slot] = arrivalNs;
+        // publishes the stores above to the consumer
+        mWritten.lazySet(written + 1);
+    }
+
+    /**
+     * Consumer side, hands every queued sample to the sink in the order they arrived.
+     *
+     * @return how many there were
+     */
+    public int drain(SensorSampleSink sink) {
+        return drainUntil(Long.MAX_VALUE, sink);
+    }
+
+    /**
+     * Consumer side, hands queued samples to the sink up to the first one later than the given
+     * time, which stays queued along with everything after it. Samples of each sensor arrive
+     * in timestamp order, but different sensors' can be interleaved a little out of order, so
+     * this stops at the first late one rather than looking past it.
+     *
+     * @return how many were handed over
+     */
+    public int drainUntil(long timestampNs, SensorSampleSink sink) {
+        final long read = mRead.get();
+        final long written = mWritten.get();
+        long position = read;
+        while (position < written) {
+            final int slot = (int) (position & mMask);
+            final long timestamp = mTimestamps[slot];
+            if (timestamp > timestampNs) {
+                break;
+            }
+            final int count = mValueCounts[slot];
+            System.arraycopy(mValues, slot * MAX_VALUES, mScratch, 0, count);
+            final int type = mTypes[slot];
+            final int accuracy = mAccuracies[slot];
+            mArrivalNs = mArrivals[slot];
+            // the slot can be reused from here on
+            mRead.lazySet(++position);
+            sink.onSensorSample(type, timestamp, mScratch, count, accuracy);
+        }
+        return (int) (position - read);
+    }
+
+    /**
+     * Consumer side, from inside the sink during a drain.
+     *
+     * @return when the sample being handed over was delivered, 0 if it was queued without a time
+     */
+    public long getArrivalTime() {
+        return mArrivalNs;
+    }
+
+    /**
+     * @return samples waiting to be drained, from either side
+     */
+    public int size() {
+        return (int) (mWritten.get() - mRead.get());
+    }
+
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * Consumer side, throws away everything queued.
+     */
+    public void clear() {
+        mRead.lazySet(mWritten.get());
+    }
+}
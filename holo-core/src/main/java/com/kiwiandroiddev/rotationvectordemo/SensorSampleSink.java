@@ -0,0 +1,22 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Anything that consumes raw sensor events: the pose integration, the trace recorder, or a
+ * trace being replayed into either. Uses plain values rather than SensorEvent so it can be
+ * driven on a JVM without the Android SDK.
+ */
+public interface SensorSampleSink {
+
+    // same values as the android.hardware.Sensor TYPE_ constants
+    int TYPE_ACCELEROMETER = 1;
+    int TYPE_MAGNETIC_FIELD = 2;
+    int TYPE_GYROSCOPE = 4;
+    int TYPE_ROTATION_VECTOR = 11;
+    int TYPE_GAME_ROTATION_VECTOR = 15;
+
+    /**
+     * @param values only the first valueCount are meaningful. Not to be kept past the call,
+     * callers reuse the array
+     */
+    void onSensorSample(int sensorType, long timestampNs, float[] values, int valueCount, int accuracy);
+}
@@ -0,0 +1,38 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Binary format of recorded sensor event streams, written by {@link SensorTraceRecorder} and
+ * read by {@link SensorTraceReader}.
+ *
+ * Layout, all little-endian:
+ * <pre>
+ *   0   magic "HGTR"
+ *   4   int   format version
+ *   8   long  reserved
+ *   16  records, each:
+ *       long  event timestamp, ns
+ *       int   sensor type, see {@link SensorSampleSink}
+ *       byte  accuracy
+ *       byte  value count, at most {@link #MAX_VALUES}
+ *       float values
+ * </pre>
+ * A trace cut short mid-record (the app being killed while recording) is read up to the last
+ * complete record.
+ */
+public final class SensorTrace {
+
+    public static final String EXTENSION = ".htrace";
+
+    static final int MAGIC = 'H' | 'G' << 8 | 'T' << 16 | 'R' << 24;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 14;
+
+    // enough for every standard sensor, uncalibrated gyro has 6 and rotation vector 5
+    public static final int MAX_VALUES = 16;
+
+    static final int MAX_RECORD_SIZE = RECORD_HEADER_SIZE + MAX_VALUES * 4;
+
+    private SensorTrace() {
+    }
+}
@@ -0,0 +1,87 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads back a {@link SensorTrace} one event at a time. The current event is held in the public
+ * fields, which are overwritten by each call to {@link #next()}, so reading a trace of any length
+ * allocates nothing after opening it.
+ */
+public class SensorTraceReader {
+
+    public int sensorType;
+    public long timestampNs;
+    public int accuracy;
+    public int valueCount;
+    public final float[] values = new float[SensorTrace.MAX_VALUES];
+
+    private final ByteBuffer mData;
+
+    /**
+     * @param data a whole trace, from its header onwards
+     */
+    public SensorTraceReader(ByteBuffer data) throws IOException {
+        mData = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (mData.remaining() < SensorTrace.HEADER_SIZE || mData.getInt(0) != SensorTrace.MAGIC) {
+            throw new IOException("not a sensor trace");
+        }
+        if (mData.getInt(4) != SensorTrace.VERSION) {
+            throw new IOException("unsupported sensor trace version " + mData.getInt(4));
+        }
+        rewind();
+    }
+
+    public static SensorTraceReader open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return new SensorTraceReader(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Goes back to before the first event.
+     */
+    public void rewind() {
+        mData.position(SensorTrace.HEADER_SIZE);
+    }
+
+    /**
+     * Advances to the next event.
+     *
+     * @return false at the end of the trace
+     */
+    public boolean next() throws IOException {
+        if (mData.remaining() < SensorTrace.RECORD_HEADER_SIZE) {
+            return false;
+        }
+        final int start = mData.position();
+        long timestamp = mData.getLong();
+        int type = mData.getInt();
+        int recordAccuracy = mData.get();
+        int count = mData.get() & 0xff;
+        if (count > SensorTrace.MAX_VALUES) {
+            throw new IOException("corrupt sensor trace at offset " + start);
+        }
+        if (mData.remaining() < count * 4) {
+            // cut off mid-record, treat as the end
+            mData.position(mData.limit());
+            return false;
+        }
+
+        timestampNs = timestamp;
+        sensorType = type;
+        accuracy = recordAccuracy;
+        valueCount = count;
+        for (int i = 0; i < count; i++) {
+            values[i] = mData.getFloat();
+        }
+        return true;
+    }
+}
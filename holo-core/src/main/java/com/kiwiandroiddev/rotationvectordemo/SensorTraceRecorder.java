@@ -0,0 +1,201 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records sensor events to a {@link SensorTrace} file without doing any I/O on the thread the
+ * events arrive on.
+ *
+ * Events are encoded into a preallocated ring buffer and a background thread writes the ring
+ * out to the file, waking up every {@link #FLUSH_INTERVAL_NS} or as soon as the ring is half
+ * full. If the writer ever falls so far behind that an event doesn't fit, the event is dropped
+ * and counted rather than blocking the sensor thread.
+ *
+ * Events must all come from one thread, and {@link #close()} must be called from that same
+ * thread (or after it has stopped delivering events).
+ */
+public class SensorTraceRecorder implements SensorSampleSink, Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    private static final long FLUSH_INTERVAL_NS = 100000000L;
+
+    private final OutputStream mOut;
+    private final byte[] mRing;
+    private final int mMask;
+
+    // total bytes ever put into and taken out of the ring. Positions in the ring are these
+    // masked, so they only ever increase and full vs. empty is never ambiguous
+    private final AtomicLong mWritten = new AtomicLong();
+    private final AtomicLong mRead = new AtomicLong();
+
+    // producer only
+    private final ByteBuffer mRecord = ByteBuffer.allocate(SensorTrace.MAX_RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private long mRecordCount;
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    private final Thread mWriterThread;
+    private volatile boolean mClosing;
+    private volatile IOException mWriteError;
+
+    public SensorTraceRecorder(File file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize ring buffer size in bytes, rounded up to a power of two
+     */
+    public SensorTraceRecorder(File file, int bufferSize) throws IOException {
+        int capacity = Integer.highestOneBit(Math.max(bufferSize, SensorTrace.MAX_RECORD_SIZE * 2) - 1) << 1;
+        mRing = new byte[capacity];
+        mMask = capacity - 1;
+
+        mOut = new FileOutputStream(file);
+        ByteBuffer header = ByteBuffer.allocate(SensorTrace.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(SensorTrace.MAGIC);
+        header.putInt(SensorTrace.VERSION);
+        header.putLong(0L);
+        try {
+            mOut.write(header.array());
+        } catch (IOException e) {
+            mOut.close();
+            throw e;
+        }
+
+        mWriterThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "SensorTraceWriter");
+        mWriterThread.setDaemon(true);
+        mWriterThread.start();
+    }
+
+    @Override
+    public void onSensorSample(int sensorType, long timestampNs, float[] values, int valueCount, int accuracy) {
+        if (mClosing) {
+            return;
+        }
+        final int count = Math.min(valueCount, SensorTrace.MAX_VALUES);
+        final ByteBuffer record = mRecord;
+        record.clear();
+        record.putLong(timestampNs);
+        record.putInt(sensorType);
+        record.put((byte) accuracy);
+        record.put((byte) count);
+        for (int i = 0; i < count; i++) {
+            record.putFloat(values[i]);
+        }
+        final int length = record.position();
+
+        final long written = mWritten.get();
+        final long used = written - mRead.get();
+        if (used + length > mRing.length) {
+            mDroppedCount.incrementAndGet();
+            return;
+        }
+
+        final int start = (int) (written & mMask);
+        final int firstPart = Math.min(length, mRing.length - start);
+        System.arraycopy(record.array(), 0, mRing, start, firstPart);
+        System.arraycopy(record.array(), firstPart, mRing, 0, length - firstPart);
+        // publishes the bytes copied above to the writer thread
+        mWritten.lazySet(written + length);
+        mRecordCount++;
+
+        if (used + length > mRing.length / 2) {
+            LockSupport.unpark(mWriterThread);
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                final long read = mRead.get();
+                final long written = mWritten.get();
+                if (read == written) {
+                    if (mClosing) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, FLUSH_INTERVAL_NS);
+                    continue;
+                }
+
+                final int start = (int) (read & mMask);
+                final int length = (int) (written - read);
+                final int firstPart = Math.min(length, mRing.length - start);
+                mOut.write(mRing, start, firstPart);
+                if (length > firstPart) {
+                    mOut.write(mRing, 0, length - firstPart);
+                }
+                mRead.lazySet(written);
+            }
+        } catch (IOException e) {
+            mWriteError = e;
+        }
+    }
+
+    /**
+     * Blocks until everything recorded so far has been handed to the file. For producers that
+     * aren't real sensors and can outrun the writer, like trace generators.
+     */
+    public void flush() throws IOException {
+        final long target = mWritten.get();
+        while (mRead.get() < target && mWriteError == null && mWriterThread.isAlive()) {
+            LockSupport.unpark(mWriterThread);
+            Thread.yield();
+        }
+        if (mWriteError != null) {
+            throw mWriteError;
+        }
+    }
+
+    /**
+     * @return events recorded so far, not counting dropped ones
+     */
+    public long getRecordCount() {
+        return mRecordCount;
+    }
+
+    /**
+     * @return events that arrived while the ring was full and so weren't recorded
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * Stops recording, waits for everything recorded so far to be written and closes the file.
+     *
+     * @throws IOException if writing failed at any point while recording
+     */
+    @Override
+    public void close() throws IOException {
+        mClosing = true;
+        LockSupport.unpark(mWriterThread);
+        boolean interrupted = false;
+        while (mWriterThread.isAlive()) {
+            try {
+                mWriterThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        mOut.close();
+        if (mWriteError != null) {
+            throw mWriteError;
+        }
+    }
+}
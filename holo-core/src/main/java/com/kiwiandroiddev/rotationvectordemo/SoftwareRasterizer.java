@@ -0,0 +1,861 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pure Java backend that draws into an in-memory frame buffer, so the whole projection path can
+ * be run and checked without a GPU, e.g. by RasterTool on a build machine.
+ *
+ * Follows the GL pipeline the other backends configure: triangles are clipped against the near
+ * and far planes (and against a guard band around the sides, so huge off-screen coordinates
+ * can't upset the arithmetic), back faces are culled with clockwise front faces as with
+ * glFrontFace(GL_CW), and depth and color are interpolated across each triangle with
+ * perspective correction. Window coordinates are snapped to 1/256 of a pixel and coverage is
+ * worked out exactly in integers from there, with pixel centers on an edge going to the
+ * triangle the edge is a top or left edge of, so triangles sharing an edge never leave gaps or
+ * draw a pixel twice. There's a GL_LESS depth test, on by default like the GL backends.
+ *
+ * Each draw runs in three parallel passes: transforming the vertices, setting up triangles in
+ * chunks and sorting them into the screen tiles they touch, and filling the tiles. Tiles are
+ * filled by one thread each, going through the triangles in submission order, so the result
+ * is the same however many threads there are.
+ *
+ * The frame buffer follows GL conventions: row 0 is the bottom of the screen, see
+ * {@link #toImage()} for one the right way up.
+ */
+public class SoftwareRasterizer implements SceneRenderer {
+
+    public static final int TILE_SIZE = 64;
+
+    // how far out from the sides of the frustum, in units of w, geometry can go before it has
+    // to be clipped. Within that the screen bounds take care of it
+    private static final float GUARD_BAND = 4.0f;
+
+    // per clip space vertex: x, y, z, w then r, g, b, a
+    private static final int CLIP_VERTEX_FLOATS = 8;
+    // a triangle clipped by all six planes can gain a vertex at each
+    private static final int MAX_CLIPPED_VERTICES = 9;
+
+    private static final int SUBPIXEL_BITS = 8;
+    private static final float SUBPIXEL_SCALE = 1 << SUBPIXEL_BITS;
+    private static final long HALF_PIXEL = 1 << (SUBPIXEL_BITS - 1);
+
+    // per set-up triangle: snapped window x, y of each vertex, then ndc z, 1/w and r/w, g/w,
+    // b/w, a/w of each vertex, then the pixel bounds
+    private static final int SETUP_X = 0;
+    private static final int SETUP_Z = 6;
+    private static final int SETUP_INV_W = 9;
+    private static final int SETUP_COLOR = 12;
+    private static final int SETUP_BOUNDS = 24;
+    private static final int SETUP_STRIDE = 28;
+
+    private static final int TRIANGLES_PER_CHUNK = 4096;
+    private static final int VERTICES_PER_TASK = 8192;
+
+    private static final int PASS_TRANSFORM = 0;
+    private static final int PASS_SETUP = 1;
+    private static final int PASS_FILL = 2;
+
+    private static final int OUTSIDE_LEFT = 1;
+    private static final int OUTSIDE_RIGHT = 2;
+    private static final int OUTSIDE_BOTTOM = 4;
+    private static final int OUTSIDE_TOP = 8;
+    private static final int OUTSIDE_NEAR = 16;
+    private static final int OUTSIDE_FAR = 32;
+    private static final int OUTSIDE_GUARD_BAND = 64;
+
+    // dot(plane, (x, y, z, w)) >= 0 inside, in clipping order
+    private static final float[][] CLIP_PLANES = {
+            {0, 0, 1, 1},
+            {0, 0, -1, 1},
+            {1, 0, 0, GUARD_BAND},
+            {-1, 0, 0, GUARD_BAND},
+            {0, 1, 0, GUARD_BAND},
+            {0, -1, 0, GUARD_BAND},
+    };
+
+    private final ForkJoinPool mPool;
+
+    private boolean mDepthTest = true;
+    private int mClearColor = 0xff000000;
+
+    // the instance being drawn by drawInstances, its colors multiply the mesh's
+    private final float[] mInstanceMvp = new float[16];
+    private final float[] mTint = new float[4];
+    private boolean mTinted = false;
+
+    private int mWidth;
+    private int mHeight;
+    // the columns draws go to, and which bits of each pixel they write, see beginView
+    private int mViewX;
+    private int mViewWidth;
+    private int mColorMask = 0xffffffff;
+    private int mTilesX;
+    private int mTilesY;
+    private int[] mColor = new int[0];
+    private float[] mDepth = new float[0];
+
+    // the background cube map's top level decoded, one ARGB array per face in GL's order
+    private int[][] mBackground;
+    private int mBackgroundSize;
+
+    // array copies of each mesh drawn, the rasterizer's equivalent of uploading it
+    private final IdentityHashMap<Mesh, MeshArrays> mMeshArrays = new IdentityHashMap<Mesh, MeshArrays>();
+
+    // state of the draw in progress, for the passes
+    private MeshArrays mDrawMesh;
+    private float[] mDrawMvp;
+    private float[] mClipVertices = new float[0];
+    private Chunk[] mChunks = new Chunk[0];
+    private int mChunkCount;
+    private long[] mTileFragments = new long[0];
+
+    private long mTrianglesSubmitted;
+    private long mTrianglesRasterized;
+    private long mFragments;
+
+    /**
+     * @param pool runs the passes of each draw, not shut down by the rasterizer
+     */
+    public SoftwareRasterizer(ForkJoinPool pool) {
+        mPool = pool;
+    }
+
+    /**
+     * Turns the GL_LESS depth test, and depth writes, on or off.
+     */
+    public void setDepthTest(boolean depthTest) {
+        mDepthTest = depthTest;
+    }
+
+    public void setClearColor(int argb) {
+        mClearColor = argb;
+    }
+
+    @Override
+    public void onSurfaceCreated() {
+        mMeshArrays.clear();
+        mBackground = null;
+    }
+
+    @Override
+    public void onSurfaceChanged(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mViewX = 0;
+        mViewWidth = width;
+        mTilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        mTilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        mColor = new int[width * height];
+        mDepth = new float[width * height];
+        mTileFragments = new long[mTilesX * mTilesY];
+        for (int i = 0; i < mChunks.length; i++) {
+            mChunks[i] = null;
+        }
+    }
+
+    /**
+     * Always draws at the size it was given, a smaller frame is just a smaller surface.
+     */
+    @Override
+    public float setRenderScale(float scale) {
+        return 1.0f;
+    }
+
+    @Override
+    public void beginFrame(float[] projection) {
+        mViewX = 0;
+        mViewWidth = mWidth;
+        mColorMask = 0xffffffff;
+        Arrays.fill(mColor, mClearColor);
+        Arrays.fill(mDepth, 1.0f);
+    }
+
+    @Override
+    public void beginView(float[] projection, int x, int width, boolean red, boolean green, boolean blue) {
+        mViewX = Math.max(0, Math.min(mWidth, x));
+        mViewWidth = Math.max(0, Math.min(mWidth - mViewX, width));
+        mColorMask = 0xff000000 | (red ? 0xff0000 : 0) | (green ? 0xff00 : 0) | (blue ? 0xff : 0);
+        Arrays.fill(mDepth, 1.0f);
+    }
+
+    @Override
+    public void drawMesh(Mesh mesh, float[] modelView, float[] modelViewProjection) {
+        draw(mesh, modelViewProjection);
+    }
+
+    /**
+     * One draw per instance, there's nothing to be saved by batching them here.
+     */
+    @Override
+    public int drawInstances(Mesh mesh, float[] modelViews, float[] modelViewProjections, float[] colors,
+                             int first, int count) {
+        for (int i = first; i < first + count; i++) {
+            System.arraycopy(modelViewProjections, i * 16, mInstanceMvp, 0, 16);
+            System.arraycopy(colors, i * 4, mTint, 0, 4);
+            mTinted = mTint[0] != 1.0f || mTint[1] != 1.0f || mTint[2] != 1.0f || mTint[3] != 1.0f;
+            draw(mesh, mInstanceMvp);
+        }
+        mTinted = false;
+        return count;
+    }
+
+    /**
+     * Decodes the top level of an ETC cube map to sample from, the rasterizer's equivalent of
+     * uploading it. Only ETC data in ETC1's modes, which is all {@link EtcCodec} reads.
+     */
+    @Override
+    public boolean setBackground(KtxFile background) {
+        mBackground = null;
+        if (background == null) {
+            return true;
+        }
+        final boolean etc1 = background.glInternalFormat == KtxFile.GL_ETC1_RGB8_OES
+                || (background.glInternalFormat == KtxFile.GL_COMPRESSED_RGB8_ETC2
+                && "true".equals(background.getValue(KtxFile.KEY_ETC1_COMPATIBLE)));
+        if (!background.isCubeMap() || !etc1 || background.width != background.height) {
+            return false;
+        }
+        final int size = background.width;
+        final int[][] faces = new int[KtxFile.CUBE_FACES][];
+        for (int face = 0; face < KtxFile.CUBE_FACES; face++) {
+            final ByteBuffer image = background.getImage(0, face);
+            final byte[] data = new byte[image.remaining()];
+            image.get(data);
+            if (data.length < EtcCodec.getEncodedSize(size, size)) {
+                return false;
+            }
+            faces[face] = EtcCodec.decode(data, 0, size, size);
+        }
+        mBackground = faces;
+        mBackgroundSize = size;
+        return true;
+    }
+
+    /**
+     * Fills the pixels nothing has been drawn over, those still at the far plane's depth, with
+     * the cube map in each one's direction, point sampled. With the depth test off that's all
+     * of them. Runs on the calling thread, it's one sample per pixel.
+     */
+    @Override
+    public void drawBackground(float[] modelViewProjection) {
+        if (mBackground == null || mViewWidth == 0 || mHeight == 0) {
+            return;
+        }
+        final float[] m = modelViewProjection;
+        final float[] direction = new float[3];
+        for (int y = 0; y < mHeight; y++) {
+            final float ndcY = (y + 0.5f) * 2.0f / mHeight - 1.0f;
+            for (int x = mViewX; x < mViewX + mViewWidth; x++) {
+                final int pixel = y * mWidth + x;
+                if (mDepth[pixel] < 1.0f) {
+                    continue;
+                }
+                final float ndcX = (x - mViewX + 0.5f) * 2.0f / mViewWidth - 1.0f;
+                // the direction d whose clip position m * (d, 0) lands here is on both planes
+                // (row x - ndcX * row w) . d = 0 and (row y - ndcY * row w) . d = 0, so it's
+                // their cross product, facing whichever way gives a positive w
+                final float ax = m[0] - ndcX * m[3], ay = m[4] - ndcX * m[7], az = m[8] - ndcX * m[11];
+                final float bx = m[1] - ndcY * m[3], by = m[5] - ndcY * m[7], bz = m[9] - ndcY * m[11];
+                direction[0] = ay * bz - az * by;
+                direction[1] = az * bx - ax * bz;
+                direction[2] = ax * by - ay * bx;
+                if (m[3] * direction[0] + m[7] * direction[1] + m[11] * direction[2] < 0.0f) {
+                    direction[0] = -direction[0];
+                    direction[1] = -direction[1];
+                    direction[2] = -direction[2];
+                }
+                mColor[pixel] = (mColor[pixel] & ~mColorMask) | (sampleBackground(direction) & mColorMask);
+            }
+        }
+    }
+
+    /**
+     * @return the background's texel in the given direction, picking the face and coordinates
+     * the way GL does for a cube map
+     */
+    private int sampleBackground(float[] d) {
+        final float ax = Math.abs(d[0]), ay = Math.abs(d[1]), az = Math.abs(d[2]);
+        final int face;
+        final float sc, tc, ma;
+        if (ax >= ay && ax >= az) {
+            face = d[0] > 0.0f ? 0 : 1;
+            sc = d[0] > 0.0f ? -d[2] : d[2];
+            tc = -d[1];
+            ma = ax;
+        } else if (ay >= az) {
+            face = d[1] > 0.0f ? 2 : 3;
+            sc = d[0];
+            tc = d[1] > 0.0f ? d[2] : -d[2];
+            ma = ay;
+        } else {
+            face = d[2] > 0.0f ? 4 : 5;
+            sc = d[2] > 0.0f ? d[0] : -d[0];
+            tc = -d[1];
+            ma = az;
+        }
+        final int size = mBackgroundSize;
+        final int s = Math.max(0, Math.min(size - 1, (int) ((sc / ma + 1.0f) * 0.5f * size)));
+        final int t = Math.max(0, Math.min(size - 1, (int) ((tc / ma + 1.0f) * 0.5f * size)));
+        return mBackground[face][t * size + s];
+    }
+
+    private void draw(Mesh mesh, float[] modelViewProjection) {
+        if (mViewWidth == 0 || mHeight == 0) {
+            return;
+        }
+        MeshArrays arrays = mMeshArrays.get(mesh);
+        if (arrays == null) {
+            arrays = new MeshArrays(mesh);
+            mMeshArrays.put(mesh, arrays);
+        }
+        mDrawMesh = arrays;
+        mDrawMvp = modelViewProjection;
+
+        final int vertexCount = arrays.colors.length / Mesh.COLOR_COMPONENTS;
+        if (mClipVertices.length < vertexCount * 4) {
+            mClipVertices = new float[vertexCount * 4];
+        }
+        final int triangleCount = arrays.indices.length / 3;
+        mChunkCount = (triangleCount + TRIANGLES_PER_CHUNK - 1) / TRIANGLES_PER_CHUNK;
+        if (mChunks.length < mChunkCount) {
+            mChunks = Arrays.copyOf(mChunks, mChunkCount);
+        }
+        for (int i = 0; i < mChunkCount; i++) {
+            if (mChunks[i] == null) {
+                mChunks[i] = new Chunk(mTilesX * mTilesY);
+            }
+        }
+        Arrays.fill(mTileFragments, 0);
+
+        mPool.invoke(new PassTask(PASS_TRANSFORM, 0, (vertexCount + VERTICES_PER_TASK - 1) / VERTICES_PER_TASK));
+        mPool.invoke(new PassTask(PASS_SETUP, 0, mChunkCount));
+        mPool.invoke(new PassTask(PASS_FILL, 0, mTilesX * mTilesY));
+
+        mTrianglesSubmitted += triangleCount;
+        for (int i = 0; i < mChunkCount; i++) {
+            mTrianglesRasterized += mChunks[i].triangleCount;
+        }
+        for (long fragments : mTileFragments) {
+            mFragments += fragments;
+        }
+        mDrawMesh = null;
+        mDrawMvp = null;
+    }
+
+    @Override
+    public void endFrame() {
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return the frame buffer as packed ARGB, bottom row first. Not a copy
+     */
+    public int[] getColorBuffer() {
+        return mColor;
+    }
+
+    /**
+     * @return window space depth of each pixel, 0 near to 1 far, bottom row first. Only
+     * written with the depth test on. Not a copy
+     */
+    public float[] getDepthBuffer() {
+        return mDepth;
+    }
+
+    /**
+     * @return a copy of the frame buffer the right way up
+     */
+    public PngImage toImage() {
+        int[] argb = new int[mWidth * mHeight];
+        for (int row = 0; row < mHeight; row++) {
+            System.arraycopy(mColor, (mHeight - 1 - row) * mWidth, argb, row * mWidth, mWidth);
+        }
+        return new PngImage(mWidth, mHeight, argb);
+    }
+
+    /**
+     * @return triangles passed in by draws since the last {@link #resetStatistics()}
+     */
+    public long getTrianglesSubmitted() {
+        return mTrianglesSubmitted;
+    }
+
+    /**
+     * @return triangles left to fill after clipping and culling, counting each piece of a
+     * clipped triangle
+     */
+    public long getTrianglesRasterized() {
+        return mTrianglesRasterized;
+    }
+
+    /**
+     * @return pixels covered by triangles, whether or not they passed the depth test
+     */
+    public long getFragments() {
+        return mFragments;
+    }
+
+    public void resetStatistics() {
+        mTrianglesSubmitted = 0;
+        mTrianglesRasterized = 0;
+        mFragments = 0;
+    }
+
+    private class PassTask extends RecursiveAction {
+        // ForkJoinTask is Serializable, these never are serialized
+        private static final long serialVersionUID = 1L;
+
+        private final int mPass;
+        private final int mStart;
+        private final int mEnd;
+
+        PassTask(int pass, int start, int end) {
+            mPass = pass;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (mEnd - mStart <= 1) {
+                if (mEnd > mStart) {
+                    runPass(mPass, mStart);
+                }
+                return;
+            }
+            int middle = (mStart + mEnd) >>> 1;
+            invokeAll(new PassTask(mPass, mStart, middle), new PassTask(mPass, middle, mEnd));
+        }
+    }
+
+    private void runPass(int pass, int item) {
+        switch (pass) {
+            case PASS_TRANSFORM:
+                transformVertices(item * VERTICES_PER_TASK,
+                        Math.min(mDrawMesh.colors.length / Mesh.COLOR_COMPONENTS, (item + 1) * VERTICES_PER_TASK));
+                break;
+            case PASS_SETUP:
+                setUpTriangles(mChunks[item], item * TRIANGLES_PER_CHUNK,
+                        Math.min(mDrawMesh.indices.length / 3, (item + 1) * TRIANGLES_PER_CHUNK));
+                break;
+            default:
+                fillTile(item);
+                break;
+        }
+    }
+
+    private void transformVertices(int start, int end) {
+        final float[] m = mDrawMvp;
+        final float[] positions = mDrawMesh.positions;
+        final float[] clip = mClipVertices;
+        for (int i = start; i < end; i++) {
+            final float x = positions[i * 3];
+            final float y = positions[i * 3 + 1];
+            final float z = positions[i * 3 + 2];
+            clip[i * 4] = m[0] * x + m[4] * y + m[8] * z + m[12];
+            clip[i * 4 + 1] = m[1] * x + m[5] * y + m[9] * z + m[13];
+            clip[i * 4 + 2] = m[2] * x + m[6] * y + m[10] * z + m[14];
+            clip[i * 4 + 3] = m[3] * x + m[7] * y + m[11] * z + m[15];
+        }
+    }
+
+    private static int outcode(float[] clip, int offset) {
+        final float x = clip[offset];
+        final float y = clip[offset + 1];
+        final float z = clip[offset + 2];
+        final float w = clip[offset + 3];
+        int code = 0;
+        if (x < -w) {
+            code |= OUTSIDE_LEFT;
+        } else if (x > w) {
+            code |= OUTSIDE_RIGHT;
+        }
+        if (y < -w) {
+            code |= OUTSIDE_BOTTOM;
+        } else if (y > w) {
+            code |= OUTSIDE_TOP;
+        }
+        if (z < -w) {
+            code |= OUTSIDE_NEAR;
+        } else if (z > w) {
+            code |= OUTSIDE_FAR;
+        }
+        if (Math.abs(x) > GUARD_BAND * w || Math.abs(y) > GUARD_BAND * w) {
+            code |= OUTSIDE_GUARD_BAND;
+        }
+        return code;
+    }
+
+    private void setUpTriangles(Chunk chunk, int start, int end) {
+        chunk.reset();
+        final int[] indices = mDrawMesh.indices;
+        final float[] colors = mDrawMesh.colors;
+        final boolean tinted = mTinted;
+        final float[] tint = mTint;
+        final float[] clip = mClipVertices;
+        final float[] polygon = chunk.polygon;
+        for (int triangle = start; triangle < end; triangle++) {
+            int code0 = outcode(clip, indices[triangle * 3] * 4);
+            int code1 = outcode(clip, indices[triangle * 3 + 1] * 4);
+            int code2 = outcode(clip, indices[triangle * 3 + 2] * 4);
+            // all on the wrong side of one plane
+            if ((code0 & code1 & code2 & ~OUTSIDE_GUARD_BAND) != 0) {
+                continue;
+            }
+
+            for (int corner = 0; corner < 3; corner++) {
+                final int index = indices[triangle * 3 + corner];
+                System.arraycopy(clip, index * 4, polygon, corner * CLIP_VERTEX_FLOATS, 4);
+                System.arraycopy(colors, index * 4, polygon, corner * CLIP_VERTEX_FLOATS + 4, 4);
+                if (tinted) {
+                    for (int channel = 0; channel < 4; channel++) {
+                        polygon[corner * CLIP_VERTEX_FLOATS + 4 + channel] *= tint[channel];
+                    }
+                }
+            }
+            final int clipCodes = (code0 | code1 | code2) & (OUTSIDE_NEAR | OUTSIDE_FAR | OUTSIDE_GUARD_BAND);
+            if (clipCodes == 0) {
+                addTriangle(chunk, polygon, 0, 1, 2);
+                continue;
+            }
+
+            int count = 3;
+            for (float[] plane : CLIP_PLANES) {
+                count = clipPolygon(polygon, count, plane, chunk.clipScratch);
+                if (count < 3) {
+                    break;
+                }
+            }
+            for (int i = 1; i + 1 < count; i++) {
+                addTriangle(chunk, polygon, 0, i, i + 1);
+            }
+        }
+    }
+
+    /**
+     * Sutherland-Hodgman against one plane, in place.
+     *
+     * @return vertices left
+     */
+    private static int clipPolygon(float[] polygon, int count, float[] plane, float[] scratch) {
+        int outCount = 0;
+        for (int i = 0; i < count; i++) {
+            final int a = i * CLIP_VERTEX_FLOATS;
+            final int b = ((i + 1) % count) * CLIP_VERTEX_FLOATS;
+            final float da = plane[0] * polygon[a] + plane[1] * polygon[a + 1] + plane[2] * polygon[a + 2] + plane[3] * polygon[a + 3];
+            final float db = plane[0] * polygon[b] + plane[1] * polygon[b + 1] + plane[2] * polygon[b + 2] + plane[3] * polygon[b + 3];
+            if (da >= 0) {
+                System.arraycopy(polygon, a, scratch, outCount++ * CLIP_VERTEX_FLOATS, CLIP_VERTEX_FLOATS);
+            }
+            if ((da >= 0) != (db >= 0)) {
+                final float t = da / (da - db);
+                final int out = outCount++ * CLIP_VERTEX_FLOATS;
+                for (int k = 0; k < CLIP_VERTEX_FLOATS; k++) {
+                    scratch[out + k] = polygon[a + k] + (polygon[b + k] - polygon[a + k]) * t;
+                }
+            }
+        }
+        System.arraycopy(scratch, 0, polygon, 0, outCount * CLIP_VERTEX_FLOATS);
+        return outCount;
+    }
+
+    private void addTriangle(Chunk chunk, float[] polygon, int v0, int v1, int v2) {
+        final float halfWidth = mViewWidth * 0.5f * SUBPIXEL_SCALE;
+        final float halfHeight = mHeight * 0.5f * SUBPIXEL_SCALE;
+        final long viewX = (long) mViewX << SUBPIXEL_BITS;
+
+        final int a = v0 * CLIP_VERTEX_FLOATS;
+        int b = v1 * CLIP_VERTEX_FLOATS;
+        int c = v2 * CLIP_VERTEX_FLOATS;
+        final float invWa = 1.0f / polygon[a + 3];
+        float invWb = 1.0f / polygon[b + 3];
+        float invWc = 1.0f / polygon[c + 3];
+        // the guard band keeps these well inside the range floats hold integers exactly in
+        final long xa = Math.round((polygon[a] * invWa + 1.0f) * halfWidth) + viewX;
+        final long ya = Math.round((polygon[a + 1] * invWa + 1.0f) * halfHeight);
+        long xb = Math.round((polygon[b] * invWb + 1.0f) * halfWidth) + viewX;
+        long yb = Math.round((polygon[b + 1] * invWb + 1.0f) * halfHeight);
+        long xc = Math.round((polygon[c] * invWc + 1.0f) * halfWidth) + viewX;
+        long yc = Math.round((polygon[c + 1] * invWc + 1.0f) * halfHeight);
+
+        // counterclockwise is positive with y up. Front faces are clockwise, so anything
+        // positive is a back face
+        final long area = (xb - xa) * (yc - ya) - (xc - xa) * (yb - ya);
+        if (area >= 0) {
+            return;
+        }
+        // make it counterclockwise for filling
+        int swap = b;
+        b = c;
+        c = swap;
+        long swapL = xb;
+        xb = xc;
+        xc = swapL;
+        swapL = yb;
+        yb = yc;
+        yc = swapL;
+        float swapF = invWb;
+        invWb = invWc;
+        invWc = swapF;
+
+        // clipping only goes as far as the guard band, so this also keeps a view's triangles
+        // out of its neighbour's columns
+        final int minX = Math.max(mViewX, (int) (Math.min(xa, Math.min(xb, xc)) >> SUBPIXEL_BITS));
+        final int maxX = Math.min(mViewX + mViewWidth - 1, (int) (Math.max(xa, Math.max(xb, xc)) >> SUBPIXEL_BITS));
+        final int minY = Math.max(0, (int) (Math.min(ya, Math.min(yb, yc)) >> SUBPIXEL_BITS));
+        final int maxY = Math.min(mHeight - 1, (int) (Math.max(ya, Math.max(yb, yc)) >> SUBPIXEL_BITS));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        final float[] setup = chunk.reserve();
+        final int s = (chunk.triangleCount - 1) * SETUP_STRIDE;
+        setup[s + SETUP_X] = xa;
+        setup[s + SETUP_X + 1] = ya;
+        setup[s + SETUP_X + 2] = xb;
+        setup[s + SETUP_X + 3] = yb;
+        setup[s + SETUP_X + 4] = xc;
+        setup[s + SETUP_X + 5] = yc;
+        setup[s + SETUP_Z] = polygon[a + 2] * invWa;
+        setup[s + SETUP_Z + 1] = polygon[b + 2] * invWb;
+        setup[s + SETUP_Z + 2] = polygon[c + 2] * invWc;
+        setup[s + SETUP_INV_W] = invWa;
+        setup[s + SETUP_INV_W + 1] = invWb;
+        setup[s + SETUP_INV_W + 2] = invWc;
+        for (int k = 0; k < 4; k++) {
+            setup[s + SETUP_COLOR + k] = polygon[a + 4 + k] * invWa;
+            setup[s + SETUP_COLOR + 4 + k] = polygon[b + 4 + k] * invWb;
+            setup[s + SETUP_COLOR + 8 + k] = polygon[c + 4 + k] * invWc;
+        }
+        setup[s + SETUP_BOUNDS] = minX;
+        setup[s + SETUP_BOUNDS + 1] = minY;
+        setup[s + SETUP_BOUNDS + 2] = maxX;
+        setup[s + SETUP_BOUNDS + 3] = maxY;
+
+        final int triangle = chunk.triangleCount - 1;
+        for (int tileY = minY / TILE_SIZE; tileY <= maxY / TILE_SIZE; tileY++) {
+            for (int tileX = minX / TILE_SIZE; tileX <= maxX / TILE_SIZE; tileX++) {
+                chunk.bin(tileY * mTilesX + tileX, triangle);
+            }
+        }
+    }
+
+    private void fillTile(int tile) {
+        final int tileMinX = (tile % mTilesX) * TILE_SIZE;
+        final int tileMinY = (tile / mTilesX) * TILE_SIZE;
+        final int tileMaxX = Math.min(mWidth, tileMinX + TILE_SIZE) - 1;
+        final int tileMaxY = Math.min(mHeight, tileMinY + TILE_SIZE) - 1;
+        long fragments = 0;
+        for (int i = 0; i < mChunkCount; i++) {
+            final Chunk chunk = mChunks[i];
+            final int count = chunk.binCounts[tile];
+            final int[] bin = chunk.bins[tile];
+            for (int j = 0; j < count; j++) {
+                fragments += fillTriangle(chunk.setup, bin[j] * SETUP_STRIDE, tileMinX, tileMinY, tileMaxX, tileMaxY);
+            }
+        }
+        mTileFragments[tile] = fragments;
+    }
+
+    /**
+     * @return pixels covered
+     */
+    private int fillTriangle(float[] setup, int s, int tileMinX, int tileMinY, int tileMaxX, int tileMaxY) {
+        final int minX = Math.max(tileMinX, (int) setup[s + SETUP_BOUNDS]);
+        final int minY = Math.max(tileMinY, (int) setup[s + SETUP_BOUNDS + 1]);
+        final int maxX = Math.min(tileMaxX, (int) setup[s + SETUP_BOUNDS + 2]);
+        final int maxY = Math.min(tileMaxY, (int) setup[s + SETUP_BOUNDS + 3]);
+        if (minX > maxX || minY > maxY) {
+            return 0;
+        }
+
+        final long x0 = (long) setup[s + SETUP_X], y0 = (long) setup[s + SETUP_X + 1];
+        final long x1 = (long) setup[s + SETUP_X + 2], y1 = (long) setup[s + SETUP_X + 3];
+        final long x2 = (long) setup[s + SETUP_X + 4], y2 = (long) setup[s + SETUP_X + 5];
+
+        // edge functions, each positive on the inside of the edge opposite one vertex, stepped
+        // by a whole pixel at a time. Pixel centers on an edge belong to its triangle if it's a
+        // top or left edge, which the bias moves just inside
+        final long step0 = (y1 - y2) << SUBPIXEL_BITS;
+        final long step1 = (y2 - y0) << SUBPIXEL_BITS;
+        final long step2 = (y0 - y1) << SUBPIXEL_BITS;
+        final long bias0 = isTopLeft(x2 - x1, y2 - y1) ? 0 : -1;
+        final long bias1 = isTopLeft(x0 - x2, y0 - y2) ? 0 : -1;
+        final long bias2 = isTopLeft(x1 - x0, y1 - y0) ? 0 : -1;
+        final float invArea = 1.0f / ((x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0));
+
+        final float z0 = setup[s + SETUP_Z], z1 = setup[s + SETUP_Z + 1], z2 = setup[s + SETUP_Z + 2];
+        final float w0 = setup[s + SETUP_INV_W], w1 = setup[s + SETUP_INV_W + 1], w2 = setup[s + SETUP_INV_W + 2];
+        final int c = s + SETUP_COLOR;
+
+        final int[] color = mColor;
+        final float[] depth = mDepth;
+        final boolean depthTest = mDepthTest;
+        final int colorMask = mColorMask;
+        final int width = mWidth;
+        int covered = 0;
+        for (int y = minY; y <= maxY; y++) {
+            final long py = ((long) y << SUBPIXEL_BITS) + HALF_PIXEL;
+            final long px = ((long) minX << SUBPIXEL_BITS) + HALF_PIXEL;
+            long e0 = edge(x1, y1, x2, y2, px, py) + bias0;
+            long e1 = edge(x2, y2, x0, y0, px, py) + bias1;
+            long e2 = edge(x0, y0, x1, y1, px, py) + bias2;
+            for (int x = minX; x <= maxX; x++, e0 += step0, e1 += step1, e2 += step2) {
+                if ((e0 | e1 | e2) < 0) {
+                    continue;
+                }
+                covered++;
+                final float l0 = (e0 - bias0) * invArea;
+                final float l1 = (e1 - bias1) * invArea;
+                final float l2 = 1.0f - l0 - l1;
+
+                // ndc z is linear in screen space, everything else has to go through 1/w
+                final float z = l0 * z0 + l1 * z1 + l2 * z2;
+                final float windowZ = z * 0.5f + 0.5f;
+                final int pixel = y * width + x;
+                if (depthTest) {
+                    if (!(windowZ < depth[pixel])) {
+                        continue;
+                    }
+                    depth[pixel] = windowZ;
+                }
+                final float w = 1.0f / (l0 * w0 + l1 * w1 + l2 * w2);
+                final int argb = pack(
+                        (l0 * setup[c] + l1 * setup[c + 4] + l2 * setup[c + 8]) * w,
+                        (l0 * setup[c + 1] + l1 * setup[c + 5] + l2 * setup[c + 9]) * w,
+                        (l0 * setup[c + 2] + l1 * setup[c + 6] + l2 * setup[c + 10]) * w,
+                        (l0 * setup[c + 3] + l1 * setup[c + 7] + l2 * setup[c + 11]) * w);
+                color[pixel] = (color[pixel] & ~colorMask) | (argb & colorMask);
+            }
+        }
+        return covered;
+    }
+
+    /**
+     * @return twice the signed area of (a, b, p), positive if p is to the left of a to b
+     */
+    private static long edge(long ax, long ay, long bx, long by, long px, long py) {
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+
+    /**
+     * For a counterclockwise triangle with y up: top edges run right to left along the top,
+     * left edges run downwards.
+     */
+    private static boolean isTopLeft(long dx, long dy) {
+        return dy < 0 || (dy == 0 && dx < 0);
+    }
+
+    private static int pack(float r, float g, float b, float a) {
+        return toByte(a) << 24 | toByte(r) << 16 | toByte(g) << 8 | toByte(b);
+    }
+
+    private static int toByte(float value) {
+        if (!(value > 0.0f)) {
+            return 0;
+        }
+        return value >= 1.0f ? 255 : (int) (value * 255.0f + 0.5f);
+    }
+
+    /**
+     * A mesh's positions, colors and indices unpacked into plain arrays.
+     */
+    private static class MeshArrays {
+        final float[] positions;
+        final float[] colors;
+        final int[] indices;
+
+        MeshArrays(Mesh mesh) {
+            final int vertexCount = mesh.getVertexCount();
+            float[] interleaved = new float[vertexCount * Mesh.FLOATS_PER_VERTEX];
+            ByteBuffer vertexData = mesh.getVertexData().duplicate().order(ByteOrder.nativeOrder());
+            vertexData.clear();
+            vertexData.asFloatBuffer().get(interleaved);
+
+            positions = new float[vertexCount * Mesh.POSITION_COMPONENTS];
+            colors = new float[vertexCount * Mesh.COLOR_COMPONENTS];
+            for (int i = 0; i < vertexCount; i++) {
+                System.arraycopy(interleaved, i * Mesh.FLOATS_PER_VERTEX,
+                        positions, i * Mesh.POSITION_COMPONENTS, Mesh.POSITION_COMPONENTS);
+                System.arraycopy(interleaved, i * Mesh.FLOATS_PER_VERTEX + Mesh.POSITION_COMPONENTS,
+                        colors, i * Mesh.COLOR_COMPONENTS, Mesh.COLOR_COMPONENTS);
+            }
+
+            ByteBuffer indexData = mesh.getIndexData().duplicate().order(ByteOrder.nativeOrder());
+            indexData.clear();
+            indices = new int[mesh.getIndexCount()];
+            for (int i = 0; i < indices.length; i++) {
+                switch (mesh.getIndexSize()) {
+                    case 1:
+                        indices[i] = indexData.get(i) & 0xff;
+                        break;
+                    case 2:
+                        indices[i] = indexData.getShort(i * 2) & 0xffff;
+                        break;
+                    default:
+                        indices[i] = indexData.getInt(i * 4);
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Set-up triangles from one range of a draw's triangles and the tiles each touches. Reused
+     * from draw to draw.
+     */
+    private static class Chunk {
+        float[] setup = new float[SETUP_STRIDE * 256];
+        int triangleCount;
+        final int[][] bins;
+        final int[] binCounts;
+        final float[] polygon = new float[MAX_CLIPPED_VERTICES * CLIP_VERTEX_FLOATS];
+        final float[] clipScratch = new float[MAX_CLIPPED_VERTICES * CLIP_VERTEX_FLOATS];
+
+        Chunk(int tileCount) {
+            bins = new int[tileCount][];
+            binCounts = new int[tileCount];
+        }
+
+        void reset() {
+            triangleCount = 0;
+            Arrays.fill(binCounts, 0);
+        }
+
+        /**
+         * Makes room for one more triangle.
+         */
+        float[] reserve() {
+            if ((triangleCount + 1) * SETUP_STRIDE > setup.length) {
+                setup = Arrays.copyOf(setup, setup.length * 2);
+            }
+            triangleCount++;
+            return setup;
+        }
+
+        void bin(int tile, int triangle) {
+            int[] bin = bins[tile];
+            final int count = binCounts[tile];
+            if (bin == null) {
+                bin = bins[tile] = new int[64];
+            } else if (count == bin.length) {
+                bin = bins[tile] = Arrays.copyOf(bin, count * 2);
+            }
+            bin[count] = triangle;
+            binCounts[tile] = count + 1;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Splits a hologram frame into the views it's drawn as: just the one normally, or one per eye
+ * for stereo. Each eye gets its own off-axis frustum through the screen, worked out from the
+ * same pose as the mono frame (see {@link FrameMatrices#updateForEye}), rather than the two
+ * cameras being toed in.
+ *
+ * The scene is only culled and sorted once a frame, against a frustum wide enough to hold both
+ * eyes', and the resulting {@link RenderQueue} is replayed for each eye with that eye's
+ * matrices. So stereo adds a second round of matrix products and draw calls, not a second
+ * traversal.
+ *
+ * GL thread only.
+ */
+public class StereoProjection {
+
+    public enum Mode {
+        MONO,
+        // left eye in the left half of the screen, right eye in the right, for a viewer or
+        // parallel viewing
+        SIDE_BY_SIDE,
+        // both eyes over the whole screen, the left in red and the right in green and blue, for
+        // red/cyan glasses
+        ANAGLYPH
+    }
+
+    public static final int LEFT_EYE = 0;
+    public static final int RIGHT_EYE = 1;
+
+    private final FrameMatrices[] mEyes = {new FrameMatrices(), new FrameMatrices()};
+    private final FrameMatrices mCullFrame = new FrameMatrices();
+    private FrameMatrices mCenter;
+
+    private Mode mMode = Mode.MONO;
+    private float mEyeOffset;
+    private int mWidth = 1;
+    private int mHeight = 1;
+
+    /**
+     * @param interocularDistance how far apart the eyes are, relative to how far the center one
+     * is from the screen
+     */
+    public void setMode(Mode mode, float interocularDistance) {
+        mMode = mode;
+        mEyeOffset = Math.abs(interocularDistance) * 0.5f;
+    }
+
+    public Mode getMode() {
+        return mMode;
+    }
+
+    public void setSurfaceSize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * @return width over height of each view, what the center frame should be built with
+     */
+    public float getViewRatio() {
+        return (float) getViewWidth() / mHeight;
+    }
+
+    /**
+     * @return pixel width of each view
+     */
+    public int getViewWidth() {
+        return mMode == Mode.SIDE_BY_SIDE ? Math.max(1, mWidth / 2) : mWidth;
+    }
+
+    public int getViewCount() {
+        return mMode == Mode.MONO ? 1 : 2;
+    }
+
+    /**
+     * Works out each eye's matrices from the frame the center eye would see, built with
+     * {@link #getViewRatio()}.
+     */
+    public void update(FrameMatrices center) {
+        mCenter = center;
+        if (mMode == Mode.MONO) {
+            return;
+        }
+        final float ratio = getViewRatio();
+        mEyes[LEFT_EYE].updateForEye(center, ratio, -mEyeOffset);
+        mEyes[RIGHT_EYE].updateForEye(center, ratio, mEyeOffset);
+        // from the center, but reaching half the eye separation further out each side. Past
+        // the screen that takes in everything either eye can see
+        mCullFrame.updateForEye(center, ratio + mEyeOffset, 0.0f);
+    }
+
+    /**
+     * @return what to cull, pick levels of detail and sort against, covering every view
+     */
+    public FrameMatrices getCullFrame() {
+        return mMode == Mode.MONO ? mCenter : mCullFrame;
+    }
+
+    public FrameMatrices getView(int view) {
+        return mMode == Mode.MONO ? mCenter : mEyes[view];
+    }
+
+    /**
+     * Points the renderer's following draws at the given view. Not needed for mono, which
+     * draws over the whole surface.
+     */
+    public void beginView(SceneRenderer renderer, int view) {
+        final float[] projection = getView(view).projection;
+        switch (mMode) {
+            case SIDE_BY_SIDE:
+                final int viewWidth = getViewWidth();
+                renderer.beginView(projection, view * viewWidth, viewWidth, true, true, true);
+                break;
+            case ANAGLYPH:
+                final boolean left = view == LEFT_EYE;
+                renderer.beginView(projection, 0, mWidth, left, !left, !left);
+                break;
+            default:
+                renderer.beginView(projection, 0, mWidth, true, true, true);
+                break;
+        }
+    }
+}
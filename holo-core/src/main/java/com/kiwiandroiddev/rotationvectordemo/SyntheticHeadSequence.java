@@ -0,0 +1,130 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.Random;
+
+/**
+ * Front camera frames of a cartoon face in front of a textured wall, for running head tracking
+ * without a camera: the device turning one way and the viewer's head moving another, more
+ * slowly, with sensor noise and the exposure drifting. HeadTool writes sequences of them out
+ * with their ground truth, and holo-bench tracks them straight from memory.
+ */
+public final class SyntheticHeadSequence {
+
+    public static final int FRAME_WIDTH = 320;
+    public static final int FRAME_HEIGHT = 240;
+
+    // the camera, a 60 degree 4:3 one the right way up
+    public static final float HORIZONTAL_FOV_RADS = (float) Math.toRadians(60.0);
+    public static final float VERTICAL_FOV_RADS =
+            (float) (2.0 * Math.atan(Math.tan(HORIZONTAL_FOV_RADS * 0.5) * 0.75));
+
+    private SyntheticHeadSequence() {
+    }
+
+    /**
+     * @param out the device's x and y rotation, then the head's, in radians. All zero at the start
+     */
+    public static void motion(double seconds, float[] out) {
+        out[0] = (float) (0.10 * Math.sin(2.0 * Math.PI * 0.9 * seconds));
+        out[1] = (float) (0.15 * Math.sin(2.0 * Math.PI * 1.2 * seconds));
+        out[2] = (float) (0.08 * Math.sin(2.0 * Math.PI * 0.2 * seconds));
+        out[3] = (float) (0.12 * Math.sin(2.0 * Math.PI * 0.25 * seconds));
+    }
+
+    /**
+     * Where the camera sees something in the direction the given rotation would show it, in
+     * half frame widths and heights from the middle. The inverse of what {@link ViewerFusion}
+     * does with an upright camera.
+     */
+    public static void imagePosition(float xRotRads, float yRotRads, float[] out) {
+        out[0] = (float) (Math.tan(yRotRads) / Math.tan(HORIZONTAL_FOV_RADS * 0.5));
+        out[1] = (float) (-Math.tan(xRotRads) / Math.tan(VERTICAL_FOV_RADS * 0.5));
+    }
+
+    /**
+     * The frame the camera sees at the given time into the sequence.
+     *
+     * @param random the sensor noise, draw frames in order from one seeded the same way to get
+     * the same sequence again
+     */
+    public static PngImage frame(double seconds, Random random) {
+        final float[] motion = new float[4];
+        motion(seconds, motion);
+        final float[] face = new float[2];
+        final float[] wall = new float[2];
+        imagePosition(motion[0] + motion[2], motion[1] + motion[3], face);
+        imagePosition(motion[0], motion[1], wall);
+
+        final float halfWidth = FRAME_WIDTH * 0.5f;
+        final float halfHeight = FRAME_HEIGHT * 0.5f;
+        final float faceX = halfWidth * (1.0f + face[0]);
+        final float faceY = halfHeight * (1.0f + face[1]);
+        final float wallX = halfWidth * wall[0];
+        final float wallY = halfHeight * wall[1];
+        final double exposure = 1.0 + 0.08 * Math.sin(2.0 * Math.PI * 0.3 * seconds);
+
+        final int[] argb = new int[FRAME_WIDTH * FRAME_HEIGHT];
+        for (int y = 0; y < FRAME_HEIGHT; y++) {
+            for (int x = 0; x < FRAME_WIDTH; x++) {
+                double value = faceValue(x + 0.5f - faceX, y + 0.5f - faceY);
+                if (Double.isNaN(value)) {
+                    final double u = x - wallX, v = y - wallY;
+                    value = 110.0 + 40.0 * Math.sin(0.05 * u) * Math.cos(0.07 * v)
+                            + 25.0 * Math.sin(0.13 * u + 0.4 * Math.sin(0.03 * v));
+                }
+                final int luma = Math.max(0, Math.min(255,
+                        (int) Math.round(value * exposure + 3.0 * random.nextGaussian())));
+                argb[y * FRAME_WIDTH + x] = 0xff000000 | luma << 16 | luma << 8 | luma;
+            }
+        }
+        return new PngImage(FRAME_WIDTH, FRAME_HEIGHT, argb);
+    }
+
+    /**
+     * @return a cartoon face's brightness at the given offset from its middle, NaN outside it
+     */
+    private static double faceValue(float dx, float dy) {
+        final float rx = 48.0f, ry = 62.0f;
+        final float r2 = (dx * dx) / (rx * rx) + (dy * dy) / (ry * ry);
+        if (r2 > 1.0f) {
+            return Double.NaN;
+        }
+        if (dy < -38.0f) {
+            // hair
+            return 55.0;
+        }
+        if (inEllipse(Math.abs(dx) - 18.0f, dy + 12.0f, 9.0f, 5.0f)) {
+            return 35.0;
+        }
+        if (inEllipse(Math.abs(dx) - 18.0f, dy + 22.0f, 11.0f, 2.5f)) {
+            // eyebrows
+            return 70.0;
+        }
+        if (inEllipse(dx + 3.0f, dy - 8.0f, 5.0f, 11.0f)) {
+            return 130.0;
+        }
+        if (inEllipse(dx, dy - 32.0f, 17.0f, 5.0f)) {
+            return 80.0;
+        }
+        // lit from the upper left
+        return 185.0 - 45.0 * r2 - 0.2 * dx - 0.1 * dy;
+    }
+
+    private static boolean inEllipse(float dx, float dy, float rx, float ry) {
+        return (dx * dx) / (rx * rx) + (dy * dy) / (ry * ry) <= 1.0f;
+    }
+
+    /**
+     * @return the image's luma, a byte per pixel, as a camera would deliver it
+     */
+    public static byte[] luma(PngImage image) {
+        final byte[] luma = new byte[image.width * image.height];
+        for (int i = 0; i < luma.length; i++) {
+            final int pixel = image.argb[i];
+            // BT.601, what camera luma is
+            luma[i] = (byte) ((77 * ((pixel >> 16) & 0xff) + 150 * ((pixel >> 8) & 0xff) + 29 * (pixel & 0xff)
+                    + 128) >> 8);
+        }
+        return luma;
+    }
+}
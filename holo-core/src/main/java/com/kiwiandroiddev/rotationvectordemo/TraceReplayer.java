@@ -0,0 +1,118 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds a recorded {@link SensorTrace} into a {@link SensorSampleSink}, optionally interleaved
+ * with simulated frames at a fixed rate, so the pose integration and frame math can be run
+ * against exactly the same input as many times as needed.
+ *
+ * Runs either as fast as possible, for regression checks and throughput measurements, or in real
+ * time, pacing events by their recorded timestamps against a {@link Clock}.
+ */
+public class TraceReplayer {
+
+    public interface FrameCallback {
+        /**
+         * @param frameTimeNs when the frame starts, in the trace's time base
+         */
+        void onFrame(long frameTimeNs);
+    }
+
+    public static class Result {
+        public long sampleCount;
+        public long frameCount;
+        // first to last event timestamp
+        public long traceDurationNs;
+        // wall time the replay took
+        public long elapsedNs;
+
+        @Override
+        public String toString() {
+            return sampleCount + " samples, " + frameCount + " frames, trace " + traceDurationNs / 1000000
+                    + " ms replayed in " + elapsedNs / 1000000 + " ms";
+        }
+    }
+
+    private final SensorTraceReader mReader;
+    private final SensorSampleSink mSink;
+
+    private boolean mRealTime = false;
+    private Clock mClock = Clock.SYSTEM;
+
+    private long mFrameIntervalNs = 0;
+    private FrameCallback mFrameCallback;
+
+    public TraceReplayer(SensorTraceReader reader, SensorSampleSink sink) {
+        mReader = reader;
+        mSink = sink;
+    }
+
+    /**
+     * @param realTime true to deliver events at the pace they were recorded at, false to
+     * deliver them as fast as the sink can take them
+     */
+    public void setRealTime(boolean realTime, Clock clock) {
+        mRealTime = realTime;
+        mClock = clock;
+    }
+
+    /**
+     * Simulate a frame every frameIntervalNs of trace time, between the events that straddle it.
+     * Zero for no frames.
+     */
+    public void setFrames(long frameIntervalNs, FrameCallback callback) {
+        mFrameIntervalNs = frameIntervalNs;
+        mFrameCallback = callback;
+    }
+
+    /**
+     * Replays the trace from the start.
+     */
+    public Result run() throws IOException {
+        final Result result = new Result();
+        final long startNs = mClock.nanoTime();
+        final SensorTraceReader reader = mReader;
+        reader.rewind();
+
+        long firstTimestamp = 0;
+        long lastTimestamp = 0;
+        long nextFrameNs = 0;
+        while (reader.next()) {
+            final long timestamp = reader.timestampNs;
+            if (result.sampleCount == 0) {
+                firstTimestamp = timestamp;
+                nextFrameNs = timestamp + mFrameIntervalNs;
+            }
+
+            if (mFrameIntervalNs > 0) {
+                while (nextFrameNs <= timestamp) {
+                    waitUntil(startNs, nextFrameNs - firstTimestamp);
+                    mFrameCallback.onFrame(nextFrameNs);
+                    result.frameCount++;
+                    nextFrameNs += mFrameIntervalNs;
+                }
+            }
+
+            waitUntil(startNs, timestamp - firstTimestamp);
+            mSink.onSensorSample(reader.sensorType, timestamp, reader.values, reader.valueCount, reader.accuracy);
+            result.sampleCount++;
+            lastTimestamp = timestamp;
+        }
+
+        result.traceDurationNs = lastTimestamp - firstTimestamp;
+        result.elapsedNs = mClock.nanoTime() - startNs;
+        return result;
+    }
+
+    private void waitUntil(long startNs, long offsetNs) {
+        if (!mRealTime) {
+            return;
+        }
+        long remaining;
+        while ((remaining = startNs + offsetNs - mClock.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
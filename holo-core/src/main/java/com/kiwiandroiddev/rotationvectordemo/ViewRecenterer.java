@@ -0,0 +1,125 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Eases the view back to straight-on after the device has been left idle, so the hologram is
+ * centered again without the snap of the reset button.
+ *
+ * Keeps a rotation offset that's subtracted from the pose before drawing, see
+ * {@link FrameMatrices#updateFromPose}. While the {@link IdleDetector} says the device is idle
+ * the offset is pulled towards the current pose by a critically damped spring, which gets there
+ * as fast as it can without overshooting, so the drawn rotations and the frustum offsets that
+ * follow from them settle at neutral. Moving the device again stops the offset where it is, and
+ * the new neutral position is kept from then on.
+ *
+ * Stepped once per frame with the frame time, on the GL thread. The spring is solved exactly
+ * for each step, so it behaves the same at any frame rate, and nothing is allocated.
+ */
+public class ViewRecenterer {
+
+    public static final long DEFAULT_DURATION_NS = 1000000000L;
+
+    // (1 + wt) e^-wt, the critically damped spring's remaining distance from rest, falls to 1%
+    // at wt = 6.64, so that's where the duration is taken to end
+    private static final float SETTLE_OMEGA_TIME = 6.64f;
+
+    // close enough to snap to the target and stop asking for frames
+    private static final float SETTLED_DISTANCE = 0.0001f;
+    private static final float SETTLED_SPEED = 0.001f;
+
+    private static final float NS2S = 1.0f / 1000000000.0f;
+
+    private final IdleDetector mIdleDetector;
+    private final AtomicBoolean mPendingReset = new AtomicBoolean(false);
+
+    private volatile float mOmega = SETTLE_OMEGA_TIME / (DEFAULT_DURATION_NS * NS2S);
+
+    // GL thread only
+    private long mLastUpdateNs;
+    private float mXOffset;
+    private float mYOffset;
+    private float mXVelocity;
+    private float mYVelocity;
+
+    private volatile boolean mCentered = true;
+
+    public ViewRecenterer(IdleDetector idleDetector) {
+        mIdleDetector = idleDetector;
+    }
+
+    /**
+     * @param durationNs roughly how long recentering takes, from any thread
+     */
+    public void setDuration(long durationNs) {
+        mOmega = SETTLE_OMEGA_TIME / (Math.max(1L, durationNs) * NS2S);
+    }
+
+    /**
+     * Drops the offset on the next update, from any thread. For when the pose itself is reset.
+     */
+    public void requestReset() {
+        mPendingReset.set(true);
+    }
+
+    /**
+     * Advances the spring to the frame time.
+     *
+     * @param nowNs the frame time, on the sensor clock
+     * @param xRotRads the pose's rotation before offsetting, which idle recentering heads for
+     */
+    public void update(long nowNs, float xRotRads, float yRotRads) {
+        if (mPendingReset.getAndSet(false)) {
+            mXOffset = mYOffset = 0.0f;
+            mXVelocity = mYVelocity = 0.0f;
+        }
+        final float dT = mLastUpdateNs != 0 && nowNs > mLastUpdateNs ? (nowNs - mLastUpdateNs) * NS2S : 0.0f;
+        mLastUpdateNs = nowNs;
+
+        if (!mIdleDetector.isIdle(nowNs)) {
+            mXVelocity = mYVelocity = 0.0f;
+            mCentered = false;
+            return;
+        }
+
+        // x(t) = (x0 + (v0 + w x0) t) e^-wt, measured from the target
+        final float omega = mOmega;
+        final float decay = (float) Math.exp(-omega * dT);
+
+        float x = mXOffset - xRotRads;
+        float impulse = (mXVelocity + omega * x) * dT;
+        x = (x + impulse) * decay;
+        mXVelocity = (mXVelocity - omega * impulse) * decay;
+
+        float y = mYOffset - yRotRads;
+        impulse = (mYVelocity + omega * y) * dT;
+        y = (y + impulse) * decay;
+        mYVelocity = (mYVelocity - omega * impulse) * decay;
+
+        final boolean settled = Math.abs(x) < SETTLED_DISTANCE && Math.abs(y) < SETTLED_DISTANCE
+                && Math.abs(mXVelocity) < SETTLED_SPEED && Math.abs(mYVelocity) < SETTLED_SPEED;
+        if (settled) {
+            x = y = 0.0f;
+            mXVelocity = mYVelocity = 0.0f;
+        }
+        mXOffset = xRotRads + x;
+        mYOffset = yRotRads + y;
+        mCentered = settled;
+    }
+
+    public float getXOffset() {
+        return mXOffset;
+    }
+
+    public float getYOffset() {
+        return mYOffset;
+    }
+
+    /**
+     * @return false while recentering is under way or hasn't started yet, i.e. when frames
+     * need to keep coming for it to finish. Any thread
+     */
+    public boolean isCentered() {
+        return mCentered;
+    }
+}
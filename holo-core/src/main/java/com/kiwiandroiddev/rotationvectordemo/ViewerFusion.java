@@ -0,0 +1,219 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Combines where the front camera sees the viewer with the gyro's pose, so the frustum follows
+ * the viewer's head as well as the device turning under it.
+ *
+ * The gyro only knows how the device has turned, so on its own the frustum assumes the viewer
+ * stays put. The camera sees the viewer wherever they are, but a frame at a time, late, and
+ * with some jitter. Each camera measurement is turned into the rotation that would put the
+ * viewer where they were seen (see {@link PoseIntegrator#frustumForRotation}), and the
+ * difference between that and the gyro's rotation when the frame was captured is the offset
+ * to subtract from the pose, as {@link ViewRecenterer} does. The offset is smoothed over about
+ * {@link #TIME_CONSTANT_NS}. Between frames and through the camera's latency the gyro carries
+ * the view on, and the camera pulls it to where the viewer really is.
+ *
+ * Camera measurements arrive on the tracking thread, see {@link HeadTrackingPipeline.Listener},
+ * and are picked up by {@link #update}, stepped once per frame on the GL thread with the pose.
+ * The gyro's rotations at recent pose timestamps are kept to look up the rotation at a frame's
+ * capture time. Nothing is allocated.
+ */
+public class ViewerFusion implements HeadTrackingPipeline.Listener {
+
+    public static final long TIME_CONSTANT_NS = 100000000L;
+
+    // a second of frames at 60 fps, much longer than any camera's latency
+    private static final int HISTORY = 64;
+
+    // measurements further apart than this are taken as the start of a new run
+    private static final long MAX_MEASUREMENT_INTERVAL_NS = 500000000L;
+
+    private final Object mLock = new Object();
+
+    // how the camera's image maps to directions, any thread. Until told otherwise, a 60 degree
+    // 4:3 camera
+    private volatile float mTanHalfFovX = (float) Math.tan(Math.toRadians(30.0));
+    private volatile float mTanHalfFovY = mTanHalfFovX * 0.75f;
+    private volatile int mOrientationDegrees;
+
+    // the latest measurement, guarded by mLock
+    private boolean mPending;
+    private boolean mPendingReset;
+    private long mMeasuredTimestamp;
+    private float mMeasuredXRot;
+    private float mMeasuredYRot;
+
+    // GL thread only
+    private final long[] mHistoryTimestamps = new long[HISTORY];
+    private final float[] mHistoryXRot = new float[HISTORY];
+    private final float[] mHistoryYRot = new float[HISTORY];
+    private int mHistoryCount;
+    private int mHistoryNext;
+    private long mLastMeasurementNs;
+    private float mXOffset;
+    private float mYOffset;
+
+    private volatile boolean mTracking;
+
+    /**
+     * Tells this how the camera's frames relate to the device, from any thread.
+     *
+     * @param horizontalFovRads across the frame's width as delivered, i.e. the sensor's
+     * @param orientationDegrees how far the frame has to be turned clockwise to be upright with
+     * the device in its natural orientation, as Camera.CameraInfo has it. 0, 90, 180 or 270
+     */
+    public void setCameraGeometry(float horizontalFovRads, float verticalFovRads, int orientationDegrees) {
+        mTanHalfFovX = (float) Math.tan(horizontalFovRads * 0.5);
+        mTanHalfFovY = (float) Math.tan(verticalFovRads * 0.5);
+        mOrientationDegrees = ((orientationDegrees % 360) + 360) % 360;
+    }
+
+    /**
+     * Drops the offset on the next update and waits for a new measurement, from any thread.
+     * For when the pose and the tracker are reset.
+     */
+    public void requestReset() {
+        synchronized (mLock) {
+            mPendingReset = true;
+            mPending = false;
+        }
+    }
+
+    /**
+     * Tracking thread. Positions where the face wasn't found are ignored, the offset stays
+     * where it was.
+     */
+    @Override
+    public void onViewerPosition(long timestampNs, float imageX, float imageY, boolean locked) {
+        if (!locked) {
+            return;
+        }
+        // tangents of the direction to the viewer in the frame as delivered, y down
+        final float tanX = imageX * mTanHalfFovX;
+        final float tanY = imageY * mTanHalfFovY;
+        // turned upright
+        final float uprightX, uprightY;
+        switch (mOrientationDegrees) {
+            case 90:
+                uprightX = -tanY;
+                uprightY = tanX;
+                break;
+            case 180:
+                uprightX = -tanX;
+                uprightY = -tanY;
+                break;
+            case 270:
+                uprightX = tanY;
+                uprightY = -tanX;
+                break;
+            default:
+                uprightX = tanX;
+                uprightY = tanY;
+                break;
+        }
+        // the front camera faces the viewer, so their right is the frame's left and up is
+        // the frame's up. A viewer to the device's right is what turning it by a negative y
+        // rotation does, one above it a positive x rotation
+        final float yRot = (float) Math.atan(uprightX);
+        final float xRot = (float) Math.atan(-uprightY);
+        synchronized (mLock) {
+            mMeasuredTimestamp = timestampNs;
+            mMeasuredXRot = xRot;
+            mMeasuredYRot = yRot;
+            mPending = true;
+        }
+    }
+
+    /**
+     * Takes in the latest pose and any new camera measurement. GL thread.
+     *
+     * @param poseTimestampNs when the pose is from, on the sensor clock like the frames
+     * @param xRotRads the pose's rotation before offsetting
+     */
+    public void update(long poseTimestampNs, float xRotRads, float yRotRads) {
+        final boolean pending;
+        final long measuredTimestamp;
+        final float measuredXRot, measuredYRot;
+        synchronized (mLock) {
+            if (mPendingReset) {
+                mPendingReset = false;
+                mHistoryCount = 0;
+                mLastMeasurementNs = 0;
+                mXOffset = mYOffset = 0.0f;
+                mTracking = false;
+            }
+            pending = mPending;
+            mPending = false;
+            measuredTimestamp = mMeasuredTimestamp;
+            measuredXRot = mMeasuredXRot;
+            measuredYRot = mMeasuredYRot;
+        }
+
+        if (mHistoryCount == 0 || poseTimestampNs > mHistoryTimestamps[previous(mHistoryNext)]) {
+            mHistoryTimestamps[mHistoryNext] = poseTimestampNs;
+            mHistoryXRot[mHistoryNext] = xRotRads;
+            mHistoryYRot[mHistoryNext] = yRotRads;
+            mHistoryNext = (mHistoryNext + 1) % HISTORY;
+            mHistoryCount = Math.min(HISTORY, mHistoryCount + 1);
+        }
+        if (!pending) {
+            return;
+        }
+
+        // the offset that makes the pose at capture time show the viewer where they were seen
+        final float targetX = historyAt(mHistoryXRot, measuredTimestamp) - measuredXRot;
+        final float targetY = historyAt(mHistoryYRot, measuredTimestamp) - measuredYRot;
+        final long intervalNs = measuredTimestamp - mLastMeasurementNs;
+        if (!mTracking || intervalNs > MAX_MEASUREMENT_INTERVAL_NS) {
+            mXOffset = targetX;
+            mYOffset = targetY;
+        } else if (intervalNs > 0) {
+            final float weight = 1.0f - (float) Math.exp(-(double) intervalNs / TIME_CONSTANT_NS);
+            mXOffset += weight * (targetX - mXOffset);
+            mYOffset += weight * (targetY - mYOffset);
+        }
+        mLastMeasurementNs = measuredTimestamp;
+        mTracking = true;
+    }
+
+    /**
+     * @return the rotation at the given time, interpolated between the poses either side of
+     * it, or the nearest one at either end
+     */
+    private float historyAt(float[] rotations, long timestampNs) {
+        int newer = previous(mHistoryNext);
+        if (timestampNs >= mHistoryTimestamps[newer]) {
+            return rotations[newer];
+        }
+        for (int i = 1; i < mHistoryCount; i++) {
+            final int older = previous(newer);
+            if (timestampNs >= mHistoryTimestamps[older]) {
+                final float t = (float) (timestampNs - mHistoryTimestamps[older])
+                        / (mHistoryTimestamps[newer] - mHistoryTimestamps[older]);
+                return rotations[older] + t * (rotations[newer] - rotations[older]);
+            }
+            newer = older;
+        }
+        return rotations[newer];
+    }
+
+    private static int previous(int index) {
+        return (index + HISTORY - 1) % HISTORY;
+    }
+
+    public float getXOffset() {
+        return mXOffset;
+    }
+
+    public float getYOffset() {
+        return mYOffset;
+    }
+
+    /**
+     * @return whether the camera has seen the viewer since the last reset, i.e. whether the
+     * offsets mean anything. Any thread
+     */
+    public boolean isTracking() {
+        return mTracking;
+    }
+}
@@ -0,0 +1,63 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EtcCodecTest {
+
+    // ETC is a lossy 4 bits per pixel, these are a little below what it manages on a gradient
+    // and on thin lines, its worst case
+    private static final double MIN_SMOOTH_PSNR = 40.0;
+    private static final double MIN_DETAIL_PSNR = 19.0;
+
+    @Test
+    public void flatColorsSurvive() {
+        final int[] flat = {0xff000000, 0xffffffff, 0xff808080, 0xff3070c0, 0xffff0000};
+        for (int color : flat) {
+            final int[] pixels = new int[16];
+            Arrays.fill(pixels, color);
+            for (int pixel : EtcCodec.decode(EtcCodec.encode(pixels, 4, 4), 0, 4, 4)) {
+                assertTrue(Integer.toHexString(color), TestImages.maxChannelError(pixel, color) <= 4);
+            }
+        }
+    }
+
+    @Test
+    public void differentHalvesLandInTheirSubblocks() {
+        final int[] split = new int[16];
+        for (int i = 0; i < 16; i++) {
+            split[i] = (i % 4) < 2 ? 0xff202020 : 0xffe0e0e0;
+        }
+        final int[] decoded = EtcCodec.decode(EtcCodec.encode(split, 4, 4), 0, 4, 4);
+        for (int i = 0; i < 16; i++) {
+            assertTrue("pixel " + i, TestImages.maxChannelError(decoded[i], split[i]) <= 8);
+        }
+    }
+
+    @Test
+    public void oddSizesPadToWholeBlocks() {
+        final byte[] encoded = EtcCodec.encode(TestImages.checkerboard(13, 7).argb, 13, 7);
+        assertEquals(4 * 2 * EtcCodec.BLOCK_BYTES, encoded.length);
+        assertEquals(EtcCodec.getEncodedSize(13, 7), encoded.length);
+        assertEquals(13 * 7, EtcCodec.decode(encoded, 0, 13, 7).length);
+    }
+
+    @Test
+    public void smoothImagesCompressWell() {
+        assertTrue(psnr(TestImages.smooth(128)) >= MIN_SMOOTH_PSNR);
+    }
+
+    @Test
+    public void detailedImagesCompressAcceptably() {
+        assertTrue(psnr(TestImages.grid(128)) >= MIN_DETAIL_PSNR);
+    }
+
+    private static double psnr(PngImage image) {
+        final byte[] encoded = EtcCodec.encode(image.argb, image.width, image.height);
+        return TestImages.psnr(image, EtcCodec.decode(encoded, 0, image.width, image.height));
+    }
+}
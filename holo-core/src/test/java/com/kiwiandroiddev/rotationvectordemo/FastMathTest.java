@@ -0,0 +1,103 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Worst error of the table lookups against Math in double precision, near zero, over a few
+ * turns and out to the fallback, with every float either side of each quarter turn thrown in
+ * where the table's ends and the cosine's shift meet.
+ */
+public class FastMathTest {
+
+    // about what a tilted device covers, both ways
+    private static final float POSE_RANGE_RADIANS = (float) (Math.PI / 2.0);
+
+    @Test
+    public void poseRangeIsWithinBound() {
+        checkRange(-POSE_RANGE_RADIANS, POSE_RANGE_RADIANS, 2000000);
+    }
+
+    @Test
+    public void severalTurnsAreWithinBound() {
+        checkRange((float) (-8.0 * Math.PI), (float) (8.0 * Math.PI), 4000000);
+    }
+
+    @Test
+    public void fastRangeIsWithinBound() {
+        checkRange(-FastMath.MAX_FAST_RADIANS, FastMath.MAX_FAST_RADIANS, 4000000);
+    }
+
+    @Test
+    public void fallbackMatchesMath() {
+        final float[] special = {FastMath.MAX_FAST_RADIANS * 4.0f, Float.POSITIVE_INFINITY,
+                Float.NEGATIVE_INFINITY, Float.NaN, 0.0f, -0.0f};
+        for (float x : special) {
+            // zero's sign doesn't matter to anyone using these
+            assertEquals("sin " + x, (float) Math.sin(x), FastMath.sin(x), 0.0f);
+            assertEquals("cos " + x, (float) Math.cos(x), FastMath.cos(x), 0.0f);
+        }
+    }
+
+    @Test
+    public void batchesMatchSingleVersions() {
+        final Random random = new Random(19);
+        final int count = 10000;
+        final float[] angles = new float[count + 3];
+        for (int i = 0; i < angles.length; i++) {
+            angles[i] = (random.nextFloat() - 0.5f) * 200.0f;
+        }
+        angles[5] = Float.NaN;
+        angles[6] = FastMath.MAX_FAST_RADIANS * 2.0f;
+
+        final float[] sin = new float[count + 1];
+        final float[] cos = new float[count + 1];
+        final float[] sinCos = new float[2 * count + 2];
+        FastMath.sin(angles, 3, sin, 1, count);
+        FastMath.cos(angles, 3, cos, 1, count);
+        FastMath.sinCos(angles, 3, sinCos, 2, count);
+        for (int i = 0; i < count; i++) {
+            final float x = angles[3 + i];
+            assertSame(FastMath.sin(x), sin[1 + i]);
+            assertSame(FastMath.cos(x), cos[1 + i]);
+            assertSame(FastMath.sin(x), sinCos[2 + 2 * i]);
+            assertSame(FastMath.cos(x), sinCos[3 + 2 * i]);
+        }
+    }
+
+    private static void checkRange(float from, float to, int samples) {
+        for (int i = 0; i <= samples; i++) {
+            check(from + (to - from) * ((float) i / samples));
+        }
+        for (int quarter = -4; quarter <= 4; quarter++) {
+            float x = (float) (quarter * Math.PI / 2.0);
+            if (x < from || x > to) {
+                continue;
+            }
+            for (int step = 0; step < 64; step++) {
+                x = Math.nextAfter(x, Double.NEGATIVE_INFINITY);
+            }
+            for (int step = 0; step < 128; step++, x = Math.nextAfter(x, Double.POSITIVE_INFINITY)) {
+                check(x);
+            }
+        }
+    }
+
+    private static void check(float x) {
+        final float sin = FastMath.sin(x);
+        final float cos = FastMath.cos(x);
+        if (Math.abs(sin - Math.sin(x)) > FastMath.MAX_ERROR || Math.abs(cos - Math.cos(x)) > FastMath.MAX_ERROR) {
+            throw new AssertionError("error over " + FastMath.MAX_ERROR + " at " + x + ": sin " + sin
+                    + " against " + Math.sin(x) + ", cos " + cos + " against " + Math.cos(x));
+        }
+        assertTrue("outside [-1, 1] at " + x, Math.abs(sin) <= 1.0f && Math.abs(cos) <= 1.0f);
+    }
+
+    private static void assertSame(float expected, float actual) {
+        assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(actual));
+    }
+}
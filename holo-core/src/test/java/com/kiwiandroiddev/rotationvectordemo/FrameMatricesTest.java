@@ -0,0 +1,78 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrameMatricesTest {
+
+    // FastMath's error against Math, carried through a 40 unit translation and the projection
+    private static final float TOLERANCE = 1.0e-4f;
+
+    private static final float[] ROTATIONS = {0.0f, 0.05f, -0.3f, 0.7f, -1.2f, 1.5f};
+
+    @Test
+    public void matchesTheGlMatrixCallSequence() {
+        final FrameMatrices matrices = new FrameMatrices();
+        for (float xRot : ROTATIONS) {
+            for (float yRot : ROTATIONS) {
+                for (float rotAxisZOffset : new float[]{0.0f, -20.0f}) {
+                    final float ratio = 16.0f / 9.0f;
+                    final float xOffset = FastMath.sin(yRot);
+                    final float yOffset = FastMath.sin(xRot);
+                    final float zNear = FastMath.cos(yRot);
+                    final float scale = 5.0f;
+                    matrices.update(ratio, xOffset, yOffset, zNear, xRot, yRot, rotAxisZOffset, scale);
+                    final float[][] expected = GlMatrix.frame(ratio, xOffset, yOffset, zNear, xRot, yRot,
+                            rotAxisZOffset, scale);
+
+                    final String pose = "x " + xRot + " y " + yRot + " axis " + rotAxisZOffset;
+                    assertMatrixEquals(pose + " projection", expected[0], matrices.projection);
+                    assertMatrixEquals(pose + " model-view", expected[1], matrices.modelView);
+                    assertMatrixEquals(pose + " mvp", expected[2], matrices.modelViewProjection);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void poseWithoutPredictionUsesItsOwnFrustum() {
+        final float[] pose = new float[PoseExchange.SIZE];
+        pose[PoseExchange.X_ROT] = 0.4f;
+        pose[PoseExchange.Y_ROT] = -0.2f;
+        pose[PoseExchange.FRUSTUM_X_OFFSET] = 0.1f;
+        pose[PoseExchange.FRUSTUM_Y_OFFSET] = -0.3f;
+        pose[PoseExchange.FRUSTUM_Z_NEAR] = 0.9f;
+        pose[PoseExchange.RATE_X] = 2.0f;
+
+        final FrameMatrices matrices = new FrameMatrices();
+        matrices.updateFromPose(pose, 1000L, 0L, 0.0f, 0.0f, 1.5f, -10.0f, 3.0f);
+        final float[][] expected = GlMatrix.frame(1.5f, 0.1f, -0.3f, 0.9f, 0.4f, -0.2f, -10.0f, 3.0f);
+        assertMatrixEquals("mvp", expected[2], matrices.modelViewProjection);
+    }
+
+    @Test
+    public void predictionExtrapolatesTheRotation() {
+        final float[] pose = new float[PoseExchange.SIZE];
+        pose[PoseExchange.X_ROT] = 0.1f;
+        pose[PoseExchange.RATE_X] = 2.0f;
+        pose[PoseExchange.RATE_Y] = -1.0f;
+        pose[PoseExchange.FRUSTUM_Z_NEAR] = 1.0f;
+
+        // 20ms ahead at constant rates
+        final FrameMatrices matrices = new FrameMatrices();
+        matrices.updateFromPose(pose, 1000000000L, 1020000000L, 0.0f, 0.0f, 1.0f, 0.0f, 1.0f);
+        final float xRot = 0.1f + 2.0f * 0.02f;
+        final float yRot = -1.0f * 0.02f;
+        final float[][] expected = GlMatrix.frame(1.0f, FastMath.sin(yRot), FastMath.sin(xRot),
+                FastMath.cos(yRot), xRot, yRot, 0.0f, 1.0f);
+        assertMatrixEquals("mvp", expected[2], matrices.modelViewProjection);
+    }
+
+    static void assertMatrixEquals(String message, float[] expected, float[] actual) {
+        for (int i = 0; i < 16; i++) {
+            assertEquals(message + " [" + i + "]", expected[i], actual[i],
+                    TOLERANCE * Math.max(1.0f, Math.abs(expected[i])));
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The scheduler and its policies on a fake clock, step by step and over a minute of simulated
+ * frames: a 60 Hz display whose vsync callbacks run a little late, now and then very late, a
+ * render thread whose frames take a few milliseconds to prepare and a few more to submit, with
+ * the odd slow one, and a 200 Hz sensor whose events arrive a little after they're stamped. A
+ * frame submitted by a vsync is taken to be shown at it. ScheduleTool simulate prints the same
+ * simulation's numbers in full.
+ */
+public class FrameSchedulerTest {
+
+    private static final long PERIOD_NS = FrameScheduler.DEFAULT_PERIOD_NS;
+    private static final long START_NS = 1000000000L;
+    private static final long SENSOR_INTERVAL_NS = 5000000L;
+    private static final double SECONDS = 60.0;
+    private static final long SEED = 24;
+
+    // main thread, from vsync to its callback running, and the render thread waking up for it
+    private static final long CALLBACK_DELAY_NS = 500000L;
+    private static final long CALLBACK_JITTER_NS = 1500000L;
+    private static final double CALLBACK_SPIKE_CHANCE = 0.03;
+    private static final long CALLBACK_SPIKE_NS = 10000000L;
+    private static final long WAKE_NS = 200000L;
+
+    // render thread. Preparing is settings and the scene's bounds, submitting is culling,
+    // sorting and the GL calls
+    private static final long PREPARE_NS = 2500000L;
+    private static final long SUBMIT_NS = 3000000L;
+    private static final long COST_JITTER_NS = 1000000L;
+    private static final double COST_SPIKE_CHANCE = 0.02;
+    private static final long COST_SPIKE_NS = 6000000L;
+    private static final long SLEEP_OVERSHOOT_NS = 500000L;
+
+    // from a sensor event's timestamp to it reaching the pose tracker
+    private static final long SENSOR_DELAY_NS = 1000000L;
+    private static final long SENSOR_JITTER_NS = 2000000L;
+
+    private long mNowNs;
+    private final Clock mClock = new Clock() {
+        @Override
+        public long nanoTime() {
+            return mNowNs;
+        }
+    };
+
+    private FrameScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mNowNs = START_NS;
+        mScheduler = new FrameScheduler(mClock);
+        mScheduler.setVsyncPeriod(PERIOD_NS);
+    }
+
+    /**
+     * One frame drawn straight through, from a vsync callback at vsyncNs.
+     *
+     * @return the latch time the scheduler handed back
+     */
+    private long frame(long vsyncNs, long prepareNs, long submitNs) {
+        mNowNs = vsyncNs + CALLBACK_DELAY_NS;
+        assertTrue(mScheduler.onVsync(vsyncNs));
+        mScheduler.beginFrame();
+        mNowNs += prepareNs;
+        final long latchNs = mScheduler.onPrepared();
+        mNowNs = Math.max(mNowNs, latchNs);
+        mScheduler.onLatched(mNowNs - SENSOR_DELAY_NS);
+        mNowNs += submitNs;
+        mScheduler.endFrame();
+        return latchNs;
+    }
+
+    @Test
+    public void immediateLatchesAsSoonAsTheFramesReady() {
+        final long latchNs = frame(START_NS, PREPARE_NS, SUBMIT_NS);
+        assertEquals(START_NS + CALLBACK_DELAY_NS + PREPARE_NS, latchNs);
+        assertEquals(START_NS + PERIOD_NS, mScheduler.getDeadline());
+        assertEquals(1, mScheduler.getFrames());
+        assertEquals(0, mScheduler.getMissed());
+        assertEquals(1, mScheduler.poseAgeAtSubmit.getTotalCount());
+    }
+
+    @Test
+    public void lateLatchLatchesBeforeTheDeadlineBySubmittingAndTheMargin() {
+        final LateLatchPolicy policy = new LateLatchPolicy();
+        mScheduler.setPolicy(policy);
+        long vsyncNs = START_NS;
+        for (int i = 0; i < LateLatchPolicy.WINDOW; i++) {
+            frame(vsyncNs, PREPARE_NS, SUBMIT_NS);
+            vsyncNs += PERIOD_NS;
+        }
+        assertEquals(SUBMIT_NS, policy.getSubmitEstimate());
+        final long latchNs = frame(vsyncNs, PREPARE_NS, SUBMIT_NS);
+        assertEquals(vsyncNs + PERIOD_NS - SUBMIT_NS - LateLatchPolicy.DEFAULT_MARGIN_NS, latchNs);
+        assertEquals(0, mScheduler.getMissed());
+    }
+
+    @Test
+    public void busyVsyncsAreSkippedUntilTheFramesDone() {
+        mNowNs = START_NS + CALLBACK_DELAY_NS;
+        assertTrue(mScheduler.onVsync(START_NS));
+        mScheduler.beginFrame();
+        mNowNs = START_NS + PERIOD_NS + CALLBACK_DELAY_NS;
+        assertFalse(mScheduler.onVsync(START_NS + PERIOD_NS));
+        assertEquals(1, mScheduler.getSkipped());
+        mScheduler.onPrepared();
+        mScheduler.onLatched(0);
+        mScheduler.endFrame();
+        // late, and with no pose there's no age to record
+        assertEquals(1, mScheduler.getMissed());
+        assertEquals(0, mScheduler.poseAgeAtSubmit.getTotalCount());
+
+        mNowNs = START_NS + 2 * PERIOD_NS + CALLBACK_DELAY_NS;
+        assertTrue(mScheduler.onVsync(START_NS + 2 * PERIOD_NS));
+    }
+
+    @Test
+    public void framesAskedForLongAgoAreGivenUpOn() {
+        mNowNs = START_NS + CALLBACK_DELAY_NS;
+        assertTrue(mScheduler.onVsync(START_NS));
+        // the surface paused before drawing it, and nobody said
+        long vsyncNs = START_NS;
+        int skipped = 0;
+        while (true) {
+            vsyncNs += PERIOD_NS;
+            mNowNs = vsyncNs + CALLBACK_DELAY_NS;
+            if (mScheduler.onVsync(vsyncNs)) {
+                break;
+            }
+            skipped++;
+        }
+        assertEquals(3, skipped);
+
+        mScheduler.onFramesInterrupted();
+        mNowNs = vsyncNs + PERIOD_NS + CALLBACK_DELAY_NS;
+        assertTrue(mScheduler.onVsync(vsyncNs + PERIOD_NS));
+    }
+
+    @Test
+    public void framesStartedAfterTheirDeadlineAreRetargeted() {
+        mNowNs = START_NS + CALLBACK_DELAY_NS;
+        assertTrue(mScheduler.onVsync(START_NS));
+        // the render thread only gets to it two and a half periods later
+        mNowNs = START_NS + PERIOD_NS * 5 / 2;
+        mScheduler.beginFrame();
+        assertEquals(START_NS + 3 * PERIOD_NS, mScheduler.getDeadline());
+        assertEquals(1, mScheduler.getRetargeted());
+        mScheduler.onPrepared();
+        mScheduler.onLatched(0);
+        mScheduler.endFrame();
+        assertEquals(0, mScheduler.getMissed());
+    }
+
+    @Test
+    public void lateLatchNeverSkipsTwiceInARow() {
+        final LateLatchPolicy policy = new LateLatchPolicy();
+        // a callback this late leaves no time for the initial estimates
+        final long lateNs = PERIOD_NS - 2 * LateLatchPolicy.DEFAULT_MARGIN_NS;
+        for (int i = 0; i < 10; i++) {
+            final long vsyncNs = START_NS + i * PERIOD_NS;
+            assertEquals(i % 2 == 1, policy.shouldRender(vsyncNs, vsyncNs + lateNs, PERIOD_NS));
+        }
+        // on time is always drawn for
+        assertTrue(policy.shouldRender(START_NS, START_NS, PERIOD_NS));
+        assertTrue(policy.shouldRender(START_NS + PERIOD_NS, START_NS + PERIOD_NS, PERIOD_NS));
+    }
+
+    @Test
+    public void lateLatchDrawsEveryVsyncWhenFramesTakeLongerThanAPeriod() {
+        final LateLatchPolicy policy = new LateLatchPolicy();
+        for (int i = 0; i < LateLatchPolicy.WINDOW; i++) {
+            policy.onFrameDone(0, PERIOD_NS, PERIOD_NS, 2 * PERIOD_NS);
+        }
+        for (int i = 0; i < 10; i++) {
+            final long vsyncNs = START_NS + i * PERIOD_NS;
+            assertTrue(policy.shouldRender(vsyncNs, vsyncNs + PERIOD_NS / 2, PERIOD_NS));
+        }
+        // and latches straight away
+        assertEquals(START_NS, policy.getLatchTime(START_NS + PERIOD_NS, START_NS));
+    }
+
+    @Test
+    public void lateLatchShowsAFresherSteadierPose() {
+        final Simulation immediate = simulate(FrameSchedulingPolicy.IMMEDIATE);
+        final Simulation late = simulate(new LateLatchPolicy());
+        final String message = String.format(Locale.US, "pose age shown %.2f ms late latched against %.2f ms,"
+                        + " spread %.2f ms against %.2f ms", late.meanShownAgeMs(), immediate.meanShownAgeMs(),
+                late.shownAgeSpreadMs(), immediate.shownAgeSpreadMs());
+        assertTrue(message, immediate.meanShownAgeMs() - late.meanShownAgeMs() >= 4.0);
+        assertTrue(message, late.shownAgeSpreadMs() <= immediate.shownAgeSpreadMs());
+    }
+
+    @Test
+    public void lateLatchKeepsNearlyEveryFrame() {
+        final Simulation immediate = simulate(FrameSchedulingPolicy.IMMEDIATE);
+        final Simulation late = simulate(new LateLatchPolicy());
+        final FrameScheduler scheduler = late.scheduler;
+        assertTrue(late.shown + " shown late latched against " + immediate.shown, late.shown >= 0.95 * immediate.shown);
+        assertTrue(scheduler.getMissed() + " missed of " + scheduler.getFrames(),
+                scheduler.getMissed() <= 0.02 * scheduler.getFrames());
+        // every frame had a pose, and it was younger at submission than when shown
+        assertEquals(scheduler.getFrames(), scheduler.poseAgeAtSubmit.getTotalCount());
+        assertTrue(scheduler.poseAgeAtSubmit.getMean() * 1e-6 < late.meanShownAgeMs());
+    }
+
+    /**
+     * What a policy did over a simulated run.
+     */
+    private static final class Simulation {
+        final FrameScheduler scheduler;
+        int shown;
+        double shownAgeSum;
+        int onTime;
+        double onTimeAgeSum;
+        double onTimeAgeSquares;
+
+        Simulation(FrameScheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        void recordShown(long ageNs, boolean wasOnTime) {
+            final double ageMs = ageNs / 1e6;
+            shown++;
+            shownAgeSum += ageMs;
+            if (wasOnTime) {
+                onTime++;
+                onTimeAgeSum += ageMs;
+                onTimeAgeSquares += ageMs * ageMs;
+            }
+        }
+
+        double meanShownAgeMs() {
+            return shownAgeSum / shown;
+        }
+
+        // how much the pose's age varies between frames shown on time, which shows up as judder
+        double shownAgeSpreadMs() {
+            final double mean = onTimeAgeSum / onTime;
+            return Math.sqrt(Math.max(0.0, onTimeAgeSquares / onTime - mean * mean));
+        }
+    }
+
+    // where a simulated frame is up to
+    private static final int IDLE = 0;
+    private static final int PREPARING = 1;
+    private static final int WAITING = 2;
+    private static final int SUBMITTING = 3;
+
+    /**
+     * Steps vsync callbacks and the render thread's frames in time order, the same random costs
+     * for every policy.
+     */
+    private Simulation simulate(FrameSchedulingPolicy policy) {
+        setUp();
+        mScheduler.setPolicy(policy);
+        final Simulation simulation = new Simulation(mScheduler);
+        final Random main = new Random(SEED);
+        final Random render = new Random(SEED + 1);
+        final Random sensor = new Random(SEED + 2);
+
+        final long endNs = START_NS + (long) (SECONDS * 1e9);
+        long vsyncNs = START_NS;
+        long callbackNs = vsyncNs + callbackDelay(main);
+        // the render thread's next step, at stepNs. Idle with a step due is a frame starting
+        int state = IDLE;
+        long stepNs = Long.MAX_VALUE;
+        // a frame asked for while the last one's still going starts once it's done
+        boolean requested = false;
+        long poseTimestampNs = 0;
+        long lastShownVsyncNs = 0;
+
+        while (vsyncNs < endNs) {
+            if (callbackNs <= stepNs) {
+                mNowNs = callbackNs;
+                if (mScheduler.onVsync(vsyncNs)) {
+                    if (state == IDLE && stepNs == Long.MAX_VALUE) {
+                        stepNs = callbackNs + WAKE_NS;
+                    } else {
+                        requested = true;
+                    }
+                }
+                vsyncNs += PERIOD_NS;
+                // the main thread runs one callback at a time
+                callbackNs = Math.max(callbackNs, vsyncNs + callbackDelay(main));
+                continue;
+            }
+
+            mNowNs = stepNs;
+            if (state == IDLE) {
+                mScheduler.beginFrame();
+                state = PREPARING;
+                stepNs = mNowNs + cost(render, PREPARE_NS);
+            } else if (state == PREPARING) {
+                final long latchNs = mScheduler.onPrepared();
+                state = WAITING;
+                stepNs = latchNs > mNowNs ? latchNs + (long) (render.nextDouble() * SLEEP_OVERSHOOT_NS) : mNowNs;
+            } else if (state == WAITING) {
+                poseTimestampNs = latestPose(mNowNs, sensor);
+                mScheduler.onLatched(poseTimestampNs);
+                state = SUBMITTING;
+                stepNs = mNowNs + cost(render, SUBMIT_NS);
+            } else {
+                mScheduler.endFrame();
+                // shown at the first vsync it's in time for, unless an earlier frame already
+                // took that one
+                final long shownVsyncNs = START_NS + ((mNowNs - START_NS + PERIOD_NS - 1) / PERIOD_NS) * PERIOD_NS;
+                if (shownVsyncNs > lastShownVsyncNs) {
+                    simulation.recordShown(shownVsyncNs - poseTimestampNs, shownVsyncNs == mScheduler.getDeadline());
+                    lastShownVsyncNs = shownVsyncNs;
+                }
+                state = IDLE;
+                stepNs = requested ? mNowNs : Long.MAX_VALUE;
+                requested = false;
+            }
+        }
+        return simulation;
+    }
+
+    private static long callbackDelay(Random random) {
+        long delayNs = CALLBACK_DELAY_NS + (long) (random.nextDouble() * CALLBACK_JITTER_NS);
+        if (random.nextDouble() < CALLBACK_SPIKE_CHANCE) {
+            delayNs += (long) (random.nextDouble() * CALLBACK_SPIKE_NS);
+        }
+        return delayNs;
+    }
+
+    private static long cost(Random random, long typicalNs) {
+        long costNs = typicalNs + (long) ((random.nextDouble() - 0.5) * COST_JITTER_NS);
+        if (random.nextDouble() < COST_SPIKE_CHANCE) {
+            costNs += (long) (random.nextDouble() * COST_SPIKE_NS);
+        }
+        return costNs;
+    }
+
+    /**
+     * @return the timestamp of the newest sensor event to have arrived by nowNs
+     */
+    private static long latestPose(long nowNs, Random random) {
+        long timestampNs = START_NS + ((nowNs - START_NS) / SENSOR_INTERVAL_NS) * SENSOR_INTERVAL_NS;
+        // events arrive after a varying delay, so the newest one stamped may not be in yet
+        while (timestampNs + SENSOR_DELAY_NS + (long) (random.nextDouble() * SENSOR_JITTER_NS) > nowNs) {
+            timestampNs -= SENSOR_INTERVAL_NS;
+        }
+        return timestampNs;
+    }
+}
@@ -0,0 +1,116 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrustumCullerTest {
+
+    private static final float RADIUS = 1.0f;
+
+    /**
+     * A matrix that scales by half, so the frustum is the box from -2 to 2 on every axis and each
+     * plane has to be normalized for the distances to come out in scene units.
+     */
+    private static FrustumCuller box() {
+        final float[] m = new float[16];
+        MatrixMath.setIdentity(m);
+        MatrixMath.scale(m, 0.5f);
+        m[15] = 1.0f;
+        final FrustumCuller culler = new FrustumCuller();
+        culler.setFrustum(m);
+        return culler;
+    }
+
+    @Test
+    public void sphereOutsideAnyPlaneIsRejected() {
+        final FrustumCuller culler = box();
+        assertTrue(culler.isVisible(0.0f, 0.0f, 0.0f, RADIUS));
+        for (int axis = 0; axis < 3; axis++) {
+            for (float side : new float[]{-1.0f, 1.0f}) {
+                final float[] center = new float[3];
+                center[axis] = side * (2.0f + RADIUS + 0.01f);
+                assertFalse("axis " + axis + " side " + side,
+                        culler.isVisible(center[0], center[1], center[2], RADIUS));
+            }
+        }
+    }
+
+    @Test
+    public void sphereStraddlingAPlaneIsKept() {
+        final FrustumCuller culler = box();
+        for (int axis = 0; axis < 3; axis++) {
+            for (float side : new float[]{-1.0f, 1.0f}) {
+                final float[] center = new float[3];
+                for (float offset : new float[]{-0.5f, 0.0f, RADIUS - 0.01f}) {
+                    center[axis] = side * (2.0f + offset);
+                    assertTrue("axis " + axis + " side " + side + " offset " + offset,
+                            culler.isVisible(center[0], center[1], center[2], RADIUS));
+                }
+            }
+        }
+    }
+
+    /**
+     * The hologram's frustums are off-axis: here the left side leans out a third as far as the
+     * right, and its plane through the eye has an inward normal of (1, 0, -0.5) / sqrt(1.25).
+     */
+    @Test
+    public void asymmetricFrustum() {
+        final float[] m = new float[16];
+        MatrixMath.setFrustum(m, -0.5f, 1.5f, -1.0f, 1.0f, 1.0f, 101.0f);
+        final FrustumCuller culler = new FrustumCuller();
+        culler.setFrustum(m);
+
+        // the left edge is at x = -5 ten units in; a radius out is 1.12 along x
+        final float perpendicular = (float) Math.sqrt(1.25);
+        assertTrue(culler.isVisible(-5.0f - 0.95f * perpendicular, 0.0f, -10.0f, RADIUS));
+        assertFalse(culler.isVisible(-5.0f - 1.05f * perpendicular, 0.0f, -10.0f, RADIUS));
+        // the right edge at x = 15 is much further out
+        assertTrue(culler.isVisible(15.0f, 0.0f, -10.0f, RADIUS));
+        // behind the eye and past the far plane
+        assertFalse(culler.isVisible(0.0f, 0.0f, 1.0f + 0.01f, RADIUS));
+        assertFalse(culler.isVisible(0.0f, 0.0f, -102.01f, RADIUS));
+        assertTrue(culler.isVisible(0.0f, 0.0f, -101.5f, RADIUS));
+    }
+
+    /**
+     * A branch outside is thrown out with one test, and one wholly inside is taken without
+     * testing anything under it.
+     */
+    @Test
+    public void cullsAndAcceptsWholeBranches() {
+        final LodChain model = LodChain.single(TestMeshes.sphere(4).toMesh());
+        final SceneNode root = new SceneNode();
+        final SceneNode inside = new SceneNode();
+        final SceneNode outside = new SceneNode();
+        final SceneNode straddling = new SceneNode(model);
+        root.addChild(inside);
+        root.addChild(outside);
+        root.addChild(straddling);
+        for (int i = 0; i < 3; i++) {
+            final SceneNode node = new SceneNode(model);
+            node.setScale(0.1f);
+            node.setPosition(i * 0.3f, 0.0f, 0.0f);
+            inside.addChild(node);
+            final SceneNode far = new SceneNode(model);
+            far.setPosition(10.0f + i, 0.0f, 0.0f);
+            outside.addChild(far);
+        }
+        straddling.setPosition(0.0f, -2.5f, 0.0f);
+        root.update();
+
+        final FrustumCuller culler = box();
+        final RenderQueue queue = new RenderQueue();
+        culler.cull(root, queue);
+        assertEquals(4, queue.size());
+        // the root and its three children, but nothing under the branch that's wholly inside
+        assertEquals(4, culler.getNodesTested());
+        assertEquals(1, culler.getNodesCulled());
+
+        culler.resetStatistics();
+        assertEquals(0, culler.getNodesTested());
+    }
+}
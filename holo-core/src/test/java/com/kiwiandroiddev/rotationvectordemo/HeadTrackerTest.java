@@ -0,0 +1,174 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The tracker and its pipeline over the short sequence under src/test/resources/head: a face
+ * moving in front of the camera while the device turns, with where the face really is in each
+ * frame in positions.csv. Written by HeadTool synth, which can make longer ones to look at.
+ */
+public class HeadTrackerTest {
+
+    // in downscaled pixels, finding the peak between pixels is biased by a little
+    private static final double MAX_ERROR_PIXELS = 1.0;
+    private static final double MAX_RMS_ERROR_PIXELS = 0.75;
+    private static final long MAX_ALLOCATED_BYTES = 1024;
+
+    private static int sWidth;
+    private static int sHeight;
+    private static long[] sTimestamps;
+    private static byte[][] sFrames;
+    private static float[] sExpectedX;
+    private static float[] sExpectedY;
+
+    @BeforeClass
+    public static void readSequence() throws IOException {
+        final List<String[]> frames = readCsv(TestImages.resource("head/frames.csv"));
+        final List<String[]> positions = readCsv(TestImages.resource("head/positions.csv"));
+        assertEquals(frames.size(), positions.size());
+        sTimestamps = new long[frames.size()];
+        sFrames = new byte[frames.size()][];
+        sExpectedX = new float[frames.size()];
+        sExpectedY = new float[frames.size()];
+        for (int i = 0; i < frames.size(); i++) {
+            final PngImage image = PngImage.read(TestImages.resource(
+                    String.format("head/frame-%05d.png", Integer.parseInt(frames.get(i)[0]))));
+            sWidth = image.width;
+            sHeight = image.height;
+            sTimestamps[i] = Long.parseLong(frames.get(i)[1]);
+            // the frames are gray, any channel is the luma
+            sFrames[i] = new byte[image.argb.length];
+            for (int p = 0; p < image.argb.length; p++) {
+                sFrames[i][p] = (byte) image.argb[p];
+            }
+            sExpectedX[i] = Float.parseFloat(positions.get(i)[1]);
+            sExpectedY[i] = Float.parseFloat(positions.get(i)[2]);
+        }
+    }
+
+    /**
+     * @return each data row's fields, the header skipped
+     */
+    private static List<String[]> readCsv(File file) throws IOException {
+        final List<String[]> rows = new ArrayList<String[]>();
+        final BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line = in.readLine();
+            while ((line = in.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    rows.add(line.trim().split(","));
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Where the face was found in each frame.
+     */
+    private static final class Track implements HeadTrackingPipeline.Listener {
+        final float[] imageX = new float[sFrames.length];
+        final float[] imageY = new float[sFrames.length];
+        final boolean[] locked = new boolean[sFrames.length];
+        int count;
+
+        @Override
+        public void onViewerPosition(long timestampNs, float x, float y, boolean isLocked) {
+            imageX[count] = x;
+            imageY[count] = y;
+            locked[count] = isLocked;
+            count++;
+        }
+    }
+
+    @Test
+    public void followsTheFace() {
+        final HeadTracker tracker = new HeadTracker();
+        final int factor = HeadTracker.scaleFactor(sWidth, sHeight);
+        final double halfWidth = sWidth / factor * 0.5;
+        final double halfHeight = sHeight / factor * 0.5;
+        double squared = 0.0;
+        for (int i = 0; i < sFrames.length; i++) {
+            tracker.onCameraFrame(sFrames[i], sWidth, sHeight, sWidth, sTimestamps[i]);
+            assertTrue("lost in frame " + i, tracker.isLocked());
+            assertEquals(sTimestamps[i], tracker.getTimestamp());
+            final double dx = (tracker.getImageX() - sExpectedX[i]) * halfWidth;
+            final double dy = (tracker.getImageY() - sExpectedY[i]) * halfHeight;
+            assertEquals("frame " + i + " x", 0.0, dx, MAX_ERROR_PIXELS);
+            assertEquals("frame " + i + " y", 0.0, dy, MAX_ERROR_PIXELS);
+            squared += dx * dx + dy * dy;
+        }
+        final double rms = Math.sqrt(squared / sFrames.length);
+        assertTrue("rms error " + rms + " pixels", rms <= MAX_RMS_ERROR_PIXELS);
+    }
+
+    @Test
+    public void resetTakesTheMiddleAsTheNewTemplate() {
+        final HeadTracker tracker = new HeadTracker();
+        final int last = sFrames.length - 1;
+        tracker.onCameraFrame(sFrames[0], sWidth, sHeight, sWidth, sTimestamps[0]);
+        tracker.requestReset();
+        tracker.onCameraFrame(sFrames[last], sWidth, sHeight, sWidth, sTimestamps[last]);
+        assertTrue(tracker.isLocked());
+        assertEquals(0.0f, tracker.getImageX(), 0.0f);
+        assertEquals(0.0f, tracker.getImageY(), 0.0f);
+    }
+
+    @Test
+    public void doesntAllocateOnceWarmedUp() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("this JVM can't measure allocation", threads instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        final long threadId = Thread.currentThread().getId();
+
+        final ViewerFusion fusion = new ViewerFusion();
+        final HeadTrackingPipeline pipeline = new HeadTrackingPipeline(new HeadTracker(), fusion, Clock.SYSTEM);
+        final int warmUp = sFrames.length / 2;
+        long before = 0;
+        for (int i = 0; i < sFrames.length; i++) {
+            if (i == warmUp) {
+                before = allocations.getThreadAllocatedBytes(threadId);
+            }
+            pipeline.onCameraFrame(sFrames[i], sWidth, sHeight, sWidth, sTimestamps[i]);
+            fusion.update(sTimestamps[i], 0.0f, 0.0f);
+        }
+        final long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+        assertTrue(allocated + " bytes allocated", allocated <= MAX_ALLOCATED_BYTES);
+    }
+
+    /**
+     * Frames delivered faster than they can be tracked are each either tracked or counted as
+     * dropped, nothing queues up.
+     */
+    @Test
+    public void threadedPipelineTracksOrDropsEveryFrame() {
+        final Track track = new Track();
+        final HeadTrackingPipeline pipeline = new HeadTrackingPipeline(new HeadTracker(), track, Clock.SYSTEM);
+        pipeline.start();
+        for (int i = 0; i < sFrames.length; i++) {
+            pipeline.onCameraFrame(sFrames[i], sWidth, sHeight, sWidth, sTimestamps[i]);
+        }
+        pipeline.stop();
+        final long accounted = track.count + pipeline.getDroppedCount();
+        assertTrue(track.count > 0);
+        // the last one may still have been waiting when it stopped
+        assertTrue(accounted + " of " + sFrames.length + " frames tracked or dropped",
+                accounted == sFrames.length || accounted == sFrames.length - 1);
+    }
+}
@@ -0,0 +1,63 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IdleDetectorTest {
+
+    private static final long START_NS = 1000000000L;
+    private static final long WINDOW_NS = IdleDetector.DEFAULT_WINDOW_NS;
+
+    @Test
+    public void notIdleBeforeAnySamples() {
+        assertFalse(new IdleDetector().isIdle(START_NS + 10 * WINDOW_NS));
+    }
+
+    @Test
+    public void idleAfterAWholeWindowStill() {
+        final IdleDetector detector = new IdleDetector();
+        // the first sample counts as motion, whatever its rate
+        detector.onGyroSample(START_NS, 0.0f, 0.0f, 0.0f);
+        detector.onGyroSample(START_NS + WINDOW_NS / 2, 0.01f, 0.0f, 0.0f);
+        assertFalse(detector.isIdle(START_NS + WINDOW_NS - 1));
+        assertTrue(detector.isIdle(START_NS + WINDOW_NS));
+    }
+
+    @Test
+    public void motionRestartsTheWindow() {
+        final IdleDetector detector = new IdleDetector();
+        detector.onGyroSample(START_NS, 0.0f, 0.0f, 0.0f);
+        // under the threshold on each axis, over it together
+        final float rate = IdleDetector.DEFAULT_MOTION_THRESHOLD * 0.75f;
+        detector.onGyroSample(START_NS + WINDOW_NS / 2, rate, rate, 0.0f);
+        assertFalse(detector.isIdle(START_NS + WINDOW_NS));
+        assertTrue(detector.isIdle(START_NS + WINDOW_NS / 2 + WINDOW_NS));
+    }
+
+    @Test
+    public void resetStartsOver() {
+        final IdleDetector detector = new IdleDetector();
+        detector.onGyroSample(START_NS, 0.0f, 0.0f, 0.0f);
+        assertTrue(detector.isIdle(START_NS + WINDOW_NS));
+        detector.reset();
+        assertFalse(detector.isIdle(START_NS + WINDOW_NS));
+        detector.onGyroSample(START_NS + WINDOW_NS, 0.0f, 0.0f, 0.0f);
+        assertFalse(detector.isIdle(START_NS + WINDOW_NS + 1));
+    }
+
+    @Test
+    public void settingsTakeEffect() {
+        final IdleDetector detector = new IdleDetector();
+        detector.setMotionThreshold(1.0f);
+        detector.setWindow(WINDOW_NS / 5);
+        detector.onGyroSample(START_NS, 0.0f, 0.0f, 0.0f);
+        detector.onGyroSample(START_NS + 1, 0.5f, 0.0f, 0.5f);
+        assertTrue(detector.isIdle(START_NS + WINDOW_NS / 5));
+
+        // a zero window turns it off
+        detector.setWindow(0);
+        assertFalse(detector.isIdle(START_NS + 10 * WINDOW_NS));
+    }
+}
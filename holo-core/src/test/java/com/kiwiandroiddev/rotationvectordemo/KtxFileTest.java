@@ -0,0 +1,91 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KtxFileTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void readsBackWhatWasWritten() throws IOException {
+        final PngImage[] faces = new PngImage[KtxFile.CUBE_FACES];
+        for (int face = 0; face < faces.length; face++) {
+            faces[face] = face % 2 == 0 ? TestImages.smooth(32) : TestImages.grid(32);
+        }
+        final byte[][][] images = compress(faces);
+        final File file = mFolder.newFile("cube" + KtxFile.EXTENSION);
+        KtxFile.write(file, KtxFile.GL_COMPRESSED_RGB8_ETC2, KtxFile.GL_RGB, 32, 32, images,
+                Collections.singletonMap(KtxFile.KEY_ETC1_COMPATIBLE, "true"));
+
+        final KtxFile ktx = KtxFile.map(file);
+        assertTrue(ktx.isCubeMap());
+        assertTrue(ktx.isCompressed());
+        assertEquals(32, ktx.width);
+        assertEquals(32, ktx.height);
+        assertEquals(6, ktx.levels);
+        assertEquals(KtxFile.GL_COMPRESSED_RGB8_ETC2, ktx.glInternalFormat);
+        assertEquals("true", ktx.getValue(KtxFile.KEY_ETC1_COMPATIBLE));
+        for (int level = 0; level < ktx.levels; level++) {
+            assertEquals(Math.max(1, 32 >> level), ktx.getLevelWidth(level));
+            for (int face = 0; face < KtxFile.CUBE_FACES; face++) {
+                final ByteBuffer image = ktx.getImage(level, face);
+                final byte[] read = new byte[image.remaining()];
+                image.get(read);
+                assertArrayEquals("level " + level + " face " + face, images[level][face], read);
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void refusesTruncatedFiles() throws IOException {
+        final File file = TestImages.resource("sky" + KtxFile.EXTENSION);
+        final byte[] truncated = new byte[(int) file.length() / 2];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(truncated);
+        } finally {
+            raf.close();
+        }
+        KtxFile.fromBuffer(ByteBuffer.wrap(truncated));
+    }
+
+    @Test
+    public void compressedCubeMapIsAnEighthOfRgba() throws IOException {
+        final KtxFile sky = KtxFile.map(TestImages.resource("sky" + KtxFile.EXTENSION));
+        assertTrue(sky.isCubeMap());
+        assertEquals(7, sky.levels);
+        long rgba = 0;
+        for (int level = 0; level < sky.levels; level++) {
+            rgba += 4L * sky.getLevelWidth(level) * sky.getLevelHeight(level) * sky.faces;
+        }
+        // 4 bits a pixel against 32, less the padding of the smallest levels to whole blocks
+        assertTrue(sky.getDataSize() * 7 < rgba);
+    }
+
+    private static byte[][][] compress(PngImage[] faces) {
+        final int levels = MipChain.levelCount(faces[0].width, faces[0].height);
+        final byte[][][] images = new byte[levels][faces.length][];
+        for (int face = 0; face < faces.length; face++) {
+            final List<PngImage> chain = MipChain.build(faces[face]);
+            for (int level = 0; level < levels; level++) {
+                final PngImage mip = chain.get(level);
+                images[level][face] = EtcCodec.encode(mip.argb, mip.width, mip.height);
+            }
+        }
+        return images;
+    }
+}
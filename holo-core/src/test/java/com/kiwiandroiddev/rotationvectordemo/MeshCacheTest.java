@@ -0,0 +1,272 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Models imported from each format the importers read, written to the cache and read back.
+ */
+public class MeshCacheTest {
+
+    private static final float TOLERANCE = 1.0e-6f;
+
+    // a square pyramid: the base a quad, the sides triangles, one of each color channel at the
+    // corners and 0.2, 0.4, 0.6 at the apex, which PLY's bytes hold as 51, 102, 153
+    private static final float[][] POSITIONS = {
+            {-1.0f, 0.0f, -1.0f}, {1.0f, 0.0f, -1.0f}, {1.0f, 0.0f, 1.0f}, {-1.0f, 0.0f, 1.0f}, {0.0f, 1.5f, 0.0f}};
+    private static final int[][] COLORS = {
+            {255, 0, 0}, {0, 255, 0}, {0, 0, 255}, {255, 255, 255}, {51, 102, 153}};
+    // counter-clockwise from outside, as OBJ and PLY have them
+    private static final int[][] FACES = {{0, 1, 2, 3}, {0, 4, 1}, {1, 4, 2}, {2, 4, 3}, {3, 4, 0}};
+    // fanned and flipped to clockwise
+    private static final int[] TRIANGLES = {0, 2, 1, 0, 3, 2, 0, 1, 4, 1, 2, 4, 2, 3, 4, 3, 0, 4};
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void objRoundTrip() throws IOException {
+        final StringBuilder obj = new StringBuilder("# pyramid\no pyramid\n");
+        for (int v = 0; v < POSITIONS.length; v++) {
+            obj.append("v");
+            for (float coordinate : POSITIONS[v]) {
+                obj.append(' ').append(coordinate);
+            }
+            for (int channel : COLORS[v]) {
+                obj.append(' ').append(channel / 255.0f);
+            }
+            obj.append('\n');
+        }
+        obj.append("vn 0 1 0\n");
+        for (int[] face : FACES) {
+            obj.append("f");
+            for (int corner : face) {
+                obj.append(' ').append(corner + 1).append("//1");
+            }
+            obj.append('\n');
+        }
+        final File file = mFolder.newFile("pyramid.obj");
+        final Writer out = new OutputStreamWriter(new FileOutputStream(file), "US-ASCII");
+        try {
+            out.write(obj.toString());
+        } finally {
+            out.close();
+        }
+        roundTrip(MeshLoader.importMesh(file));
+    }
+
+    @Test
+    public void asciiPlyRoundTrip() throws IOException {
+        final StringBuilder data = new StringBuilder();
+        for (int v = 0; v < POSITIONS.length; v++) {
+            data.append(POSITIONS[v][0]).append(' ').append(POSITIONS[v][1]).append(' ').append(POSITIONS[v][2])
+                    .append(" 0.5 ").append(COLORS[v][0]).append(' ').append(COLORS[v][1]).append(' ')
+                    .append(COLORS[v][2]).append('\n');
+        }
+        for (int[] face : FACES) {
+            data.append(face.length);
+            for (int corner : face) {
+                data.append(' ').append(corner);
+            }
+            data.append('\n');
+        }
+        final File file = mFolder.newFile("pyramid.ply");
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write((plyHeader("ascii") + data).getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+        roundTrip(MeshLoader.importMesh(file));
+    }
+
+    @Test
+    public void binaryPlyRoundTrips() throws IOException {
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            final ByteBuffer data = ByteBuffer.allocate(1024).order(order);
+            for (int v = 0; v < POSITIONS.length; v++) {
+                data.putFloat(POSITIONS[v][0]).putFloat(POSITIONS[v][1]).putFloat(POSITIONS[v][2]);
+                // skipped
+                data.putFloat(0.5f);
+                data.put((byte) COLORS[v][0]).put((byte) COLORS[v][1]).put((byte) COLORS[v][2]);
+            }
+            for (int[] face : FACES) {
+                data.put((byte) face.length);
+                for (int corner : face) {
+                    data.putInt(corner);
+                }
+            }
+            final String format = order == ByteOrder.LITTLE_ENDIAN ? "binary_little_endian" : "binary_big_endian";
+            final File file = mFolder.newFile("pyramid-" + format + ".ply");
+            final OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(plyHeader(format).getBytes("US-ASCII"));
+                out.write(data.array(), 0, data.position());
+            } finally {
+                out.close();
+            }
+            roundTrip(MeshLoader.importMesh(file));
+        }
+    }
+
+    private static String plyHeader(String format) {
+        return "ply\nformat " + format + " 1.0\ncomment pyramid\n"
+                + "element vertex " + POSITIONS.length + "\n"
+                + "property float x\nproperty float y\nproperty float z\nproperty float confidence\n"
+                + "property uchar red\nproperty uchar green\nproperty uchar blue\n"
+                + "element face " + FACES.length + "\nproperty list uchar int vertex_indices\n"
+                + "end_header\n";
+    }
+
+    /**
+     * Checks the imported pyramid, then writes it to the cache and checks it reads back the same.
+     */
+    private void roundTrip(MeshData mesh) throws IOException {
+        assertTrue(mesh.hasColors);
+        assertEquals(POSITIONS.length, mesh.getVertexCount());
+        for (int v = 0; v < POSITIONS.length; v++) {
+            final int offset = v * Mesh.FLOATS_PER_VERTEX;
+            for (int axis = 0; axis < 3; axis++) {
+                assertEquals(POSITIONS[v][axis], mesh.vertices[offset + axis], 0.0f);
+                assertEquals(COLORS[v][axis] / 255.0f, mesh.vertices[offset + Mesh.POSITION_COMPONENTS + axis], TOLERANCE);
+            }
+            assertEquals(1.0f, mesh.vertices[offset + Mesh.POSITION_COMPONENTS + 3], 0.0f);
+        }
+        assertArrayEquals(TRIANGLES, mesh.indices);
+
+        mesh.geometricError = 0.125f;
+        final Mesh read = MeshCache.fromBuffer(write(mesh));
+        assertEquals(2, read.getIndexSize());
+        assertArrayEquals(mesh.vertices, vertices(read), 0.0f);
+        assertArrayEquals(mesh.indices, indices(read));
+        assertArrayEquals(new float[]{-1.0f, 0.0f, -1.0f, 1.0f, 1.5f, 1.0f}, read.getBounds(), 0.0f);
+        assertEquals(0.125f, read.getGeometricError(), 0.0f);
+    }
+
+    @Test
+    public void indicesWidenPastSixteenBits() throws IOException {
+        for (int vertexCount : new int[]{0x10000, 0x10001}) {
+            final MeshData mesh = new MeshData(new float[vertexCount * Mesh.FLOATS_PER_VERTEX],
+                    new int[]{0, vertexCount - 1, 1});
+            final ByteBuffer data = write(mesh);
+            final int indexSize = vertexCount <= 0x10000 ? 2 : 4;
+            assertEquals(indexSize, data.getInt(16));
+            final Mesh read = MeshCache.fromBuffer(data);
+            assertEquals(indexSize, read.getIndexSize());
+            assertEquals(vertexCount, read.getVertexCount());
+            assertArrayEquals(mesh.indices, indices(read));
+        }
+    }
+
+    @Test
+    public void headerHoldsTheBoundsAndError() throws IOException {
+        final MeshData mesh = TestMeshes.sphere(8);
+        mesh.geometricError = 0.03f;
+        final ByteBuffer data = write(mesh);
+        final float[] bounds = mesh.computeBounds();
+        for (int i = 0; i < bounds.length; i++) {
+            assertEquals(bounds[i], data.getFloat(24 + i * 4), 0.0f);
+        }
+        assertEquals(0.03f, data.getFloat(48), 0.0f);
+        // and the vertices start aligned after the reserved bytes
+        assertEquals(mesh.vertices[0], data.getFloat(64), 0.0f);
+    }
+
+    /**
+     * Version 1 had no geometric error and went straight into the vertices after 48 bytes.
+     */
+    @Test
+    public void readsVersionOneFiles() throws IOException {
+        final MeshData mesh = TestMeshes.sphere(8);
+        mesh.geometricError = 0.03f;
+        final ByteBuffer current = write(mesh);
+        final ByteBuffer old = ByteBuffer.allocate(current.capacity() - 16).order(ByteOrder.LITTLE_ENDIAN);
+        old.put(Arrays.copyOfRange(current.array(), 0, 48));
+        old.put(Arrays.copyOfRange(current.array(), 64, current.capacity()));
+        old.putInt(4, 1);
+
+        final Mesh read = MeshCache.fromBuffer(old);
+        assertEquals(0.0f, read.getGeometricError(), 0.0f);
+        assertArrayEquals(mesh.vertices, vertices(read), 0.0f);
+        assertArrayEquals(mesh.indices, indices(read));
+        assertArrayEquals(mesh.computeBounds(), read.getBounds(), 0.0f);
+    }
+
+    @Test
+    public void refusesTruncatedFiles() throws IOException {
+        final byte[] whole = write(TestMeshes.sphere(8)).array();
+        for (int length : new int[]{whole.length - 1, 56, 20}) {
+            assertRefused(Arrays.copyOf(whole, length));
+        }
+        MeshCache.fromBuffer(ByteBuffer.wrap(whole));
+    }
+
+    @Test
+    public void refusesOtherFiles() throws IOException {
+        final byte[] whole = write(TestMeshes.sphere(8)).array();
+        final byte[] badMagic = whole.clone();
+        badMagic[0] = 'X';
+        assertRefused(badMagic);
+
+        final byte[] badVersion = whole.clone();
+        badVersion[4] = 3;
+        assertRefused(badVersion);
+
+        final ByteArrayOutputStream ply = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(ply);
+        out.writeBytes(plyHeader("ascii"));
+        out.close();
+        assertRefused(Arrays.copyOf(ply.toByteArray(), whole.length));
+    }
+
+    private static void assertRefused(byte[] data) {
+        try {
+            MeshCache.fromBuffer(ByteBuffer.wrap(data));
+        } catch (IOException e) {
+            return;
+        }
+        fail("read " + data.length + " bytes");
+    }
+
+    private ByteBuffer write(MeshData mesh) throws IOException {
+        final File file = mFolder.newFile();
+        MeshCache.write(mesh, file);
+        return ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static float[] vertices(Mesh mesh) {
+        final FloatBuffer floats = mesh.getVertexData().duplicate().order(ByteOrder.nativeOrder()).asFloatBuffer();
+        final float[] vertices = new float[floats.remaining()];
+        floats.get(vertices);
+        return vertices;
+    }
+
+    private static int[] indices(Mesh mesh) {
+        final ByteBuffer data = mesh.getIndexData().duplicate().order(ByteOrder.nativeOrder());
+        final int[] indices = new int[mesh.getIndexCount()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = mesh.getIndexSize() == 2 ? data.getShort(i * 2) & 0xffff : data.getInt(i * 4);
+        }
+        return indices;
+    }
+}
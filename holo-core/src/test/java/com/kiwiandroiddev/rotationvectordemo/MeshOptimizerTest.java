@@ -0,0 +1,123 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MeshOptimizerTest {
+
+    private static final int SIZE = 64;
+
+    @Test
+    public void fewerCacheMissesOnAShuffledGrid() {
+        final MeshData mesh = shuffledGrid();
+        final MeshOptimizer.CacheStatistics before =
+                MeshOptimizer.analyzeVertexCache(mesh.indices, mesh.getVertexCount(), MeshOptimizer.ANALYSIS_CACHE_SIZE);
+        final MeshOptimizer.Report report = MeshOptimizer.optimize(mesh);
+        final MeshOptimizer.CacheStatistics after =
+                MeshOptimizer.analyzeVertexCache(mesh.indices, mesh.getVertexCount(), MeshOptimizer.ANALYSIS_CACHE_SIZE);
+
+        assertEquals(before.acmr, report.before.acmr, 0.0f);
+        assertEquals(after.acmr, report.after.acmr, 0.0f);
+        // shuffled, nearly every corner misses; a grid in a good order is under one per triangle
+        assertTrue(report.toString(), before.acmr > 2.5f);
+        assertTrue(report.toString(), after.acmr < 0.9f);
+        assertTrue(report.toString(), after.atvr < before.atvr);
+    }
+
+    @Test
+    public void sameTrianglesSameWinding() {
+        final MeshData mesh = shuffledGrid();
+        final long[] before = triangles(mesh);
+        MeshOptimizer.optimize(mesh);
+        assertEquals(SIZE * SIZE * 2, mesh.getTriangleCount());
+        assertArrayEquals(before, triangles(mesh));
+    }
+
+    @Test
+    public void verticesRenumberedInOrderOfFirstUse() {
+        final MeshData original = shuffledGrid();
+        final MeshData mesh = shuffledGrid();
+        // one vertex nothing uses, which should be dropped
+        mesh.vertices = Arrays.copyOf(mesh.vertices, mesh.vertices.length + Mesh.FLOATS_PER_VERTEX);
+        MeshOptimizer.optimize(mesh);
+        assertEquals(original.getVertexCount(), mesh.getVertexCount());
+
+        int next = 0;
+        final boolean[] seen = new boolean[mesh.getVertexCount()];
+        for (int index : mesh.indices) {
+            assertTrue(index + " of " + mesh.getVertexCount(), index >= 0 && index < mesh.getVertexCount());
+            if (!seen[index]) {
+                assertEquals(next++, index);
+                seen[index] = true;
+            }
+        }
+        assertEquals(mesh.getVertexCount(), next);
+
+        // and every vertex moved whole, its color along with its position
+        for (int v = 0; v < mesh.getVertexCount(); v++) {
+            final int offset = v * Mesh.FLOATS_PER_VERTEX;
+            final int from = vertexAt(mesh, v) * Mesh.FLOATS_PER_VERTEX;
+            assertArrayEquals(Arrays.copyOfRange(original.vertices, from, from + Mesh.FLOATS_PER_VERTEX),
+                    Arrays.copyOfRange(mesh.vertices, offset, offset + Mesh.FLOATS_PER_VERTEX), 0.0f);
+        }
+    }
+
+    /**
+     * The grid with its triangles in a random order, each starting from a random corner.
+     */
+    private static MeshData shuffledGrid() {
+        final MeshData mesh = TestMeshes.grid(SIZE);
+        final int[] indices = mesh.indices;
+        final Random random = new Random(5);
+        for (int t = mesh.getTriangleCount() - 1; t >= 0; t--) {
+            final int other = random.nextInt(t + 1);
+            final int turn = random.nextInt(3);
+            final int a = indices[other * 3];
+            final int b = indices[other * 3 + 1];
+            final int c = indices[other * 3 + 2];
+            indices[other * 3] = indices[t * 3];
+            indices[other * 3 + 1] = indices[t * 3 + 1];
+            indices[other * 3 + 2] = indices[t * 3 + 2];
+            indices[t * 3] = turn == 0 ? a : turn == 1 ? b : c;
+            indices[t * 3 + 1] = turn == 0 ? b : turn == 1 ? c : a;
+            indices[t * 3 + 2] = turn == 0 ? c : turn == 1 ? a : b;
+        }
+        return mesh;
+    }
+
+    /**
+     * The mesh's triangles by the grid vertices at their corners, starting from the lowest so
+     * only the winding's kept, and sorted.
+     */
+    private static long[] triangles(MeshData mesh) {
+        final long[] triangles = new long[mesh.getTriangleCount()];
+        final long range = (SIZE + 1) * (SIZE + 1);
+        for (int t = 0; t < triangles.length; t++) {
+            final long a = vertexAt(mesh, mesh.indices[t * 3]);
+            final long b = vertexAt(mesh, mesh.indices[t * 3 + 1]);
+            final long c = vertexAt(mesh, mesh.indices[t * 3 + 2]);
+            if (a < b && a < c) {
+                triangles[t] = (a * range + b) * range + c;
+            } else if (b < c) {
+                triangles[t] = (b * range + c) * range + a;
+            } else {
+                triangles[t] = (c * range + a) * range + b;
+            }
+        }
+        Arrays.sort(triangles);
+        return triangles;
+    }
+
+    // where the vertex was in the grid before any renumbering
+    private static int vertexAt(MeshData mesh, int v) {
+        final int column = Math.round(mesh.vertices[v * Mesh.FLOATS_PER_VERTEX] * SIZE);
+        final int row = Math.round(mesh.vertices[v * Mesh.FLOATS_PER_VERTEX + 1] * SIZE);
+        return row * (SIZE + 1) + column;
+    }
+}
@@ -0,0 +1,82 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MeshSimplifierTest {
+
+    private static final int SEGMENTS = 48;
+
+    @Test
+    public void sameInputSameOutput() {
+        final MeshData sphere = TestMeshes.sphere(SEGMENTS);
+        final MeshData first = MeshSimplifier.simplify(sphere, sphere.getTriangleCount() / 4);
+        final MeshData second = MeshSimplifier.simplify(TestMeshes.sphere(SEGMENTS), sphere.getTriangleCount() / 4);
+        assertArrayEquals(first.indices, second.indices);
+        assertArrayEquals(first.vertices, second.vertices, 0.0f);
+        assertEquals(first.geometricError, second.geometricError, 0.0f);
+
+        // and the input's left alone
+        assertArrayEquals(TestMeshes.sphere(SEGMENTS).indices, sphere.indices);
+    }
+
+    @Test
+    public void eachLevelHalvesTheTrianglesWithAGrowingError() {
+        final MeshData sphere = TestMeshes.sphere(SEGMENTS);
+        final List<MeshData> levels = LodChain.buildLevels(sphere);
+        assertTrue(levels.size() + " levels", levels.size() >= 4);
+        assertEquals(0.0f, levels.get(0).geometricError, 0.0f);
+        for (int level = 1; level < levels.size(); level++) {
+            final MeshData previous = levels.get(level - 1);
+            final MeshData mesh = levels.get(level);
+            final String message = "level " + level + ", " + mesh.getTriangleCount() + " triangles after "
+                    + previous.getTriangleCount() + ", error " + mesh.geometricError + " after "
+                    + previous.geometricError;
+            assertTrue(message, mesh.getTriangleCount() <= (int) (previous.getTriangleCount() * LodChain.LEVEL_RATIO));
+            assertTrue(message, mesh.getTriangleCount() >= LodChain.MIN_TRIANGLES / 2);
+            assertTrue(message, mesh.geometricError > 0.0f);
+            assertTrue(message, mesh.geometricError >= previous.geometricError);
+        }
+    }
+
+    /**
+     * Every simplified level of the sphere is still a surface all facing the same way: no
+     * triangle repeats a vertex or has no area, and none has flipped to face the middle. The
+     * sphere itself has triangles with no area at its poles, which simplifying drops.
+     */
+    @Test
+    public void noDegenerateOrFlippedTriangles() {
+        final double[] normal = new double[3];
+        final List<MeshData> levels = LodChain.buildLevels(TestMeshes.sphere(SEGMENTS));
+        for (MeshData mesh : levels.subList(1, levels.size())) {
+            final float[] p = mesh.vertices;
+            // the sphere's wound the same way throughout, all out or all in
+            int facing = 0;
+            for (int t = 0; t < mesh.getTriangleCount(); t++) {
+                final int a = mesh.indices[t * 3];
+                final int b = mesh.indices[t * 3 + 1];
+                final int c = mesh.indices[t * 3 + 2];
+                final String message = mesh.getTriangleCount() + " triangles, triangle " + t;
+                assertTrue(message, a != b && b != c && c != a);
+                assertTrue(message, a < mesh.getVertexCount() && b < mesh.getVertexCount() && c < mesh.getVertexCount());
+
+                TestMeshes.normal(mesh, t, normal);
+                final double area = Math.sqrt(normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
+                assertTrue(message + " has no area", area > 1e-9);
+                final int fa = a * Mesh.FLOATS_PER_VERTEX;
+                final int fb = b * Mesh.FLOATS_PER_VERTEX;
+                final int fc = c * Mesh.FLOATS_PER_VERTEX;
+                final double outward = normal[0] * (p[fa] + p[fb] + p[fc])
+                        + normal[1] * (p[fa + 1] + p[fb + 1] + p[fc + 1])
+                        + normal[2] * (p[fa + 2] + p[fb + 2] + p[fc + 2]);
+                facing += outward > 0.0 ? 1 : -1;
+            }
+            assertEquals(mesh.getTriangleCount() + " triangles", mesh.getTriangleCount(), Math.abs(facing));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class MipChainTest {
+
+    @Test
+    public void levelsHalveDownToOnePixel() {
+        final List<PngImage> chain = MipChain.build(TestImages.checkerboard(13, 7));
+        final StringBuilder sizes = new StringBuilder();
+        for (PngImage level : chain) {
+            sizes.append(sizes.length() == 0 ? "" : " ").append(level.width).append('x').append(level.height);
+        }
+        assertEquals("13x7 6x3 3x1 1x1", sizes.toString());
+        assertEquals(9, MipChain.levelCount(256, 256));
+        assertEquals(1, MipChain.levelCount(1, 1));
+    }
+
+    @Test
+    public void filtersInLinearLight() {
+        // black and white average to sRGB 188, not 128
+        final int[] blackWhite = {0xff000000, 0xffffffff, 0xff000000, 0xffffffff};
+        assertEquals(188, MipChain.downsample(new PngImage(2, 2, blackWhite)).argb[0] & 0xff);
+    }
+}
@@ -0,0 +1,71 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PngImageTest {
+
+    private static final int COLOR_TYPE_GRAY = 0;
+    private static final int COLOR_TYPE_RGBA = 6;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * @return the color type the file was written with
+     */
+    private int roundTrip(PngImage image) throws IOException {
+        final File file = mFolder.newFile();
+        image.write(file);
+        final PngImage read = PngImage.read(file);
+        assertEquals(image.width, read.width);
+        assertEquals(image.height, read.height);
+        assertArrayEquals(image.argb, read.argb);
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // after the signature, the IHDR chunk's length and type, width, height and bit depth
+            raf.seek(25);
+            return raf.readUnsignedByte();
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void colorRoundTrips() throws IOException {
+        final Random random = new Random(1);
+        final int[] argb = new int[13 * 7];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = random.nextInt();
+        }
+        assertEquals(COLOR_TYPE_RGBA, roundTrip(new PngImage(13, 7, argb)));
+        assertEquals(COLOR_TYPE_RGBA, roundTrip(TestImages.checkerboard(31, 17)));
+    }
+
+    @Test
+    public void opaqueGraysAreWrittenAsGrayscale() throws IOException {
+        final Random random = new Random(1);
+        final int[] argb = new int[64 * 48];
+        for (int i = 0; i < argb.length; i++) {
+            final int luma = random.nextInt(256);
+            argb[i] = 0xff000000 | luma << 16 | luma << 8 | luma;
+        }
+        assertEquals(COLOR_TYPE_GRAY, roundTrip(new PngImage(64, 48, argb)));
+
+        // one pixel off gray or not opaque is enough to need color
+        argb[100] ^= 1;
+        assertEquals(COLOR_TYPE_RGBA, roundTrip(new PngImage(64, 48, argb.clone())));
+        argb[100] ^= 1;
+        argb[200] &= 0xfeffffff;
+        assertEquals(COLOR_TYPE_RGBA, roundTrip(new PngImage(64, 48, argb)));
+    }
+}
@@ -0,0 +1,212 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PoseExchangeTest {
+
+    private static final int POSES = 2000000;
+    private static final int GYRO_SAMPLES = 200000;
+    private static final long GYRO_INTERVAL_NS = 5000000L;
+
+    @Test
+    public void readerOnlySeesWholePoses() throws Exception {
+        final PoseExchange exchange = new PoseExchange();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+
+        // every field, the timestamp and the publish time all come from the pose's number, so
+        // a snapshot mixing two poses shows up as fields that disagree
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int n = 1; n <= POSES; n++) {
+                    final float[] pose = exchange.beginWrite();
+                    for (int i = 0; i < PoseExchange.SIZE; i++) {
+                        pose[i] = n + i;
+                    }
+                    exchange.publish(n, 2L * n);
+                    if (n % 64 == 0) {
+                        // lets the reader in mid stream even on one core
+                        Thread.yield();
+                    }
+                }
+                writing.set(false);
+            }
+        }, "pose writer");
+        writer.start();
+
+        long last = 0;
+        long snapshots = 0;
+        long fresh = 0;
+        boolean more = true;
+        while (more) {
+            // one more read after the writer's done so the last pose is always seen
+            more = writing.get();
+            final float[] pose = exchange.acquire();
+            final long n = exchange.getTimestamp();
+            if (n == 0) {
+                continue;
+            }
+            checkPose(pose, n);
+            assertEquals(2L * n, exchange.getPublishedTime());
+            // and it stays whole while the writer carries on
+            Thread.yield();
+            checkPose(pose, n);
+            assertTrue("went back from pose " + last + " to " + n, n >= last);
+            if (n > last) {
+                fresh++;
+            }
+            last = n;
+            snapshots++;
+        }
+        writer.join();
+
+        assertEquals(POSES, last);
+        // the reader has to have actually raced the writer for this to mean anything
+        assertTrue("only " + fresh + " different poses read", fresh > 100);
+        assertTrue(snapshots >= fresh);
+    }
+
+    private static void checkPose(float[] pose, long n) {
+        for (int i = 0; i < PoseExchange.SIZE; i++) {
+            if (pose[i] != n + i) {
+                fail("pose " + n + " field " + i + " is " + pose[i]);
+            }
+        }
+    }
+
+    @Test
+    public void acquireKeepsThePoseUntilTheNextOne() {
+        final PoseExchange exchange = new PoseExchange();
+        exchange.beginWrite()[PoseExchange.X_ROT] = 1.0f;
+        exchange.publish(1);
+        final float[] pose = exchange.acquire();
+
+        // the writer getting ahead doesn't touch what the reader holds
+        for (int n = 2; n <= 5; n++) {
+            exchange.beginWrite()[PoseExchange.X_ROT] = n;
+            exchange.publish(n);
+            assertEquals(1.0f, pose[PoseExchange.X_ROT], 0.0f);
+            assertEquals(1, exchange.getTimestamp());
+        }
+        assertEquals(5.0f, exchange.acquire()[PoseExchange.X_ROT], 0.0f);
+        assertEquals(5, exchange.getTimestamp());
+        // nothing new, same pose again
+        assertEquals(5.0f, exchange.acquire()[PoseExchange.X_ROT], 0.0f);
+    }
+
+    /**
+     * Each renderer reads its own exchange, all of them published to by the one integrator.
+     */
+    @Test
+    public void integratorPublishesToEveryReadersExchange() throws Exception {
+        final PoseIntegrator integrator = new PoseIntegrator(new PosePredictor(), Clock.SYSTEM);
+        final PoseExchange[] exchanges = {new PoseExchange(), new PoseExchange()};
+        for (PoseExchange exchange : exchanges) {
+            integrator.addExchange(exchange);
+        }
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final long lastTimestamp = GYRO_SAMPLES * GYRO_INTERVAL_NS;
+
+        final Reader[] readers = new Reader[exchanges.length];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Reader(exchanges[i], writing);
+            readers[i].start();
+        }
+        final float[] values = new float[3];
+        for (int n = 1; n <= GYRO_SAMPLES; n++) {
+            values[0] = (float) Math.sin(n * 0.001);
+            values[1] = (float) Math.cos(n * 0.0013);
+            integrator.onSensorSample(SensorSampleSink.TYPE_GYROSCOPE, n * GYRO_INTERVAL_NS, values, 3, 3);
+            if (n % 64 == 0) {
+                Thread.yield();
+            }
+        }
+        writing.set(false);
+
+        for (Reader reader : readers) {
+            reader.join();
+            if (reader.failure != null) {
+                throw reader.failure;
+            }
+            assertEquals(lastTimestamp, reader.last);
+            assertTrue("only " + reader.fresh + " different poses read", reader.fresh > 100);
+        }
+    }
+
+    /**
+     * Reads poses until the writer's done, checking each is whole: the frustum is worked out
+     * from the rotation, so a pose mixing two shows up as a frustum that doesn't match it.
+     */
+    private static final class Reader extends Thread {
+        final PoseExchange exchange;
+        final AtomicBoolean writing;
+        long last;
+        long fresh;
+        AssertionError failure;
+
+        Reader(PoseExchange exchange, AtomicBoolean writing) {
+            super("pose reader");
+            this.exchange = exchange;
+            this.writing = writing;
+        }
+
+        @Override
+        public void run() {
+            final float[] frustum = new float[3];
+            try {
+                boolean more = true;
+                while (more) {
+                    more = writing.get();
+                    final float[] pose = exchange.acquire();
+                    final long timestamp = exchange.getTimestamp();
+                    if (timestamp == 0) {
+                        continue;
+                    }
+                    PoseIntegrator.frustumForRotation(pose[PoseExchange.X_ROT], pose[PoseExchange.Y_ROT], frustum);
+                    assertEquals(frustum[PoseIntegrator.FRUSTUM_X_OFFSET], pose[PoseExchange.FRUSTUM_X_OFFSET], 0.0f);
+                    assertEquals(frustum[PoseIntegrator.FRUSTUM_Y_OFFSET], pose[PoseExchange.FRUSTUM_Y_OFFSET], 0.0f);
+                    assertEquals(frustum[PoseIntegrator.FRUSTUM_Z_NEAR], pose[PoseExchange.FRUSTUM_Z_NEAR], 0.0f);
+                    assertTrue("went back from " + last + " to " + timestamp, timestamp >= last);
+                    if (timestamp > last) {
+                        fresh++;
+                    }
+                    last = timestamp;
+                }
+            } catch (AssertionError e) {
+                failure = e;
+            }
+        }
+    }
+
+    @Test
+    public void addedExchangesGetTheLatestPoseAndRemovedOnesKeepTheirs() {
+        final PoseIntegrator integrator = new PoseIntegrator(new PosePredictor(), Clock.SYSTEM);
+        final PoseExchange first = new PoseExchange();
+        integrator.addExchange(first);
+        final float[] values = {0.0f, 1.0f, 0.0f};
+        for (int n = 1; n <= 10; n++) {
+            integrator.onSensorSample(SensorSampleSink.TYPE_GYROSCOPE, n * GYRO_INTERVAL_NS, values, 3, 3);
+        }
+        final float yRot = first.acquire()[PoseExchange.Y_ROT];
+        assertTrue(yRot != 0.0f);
+
+        // a renderer coming along later starts from where the others are
+        final PoseExchange second = new PoseExchange();
+        integrator.addExchange(second);
+        assertEquals(yRot, second.acquire()[PoseExchange.Y_ROT], 0.0f);
+        assertEquals(10 * GYRO_INTERVAL_NS, second.getTimestamp());
+
+        integrator.removeExchange(first);
+        integrator.onSensorSample(SensorSampleSink.TYPE_GYROSCOPE, 11 * GYRO_INTERVAL_NS, values, 3, 3);
+        first.acquire();
+        assertEquals(10 * GYRO_INTERVAL_NS, first.getTimestamp());
+        second.acquire();
+        assertEquals(11 * GYRO_INTERVAL_NS, second.getTimestamp());
+    }
+}
@@ -0,0 +1,139 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The motion models on synthetic gyro rates: constant, and ramping at a constant angular
+ * acceleration.
+ */
+public class PosePredictorTest {
+
+    private static final long START_NS = 1000000000L;
+    // a 200Hz gyro
+    private static final long SAMPLE_NS = 5000000L;
+    private static final long LOOKAHEAD_NS = 20000000L;
+
+    private static final float RATE_X = 1.5f;
+    private static final float RATE_Y = -0.7f;
+    private static final float ACCEL_X = 4.0f;
+    private static final float ACCEL_Y = -2.5f;
+
+    private final float[] mDelta = new float[2];
+
+    @Test
+    public void constantVelocityIsExactAtAConstantRate() {
+        final PosePredictor predictor = predictor(PosePredictor.Model.CONSTANT_VELOCITY);
+        final long last = addRamp(predictor, START_NS, 20, 0.0f, 0.0f);
+
+        assertTrue(predictor.predictDelta(last + LOOKAHEAD_NS, mDelta));
+        assertEquals(RATE_X * 0.02f, mDelta[PosePredictor.AXIS_X], 1e-7f);
+        assertEquals(RATE_Y * 0.02f, mDelta[PosePredictor.AXIS_Y], 1e-7f);
+        assertEquals(0.0f, predictor.getAcceleration(PosePredictor.AXIS_X), 0.0f);
+    }
+
+    @Test
+    public void constantAccelerationFitsARamp() {
+        assertConverges(PosePredictor.Model.CONSTANT_ACCELERATION, 10, 0.01f);
+    }
+
+    @Test
+    public void kalmanConvergesOnARamp() {
+        assertConverges(PosePredictor.Model.KALMAN, 200, 0.02f);
+    }
+
+    private void assertConverges(PosePredictor.Model model, int samples, float tolerance) {
+        final PosePredictor predictor = predictor(model);
+        final long last = addRamp(predictor, START_NS, samples, ACCEL_X, ACCEL_Y);
+        assertEquals(ACCEL_X, predictor.getAcceleration(PosePredictor.AXIS_X), ACCEL_X * tolerance);
+        assertEquals(ACCEL_Y, predictor.getAcceleration(PosePredictor.AXIS_Y), -ACCEL_Y * tolerance);
+
+        // the ramp carried on to the lookahead, against the prediction from its last sample
+        final float age = (last - START_NS) / 1e9f;
+        final float dT = LOOKAHEAD_NS / 1e9f;
+        final float expectedX = (RATE_X + ACCEL_X * age) * dT + 0.5f * ACCEL_X * dT * dT;
+        final float expectedY = (RATE_Y + ACCEL_Y * age) * dT + 0.5f * ACCEL_Y * dT * dT;
+        assertTrue(predictor.predictDelta(last + LOOKAHEAD_NS, mDelta));
+        assertEquals(expectedX, mDelta[PosePredictor.AXIS_X], Math.abs(expectedX) * tolerance);
+        assertEquals(expectedY, mDelta[PosePredictor.AXIS_Y], Math.abs(expectedY) * tolerance);
+    }
+
+    /**
+     * After the sensor's been paused the rates before the gap tell nothing about the ones after,
+     * so the acceleration starts over from 0.
+     */
+    @Test
+    public void longGapStartsOver() {
+        for (PosePredictor.Model model : PosePredictor.Model.values()) {
+            final PosePredictor predictor = predictor(model);
+            final long last = addRamp(predictor, START_NS, 100, ACCEL_X, ACCEL_Y);
+            final long resumed = last + 300000000L;
+            predictor.addSample(resumed, 0.25f, 0.5f);
+
+            assertEquals(model.name(), resumed, predictor.getLastTimestamp());
+            assertEquals(model.name(), 0.25f, predictor.getRate(PosePredictor.AXIS_X), 0.0f);
+            assertEquals(model.name(), 0.0f, predictor.getAcceleration(PosePredictor.AXIS_X), 0.0f);
+            assertEquals(model.name(), 0.0f, predictor.getAcceleration(PosePredictor.AXIS_Y), 0.0f);
+            assertTrue(predictor.predictDelta(resumed + LOOKAHEAD_NS, mDelta));
+            assertEquals(model.name(), 0.25f * 0.02f, mDelta[PosePredictor.AXIS_X], 1e-7f);
+            assertEquals(model.name(), 0.5f * 0.02f, mDelta[PosePredictor.AXIS_Y], 1e-7f);
+        }
+    }
+
+    @Test
+    public void lookaheadIsClamped() {
+        for (PosePredictor.Model model : PosePredictor.Model.values()) {
+            final PosePredictor predictor = predictor(model);
+            final long last = addRamp(predictor, START_NS, 100, ACCEL_X, ACCEL_Y);
+            // a second ahead is predicted as only 100ms
+            predictor.predictDelta(last + 1000000000L, mDelta);
+            for (int axis : new int[]{PosePredictor.AXIS_X, PosePredictor.AXIS_Y}) {
+                final float rate = predictor.getRate(axis);
+                final float accel = predictor.getAcceleration(axis);
+                assertEquals(model.name(), rate * 0.1f + 0.5f * accel * 0.01f, mDelta[axis], 1e-6f);
+            }
+
+            // and nothing's predicted for the past
+            predictor.predictDelta(last - SAMPLE_NS, mDelta);
+            assertEquals(model.name(), 0.0f, mDelta[PosePredictor.AXIS_X], 0.0f);
+        }
+        assertEquals(PosePredictor.extrapolate(2.0f, 3.0f, 0.1f), PosePredictor.extrapolate(2.0f, 3.0f, 5.0f), 0.0f);
+    }
+
+    @Test
+    public void nothingToPredictFrom() {
+        final PosePredictor predictor = predictor(PosePredictor.Model.KALMAN);
+        mDelta[0] = mDelta[1] = 1.0f;
+        assertFalse(predictor.predictDelta(START_NS, mDelta));
+        assertEquals(0.0f, mDelta[PosePredictor.AXIS_X], 0.0f);
+        assertEquals(0.0f, mDelta[PosePredictor.AXIS_Y], 0.0f);
+
+        addRamp(predictor, START_NS, 10, ACCEL_X, ACCEL_Y);
+        predictor.reset();
+        assertFalse(predictor.predictDelta(START_NS, mDelta));
+    }
+
+    private static PosePredictor predictor(PosePredictor.Model model) {
+        final PosePredictor predictor = new PosePredictor();
+        predictor.setModel(model);
+        return predictor;
+    }
+
+    /**
+     * Adds samples of a rate starting at RATE_X, RATE_Y and changing at the given acceleration.
+     *
+     * @return the last sample's timestamp
+     */
+    private static long addRamp(PosePredictor predictor, long startNs, int samples, float accelX, float accelY) {
+        long timestampNs = startNs;
+        for (int i = 0; i < samples; i++) {
+            timestampNs = startNs + i * SAMPLE_NS;
+            final float t = (timestampNs - startNs) / 1e9f;
+            predictor.addSample(timestampNs, RATE_X + accelX * t, RATE_Y + accelY * t);
+        }
+        return timestampNs;
+    }
+}
@@ -0,0 +1,185 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RenderDemandControllerTest {
+
+    private static final long START_NS = 1000000000L;
+    private static final long SAMPLE_NS = 5000000L;
+    private static final long SECOND_NS = 1000000000L;
+
+    private final List<RenderDemandController.State> mStates = new ArrayList<RenderDemandController.State>();
+    private int mFrames;
+    private RenderDemandController mController;
+    private long mNowNs;
+
+    @Before
+    public void setUp() {
+        mController = new RenderDemandController(new RenderDemandController.Listener() {
+            @Override
+            public void onRenderRequested() {
+                mFrames++;
+            }
+
+            @Override
+            public void onStateChanged(RenderDemandController.State state) {
+                mStates.add(state);
+            }
+        });
+        mNowNs = START_NS;
+    }
+
+    private void pose(float xRotRads, float rate) {
+        mController.onPose(mNowNs, xRotRads, 0.0f, rate, 0.0f, 0.0f);
+        mNowNs += SAMPLE_NS;
+    }
+
+    /**
+     * Gyro samples at 200 Hz for the given time, turning about x at the given rate from
+     * wherever xRotRads is.
+     */
+    private float turn(float xRotRads, float rate, long durationNs) {
+        final long endNs = mNowNs + durationNs;
+        while (mNowNs < endNs) {
+            pose(xRotRads, rate);
+            xRotRads += rate * SAMPLE_NS / 1e9f;
+        }
+        return xRotRads;
+    }
+
+    @Test
+    public void drawsTheFirstPoseThenOnlyMovesPastEpsilon() {
+        final float epsilon = mController.getEpsilon();
+        pose(0.0f, 0.0f);
+        assertEquals(1, mFrames);
+
+        mNowNs += SECOND_NS;
+        pose(epsilon * 0.9f, 0.0f);
+        assertEquals(1, mFrames);
+        pose(-epsilon * 0.9f, 0.0f);
+        assertEquals(1, mFrames);
+        pose(epsilon * 1.1f, 0.0f);
+        assertEquals(2, mFrames);
+        // measured from the pose last drawn, not the first
+        mNowNs += SECOND_NS;
+        pose(epsilon * 1.9f, 0.0f);
+        assertEquals(2, mFrames);
+    }
+
+    @Test
+    public void movesWithinAFrameIntervalWaitForTheNextPose() {
+        final float epsilon = mController.getEpsilon();
+        pose(0.0f, 0.0f);
+        // 5ms later, well inside 16.7ms
+        pose(epsilon * 2.0f, 0.0f);
+        assertEquals(1, mFrames);
+        pose(epsilon * 2.0f, 0.0f);
+        pose(epsilon * 2.0f, 0.0f);
+        assertEquals(1, mFrames);
+        // 20ms
+        pose(epsilon * 2.0f, 0.0f);
+        assertEquals(2, mFrames);
+    }
+
+    @Test
+    public void turningAsksForAboutOneFramePerInterval() {
+        turn(0.0f, 1.0f, SECOND_NS);
+        // 1 rad/s moves past epsilon every frame, so one per interval, and at 200 Hz the
+        // first pose after each 16.7ms interval is 20ms on
+        assertEquals(50, mFrames);
+    }
+
+    @Test
+    public void invalidateDrawsTheNextPoseAnyway() {
+        pose(0.0f, 0.0f);
+        mNowNs += SECOND_NS;
+        mController.invalidate();
+        pose(0.0f, 0.0f);
+        assertEquals(2, mFrames);
+        pose(0.0f, 0.0f);
+        assertEquals(2, mFrames);
+    }
+
+    @Test
+    public void goesIdleOnlyAfterTheDelay() {
+        float xRot = turn(0.0f, 0.5f, SECOND_NS);
+        xRot = turn(xRot, 0.0f, RenderDemandController.DEFAULT_IDLE_DELAY_NS);
+        // the smoothed rate takes a while to fall below the idle rate
+        assertEquals(RenderDemandController.State.ACTIVE, mController.getState());
+        turn(xRot, 0.0f, SECOND_NS);
+        assertEquals(RenderDemandController.State.IDLE, mController.getState());
+        assertEquals(1, mStates.size());
+    }
+
+    @Test
+    public void ratesBetweenTheThresholdsDontChangeState() {
+        final float between = (RenderDemandController.DEFAULT_IDLE_RATE
+                + RenderDemandController.DEFAULT_WAKE_RATE) / 2.0f;
+
+        // too fast to go idle...
+        turn(0.0f, between, 10 * SECOND_NS);
+        assertEquals(RenderDemandController.State.ACTIVE, mController.getState());
+
+        // ...and once idle, too slow to wake it
+        mController.reset();
+        turn(0.0f, 0.0f, 3 * SECOND_NS);
+        assertEquals(RenderDemandController.State.IDLE, mController.getState());
+        turn(0.0f, between, 10 * SECOND_NS);
+        assertEquals(RenderDemandController.State.IDLE, mController.getState());
+
+        turn(0.0f, RenderDemandController.DEFAULT_WAKE_RATE * 2.0f, SECOND_NS);
+        assertEquals(RenderDemandController.State.ACTIVE, mController.getState());
+        assertEquals(2, mStates.size());
+    }
+
+    @Test
+    public void oneJoltDoesntWakeIt() {
+        turn(0.0f, 0.0f, 3 * SECOND_NS);
+        assertEquals(RenderDemandController.State.IDLE, mController.getState());
+        // a single reading of a tap on the table
+        pose(0.0f, 1.0f);
+        turn(0.0f, 0.0f, SECOND_NS);
+        assertEquals(RenderDemandController.State.IDLE, mController.getState());
+    }
+
+    @Test
+    public void countsFramesPerState() {
+        float xRot = turn(0.0f, 0.0f, 3 * SECOND_NS);
+        final long activeFrames = mController.getFrameCount(RenderDemandController.State.ACTIVE);
+        assertEquals(1, activeFrames);
+
+        // gyro bias creeping the pose while idle still gets drawn, a frame per epsilon
+        turn(xRot, 0.01f, 60 * SECOND_NS);
+        assertEquals(RenderDemandController.State.IDLE, mController.getState());
+        final double idleFramesPerMinute = mController.getFramesPerMinute(RenderDemandController.State.IDLE);
+        final double expected = 0.01 * 60.0 / mController.getEpsilon();
+        assertEquals(expected, idleFramesPerMinute, expected * 0.1);
+        assertEquals(activeFrames, mController.getFrameCount(RenderDemandController.State.ACTIVE));
+        assertTrue(mController.getTimeInState(RenderDemandController.State.IDLE) > 59 * SECOND_NS);
+
+        mController.resetCounts();
+        assertEquals(0, mController.getFrameCount(RenderDemandController.State.IDLE));
+        assertEquals(0.0, mController.getFramesPerMinute(RenderDemandController.State.IDLE), 0.0);
+    }
+
+    @Test
+    public void resetStartsActiveWithAFrameDue() {
+        turn(0.0f, 0.0f, 3 * SECOND_NS);
+        assertEquals(RenderDemandController.State.IDLE, mController.getState());
+        final int frames = mFrames;
+
+        mController.reset();
+        assertEquals(RenderDemandController.State.ACTIVE, mController.getState());
+        // the listener isn't told, whoever reset it knows
+        assertEquals(1, mStates.size());
+        pose(0.0f, 0.0f);
+        assertEquals(frames + 1, mFrames);
+    }
+}
@@ -0,0 +1,162 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class RenderQueueTest {
+
+    private final FrameMatrices mFrame = new FrameMatrices();
+    private final Mesh mFirstMesh = TestMeshes.sphere(4).toMesh();
+    private final Mesh mSecondMesh = TestMeshes.sphere(5).toMesh();
+
+    // each node's number in its red channel, in the order they were drawn
+    private final List<Integer> mDrawn = new ArrayList<Integer>();
+    private final List<Mesh> mDrawnMeshes = new ArrayList<Mesh>();
+
+    private final SceneRenderer mRenderer = new SceneRenderer() {
+        @Override
+        public int drawInstances(Mesh mesh, float[] modelViews, float[] modelViewProjections, float[] colors,
+                                 int first, int count) {
+            for (int i = first; i < first + count; i++) {
+                mDrawn.add((int) colors[i * 4]);
+                mDrawnMeshes.add(mesh);
+            }
+            return 1;
+        }
+
+        @Override
+        public void onSurfaceCreated() {
+        }
+
+        @Override
+        public void onSurfaceChanged(int width, int height) {
+        }
+
+        @Override
+        public float setRenderScale(float scale) {
+            return 1.0f;
+        }
+
+        @Override
+        public void beginFrame(float[] projection) {
+        }
+
+        @Override
+        public void beginView(float[] projection, int x, int width, boolean red, boolean green, boolean blue) {
+        }
+
+        @Override
+        public void drawMesh(Mesh mesh, float[] modelView, float[] modelViewProjection) {
+        }
+
+        @Override
+        public boolean setBackground(KtxFile background) {
+            return false;
+        }
+
+        @Override
+        public void drawBackground(float[] modelViewProjection) {
+        }
+
+        @Override
+        public void endFrame() {
+        }
+    };
+
+    /**
+     * Nodes at z 0 are 40 units in, at z 10 ten nearer. Even numbers are the first mesh, and
+     * each mesh has two nodes at each depth.
+     */
+    private final float[] mDepths = {0.0f, 10.0f, 10.0f, 0.0f, 0.0f, 10.0f, 10.0f, 0.0f};
+
+    @Test
+    public void groupedByMeshThenFrontToBackThenAsAdded() {
+        final SceneNode[] nodes = nodes();
+        final RenderQueue queue = new RenderQueue();
+        for (SceneNode node : nodes) {
+            queue.add(node);
+        }
+        draw(queue);
+
+        // which mesh goes first is up to their hash codes
+        final boolean firstMeshFirst = mDrawnMeshes.get(0) == mFirstMesh;
+        final int[] first = {2, 6, 0, 4};
+        final int[] second = {1, 5, 3, 7};
+        assertDrawn(firstMeshFirst ? first : second, firstMeshFirst ? second : first);
+        assertEquals(2, queue.getMeshChanges());
+        assertEquals(2, queue.getDrawCalls());
+    }
+
+    /**
+     * The same scene sorts the same way every frame, and nodes that tie keep the order they
+     * were added in.
+     */
+    @Test
+    public void sortIsStable() {
+        final SceneNode[] nodes = nodes();
+        final RenderQueue queue = new RenderQueue();
+        for (SceneNode node : nodes) {
+            queue.add(node);
+        }
+        draw(queue);
+        final List<Integer> order = new ArrayList<Integer>(mDrawn);
+        for (int frame = 0; frame < 3; frame++) {
+            queue.clear();
+            for (SceneNode node : nodes) {
+                queue.add(node);
+            }
+            mDrawn.clear();
+            mDrawnMeshes.clear();
+            draw(queue);
+            assertEquals(order, mDrawn);
+        }
+
+        // added the other way round, the ties swap too
+        queue.clear();
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            queue.add(nodes[i]);
+        }
+        mDrawn.clear();
+        mDrawnMeshes.clear();
+        draw(queue);
+        for (int i = 0; i < order.size(); i += 2) {
+            assertEquals(order.get(i), mDrawn.get(i + 1));
+            assertEquals(order.get(i + 1), mDrawn.get(i));
+        }
+    }
+
+    private SceneNode[] nodes() {
+        final SceneNode root = new SceneNode();
+        final SceneNode[] nodes = new SceneNode[mDepths.length];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new SceneNode(LodChain.single(i % 2 == 0 ? mFirstMesh : mSecondMesh));
+            nodes[i].setPosition(0.0f, 0.0f, mDepths[i]);
+            nodes[i].setColor(i, 1.0f, 1.0f, 1.0f);
+            root.addChild(nodes[i]);
+        }
+        root.update();
+        return nodes;
+    }
+
+    private void draw(RenderQueue queue) {
+        mFrame.update(1.0f, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 0.0f, 1.0f);
+        queue.sort(mFrame, 100, 100);
+        queue.project(mFrame);
+        queue.draw(mRenderer);
+    }
+
+    private void assertDrawn(int[] first, int[] second) {
+        final List<Integer> expected = new ArrayList<Integer>();
+        for (int node : first) {
+            expected.add(node);
+        }
+        for (int node : second) {
+            expected.add(node);
+        }
+        assertEquals(expected, mDrawn);
+    }
+}
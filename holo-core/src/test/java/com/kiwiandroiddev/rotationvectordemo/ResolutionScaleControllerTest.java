@@ -0,0 +1,240 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResolutionScaleControllerTest {
+
+    private static final long VSYNC_NS = 16666667L;
+    private static final int FPS = 60;
+    private static final float MIN_SCALE = 0.5f;
+    private static final float MAX_SCALE = 1.0f;
+    private static final float STEP = ResolutionScaleController.SCALE_STEP;
+    private static final float EPSILON = 1e-3f;
+
+    private ResolutionScaleController mController;
+    private long mNowNs;
+
+    @Before
+    public void setUp() {
+        mController = new ResolutionScaleController();
+        mController.configure(MIN_SCALE, MAX_SCALE, VSYNC_NS);
+        mNowNs = 1000000000L;
+    }
+
+    /**
+     * A device drawing at 60Hz with vsync: each frame takes some fixed time plus some time
+     * proportional to the pixels drawn, and the next starts at the first vsync after it's done.
+     */
+    private static class SimulatedDevice {
+        final Random random = new Random(1);
+        final float fixedMs;
+        final float fillMsAtFullScale;
+        // a frame in this many takes this long whatever the scale, e.g. a GC pause
+        int hitchEvery;
+        float hitchMs;
+
+        SimulatedDevice(float fixedMs, float fillMsAtFullScale) {
+            this.fixedMs = fixedMs;
+            this.fillMsAtFullScale = fillMsAtFullScale;
+        }
+
+        SimulatedDevice hitches(int every, float ms) {
+            hitchEvery = every;
+            hitchMs = ms;
+            return this;
+        }
+
+        long workNs(float scale) {
+            return (long) ((fixedMs + fillMsAtFullScale * scale * scale) * 1e6);
+        }
+
+        long frameTimeNs(float scale) {
+            long workNs = workNs(scale);
+            if (hitchEvery > 0 && random.nextInt(hitchEvery) == 0) {
+                workNs = Math.max(workNs, (long) (hitchMs * 1e6));
+            }
+            // and a little noise
+            return workNs + (long) (random.nextGaussian() * 200000.0);
+        }
+
+        /**
+         * @return the highest scale that fits in a vsync
+         */
+        float bestScale() {
+            float best = MIN_SCALE;
+            for (int step = 1; step * STEP <= MAX_SCALE + EPSILON; step++) {
+                final float scale = step * STEP;
+                if (scale >= MIN_SCALE - EPSILON && workNs(scale) <= VSYNC_NS) {
+                    best = scale;
+                }
+            }
+            return best;
+        }
+    }
+
+    private void frame(long frameTimeNs) {
+        mController.onFrame(mNowNs, frameTimeNs);
+        mNowNs += Math.max(1, (frameTimeNs + VSYNC_NS - 1) / VSYNC_NS) * VSYNC_NS;
+    }
+
+    private void run(SimulatedDevice device, int frames) {
+        for (int i = 0; i < frames; i++) {
+            frame(device.frameTimeNs(mController.getScale()));
+        }
+    }
+
+    /**
+     * Runs for five minutes, then checks the last one stayed at or one step under the best scale
+     * and hardly changed.
+     */
+    private void assertSettles(String name, SimulatedDevice device) {
+        run(device, 4 * 60 * FPS);
+        final int changesBefore = mController.getChanges();
+        float lowest = mController.getScale();
+        for (int i = 0; i < 60 * FPS; i++) {
+            frame(device.frameTimeNs(mController.getScale()));
+            lowest = Math.min(lowest, mController.getScale());
+        }
+        final float best = device.bestScale();
+        final float scale = mController.getScale();
+        final String message = name + ": scale " + scale + ", lowest " + lowest + ", best " + best;
+        // it may be partway through a probe one step over the best
+        assertTrue(message, scale <= best + STEP + EPSILON);
+        assertTrue(message, lowest >= best - STEP - EPSILON);
+        assertTrue(message + ", " + (mController.getChanges() - changesBefore) + " changes",
+                mController.getChanges() - changesBefore <= 4);
+    }
+
+    @Test
+    public void settlesAtTheBestScale() {
+        assertSettles("light load", new SimulatedDevice(3.0f, 8.0f));
+        setUp();
+        assertSettles("fill bound", new SimulatedDevice(4.0f, 26.0f));
+        setUp();
+        assertSettles("barely fill bound", new SimulatedDevice(4.0f, 13.5f));
+        setUp();
+        assertSettles("hitches", new SimulatedDevice(3.0f, 10.0f).hitches(20, 40.0f));
+    }
+
+    @Test
+    public void staysWithinTheLimits() {
+        // too slow at any scale
+        run(new SimulatedDevice(25.0f, 8.0f), 60 * FPS);
+        assertEquals(MIN_SCALE, mController.getScale(), EPSILON);
+
+        run(new SimulatedDevice(1.0f, 1.0f), 120 * FPS);
+        assertEquals(MAX_SCALE, mController.getScale(), EPSILON);
+
+        // limits are put in order and on the steps, and it starts from the top
+        mController.configure(0.93f, 0.61f, VSYNC_NS);
+        assertEquals(0.6f, mController.getScale(), EPSILON);
+        run(new SimulatedDevice(25.0f, 8.0f), 60 * FPS);
+        assertEquals(0.6f, mController.getScale(), EPSILON);
+    }
+
+    @Test
+    public void loadsBetweenTheThresholdsLeaveTheScaleAlone() {
+        mController.configure(MIN_SCALE, 0.8f, VSYNC_NS);
+        // in time, but without the room a step up would need
+        for (int i = 0; i < 60 * FPS; i++) {
+            frame(VSYNC_NS * 19 / 20);
+        }
+        assertEquals(0, mController.getChanges());
+
+        // over scales down at the end of a window, the first frame only starts the count
+        mController.onFramesInterrupted();
+        for (int i = 0; i < ResolutionScaleController.WINDOW_FRAMES; i++) {
+            frame(VSYNC_NS * 3 / 2);
+        }
+        assertEquals(0, mController.getChanges());
+        frame(VSYNC_NS * 3 / 2);
+        assertEquals(1, mController.getChanges());
+        // by about what it'd take to fit if fill bound, sqrt(1 / 1.5) of 0.8
+        assertEquals(0.65f, mController.getScale(), EPSILON);
+    }
+
+    @Test
+    public void oddSlowFramesDontCostResolution() {
+        for (int i = 0; i < 60 * FPS; i++) {
+            // one in ten slow, the window's judged at its 80th percentile
+            frame(i % 10 == 0 ? VSYNC_NS * 3 : VSYNC_NS / 2);
+        }
+        assertEquals(0, mController.getChanges());
+        assertEquals(MAX_SCALE, mController.getScale(), EPSILON);
+    }
+
+    @Test
+    public void failedProbesBackOff() {
+        // plenty of room at 0.75, but over that the frame no longer fits in the GPU's tile
+        // memory and takes much longer, so every probe fails
+        final SimulatedDevice device = new SimulatedDevice(0.0f, 0.0f) {
+            @Override
+            long workNs(float scale) {
+                return scale <= 0.75f + EPSILON ? 12000000L : 20000000L;
+            }
+        };
+        assertEquals(0.75f, device.bestScale(), EPSILON);
+        run(device, 60 * FPS);
+        final int firstMinute = mController.getChanges();
+        run(device, 4 * 60 * FPS);
+        final int changesBefore = mController.getChanges();
+        run(device, 60 * FPS);
+        final int lastMinute = mController.getChanges() - changesBefore;
+        // probing every couple of windows would be a change a second
+        assertTrue(firstMinute + " changes in the first minute", firstMinute < 20);
+        assertTrue(lastMinute + " changes in the fifth minute", lastMinute <= 4);
+        assertTrue(lastMinute < firstMinute);
+    }
+
+    @Test
+    public void recoversFromALoadSpike() {
+        final SimulatedDevice light = new SimulatedDevice(3.0f, 8.0f);
+        final SimulatedDevice heavy = new SimulatedDevice(4.0f, 26.0f);
+        run(light, 10 * FPS);
+        assertEquals(MAX_SCALE, mController.getScale(), EPSILON);
+
+        // down within a second
+        run(heavy, FPS);
+        assertTrue(mController.getScale() < MAX_SCALE);
+        run(heavy, 60 * FPS);
+
+        // and back up eventually
+        run(light, 300 * FPS);
+        assertEquals(MAX_SCALE, mController.getScale(), EPSILON);
+    }
+
+    @Test
+    public void framesAfterAnIdleGapAreLeftOut() {
+        for (int i = 0; i < 10 * ResolutionScaleController.WINDOW_FRAMES; i++) {
+            // a frame now and again with render on demand, each slow from a cold start
+            mController.onFrame(mNowNs, VSYNC_NS * 3);
+            mNowNs += ResolutionScaleController.IDLE_GAP_NS + 1;
+        }
+        assertEquals(0, mController.getChanges());
+
+        // and after an interruption the first frame has nothing to go by
+        mController.onFramesInterrupted();
+        for (int i = 0; i < ResolutionScaleController.WINDOW_FRAMES; i++) {
+            frame(VSYNC_NS * 3);
+        }
+        assertEquals(0, mController.getChanges());
+        frame(VSYNC_NS * 3);
+        assertEquals(1, mController.getChanges());
+    }
+
+    @Test
+    public void pausedFramesAreLeftOut() {
+        for (int i = 0; i < 2 * ResolutionScaleController.WINDOW_FRAMES; i++) {
+            assertFalse(mController.onFrame(mNowNs, 1000000000L));
+            mNowNs += VSYNC_NS;
+        }
+        assertEquals(0, mController.getChanges());
+    }
+}
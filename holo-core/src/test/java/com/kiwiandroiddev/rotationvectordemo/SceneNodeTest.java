@@ -0,0 +1,104 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SceneNodeTest {
+
+    private static final float TOLERANCE = 1.0e-4f;
+
+    // a unit sphere's box, from -1 to 1, as a sphere of radius sqrt(3)
+    private static final LodChain MODEL = LodChain.single(TestMeshes.sphere(4).toMesh());
+    private static final float MODEL_RADIUS = (float) Math.sqrt(3.0);
+
+    @Test
+    public void movingAChildMovesItsAncestorsBounds() {
+        final SceneNode root = new SceneNode();
+        final SceneNode group = new SceneNode();
+        final SceneNode still = new SceneNode(MODEL);
+        final SceneNode moving = new SceneNode(MODEL);
+        root.addChild(group);
+        root.addChild(still);
+        group.addChild(moving);
+        root.update();
+        assertBounds(root, 0.0f, 0.0f, 0.0f, MODEL_RADIUS);
+
+        moving.setPosition(10.0f, 0.0f, 0.0f);
+        root.update();
+        assertBounds(moving, 10.0f, 0.0f, 0.0f, MODEL_RADIUS);
+        assertBounds(group, 10.0f, 0.0f, 0.0f, MODEL_RADIUS);
+        // just big enough for both, centered between them
+        assertBounds(root, 5.0f, 0.0f, 0.0f, 5.0f + MODEL_RADIUS);
+        assertBounds(still, 0.0f, 0.0f, 0.0f, MODEL_RADIUS);
+
+        // and back again, the root shrinking with it
+        moving.setPosition(0.0f, 1.0f, 0.0f);
+        root.update();
+        assertEncloses(root, moving);
+        assertEncloses(root, still);
+        assertTrue(root.getBoundsRadius() <= 0.5f + MODEL_RADIUS + TOLERANCE);
+    }
+
+    @Test
+    public void transformingAGroupMovesWhatsUnderIt() {
+        final SceneNode root = new SceneNode();
+        final SceneNode group = new SceneNode();
+        final SceneNode leaf = new SceneNode(MODEL);
+        root.addChild(group);
+        group.addChild(leaf);
+        leaf.setPosition(1.0f, 0.0f, 0.0f);
+        root.update();
+
+        group.setPosition(0.0f, 0.0f, -5.0f);
+        group.setScale(2.0f);
+        // a quarter turn about Y takes +x to -z
+        group.setRotation(0.0f, (float) (Math.PI / 2));
+        root.update();
+        assertBounds(leaf, 0.0f, 0.0f, -7.0f, 2.0f * MODEL_RADIUS);
+        assertBounds(root, 0.0f, 0.0f, -7.0f, 2.0f * MODEL_RADIUS);
+        assertEquals(-7.0f, leaf.getWorldMatrix()[14], TOLERANCE);
+    }
+
+    @Test
+    public void groupsWithNothingToDrawHaveNoBounds() {
+        final SceneNode root = new SceneNode();
+        final SceneNode group = new SceneNode();
+        root.addChild(group);
+        root.update();
+        assertTrue(root.getBoundsRadius() < 0.0f);
+
+        final SceneNode leaf = new SceneNode(MODEL);
+        group.addChild(leaf);
+        root.update();
+        assertBounds(root, 0.0f, 0.0f, 0.0f, MODEL_RADIUS);
+
+        group.removeChild(leaf);
+        root.update();
+        assertTrue(root.getBoundsRadius() < 0.0f);
+        assertEquals(null, leaf.getParent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nodesHaveOneParent() {
+        final SceneNode child = new SceneNode();
+        new SceneNode().addChild(child);
+        new SceneNode().addChild(child);
+    }
+
+    private static void assertBounds(SceneNode node, float x, float y, float z, float radius) {
+        assertEquals(x, node.getBoundsX(), TOLERANCE);
+        assertEquals(y, node.getBoundsY(), TOLERANCE);
+        assertEquals(z, node.getBoundsZ(), TOLERANCE);
+        assertEquals(radius, node.getBoundsRadius(), TOLERANCE);
+    }
+
+    private static void assertEncloses(SceneNode outer, SceneNode inner) {
+        final float dx = inner.getBoundsX() - outer.getBoundsX();
+        final float dy = inner.getBoundsY() - outer.getBoundsY();
+        final float dz = inner.getBoundsZ() - outer.getBoundsZ();
+        final float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        assertTrue(distance + inner.getBoundsRadius() <= outer.getBoundsRadius() + TOLERANCE);
+    }
+}
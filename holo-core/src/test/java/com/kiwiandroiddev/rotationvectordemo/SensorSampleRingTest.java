@@ -0,0 +1,209 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SensorSampleRingTest {
+
+    private static final int THREADED_SAMPLES = 2000000;
+
+    private long mNowNs = 1000L;
+    private final Clock mClock = new Clock() {
+        @Override
+        public long nanoTime() {
+            return mNowNs;
+        }
+    };
+
+    /**
+     * Keeps what it's handed, the values copied since the array's reused.
+     */
+    private static final class Samples implements SensorSampleSink {
+        final List<Long> timestamps = new ArrayList<Long>();
+        final List<float[]> values = new ArrayList<float[]>();
+        final List<Integer> types = new ArrayList<Integer>();
+
+        @Override
+        public void onSensorSample(int sensorType, long timestampNs, float[] values, int valueCount, int accuracy) {
+            timestamps.add(timestampNs);
+            this.values.add(Arrays.copyOf(values, valueCount));
+            types.add(sensorType);
+        }
+    }
+
+    @Test
+    public void dropsAndCountsWhenFull() {
+        final SensorSampleRing ring = new SensorSampleRing(5);
+        assertEquals(8, ring.getCapacity());
+        for (int n = 1; n <= 11; n++) {
+            ring.onSensorSample(SensorSampleSink.TYPE_GYROSCOPE, n, new float[]{n, -n, 0.5f}, 3, 3);
+        }
+        assertEquals(8, ring.size());
+        assertEquals(3, ring.getDroppedCount());
+
+        // the first ones kept, the ones that didn't fit gone
+        final Samples samples = new Samples();
+        assertEquals(8, ring.drain(samples));
+        for (int n = 1; n <= 8; n++) {
+            assertEquals(n, (long) samples.timestamps.get(n - 1));
+            assertArrayEquals(new float[]{n, -n, 0.5f}, samples.values.get(n - 1), 0.0f);
+        }
+        assertEquals(0, ring.size());
+
+        // and there's room again
+        ring.onSensorSample(SensorSampleSink.TYPE_GYROSCOPE, 12, new float[3], 3, 3);
+        assertEquals(1, ring.drain(samples));
+        assertEquals(3, ring.getDroppedCount());
+    }
+
+    @Test
+    public void valuesPastTheMaximumAreCutOff() {
+        final SensorSampleRing ring = new SensorSampleRing();
+        final float[] values = new float[SensorSampleRing.MAX_VALUES + 4];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        ring.onSensorSample(SensorSampleSink.TYPE_ROTATION_VECTOR, 1, values, values.length, 3);
+        final Samples samples = new Samples();
+        ring.drain(samples);
+        assertArrayEquals(Arrays.copyOf(values, SensorSampleRing.MAX_VALUES), samples.values.get(0), 0.0f);
+        assertEquals(SensorSampleSink.TYPE_ROTATION_VECTOR, (int) samples.types.get(0));
+    }
+
+    /**
+     * The accelerometer's sample at 35 came in ahead of the gyro's at 30; draining to 32 stops
+     * at it rather than skipping ahead to the gyro's.
+     */
+    @Test
+    public void drainUntilStopsAtTheFirstLateSample() {
+        final SensorSampleRing ring = new SensorSampleRing();
+        final long[] timestamps = {10, 20, 35, 30, 40};
+        for (long timestamp : timestamps) {
+            ring.onSensorSample(timestamp == 35 ? SensorSampleSink.TYPE_ACCELEROMETER : SensorSampleSink.TYPE_GYROSCOPE,
+                    timestamp, new float[3], 3, 3);
+        }
+        final Samples samples = new Samples();
+        assertEquals(0, ring.drainUntil(5, samples));
+        assertEquals(2, ring.drainUntil(32, samples));
+        assertEquals(3, ring.size());
+        assertEquals(3, ring.drainUntil(40, samples));
+        final long[] drained = new long[samples.timestamps.size()];
+        for (int i = 0; i < drained.length; i++) {
+            drained[i] = samples.timestamps.get(i);
+        }
+        assertArrayEquals(timestamps, drained);
+    }
+
+    @Test
+    public void ingestorStampsArrivalTimes() {
+        final SensorSampleRing ring = new SensorSampleRing();
+        final PoseIntegrator integrator = new PoseIntegrator(new PosePredictor(), mClock);
+        final PoseExchange exchange = new PoseExchange();
+        integrator.addExchange(exchange);
+        final List<Long> arrivals = new ArrayList<Long>();
+        final SensorIngestor[] ingestor = new SensorIngestor[1];
+        ingestor[0] = new SensorIngestor(ring, integrator, new SensorSampleSink() {
+            @Override
+            public void onSensorSample(int sensorType, long timestampNs, float[] values, int valueCount,
+                                       int accuracy) {
+                assertEquals(arrivals.size() < 2 ? 4000L + timestampNs : 0L, ingestor[0].getArrivalTime());
+                arrivals.add(ingestor[0].getArrivalTime());
+            }
+        }, mClock);
+
+        final float[] values = {0.0f, 1.0f, 0.0f};
+        for (long timestamp = 5000000L; timestamp <= 10000000L; timestamp += 5000000L) {
+            mNowNs = 4000L + timestamp;
+            ingestor[0].onSensorSample(SensorSampleSink.TYPE_GYROSCOPE, timestamp, values, 3, 3);
+        }
+        ingestor[0].onDelivery();
+        // queued straight into the ring, without a time
+        ring.onSensorSample(SensorSampleSink.TYPE_GYROSCOPE, 15000000L, values, 3, 3);
+        exchange.acquire();
+        assertEquals(0, exchange.getTimestamp());
+
+        assertEquals(2, ingestor[0].drainUntil(12000000L));
+        // one pose for the pass, as of its last event
+        exchange.acquire();
+        assertEquals(10000000L, exchange.getTimestamp());
+        assertEquals(1, ingestor[0].drain());
+        exchange.acquire();
+        assertEquals(15000000L, exchange.getTimestamp());
+        assertEquals(3, arrivals.size());
+        assertEquals(3, ingestor[0].getSamples());
+        assertEquals(1, ingestor[0].getDeliveries());
+        assertEquals(0, ingestor[0].drain());
+    }
+
+    /**
+     * A sensor thread filling the ring faster than it's drained at times. Everything's stamped
+     * with its number, so a sample whose slot was read before the lazySet of the write count
+     * made its stores visible shows up as values that don't match its timestamp.
+     */
+    @Test
+    public void producerAndConsumerOnTwoThreads() throws Exception {
+        final SensorSampleRing ring = new SensorSampleRing(64);
+        final Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final float[] values = new float[5];
+                for (int n = 1; n <= THREADED_SAMPLES; n++) {
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = n + i;
+                    }
+                    ring.onSensorSample(n % 7, n, values, values.length, n % 4, 2L * n);
+                    if (n % 256 == 0) {
+                        Thread.yield();
+                    }
+                }
+            }
+        }, "sensor");
+
+        final long[] last = new long[1];
+        final long[] received = new long[1];
+        final SensorSampleSink check = new SensorSampleSink() {
+            @Override
+            public void onSensorSample(int sensorType, long timestampNs, float[] values, int valueCount,
+                                       int accuracy) {
+                if (timestampNs <= last[0]) {
+                    fail("went back from " + last[0] + " to " + timestampNs);
+                }
+                if (valueCount != 5 || sensorType != timestampNs % 7 || accuracy != timestampNs % 4
+                        || ring.getArrivalTime() != 2L * timestampNs) {
+                    fail("sample " + timestampNs + " has the wrong type, accuracy or arrival time");
+                }
+                for (int i = 0; i < valueCount; i++) {
+                    if (values[i] != (float) (timestampNs + i)) {
+                        fail("sample " + timestampNs + " value " + i + " is " + values[i]);
+                    }
+                }
+                last[0] = timestampNs;
+                received[0]++;
+            }
+        };
+
+        producer.start();
+        long passes = 0;
+        while (producer.isAlive()) {
+            ring.drain(check);
+            passes++;
+        }
+        producer.join();
+        ring.drain(check);
+
+        assertEquals(THREADED_SAMPLES, received[0] + ring.getDroppedCount());
+        assertEquals(0, ring.size());
+        // both have to have actually happened for this to mean anything; on one core the sensor
+        // thread fills the ring and drops the rest of its time slice, so most are dropped
+        assertTrue("only " + received[0] + " received in " + passes + " passes", received[0] > 10000);
+        assertTrue("none dropped", ring.getDroppedCount() > 0);
+    }
+}
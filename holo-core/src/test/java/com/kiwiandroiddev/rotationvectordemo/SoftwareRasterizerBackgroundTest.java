@@ -0,0 +1,117 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The cube map background drawn the way the app draws it, behind the model: it has to cover
+ * every pixel the model doesn't and none that it does, be the right way up, turn with the
+ * device, and ignore where the rotation axis is, being infinitely far away.
+ */
+public class SoftwareRasterizerBackgroundTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int CLEAR = 0xffff00ff;
+
+    private ForkJoinPool mPool;
+    private SoftwareRasterizer mRasterizer;
+    private KtxFile mSky;
+
+    @Before
+    public void setUp() throws IOException {
+        mPool = new ForkJoinPool();
+        mRasterizer = new SoftwareRasterizer(mPool);
+        mRasterizer.onSurfaceCreated();
+        mRasterizer.onSurfaceChanged(WIDTH, HEIGHT);
+        mRasterizer.setClearColor(CLEAR);
+        mSky = KtxFile.map(TestImages.resource("sky" + KtxFile.EXTENSION));
+        assertTrue(mRasterizer.setBackground(mSky));
+    }
+
+    @After
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    @Test
+    public void coversTheScreenSkyUp() {
+        final int[] alone = draw(null, 0.0f, 0.0f, 0.0f);
+        long topBlue = 0, bottomBlue = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final int pixel = alone[y * WIDTH + x];
+                assertTrue("left clear at " + x + ", " + y, pixel != CLEAR);
+                // bottom row first
+                if (y >= HEIGHT / 2) {
+                    topBlue += pixel & 0xff;
+                } else {
+                    bottomBlue += pixel & 0xff;
+                }
+            }
+        }
+        assertTrue("upside down", topBlue > bottomBlue * 2);
+    }
+
+    @Test
+    public void onlyFillsAroundTheModel() {
+        final Mesh cube = Cube.create();
+        mRasterizer.setBackground(null);
+        final int[] cubeOnly = draw(cube, 0.0f, 0.0f, 0.0f);
+        mRasterizer.setBackground(mSky);
+        final int[] both = draw(cube, 0.0f, 0.0f, 0.0f);
+        int cubePixels = 0;
+        for (int i = 0; i < both.length; i++) {
+            if (cubeOnly[i] != CLEAR) {
+                cubePixels++;
+                assertEquals("drawn over the cube at " + i, cubeOnly[i], both[i]);
+            } else {
+                assertTrue("left clear at " + i, both[i] != CLEAR);
+            }
+        }
+        assertTrue(cubePixels > 0);
+    }
+
+    @Test
+    public void turnsWithTheDeviceButNotWithTheAxis() {
+        final int[] ahead = draw(null, 0.0f, 0.0f, 0.0f);
+        final int[] turned = draw(null, 0.35f, -0.3f, 0.0f);
+        assertTrue(differing(ahead, turned) > ahead.length / 10);
+        assertEquals(0, differing(turned, draw(null, 0.35f, -0.3f, -20.0f)));
+    }
+
+    /**
+     * @param mesh drawn before the background, or null for just the background
+     * @return a copy of the frame buffer
+     */
+    private int[] draw(Mesh mesh, float xRotRads, float yRotRads, float rotAxisZOffset) {
+        final FrameMatrices matrices = new FrameMatrices();
+        final float[] frustum = new float[3];
+        PoseIntegrator.frustumForRotation(xRotRads, yRotRads, frustum);
+        matrices.update((float) WIDTH / HEIGHT,
+                frustum[PoseIntegrator.FRUSTUM_X_OFFSET], frustum[PoseIntegrator.FRUSTUM_Y_OFFSET],
+                frustum[PoseIntegrator.FRUSTUM_Z_NEAR], xRotRads, yRotRads, rotAxisZOffset, 5.0f);
+        mRasterizer.beginFrame(matrices.projection);
+        if (mesh != null) {
+            mRasterizer.drawMesh(mesh, matrices.modelView, matrices.modelViewProjection);
+        }
+        mRasterizer.drawBackground(matrices.modelViewProjection);
+        mRasterizer.endFrame();
+        return mRasterizer.getColorBuffer().clone();
+    }
+
+    private static int differing(int[] a, int[] b) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++) {
+            count += a[i] != b[i] ? 1 : 0;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,124 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The cube drawn the way the hologram renderer draws it for a handful of device rotations,
+ * against images of the same under src/test/resources/golden, to catch changes to the
+ * projection or the rasterizer.
+ *
+ * After a change that's meant to alter the pictures, look at them and write new ones with
+ * <pre>
+ *   ./gradlew :holo-core:test -PwriteGoldens
+ * </pre>
+ */
+@RunWith(Parameterized.class)
+public class SoftwareRasterizerGoldenTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 360;
+
+    private static final float DEG2RAD = (float) (Math.PI / 180.0);
+
+    // a channel can be this far out, e.g. from rounding differences between JVMs, and this
+    // fraction of pixels can be further out
+    private static final int CHANNEL_TOLERANCE = 2;
+    private static final double PIXEL_TOLERANCE = 0.001;
+
+    /**
+     * Poses covering the off-axis projection: straight on, each axis on its own, both together,
+     * a rotation axis in front of the object, and one behind the viewer that swings a large
+     * model sideways through the near plane. Name, x and y rotation in degrees, rotation axis Z
+     * offset and scale.
+     */
+    @Parameterized.Parameters(name = "{0}")
+    public static List<Object[]> scenes() {
+        return Arrays.asList(new Object[][]{
+                {"center", 0.0f, 0.0f, 0.0f, 5.0f},
+                {"x20", 20.0f, 0.0f, 0.0f, 5.0f},
+                {"y-25", 0.0f, -25.0f, 0.0f, 5.0f},
+                {"x15y30", 15.0f, 30.0f, 0.0f, 5.0f},
+                {"x-35y10-axis-20", -35.0f, 10.0f, -20.0f, 5.0f},
+                {"near-clip", 12.0f, 30.0f, 60.0f, 30.0f},
+        });
+    }
+
+    private final String mName;
+    private final float mXRotRads;
+    private final float mYRotRads;
+    private final float mRotAxisZOffset;
+    private final float mScale;
+
+    private ForkJoinPool mPool;
+    private SoftwareRasterizer mRasterizer;
+
+    public SoftwareRasterizerGoldenTest(String name, float xRotDegrees, float yRotDegrees, float rotAxisZOffset,
+                                        float scale) {
+        mName = name;
+        mXRotRads = xRotDegrees * DEG2RAD;
+        mYRotRads = yRotDegrees * DEG2RAD;
+        mRotAxisZOffset = rotAxisZOffset;
+        mScale = scale;
+    }
+
+    @Before
+    public void setUp() {
+        mPool = new ForkJoinPool();
+        mRasterizer = new SoftwareRasterizer(mPool);
+        mRasterizer.onSurfaceCreated();
+        mRasterizer.onSurfaceChanged(WIDTH, HEIGHT);
+    }
+
+    @After
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    @Test
+    public void matchesGoldenImage() throws IOException {
+        final float[] frustum = new float[3];
+        PoseIntegrator.frustumForRotation(mXRotRads, mYRotRads, frustum);
+        final FrameMatrices matrices = new FrameMatrices();
+        matrices.update((float) WIDTH / HEIGHT, frustum[PoseIntegrator.FRUSTUM_X_OFFSET],
+                frustum[PoseIntegrator.FRUSTUM_Y_OFFSET], frustum[PoseIntegrator.FRUSTUM_Z_NEAR],
+                mXRotRads, mYRotRads, mRotAxisZOffset, mScale);
+        mRasterizer.beginFrame(matrices.projection);
+        mRasterizer.drawMesh(Cube.create(), matrices.modelView, matrices.modelViewProjection);
+        mRasterizer.endFrame();
+        final PngImage actual = mRasterizer.toImage();
+
+        final String writeDir = System.getProperty("writeGoldens");
+        if (writeDir != null) {
+            actual.write(new File(writeDir, mName + ".png"));
+            return;
+        }
+
+        final PngImage expected = PngImage.read(TestImages.resource("golden/" + mName + ".png"));
+        assertEquals(WIDTH, expected.width);
+        assertEquals(HEIGHT, expected.height);
+        int mismatched = 0;
+        int maxDifference = 0;
+        for (int i = 0; i < actual.argb.length; i++) {
+            final int difference = TestImages.maxChannelError(expected.argb[i], actual.argb[i]);
+            maxDifference = Math.max(maxDifference, difference);
+            if (difference > CHANNEL_TOLERANCE) {
+                mismatched++;
+            }
+        }
+        assertTrue(mismatched + " pixels differ by more than " + CHANNEL_TOLERANCE + ", by up to " + maxDifference,
+                mismatched <= PIXEL_TOLERANCE * actual.argb.length);
+    }
+}
@@ -0,0 +1,214 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The per-eye frusta {@link StereoProjection} builds with {@link FrameMatrices#updateForEye},
+ * against the geometry they're meant to have.
+ */
+public class StereoProjectionTest {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    private static final float TOLERANCE = 1.0e-4f;
+    private static final float EYE_SEPARATION = 0.12f;
+
+    private static final float[] ROTATIONS = {0.0f, 0.05f, -0.3f, 0.7f, -1.2f};
+
+    private static final StereoProjection.Mode[] STEREO_MODES = {
+            StereoProjection.Mode.SIDE_BY_SIDE, StereoProjection.Mode.ANAGLYPH};
+
+    private final FrameMatrices mCenter = new FrameMatrices();
+    private StereoProjection mStereo;
+
+    @Before
+    public void setUp() {
+        mStereo = new StereoProjection();
+        mStereo.setSurfaceSize(WIDTH, HEIGHT);
+    }
+
+    /**
+     * The center frame for a device rotation, with the frustum offsets it'd get from the pose.
+     */
+    private static void pose(FrameMatrices matrices, float ratio, float xRot, float yRot) {
+        matrices.update(ratio, FastMath.sin(yRot), FastMath.sin(xRot), FastMath.cos(yRot), xRot, yRot, 0.0f, 5.0f);
+    }
+
+    /**
+     * Takes the scene's transform out of the center frame, so points can be given in the center
+     * eye's space.
+     */
+    private static void toEyeSpace(FrameMatrices matrices) {
+        MatrixMath.setIdentity(matrices.modelView);
+        System.arraycopy(matrices.projection, 0, matrices.modelViewProjection, 0, 16);
+    }
+
+    private static void toNdc(float[] m, float x, float y, float z, float[] out) {
+        final float w = m[3] * x + m[7] * y + m[11] * z + m[15];
+        out[0] = (m[0] * x + m[4] * y + m[8] * z + m[12]) / w;
+        out[1] = (m[1] * x + m[5] * y + m[9] * z + m[13]) / w;
+    }
+
+    private static boolean isInside(float[] m, float x, float y, float z) {
+        final float w = m[3] * x + m[7] * y + m[11] * z + m[15];
+        return Math.abs(m[0] * x + m[4] * y + m[8] * z + m[12]) <= w
+                && Math.abs(m[1] * x + m[5] * y + m[9] * z + m[13]) <= w
+                && Math.abs(m[2] * x + m[6] * y + m[10] * z + m[14]) <= w;
+    }
+
+    @Test
+    public void noSeparationIsMono() {
+        for (StereoProjection.Mode mode : STEREO_MODES) {
+            mStereo.setMode(mode, 0.0f);
+            for (float xRot : ROTATIONS) {
+                for (float yRot : ROTATIONS) {
+                    pose(mCenter, mStereo.getViewRatio(), xRot, yRot);
+                    mStereo.update(mCenter);
+                    for (int view = 0; view < 2; view++) {
+                        final FrameMatrices eye = mStereo.getView(view);
+                        final String message = mode + " view " + view + " x " + xRot + " y " + yRot;
+                        FrameMatricesTest.assertMatrixEquals(message + " projection", mCenter.projection,
+                                eye.projection);
+                        FrameMatricesTest.assertMatrixEquals(message + " model-view", mCenter.modelView,
+                                eye.modelView);
+                        FrameMatricesTest.assertMatrixEquals(message + " mvp", mCenter.modelViewProjection,
+                                eye.modelViewProjection);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reflected in x, the left eye at a rotation is the right eye at the opposite y rotation:
+     * M * right * M for M = diag(-1, 1, 1, 1), which flips the sign of everything in the first
+     * row or column but not both.
+     */
+    @Test
+    public void eyesMirrorEachOther() {
+        final FrameMatrices mirroredCenter = new FrameMatrices();
+        final StereoProjection mirrored = new StereoProjection();
+        mirrored.setSurfaceSize(WIDTH, HEIGHT);
+        for (StereoProjection.Mode mode : STEREO_MODES) {
+            mStereo.setMode(mode, EYE_SEPARATION);
+            mirrored.setMode(mode, EYE_SEPARATION);
+            final float ratio = mStereo.getViewRatio();
+            for (float xRot : ROTATIONS) {
+                for (float yRot : ROTATIONS) {
+                    pose(mCenter, ratio, xRot, yRot);
+                    mStereo.update(mCenter);
+                    pose(mirroredCenter, ratio, xRot, -yRot);
+                    mirrored.update(mirroredCenter);
+
+                    final FrameMatrices left = mStereo.getView(StereoProjection.LEFT_EYE);
+                    final FrameMatrices right = mirrored.getView(StereoProjection.RIGHT_EYE);
+                    final String message = mode + " x " + xRot + " y " + yRot;
+                    FrameMatricesTest.assertMatrixEquals(message + " projection", mirror(right.projection),
+                            left.projection);
+                    FrameMatricesTest.assertMatrixEquals(message + " model-view", mirror(right.modelView),
+                            left.modelView);
+                    FrameMatricesTest.assertMatrixEquals(message + " mvp", mirror(right.modelViewProjection),
+                            left.modelViewProjection);
+                }
+            }
+        }
+    }
+
+    private static float[] mirror(float[] m) {
+        final float[] out = new float[16];
+        for (int column = 0; column < 4; column++) {
+            for (int row = 0; row < 4; row++) {
+                final int i = column * 4 + row;
+                out[i] = (row == 0) != (column == 0) ? -m[i] : m[i];
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Anything on the screen, at the near plane, lands on the same spot for both eyes. In front
+     * of it the right eye sees it further left and behind it further right, by the parallax of
+     * eyes that far apart.
+     */
+    @Test
+    public void screenPlaneHasNoParallax() {
+        final Random random = new Random(1);
+        final float[] ndc = new float[2];
+        final float[] leftNdc = new float[2];
+        final float[] rightNdc = new float[2];
+        for (StereoProjection.Mode mode : STEREO_MODES) {
+            mStereo.setMode(mode, EYE_SEPARATION);
+            final float ratio = mStereo.getViewRatio();
+            final float eyeX = EYE_SEPARATION * 0.5f;
+            for (float xRot : ROTATIONS) {
+                for (float yRot : ROTATIONS) {
+                    pose(mCenter, ratio, xRot, yRot);
+                    toEyeSpace(mCenter);
+                    mStereo.update(mCenter);
+                    final float[] left = mStereo.getView(StereoProjection.LEFT_EYE).modelViewProjection;
+                    final float[] right = mStereo.getView(StereoProjection.RIGHT_EYE).modelViewProjection;
+                    final float zNear = FastMath.cos(yRot);
+
+                    for (int i = 0; i < 20; i++) {
+                        final float x = FastMath.sin(yRot) + (random.nextFloat() * 2.0f - 1.0f) * ratio;
+                        final float y = -FastMath.sin(xRot) + (random.nextFloat() * 2.0f - 1.0f);
+                        toNdc(mCenter.modelViewProjection, x, y, -zNear, ndc);
+                        toNdc(left, x, y, -zNear, leftNdc);
+                        toNdc(right, x, y, -zNear, rightNdc);
+                        assertEquals(ndc[0], leftNdc[0], TOLERANCE);
+                        assertEquals(ndc[1], leftNdc[1], TOLERANCE);
+                        assertEquals(ndc[0], rightNdc[0], TOLERANCE);
+                        assertEquals(ndc[1], rightNdc[1], TOLERANCE);
+
+                        for (float depth : new float[]{zNear * 0.5f, zNear * 2.0f,
+                                zNear + random.nextFloat() * FrameMatrices.FRUSTUM_DEPTH}) {
+                            toNdc(left, x, y, -depth, leftNdc);
+                            toNdc(right, x, y, -depth, rightNdc);
+                            final float parallax = 2.0f * eyeX * (1.0f - zNear / depth) / ratio;
+                            assertEquals(parallax, rightNdc[0] - leftNdc[0], TOLERANCE);
+                            assertEquals(0.0f, rightNdc[1] - leftNdc[1], TOLERANCE);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cullFrameTakesInBothEyes() {
+        final Random random = new Random(1);
+        for (StereoProjection.Mode mode : STEREO_MODES) {
+            mStereo.setMode(mode, EYE_SEPARATION);
+            final float ratio = mStereo.getViewRatio();
+            for (float xRot : ROTATIONS) {
+                for (float yRot : ROTATIONS) {
+                    pose(mCenter, ratio, xRot, yRot);
+                    toEyeSpace(mCenter);
+                    mStereo.update(mCenter);
+                    final float[] cull = mStereo.getCullFrame().modelViewProjection;
+                    int seen = 0;
+                    for (int i = 0; i < 200; i++) {
+                        final float x = (random.nextFloat() * 2.0f - 1.0f) * (ratio + 1.0f) * 60.0f;
+                        final float y = (random.nextFloat() * 2.0f - 1.0f) * 60.0f;
+                        final float z = -random.nextFloat() * (FrameMatrices.FRUSTUM_DEPTH + 2.0f);
+                        for (int view = 0; view < 2; view++) {
+                            if (isInside(mStereo.getView(view).modelViewProjection, x, y, z)) {
+                                seen++;
+                                assertTrue(mode + " x " + xRot + " y " + yRot + " view " + view
+                                        + " sees " + x + ", " + y + ", " + z, isInside(cull, x, y, z));
+                            }
+                        }
+                    }
+                    assertTrue(seen > 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.File;
+import java.net.URISyntaxException;
+
+/**
+ * Images and files the tests share.
+ */
+final class TestImages {
+
+    private TestImages() {
+    }
+
+    /**
+     * @param name of a file under src/test/resources
+     */
+    static File resource(String name) {
+        try {
+            return new File(TestImages.class.getResource("/" + name).toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Five colors in 3x5 cells, a size that isn't a whole number of blocks or a power of two.
+     */
+    static PngImage checkerboard(int width, int height) {
+        final int[] colors = {0xffd03020, 0xff20a040, 0xff2040e0, 0xfff0f0f0, 0xff101010};
+        final int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                argb[y * width + x] = colors[((x / 3) + (y / 5) * 2) % colors.length];
+            }
+        }
+        return new PngImage(width, height, argb);
+    }
+
+    /**
+     * A sky-like gradient with a soft glow in it, ETC's best case.
+     */
+    static PngImage smooth(int size) {
+        final int[] argb = new int[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                final float t = (float) y / size;
+                final float dx = (x - size * 0.7f) / size, dy = (y - size * 0.3f) / size;
+                final float glow = (float) Math.exp(-(dx * dx + dy * dy) * 20.0f);
+                argb[y * size + x] = rgb(0.85f - 0.6f * t + 0.3f * glow, 0.88f - 0.5f * t + 0.25f * glow,
+                        0.92f - 0.2f * t + 0.1f * glow);
+            }
+        }
+        return new PngImage(size, size, argb);
+    }
+
+    /**
+     * Light one pixel lines every few pixels over a dark ground, ETC's worst case.
+     */
+    static PngImage grid(int size) {
+        final int[] argb = new int[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                final boolean line = x % 7 == 0 || y % 5 == 0;
+                argb[y * size + x] = line ? rgb(0.2f, 0.75f, 0.85f) : rgb(0.12f, 0.13f, 0.16f);
+            }
+        }
+        return new PngImage(size, size, argb);
+    }
+
+    static double psnr(PngImage image, int[] decoded) {
+        double squared = 0.0;
+        for (int i = 0; i < image.argb.length; i++) {
+            for (int shift = 0; shift < 24; shift += 8) {
+                final int error = ((image.argb[i] >> shift) & 0xff) - ((decoded[i] >> shift) & 0xff);
+                squared += error * error;
+            }
+        }
+        final double mse = squared / (3.0 * image.argb.length);
+        return mse == 0.0 ? 99.0 : 10.0 * Math.log10(255.0 * 255.0 / mse);
+    }
+
+    static int maxChannelError(int a, int b) {
+        int worst = 0;
+        for (int shift = 0; shift < 24; shift += 8) {
+            worst = Math.max(worst, Math.abs(((a >> shift) & 0xff) - ((b >> shift) & 0xff)));
+        }
+        return worst;
+    }
+
+    private static int rgb(float r, float g, float b) {
+        return 0xff000000 | channel(r) << 16 | channel(g) << 8 | channel(b);
+    }
+
+    private static int channel(float value) {
+        return Math.max(0, Math.min(255, Math.round(value * 255.0f)));
+    }
+}
@@ -0,0 +1,94 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+/**
+ * Meshes the tests share, built in memory.
+ */
+final class TestMeshes {
+
+    private TestMeshes() {
+    }
+
+    /**
+     * A unit UV sphere of 2 * segments^2 triangles, the same as MeshTool sphere writes, with the
+     * vertices at each pole repeated as an imported one's would be, and colored by position.
+     */
+    static MeshData sphere(int segments) {
+        final float[] vertices = new float[(segments + 1) * segments * Mesh.FLOATS_PER_VERTEX];
+        int v = 0;
+        for (int ring = 0; ring <= segments; ring++) {
+            final double theta = Math.PI * ring / segments;
+            for (int segment = 0; segment < segments; segment++) {
+                final double phi = 2.0 * Math.PI * segment / segments;
+                vertices[v] = (float) (Math.sin(theta) * Math.cos(phi));
+                vertices[v + 1] = (float) Math.cos(theta);
+                vertices[v + 2] = (float) (Math.sin(theta) * Math.sin(phi));
+                v += Mesh.FLOATS_PER_VERTEX;
+            }
+        }
+        final int[] indices = new int[segments * segments * 6];
+        int i = 0;
+        for (int ring = 0; ring < segments; ring++) {
+            for (int segment = 0; segment < segments; segment++) {
+                final int a = ring * segments + segment;
+                final int b = ring * segments + (segment + 1) % segments;
+                indices[i++] = a;
+                indices[i++] = b;
+                indices[i++] = b + segments;
+                indices[i++] = a;
+                indices[i++] = b + segments;
+                indices[i++] = a + segments;
+            }
+        }
+        final MeshData mesh = new MeshData(vertices, indices, false);
+        mesh.colorByPosition();
+        return mesh;
+    }
+
+    /**
+     * A flat size x size grid of quads in the xy plane from 0 to 1, two clockwise triangles each,
+     * with the vertices row by row and colored by position.
+     */
+    static MeshData grid(int size) {
+        final float[] vertices = new float[(size + 1) * (size + 1) * Mesh.FLOATS_PER_VERTEX];
+        int v = 0;
+        for (int row = 0; row <= size; row++) {
+            for (int column = 0; column <= size; column++) {
+                vertices[v] = (float) column / size;
+                vertices[v + 1] = (float) row / size;
+                v += Mesh.FLOATS_PER_VERTEX;
+            }
+        }
+        final int[] indices = new int[size * size * 6];
+        int i = 0;
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                final int a = row * (size + 1) + column;
+                final int c = a + size + 1;
+                indices[i++] = a;
+                indices[i++] = c;
+                indices[i++] = a + 1;
+                indices[i++] = a + 1;
+                indices[i++] = c;
+                indices[i++] = c + 1;
+            }
+        }
+        final MeshData mesh = new MeshData(vertices, indices, false);
+        mesh.colorByPosition();
+        return mesh;
+    }
+
+    /**
+     * @param out the triangle's unnormalized normal, (b - a) x (c - a)
+     */
+    static void normal(MeshData mesh, int triangle, double[] out) {
+        final float[] p = mesh.vertices;
+        final int a = mesh.indices[triangle * 3] * Mesh.FLOATS_PER_VERTEX;
+        final int b = mesh.indices[triangle * 3 + 1] * Mesh.FLOATS_PER_VERTEX;
+        final int c = mesh.indices[triangle * 3 + 2] * Mesh.FLOATS_PER_VERTEX;
+        final double ux = p[b] - p[a], uy = p[b + 1] - p[a + 1], uz = p[b + 2] - p[a + 2];
+        final double vx = p[c] - p[a], vy = p[c + 1] - p[a + 1], vz = p[c + 2] - p[a + 2];
+        out[0] = uy * vz - uz * vy;
+        out[1] = uz * vx - ux * vz;
+        out[2] = ux * vy - uy * vx;
+    }
+}
@@ -0,0 +1,253 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The replay harness and what it's there to catch regressions in: the integration's drift,
+ * the latency the prediction hides, and the replay itself staying deterministic.
+ */
+public class TraceReplayTest {
+
+    private static final long START_NS = 1000000000L;
+    private static final long GYRO_INTERVAL_NS = 5000000L;
+    private static final long FRAME_INTERVAL_NS = 16666667L;
+    private static final long PREDICTION_LOOKAHEAD_NS = 20000000L;
+
+    // the device rocks about its x axis and back once every period
+    private static final double PERIOD_S = 2.0;
+    private static final double AMPLITUDE = 1.5;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * The true rotation about x at a time into the trace, starting and ending each period at 0.
+     */
+    private static double angleAt(long elapsedNs) {
+        final double phase = 2.0 * Math.PI * (elapsedNs / 1e9) / PERIOD_S;
+        return AMPLITUDE * PERIOD_S / (2.0 * Math.PI) * (1.0 - Math.cos(phase));
+    }
+
+    private static double rateAt(long elapsedNs) {
+        return AMPLITUDE * Math.sin(2.0 * Math.PI * (elapsedNs / 1e9) / PERIOD_S);
+    }
+
+    /**
+     * A device lying flat, rocked about x for whole periods, with gyro readings at 200 Hz off
+     * by the given bias and noise and accelerometer readings of gravity at 100 Hz.
+     */
+    private File writeTrace(double seconds, double gyroBias, double gyroNoise) throws IOException {
+        final File file = mFolder.newFile("rocking" + SensorTrace.EXTENSION);
+        final Random random = new Random(42);
+        final SensorTraceRecorder recorder = new SensorTraceRecorder(file);
+        final float[] values = new float[3];
+        final long count = (long) (seconds * 1e9 / GYRO_INTERVAL_NS);
+        for (long i = 0; i <= count; i++) {
+            final long elapsedNs = i * GYRO_INTERVAL_NS;
+            values[0] = (float) (rateAt(elapsedNs) + gyroBias + random.nextGaussian() * gyroNoise);
+            values[1] = (float) (random.nextGaussian() * gyroNoise);
+            values[2] = (float) (random.nextGaussian() * gyroNoise);
+            recorder.onSensorSample(SensorSampleSink.TYPE_GYROSCOPE, START_NS + elapsedNs, values, 3, 3);
+            if (i % 2 == 0) {
+                final double angle = angleAt(elapsedNs);
+                values[0] = 0.0f;
+                values[1] = (float) (9.81 * Math.sin(angle));
+                values[2] = (float) (9.81 * Math.cos(angle));
+                recorder.onSensorSample(SensorSampleSink.TYPE_ACCELEROMETER, START_NS + elapsedNs + 1000,
+                        values, 3, 3);
+            }
+            if ((i & 1023) == 1023) {
+                recorder.flush();
+            }
+        }
+        recorder.close();
+        assertEquals(0, recorder.getDroppedCount());
+        return file;
+    }
+
+    @Test
+    public void readsBackWhatWasRecorded() throws IOException {
+        final File file = mFolder.newFile("events" + SensorTrace.EXTENSION);
+        final SensorTraceRecorder recorder = new SensorTraceRecorder(file);
+        final float[] values = new float[SensorTrace.MAX_VALUES];
+        for (int i = 0; i < 100; i++) {
+            for (int v = 0; v < values.length; v++) {
+                values[v] = i * 0.5f - v;
+            }
+            recorder.onSensorSample(i % 3, START_NS + i * 1000L, values, i % (SensorTrace.MAX_VALUES + 1), i % 4);
+        }
+        recorder.close();
+
+        final SensorTraceReader reader = SensorTraceReader.open(file);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(reader.next());
+            assertEquals(i % 3, reader.sensorType);
+            assertEquals(START_NS + i * 1000L, reader.timestampNs);
+            assertEquals(i % 4, reader.accuracy);
+            assertEquals(i % (SensorTrace.MAX_VALUES + 1), reader.valueCount);
+            for (int v = 0; v < reader.valueCount; v++) {
+                assertEquals(i * 0.5f - v, reader.values[v], 0.0f);
+            }
+        }
+        assertFalse(reader.next());
+
+        // an app killed mid-write leaves half a record, which is read as the end
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 2);
+        } finally {
+            raf.close();
+        }
+        final SensorTraceReader truncated = SensorTraceReader.open(file);
+        int events = 0;
+        while (truncated.next()) {
+            events++;
+        }
+        assertEquals(99, events);
+    }
+
+    @Test
+    public void replayIsDeterministic() throws IOException {
+        final SensorTraceReader reader = SensorTraceReader.open(writeTrace(4.0, 0.002, 0.01));
+        final long[] first = replayFrames(reader);
+        final long[] second = replayFrames(reader);
+        assertEquals(first[0], second[0]);
+        assertEquals(first[1], second[1]);
+        // a frame every 16.7ms of the 4 s trace
+        assertEquals(240, first[1]);
+    }
+
+    /**
+     * @return a hash of every frame's matrices and the number of frames
+     */
+    private static long[] replayFrames(SensorTraceReader reader) throws IOException {
+        final PoseExchange exchange = new PoseExchange();
+        final PoseIntegrator integrator = new PoseIntegrator(exchange, new PosePredictor(), Clock.SYSTEM);
+        final FrameMatrices matrices = new FrameMatrices();
+        final long[] hash = new long[1];
+        final TraceReplayer replayer = new TraceReplayer(reader, integrator);
+        replayer.setFrames(FRAME_INTERVAL_NS, new TraceReplayer.FrameCallback() {
+            @Override
+            public void onFrame(long frameTimeNs) {
+                final float[] pose = exchange.acquire();
+                matrices.updateFromPose(pose, exchange.getTimestamp(), frameTimeNs + PREDICTION_LOOKAHEAD_NS,
+                        0.0f, 0.0f, 16.0f / 9.0f, 0.0f, 5.0f);
+                for (float value : matrices.modelViewProjection) {
+                    hash[0] = hash[0] * 31 + Float.floatToIntBits(value);
+                }
+            }
+        });
+        final TraceReplayer.Result result = replayer.run();
+        return new long[]{hash[0], result.frameCount};
+    }
+
+    @Test
+    public void gyroIntegrationEndsWhereItStarted() throws IOException {
+        final SensorTraceReader reader = SensorTraceReader.open(writeTrace(4.0, 0.0, 0.0));
+        final OrientationEngine engine = new OrientationEngine();
+        new TraceReplayer(reader, engine).run();
+        assertEquals(0.0, engine.getXRotRads(), Math.toRadians(0.1));
+        assertEquals(0.0, engine.getYRotRads(), Math.toRadians(0.1));
+    }
+
+    @Test
+    public void accelerometerFusionBoundsGyroBiasDrift() throws IOException {
+        final double bias = 0.005;
+        final SensorTraceReader reader = SensorTraceReader.open(writeTrace(20.0, bias, 0.01));
+
+        final OrientationEngine gyroOnly = new OrientationEngine();
+        new TraceReplayer(reader, gyroOnly).run();
+        // the whole bias over the whole trace, 0.1 rad
+        assertEquals(bias * 20.0, gyroOnly.getXRotRads(), 0.01);
+
+        final OrientationEngine fused = new OrientationEngine();
+        fused.setFusion(OrientationEngine.Fusion.ACCELEROMETER);
+        new TraceReplayer(reader, fused).run();
+        // gravity holds the tilt to a fraction of that
+        assertTrue("fused drift " + fused.getXRotRads() + " rad",
+                Math.abs(fused.getXRotRads()) < Math.abs(gyroOnly.getXRotRads()) / 5.0f);
+        // and it's on its way to learning the bias, which takes a minute or so at Ki
+        final float[] learned = new float[3];
+        fused.getGyroBias(learned);
+        assertTrue("learned bias " + learned[0], learned[0] > bias * 0.25 && learned[0] < bias * 1.5);
+    }
+
+    @Test
+    public void predictionHidesMostOfTheLatency() throws IOException {
+        final SensorTraceReader reader = SensorTraceReader.open(writeTrace(8.0, 0.0, 0.0));
+        final PoseExchange exchange = new PoseExchange();
+        final PoseIntegrator integrator = new PoseIntegrator(exchange, new PosePredictor(), Clock.SYSTEM);
+        // summed errors against the true angle when the frame's seen, without and with prediction
+        final double[] errors = new double[2];
+        final TraceReplayer replayer = new TraceReplayer(reader, integrator);
+        replayer.setFrames(FRAME_INTERVAL_NS, new TraceReplayer.FrameCallback() {
+            @Override
+            public void onFrame(long frameTimeNs) {
+                final float[] pose = exchange.acquire();
+                final long poseTimestampNs = exchange.getTimestamp();
+                if (poseTimestampNs == 0) {
+                    return;
+                }
+                final long targetNs = frameTimeNs + PREDICTION_LOOKAHEAD_NS;
+                final double truth = angleAt(targetNs - START_NS);
+                final float predicted = pose[PoseExchange.X_ROT] + PosePredictor.extrapolate(
+                        pose[PoseExchange.RATE_X], pose[PoseExchange.ACCEL_X], (targetNs - poseTimestampNs) / 1e9f);
+                errors[0] += Math.abs(pose[PoseExchange.X_ROT] - truth);
+                errors[1] += Math.abs(predicted - truth);
+            }
+        });
+        replayer.run();
+        assertTrue("predicted error " + errors[1] + " against " + errors[0] + " unpredicted",
+                errors[1] < errors[0] * 0.25);
+    }
+
+    @Test
+    public void realTimeReplayWaitsForEachEvent() throws IOException {
+        final SensorTraceReader reader = SensorTraceReader.open(writeTrace(0.25, 0.0, 0.0));
+        // moves on a millisecond every time it's read, so waiting costs no real time
+        final Clock clock = new Clock() {
+            private long mNowNs;
+
+            @Override
+            public long nanoTime() {
+                return mNowNs += 1000000L;
+            }
+        };
+        final long[] lateness = {Long.MAX_VALUE, Long.MIN_VALUE};
+        final TraceReplayer replayer = new TraceReplayer(reader, new SensorSampleSink() {
+            private long mFirstTimestampNs;
+            private long mStartNs;
+
+            @Override
+            public void onSensorSample(int sensorType, long timestampNs, float[] values, int valueCount,
+                                       int accuracy) {
+                final long nowNs = clock.nanoTime();
+                if (mFirstTimestampNs == 0) {
+                    mFirstTimestampNs = timestampNs;
+                    mStartNs = nowNs;
+                }
+                final long late = (nowNs - mStartNs) - (timestampNs - mFirstTimestampNs);
+                lateness[0] = Math.min(lateness[0], late);
+                lateness[1] = Math.max(lateness[1], late);
+            }
+        });
+        replayer.setRealTime(true, clock);
+        final TraceReplayer.Result result = replayer.run();
+        assertEquals(77, result.sampleCount);
+        // never early, and only as late as the clock's steps make it
+        assertTrue("early by " + -lateness[0] + " ns", lateness[0] >= -2000000L);
+        assertTrue("late by " + lateness[1] + " ns", lateness[1] <= 3000000L);
+        assertTrue(result.elapsedNs >= result.traceDurationNs);
+    }
+}
@@ -0,0 +1,100 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ViewRecentererTest {
+
+    private static final long START_NS = 1000000000L;
+    // idle from here on
+    private static final long IDLE_NS = START_NS + IdleDetector.DEFAULT_WINDOW_NS;
+    // a whole number of frames at each of the intervals
+    private static final long DURATION_NS = 800000000L;
+    private static final long[] FRAME_INTERVALS_NS = {5000000L, 16000000L, 50000000L};
+
+    private static final float X_ROT = 0.3f;
+    private static final float Y_ROT = -0.2f;
+
+    private static IdleDetector idleDetector() {
+        final IdleDetector detector = new IdleDetector();
+        detector.onGyroSample(START_NS, 0.0f, 0.0f, 0.0f);
+        return detector;
+    }
+
+    /**
+     * The offset heads straight for the pose without passing it, and is within 1% of it after
+     * the duration but not much before, whatever the frame rate.
+     */
+    @Test
+    public void recentersOverTheDurationWithoutOvershoot() {
+        for (long intervalNs : FRAME_INTERVALS_NS) {
+            final ViewRecenterer recenterer = new ViewRecenterer(idleDetector());
+            recenterer.setDuration(DURATION_NS);
+            float lastX = 0.0f;
+            float lastY = 0.0f;
+            for (long nowNs = IDLE_NS; nowNs <= IDLE_NS + DURATION_NS; nowNs += intervalNs) {
+                recenterer.update(nowNs, X_ROT, Y_ROT);
+                final float x = recenterer.getXOffset();
+                final float y = recenterer.getYOffset();
+                final String message = intervalNs / 1000000 + "ms frames, " + (nowNs - IDLE_NS) / 1000000 + "ms in";
+                assertTrue(message + " x " + x, x >= lastX && x <= X_ROT);
+                assertTrue(message + " y " + y, y <= lastY && y >= Y_ROT);
+                if (nowNs - IDLE_NS <= DURATION_NS * 8 / 10) {
+                    assertTrue(message + " x " + x, X_ROT - x > 0.01f * X_ROT);
+                }
+                lastX = x;
+                lastY = y;
+            }
+            final String message = intervalNs / 1000000 + "ms frames";
+            assertEquals(message, X_ROT, lastX, 0.01f * X_ROT);
+            assertEquals(message, Y_ROT, lastY, 0.01f * -Y_ROT);
+            assertFalse(message, recenterer.isCentered());
+        }
+    }
+
+    @Test
+    public void settlesAndStops() {
+        final ViewRecenterer recenterer = new ViewRecenterer(idleDetector());
+        recenterer.setDuration(DURATION_NS);
+        // centered until there's anything to do
+        assertTrue(recenterer.isCentered());
+        long nowNs = IDLE_NS;
+        do {
+            assertTrue("still going after " + (nowNs - IDLE_NS) / 1000000 + "ms", nowNs < IDLE_NS + 4 * DURATION_NS);
+            recenterer.update(nowNs, X_ROT, Y_ROT);
+            nowNs += 16000000L;
+        } while (!recenterer.isCentered());
+        assertEquals(X_ROT, recenterer.getXOffset(), 0.0f);
+        assertEquals(Y_ROT, recenterer.getYOffset(), 0.0f);
+    }
+
+    /**
+     * Picking the device up again leaves the offset where it got to.
+     */
+    @Test
+    public void motionStopsItWhereItIs() {
+        final IdleDetector detector = idleDetector();
+        final ViewRecenterer recenterer = new ViewRecenterer(detector);
+        recenterer.setDuration(DURATION_NS);
+        long nowNs = IDLE_NS;
+        for (; nowNs <= IDLE_NS + DURATION_NS / 4; nowNs += 16000000L) {
+            recenterer.update(nowNs, X_ROT, Y_ROT);
+        }
+        final float x = recenterer.getXOffset();
+        assertTrue(x > 0.0f && x < X_ROT);
+
+        detector.onGyroSample(nowNs, 1.0f, 0.0f, 0.0f);
+        for (int frame = 0; frame < 10; frame++, nowNs += 16000000L) {
+            recenterer.update(nowNs, X_ROT + frame * 0.01f, Y_ROT);
+            assertEquals(x, recenterer.getXOffset(), 0.0f);
+            assertFalse(recenterer.isCentered());
+        }
+
+        recenterer.requestReset();
+        recenterer.update(nowNs, X_ROT, Y_ROT);
+        assertEquals(0.0f, recenterer.getXOffset(), 0.0f);
+    }
+}
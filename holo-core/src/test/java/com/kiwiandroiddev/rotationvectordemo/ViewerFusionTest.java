@@ -0,0 +1,133 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The device turning one way and the viewer's head moving another, as in HeadTool's generated
+ * sequences, with the camera's positions made straight from the motion rather than tracked.
+ */
+public class ViewerFusionTest {
+
+    private static final long START_NS = 1000000000L;
+    private static final long CAMERA_INTERVAL_NS = 33333333L;
+    private static final long RENDER_INTERVAL_NS = 16666667L;
+    // from capture to a position being ready: exposure, readout, delivery and tracking
+    private static final long CAMERA_LATENCY_NS = 50000000L;
+    // left out of the errors while the filter settles
+    private static final long SETTLE_NS = 500000000L;
+    private static final double SECONDS = 6.0;
+
+    // a 60 degree 4:3 camera the right way up
+    private static final float HORIZONTAL_FOV_RADS = (float) Math.toRadians(60.0);
+    private static final float VERTICAL_FOV_RADS =
+            (float) (2.0 * Math.atan(Math.tan(HORIZONTAL_FOV_RADS * 0.5) * 0.75));
+
+    // about a third of a downscaled pixel of jitter in the tracked positions
+    private static final double POSITION_NOISE = 0.01;
+
+    /**
+     * @param out the device's x and y rotation, then the head's, in radians
+     */
+    private static void motion(double seconds, float[] out) {
+        out[0] = (float) (0.10 * Math.sin(2.0 * Math.PI * 0.9 * seconds));
+        out[1] = (float) (0.15 * Math.sin(2.0 * Math.PI * 1.2 * seconds));
+        out[2] = (float) (0.08 * Math.sin(2.0 * Math.PI * 0.2 * seconds));
+        out[3] = (float) (0.12 * Math.sin(2.0 * Math.PI * 0.25 * seconds));
+    }
+
+    /**
+     * Where the camera sees something in the direction the given rotation would show it, in
+     * half frame widths and heights from the middle.
+     */
+    private static void imagePosition(float xRotRads, float yRotRads, float[] out) {
+        out[0] = (float) (Math.tan(yRotRads) / Math.tan(HORIZONTAL_FOV_RADS * 0.5));
+        out[1] = (float) (-Math.tan(xRotRads) / Math.tan(VERTICAL_FOV_RADS * 0.5));
+    }
+
+    /**
+     * Compares the rotation each 60 fps frame would be drawn with against where the viewer
+     * really is: fused with the gyro, from the camera on its own (the same filter with the
+     * device held still), and from the gyro on its own.
+     *
+     * @return rms errors in radians over both axes, fused, camera and gyro
+     */
+    private static double[] errors() {
+        final Random random = new Random(23);
+        final ViewerFusion fused = new ViewerFusion();
+        final ViewerFusion camera = new ViewerFusion();
+        fused.setCameraGeometry(HORIZONTAL_FOV_RADS, VERTICAL_FOV_RADS, 0);
+        camera.setCameraGeometry(HORIZONTAL_FOV_RADS, VERTICAL_FOV_RADS, 0);
+
+        final float[] motion = new float[4];
+        final float[] position = new float[2];
+        final double[] squared = new double[3];
+        int count = 0;
+        long nextCaptureNs = START_NS;
+        final long endNs = START_NS + (long) (SECONDS * 1e9);
+        for (long nowNs = START_NS; nowNs <= endNs; nowNs += RENDER_INTERVAL_NS) {
+            while (nextCaptureNs + CAMERA_LATENCY_NS <= nowNs) {
+                motion((nextCaptureNs - START_NS) / 1e9, motion);
+                imagePosition(motion[0] + motion[2], motion[1] + motion[3], position);
+                final float x = (float) (position[0] + random.nextGaussian() * POSITION_NOISE);
+                final float y = (float) (position[1] + random.nextGaussian() * POSITION_NOISE);
+                fused.onViewerPosition(nextCaptureNs, x, y, true);
+                camera.onViewerPosition(nextCaptureNs, x, y, true);
+                nextCaptureNs += CAMERA_INTERVAL_NS;
+            }
+            motion((nowNs - START_NS) / 1e9, motion);
+            fused.update(nowNs, motion[0], motion[1]);
+            camera.update(nowNs, 0.0f, 0.0f);
+            if (nowNs - START_NS < SETTLE_NS) {
+                continue;
+            }
+            final float viewerX = motion[0] + motion[2];
+            final float viewerY = motion[1] + motion[3];
+            squared[0] += square(motion[0] - fused.getXOffset() - viewerX)
+                    + square(motion[1] - fused.getYOffset() - viewerY);
+            squared[1] += square(-camera.getXOffset() - viewerX) + square(-camera.getYOffset() - viewerY);
+            squared[2] += square(motion[0] - viewerX) + square(motion[1] - viewerY);
+            count++;
+        }
+        for (int i = 0; i < squared.length; i++) {
+            squared[i] = Math.sqrt(squared[i] / (2 * count));
+        }
+        return squared;
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+    @Test
+    public void fusionBeatsEitherOnItsOwn() {
+        final double[] errors = errors();
+        assertTrue("fused " + errors[0] + " rad, camera alone " + errors[1] + ", gyro alone " + errors[2],
+                errors[0] <= 0.7 * Math.min(errors[1], errors[2]));
+    }
+
+    @Test
+    public void lostPositionsAreIgnoredAndResetDropsTheOffset() {
+        final ViewerFusion fusion = new ViewerFusion();
+        fusion.onViewerPosition(START_NS, 0.5f, 0.0f, true);
+        for (long nowNs = START_NS; nowNs < START_NS + 1000000000L; nowNs += RENDER_INTERVAL_NS) {
+            fusion.update(nowNs, 0.0f, 0.0f);
+        }
+        assertTrue(fusion.isTracking());
+        final float offset = fusion.getYOffset();
+        assertTrue(offset != 0.0f);
+
+        fusion.onViewerPosition(START_NS + 1000000000L, -0.5f, 0.0f, false);
+        fusion.update(START_NS + 1100000000L, 0.0f, 0.0f);
+        assertEquals(offset, fusion.getYOffset(), 0.0f);
+
+        fusion.requestReset();
+        fusion.update(START_NS + 1200000000L, 0.0f, 0.0f);
+        assertEquals(0.0f, fusion.getXOffset(), 0.0f);
+        assertEquals(0.0f, fusion.getYOffset(), 0.0f);
+    }
+}
@@ -0,0 +1,338 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Runs the head tracking pipeline over image sequences on a desktop JVM, no camera needed:
+ * <pre>
+ *   HeadTool synth dir [seconds]    a generated sequence of a face moving in front of the
+ *                                   camera while the device turns, with the ground truth
+ *   HeadTool track dir              tracks a sequence, printing where the face was found in
+ *                                   each frame and how long it took against the 33 ms budget,
+ *                                   and with a ground truth, how close that was
+ * </pre>
+ * A sequence is a directory of PNG frames named frame-00000.png and so on, plus frames.csv with
+ * each frame's number and timestamp in nanoseconds. Frames can be in color, only their luma is
+ * used. A generated one also has positions.csv, where the face is in each frame as
+ * {@link HeadTracker} reports it, and truth.csv: the device's rotation from the gyro and the
+ * rotation that would show the viewer where they really are (see {@link ViewerFusion}), at
+ * 200 Hz. The short generated sequence under holo-core's test resources is what
+ * HeadTrackerTest checks the tracker against.
+ */
+public final class HeadTool {
+
+    private static final long FRAME_INTERVAL_NS = 33333333L;
+    private static final long TRUTH_INTERVAL_NS = 5000000L;
+    private static final long START_NS = 1000000000L;
+    private static final double DEFAULT_SECONDS = 6.0;
+
+    // from capture to a position being ready: exposure, readout, delivery and tracking
+    private static final long CAMERA_LATENCY_NS = 50000000L;
+    private static final long RENDER_INTERVAL_NS = 16666667L;
+    // left out of the errors while the filters settle
+    private static final long SETTLE_NS = 500000000L;
+
+    private HeadTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if ((args.length == 2 || args.length == 3) && args[0].equals("synth")) {
+            final double seconds = args.length == 3 ? Double.parseDouble(args[2]) : DEFAULT_SECONDS;
+            final File dir = new File(args[1]);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("couldn't create " + dir);
+            }
+            System.out.println("wrote " + synth(dir, seconds) + " frames to " + dir);
+        } else if (args.length == 2 && args[0].equals("track")) {
+            track(new File(args[1]));
+        } else {
+            System.err.println("usage: HeadTool synth dir [seconds]");
+            System.err.println("       HeadTool track dir");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A recorded sequence, every frame's luma loaded up front so reading files isn't timed.
+     */
+    static final class Sequence {
+        final int width;
+        final int height;
+        final long[] timestamps;
+        final byte[][] frames;
+
+        Sequence(int width, int height, long[] timestamps, byte[][] frames) {
+            this.width = width;
+            this.height = height;
+            this.timestamps = timestamps;
+            this.frames = frames;
+        }
+
+        static Sequence read(File dir) throws IOException {
+            final List<String[]> rows = readCsv(new File(dir, "frames.csv"));
+            final long[] timestamps = new long[rows.size()];
+            final byte[][] frames = new byte[rows.size()][];
+            int width = 0, height = 0;
+            for (int i = 0; i < rows.size(); i++) {
+                final PngImage image = PngImage.read(new File(dir, frameName(Integer.parseInt(rows.get(i)[0]))));
+                if (i > 0 && (image.width != width || image.height != height)) {
+                    throw new IOException("frames are different sizes");
+                }
+                width = image.width;
+                height = image.height;
+                timestamps[i] = Long.parseLong(rows.get(i)[1]);
+                frames[i] = SyntheticHeadSequence.luma(image);
+            }
+            return new Sequence(width, height, timestamps, frames);
+        }
+    }
+
+    /**
+     * Where the face was found in each frame of a sequence.
+     */
+    static final class Track implements HeadTrackingPipeline.Listener {
+        final float[] imageX;
+        final float[] imageY;
+        final boolean[] locked;
+        int count;
+
+        Track(int frames) {
+            imageX = new float[frames];
+            imageY = new float[frames];
+            locked = new boolean[frames];
+        }
+
+        @Override
+        public void onViewerPosition(long timestampNs, float x, float y, boolean isLocked) {
+            imageX[count] = x;
+            imageY[count] = y;
+            locked[count] = isLocked;
+            count++;
+        }
+    }
+
+    /**
+     * The device's rotation and the viewer's, sampled at regular times.
+     */
+    static final class Truth {
+        final long[] timestamps;
+        final float[] deviceX;
+        final float[] deviceY;
+        final float[] viewerX;
+        final float[] viewerY;
+
+        Truth(List<String[]> rows) {
+            timestamps = new long[rows.size()];
+            deviceX = new float[rows.size()];
+            deviceY = new float[rows.size()];
+            viewerX = new float[rows.size()];
+            viewerY = new float[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                final String[] row = rows.get(i);
+                timestamps[i] = Long.parseLong(row[0]);
+                deviceX[i] = Float.parseFloat(row[1]);
+                deviceY[i] = Float.parseFloat(row[2]);
+                viewerX[i] = Float.parseFloat(row[3]);
+                viewerY[i] = Float.parseFloat(row[4]);
+            }
+        }
+
+        float at(float[] values, long timestampNs) {
+            int i = 0;
+            while (i < timestamps.length - 2 && timestamps[i + 1] <= timestampNs) {
+                i++;
+            }
+            if (timestampNs <= timestamps[0]) {
+                return values[0];
+            }
+            final float t = Math.min(1.0f, (float) (timestampNs - timestamps[i]) / (timestamps[i + 1] - timestamps[i]));
+            return values[i] + t * (values[i + 1] - values[i]);
+        }
+    }
+
+    private static void track(File dir) throws IOException {
+        final Sequence sequence = Sequence.read(dir);
+        final Track track = new Track(sequence.frames.length);
+        final HeadTrackingPipeline pipeline = new HeadTrackingPipeline(new HeadTracker(), track, Clock.SYSTEM);
+        for (int i = 0; i < sequence.frames.length; i++) {
+            pipeline.onCameraFrame(sequence.frames[i], sequence.width, sequence.height, sequence.width,
+                    sequence.timestamps[i]);
+            System.out.println(String.format(Locale.US, "%5d %14d  x %7.4f  y %7.4f  score %5.3f%s", i,
+                    sequence.timestamps[i], track.imageX[i], track.imageY[i], pipeline.getTracker().getScore(),
+                    track.locked[i] ? "" : "  lost"));
+        }
+        System.out.println(pipeline.formatSummary());
+        System.out.println(pipeline.getProcessingTimes().formatSummary());
+
+        final File truthFile = new File(dir, "truth.csv");
+        if (truthFile.exists()) {
+            final Truth truth = new Truth(readCsv(truthFile));
+            System.out.println(String.format(Locale.US, "tracking error %.3f px rms",
+                    trackingError(sequence, track, truth)));
+            final double[] errors = fusionErrors(sequence, track, truth);
+            System.out.println(String.format(Locale.US,
+                    "view error rms: fused %.4f rad, camera alone %.4f, gyro alone %.4f", errors[0], errors[1],
+                    errors[2]));
+        }
+    }
+
+    /**
+     * @return how far the tracked positions were from the true ones, in downscaled pixels
+     */
+    private static double trackingError(Sequence sequence, Track track, Truth truth) {
+        final int factor = HeadTracker.scaleFactor(sequence.width, sequence.height);
+        final double halfWidth = sequence.width / factor * 0.5;
+        final double halfHeight = sequence.height / factor * 0.5;
+        final float[] expected = new float[2];
+        double squared = 0.0;
+        int count = 0;
+        for (int i = 0; i < track.count; i++) {
+            if (!track.locked[i]) {
+                continue;
+            }
+            final long timestampNs = sequence.timestamps[i];
+            SyntheticHeadSequence.imagePosition(truth.at(truth.viewerX, timestampNs),
+                    truth.at(truth.viewerY, timestampNs), expected);
+            final double dx = (track.imageX[i] - expected[0]) * halfWidth;
+            final double dy = (track.imageY[i] - expected[1]) * halfHeight;
+            squared += dx * dx + dy * dy;
+            count++;
+        }
+        return count == 0 ? Double.POSITIVE_INFINITY : Math.sqrt(squared / count);
+    }
+
+    /**
+     * Replays the sequence's timeline at 60 fps with each tracked position arriving
+     * {@link #CAMERA_LATENCY_NS} after its frame was captured, and compares the rotation each
+     * frame would be drawn with against the truth: fused with the gyro, from the camera on its
+     * own (the same filter with the device held still), and from the gyro on its own.
+     *
+     * @return rms errors in radians over both axes, fused, camera and gyro
+     */
+    private static double[] fusionErrors(Sequence sequence, Track track, Truth truth) {
+        final ViewerFusion fused = new ViewerFusion();
+        final ViewerFusion camera = new ViewerFusion();
+        fused.setCameraGeometry(SyntheticHeadSequence.HORIZONTAL_FOV_RADS,
+                SyntheticHeadSequence.VERTICAL_FOV_RADS, 0);
+        camera.setCameraGeometry(SyntheticHeadSequence.HORIZONTAL_FOV_RADS,
+                SyntheticHeadSequence.VERTICAL_FOV_RADS, 0);
+
+        final double[] squared = new double[3];
+        int count = 0;
+        int next = 0;
+        final long endNs = sequence.timestamps[track.count - 1];
+        for (long nowNs = sequence.timestamps[0]; nowNs <= endNs; nowNs += RENDER_INTERVAL_NS) {
+            while (next < track.count && sequence.timestamps[next] + CAMERA_LATENCY_NS <= nowNs) {
+                fused.onViewerPosition(sequence.timestamps[next], track.imageX[next], track.imageY[next],
+                        track.locked[next]);
+                camera.onViewerPosition(sequence.timestamps[next], track.imageX[next], track.imageY[next],
+                        track.locked[next]);
+                next++;
+            }
+            final float deviceX = truth.at(truth.deviceX, nowNs);
+            final float deviceY = truth.at(truth.deviceY, nowNs);
+            fused.update(nowNs, deviceX, deviceY);
+            camera.update(nowNs, 0.0f, 0.0f);
+            if (nowNs - sequence.timestamps[0] < SETTLE_NS) {
+                continue;
+            }
+            final float viewerX = truth.at(truth.viewerX, nowNs);
+            final float viewerY = truth.at(truth.viewerY, nowNs);
+            squared[0] += square(deviceX - fused.getXOffset() - viewerX) + square(deviceY - fused.getYOffset() - viewerY);
+            squared[1] += square(-camera.getXOffset() - viewerX) + square(-camera.getYOffset() - viewerY);
+            squared[2] += square(deviceX - viewerX) + square(deviceY - viewerY);
+            count++;
+        }
+        for (int i = 0; i < squared.length; i++) {
+            squared[i] = Math.sqrt(squared[i] / (2 * count));
+        }
+        return squared;
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+    /**
+     * Writes a generated sequence, see {@link SyntheticHeadSequence}.
+     *
+     * @return how many frames were written
+     */
+    static int synth(File dir, double seconds) throws IOException {
+        final Random random = new Random(23);
+        final int frames = (int) (seconds * 1e9 / FRAME_INTERVAL_NS);
+        final PrintWriter framesOut = new PrintWriter(new FileWriter(new File(dir, "frames.csv")));
+        final PrintWriter positionsOut = new PrintWriter(new FileWriter(new File(dir, "positions.csv")));
+        try {
+            framesOut.println("frame,timestamp_ns");
+            positionsOut.println("frame,image_x,image_y");
+            final float[] motion = new float[4];
+            final float[] face = new float[2];
+            for (int i = 0; i < frames; i++) {
+                final long timestampNs = START_NS + i * FRAME_INTERVAL_NS;
+                final double frameSeconds = (timestampNs - START_NS) / 1e9;
+                framesOut.println(i + "," + timestampNs);
+                SyntheticHeadSequence.motion(frameSeconds, motion);
+                SyntheticHeadSequence.imagePosition(motion[0] + motion[2], motion[1] + motion[3], face);
+                positionsOut.println(String.format(Locale.US, "%d,%.6f,%.6f", i, face[0], face[1]));
+                SyntheticHeadSequence.frame(frameSeconds, random).write(new File(dir, frameName(i)));
+            }
+        } finally {
+            framesOut.close();
+            positionsOut.close();
+        }
+
+        final PrintWriter truthOut = new PrintWriter(new FileWriter(new File(dir, "truth.csv")));
+        try {
+            truthOut.println("timestamp_ns,device_x_rot,device_y_rot,viewer_x_rot,viewer_y_rot");
+            final float[] motion = new float[4];
+            final long endNs = START_NS + frames * FRAME_INTERVAL_NS;
+            for (long timestampNs = START_NS; timestampNs <= endNs; timestampNs += TRUTH_INTERVAL_NS) {
+                SyntheticHeadSequence.motion((timestampNs - START_NS) / 1e9, motion);
+                truthOut.println(String.format(Locale.US, "%d,%.7f,%.7f,%.7f,%.7f", timestampNs,
+                        motion[0], motion[1], motion[0] + motion[2], motion[1] + motion[3]));
+            }
+        } finally {
+            truthOut.close();
+        }
+        return frames;
+    }
+
+    private static String frameName(int index) {
+        return String.format(Locale.US, "frame-%05d.png", index);
+    }
+
+    /**
+     * @return each data row's fields, the header skipped
+     */
+    private static List<String[]> readCsv(File file) throws IOException {
+        final List<String[]> rows = new ArrayList<String[]>();
+        final BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line = in.readLine();
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                final String[] fields = line.split(",");
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = fields[i].trim();
+                }
+                rows.add(fields);
+            }
+        } finally {
+            in.close();
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,168 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Quick timings of {@link FastMath} against the alternatives, its accuracy is covered by
+ * FastMathTest:
+ * <pre>
+ *   MathTool bench [samples]     sine and cosine of the same angles with each implementation,
+ *                                one at a time and in batches, and the frustum of a gyro event
+ * </pre>
+ * The "FloatMath" column is what android.util.FloatMath had become by the time it was removed,
+ * Math with the result cast to float. Run bench with the JVM's defaults; a JIT warmup pass is
+ * done before anything is timed.
+ */
+public final class MathTool {
+
+    private static final int BENCH_ROUNDS = 5;
+
+    // about what a tilted device covers, both ways
+    private static final float POSE_RANGE_RADIANS = (float) (Math.PI / 2.0);
+
+    private MathTool() {
+    }
+
+    public static void main(String[] args) {
+        if ((args.length == 1 || args.length == 2) && args[0].equals("bench")) {
+            bench(args.length == 2 ? Integer.parseInt(args[1]) : 4096);
+        } else {
+            System.err.println("usage: MathTool bench [samples]");
+            System.exit(1);
+        }
+    }
+
+    private static void bench(int samples) {
+        final Random random = new Random(1);
+        final float[] angles = new float[samples];
+        for (int i = 0; i < samples; i++) {
+            angles[i] = (random.nextFloat() * 2.0f - 1.0f) * POSE_RANGE_RADIANS;
+        }
+        final float[] out = new float[2 * samples];
+        final float[] frustum = new float[3];
+        final int repeats = Math.max(1, 20000000 / samples);
+
+        // first round warms the JIT up and isn't reported
+        final String[] names = {"Math", "StrictMath", "FloatMath", "FastMath", "FastMath batch"};
+        final long[] best = new long[names.length];
+        Arrays.fill(best, Long.MAX_VALUE);
+        long bestFrustumMath = Long.MAX_VALUE, bestFrustumFast = Long.MAX_VALUE;
+        float sink = 0.0f;
+        for (int round = 0; round <= BENCH_ROUNDS; round++) {
+            for (int variant = 0; variant < names.length; variant++) {
+                final long start = System.nanoTime();
+                for (int r = 0; r < repeats; r++) {
+                    sinCos(variant, angles, out);
+                }
+                final long elapsed = System.nanoTime() - start;
+                sink += out[random.nextInt(out.length)];
+                if (round > 0) {
+                    best[variant] = Math.min(best[variant], elapsed);
+                }
+            }
+
+            long start = System.nanoTime();
+            for (int r = 0; r < repeats; r++) {
+                for (int i = 0; i + 1 < samples; i++) {
+                    frustumWithMath(angles[i], angles[i + 1], frustum);
+                    sink += frustum[PoseIntegrator.FRUSTUM_X_OFFSET];
+                }
+            }
+            final long frustumMath = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int r = 0; r < repeats; r++) {
+                for (int i = 0; i + 1 < samples; i++) {
+                    PoseIntegrator.frustumForRotation(angles[i], angles[i + 1], frustum);
+                    sink += frustum[PoseIntegrator.FRUSTUM_X_OFFSET];
+                }
+            }
+            final long frustumFast = System.nanoTime() - start;
+            if (round > 0) {
+                bestFrustumMath = Math.min(bestFrustumMath, frustumMath);
+                bestFrustumFast = Math.min(bestFrustumFast, frustumFast);
+            }
+        }
+
+        final double calls = (double) repeats * samples;
+        System.out.println(String.format(Locale.US, "%d angles in [-%.2f, %.2f] rad, best of %d rounds of %d repeats",
+                samples, POSE_RANGE_RADIANS, POSE_RANGE_RADIANS, BENCH_ROUNDS, repeats));
+        for (int variant = 0; variant < names.length; variant++) {
+            System.out.println(String.format(Locale.US, "  %-15s %6.2f ns per sin+cos, %5.2fx Math",
+                    names[variant], best[variant] / calls, (double) best[0] / best[variant]));
+        }
+        final double events = (double) repeats * (samples - 1);
+        System.out.println(String.format(Locale.US,
+                "  frustum per gyro event: %.2f ns with Math, %.2f ns with FastMath, %.2fx",
+                bestFrustumMath / events, bestFrustumFast / events, (double) bestFrustumMath / bestFrustumFast));
+        // keeps the results live so none of the loops can be dropped
+        System.out.println(String.format(Locale.US, "  (checksum %.3f)", sink));
+    }
+
+    // each variant gets its own loop so the JIT compiles them separately, rather than one loop
+    // that has seen all of them
+    private static void sinCos(int variant, float[] angles, float[] out) {
+        switch (variant) {
+            case 0:
+                sinCosMath(angles, out);
+                break;
+            case 1:
+                sinCosStrictMath(angles, out);
+                break;
+            case 2:
+                sinCosFloatMath(angles, out);
+                break;
+            case 3:
+                sinCosFastMath(angles, out);
+                break;
+            default:
+                FastMath.sinCos(angles, 0, out, 0, angles.length);
+                break;
+        }
+    }
+
+    private static void sinCosMath(float[] angles, float[] out) {
+        for (int i = 0; i < angles.length; i++) {
+            out[2 * i] = (float) Math.sin(angles[i]);
+            out[2 * i + 1] = (float) Math.cos(angles[i]);
+        }
+    }
+
+    private static void sinCosStrictMath(float[] angles, float[] out) {
+        for (int i = 0; i < angles.length; i++) {
+            out[2 * i] = (float) StrictMath.sin(angles[i]);
+            out[2 * i + 1] = (float) StrictMath.cos(angles[i]);
+        }
+    }
+
+    private static void sinCosFloatMath(float[] angles, float[] out) {
+        for (int i = 0; i < angles.length; i++) {
+            out[2 * i] = floatMathSin(angles[i]);
+            out[2 * i + 1] = floatMathCos(angles[i]);
+        }
+    }
+
+    private static void sinCosFastMath(float[] angles, float[] out) {
+        for (int i = 0; i < angles.length; i++) {
+            out[2 * i] = FastMath.sin(angles[i]);
+            out[2 * i + 1] = FastMath.cos(angles[i]);
+        }
+    }
+
+    // android.util.FloatMath as of API 22
+    private static float floatMathSin(float angle) {
+        return (float) Math.sin(angle);
+    }
+
+    private static float floatMathCos(float angle) {
+        return (float) Math.cos(angle);
+    }
+
+    // PoseIntegrator.frustumForRotation as it was before FastMath
+    private static void frustumWithMath(float xRotRads, float yRotRads, float[] out) {
+        out[PoseIntegrator.FRUSTUM_Z_NEAR] = (float) Math.cos(yRotRads);
+        out[PoseIntegrator.FRUSTUM_Y_OFFSET] = (float) Math.sin(xRotRads);
+        out[PoseIntegrator.FRUSTUM_X_OFFSET] = (float) Math.sin(yRotRads);
+    }
+}
@@ -0,0 +1,165 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line front end to the mesh pipeline, for preparing models off-device:
+ * <pre>
+ *   MeshTool import model.obj model.hmesh    convert an OBJ/PLY model into the binary cache format
+ *   MeshTool batch out/ a.obj b.ply ...      convert many models, optimizing them in parallel
+ *   MeshTool time model.obj                  compare load times of the text and binary paths
+ *   MeshTool lod model.obj out/              build and write the level of detail chain
+ *   MeshTool sphere 708 sphere.obj           write a test OBJ, ~2 * segments^2 triangles
+ * </pre>
+ */
+public final class MeshTool {
+
+    private MeshTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("import")) {
+            MeshData mesh = MeshLoader.importMesh(new File(args[1]));
+            MeshLoader.prepare(mesh);
+            System.out.println(MeshOptimizer.optimize(mesh));
+            MeshCache.write(mesh, new File(args[2]));
+        } else if (args.length >= 3 && args[0].equals("batch")) {
+            batch(new File(args[1]), Arrays.copyOfRange(args, 2, args.length));
+        } else if (args.length == 2 && args[0].equals("time")) {
+            time(new File(args[1]));
+        } else if (args.length == 3 && args[0].equals("lod")) {
+            lod(new File(args[1]), new File(args[2]));
+        } else if (args.length == 3 && args[0].equals("sphere")) {
+            writeSphere(Integer.parseInt(args[1]), new File(args[2]));
+        } else {
+            System.err.println("usage: MeshTool import <in.obj|in.ply> <out" + MeshCache.EXTENSION + ">");
+            System.err.println("       MeshTool batch <outdir> <in.obj|in.ply>...");
+            System.err.println("       MeshTool time <in.obj|in.ply>");
+            System.err.println("       MeshTool lod <in.obj|in.ply> <outdir>");
+            System.err.println("       MeshTool sphere <segments> <out.obj>");
+            System.exit(1);
+        }
+    }
+
+    private static void batch(File outDir, String[] sources) throws IOException {
+        List<MeshData> meshes = new ArrayList<MeshData>();
+        for (String source : sources) {
+            MeshData mesh = MeshLoader.importMesh(new File(source));
+            MeshLoader.prepare(mesh);
+            meshes.add(mesh);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool();
+        long start = System.nanoTime();
+        MeshOptimizer.Report[] reports;
+        try {
+            reports = MeshOptimizer.optimizeAll(meshes, pool);
+        } finally {
+            pool.shutdown();
+        }
+        long elapsedNs = System.nanoTime() - start;
+
+        for (int i = 0; i < sources.length; i++) {
+            File source = new File(sources[i]);
+            String name = source.getName();
+            int dot = name.lastIndexOf('.');
+            MeshCache.write(meshes.get(i), new File(outDir, (dot > 0 ? name.substring(0, dot) : name) + MeshCache.EXTENSION));
+            System.out.println(name + ": " + reports[i]);
+        }
+        System.out.println(String.format(Locale.US, "optimized %d meshes in %.1f ms on %d threads",
+                sources.length, elapsedNs / 1e6, pool.getParallelism()));
+    }
+
+    /**
+     * Loads the model through the text importer and through the binary cache and prints how
+     * long each takes. The binary path is timed up to the point where every byte of the mesh
+     * has been touched, not just mapped, so it isn't flattered by lazy paging.
+     */
+    private static void time(File source) throws IOException {
+        long start = System.nanoTime();
+        MeshData imported = MeshLoader.importMesh(source);
+        long textNs = System.nanoTime() - start;
+
+        MeshLoader.prepare(imported);
+        File cache = File.createTempFile("meshtool", MeshCache.EXTENSION);
+        try {
+            MeshCache.write(imported, cache);
+
+            start = System.nanoTime();
+            Mesh mapped = MeshCache.map(cache);
+            long checksum = touch(mapped.getVertexData()) + touch(mapped.getIndexData());
+            long binaryNs = System.nanoTime() - start;
+
+            System.out.println(String.format(Locale.US, "%d vertices, %d triangles",
+                    imported.getVertexCount(), imported.getTriangleCount()));
+            System.out.println(String.format(Locale.US, "text   %10.1f ms (%d bytes)", textNs / 1e6, source.length()));
+            System.out.println(String.format(Locale.US, "binary %10.1f ms (%d bytes, checksum %x)",
+                    binaryNs / 1e6, cache.length(), checksum));
+        } finally {
+            cache.delete();
+        }
+    }
+
+    private static void lod(File source, File outDir) throws IOException {
+        MeshData mesh = MeshLoader.importMesh(source);
+        MeshLoader.prepare(mesh);
+        MeshOptimizer.optimize(mesh);
+
+        long start = System.nanoTime();
+        List<MeshData> levels = LodChain.buildLevels(mesh);
+        long elapsedNs = System.nanoTime() - start;
+
+        String name = source.getName();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+        for (int level = 0; level < levels.size(); level++) {
+            MeshData levelMesh = levels.get(level);
+            MeshCache.write(levelMesh, new File(outDir, baseName + ".lod" + level + MeshCache.EXTENSION));
+            System.out.println(String.format(Locale.US, "lod%d: %8d triangles, error %.5f",
+                    level, levelMesh.getTriangleCount(), levelMesh.geometricError));
+        }
+        System.out.println(String.format(Locale.US, "built %d levels in %.1f ms", levels.size(), elapsedNs / 1e6));
+    }
+
+    private static long touch(ByteBuffer buffer) {
+        long sum = 0;
+        for (int i = 0; i < buffer.capacity(); i += 4096) {
+            sum += buffer.get(i);
+        }
+        return sum;
+    }
+
+    private static void writeSphere(int segments, File file) throws IOException {
+        Writer out = new BufferedWriter(new FileWriter(file), 64 * 1024);
+        try {
+            for (int ring = 0; ring <= segments; ring++) {
+                double theta = Math.PI * ring / segments;
+                for (int segment = 0; segment < segments; segment++) {
+                    double phi = 2.0 * Math.PI * segment / segments;
+                    out.write(String.format(Locale.US, "v %.6f %.6f %.6f\n",
+                            Math.sin(theta) * Math.cos(phi), Math.cos(theta), Math.sin(theta) * Math.sin(phi)));
+                }
+            }
+            for (int ring = 0; ring < segments; ring++) {
+                for (int segment = 0; segment < segments; segment++) {
+                    int a = ring * segments + segment + 1;
+                    int b = ring * segments + (segment + 1) % segments + 1;
+                    out.write("f " + a + ' ' + b + ' ' + (b + segments) + '\n');
+                    out.write("f " + a + ' ' + (b + segments) + ' ' + (a + segments) + '\n');
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measures how far {@link PosePredictor}'s predictions land from where a recorded gyro trace
+ * actually went, for a range of lookahead times.
+ *
+ * For every sample in the trace, the pose is predicted lookahead ns into the future and compared
+ * with the pose the trace reaches at that time (integrated the same way as the renderer does).
+ * The report is the RMS of the angular error, alongside the error of not predicting at all.
+ *
+ * Can be run directly on the JVM against a CSV trace with one "timestamp_ns,rate_x,rate_y" line
+ * per gyro event:
+ *
+ *   java com.kiwiandroiddev.rotationvectordemo.PredictionErrorReport trace.csv
+ */
+public final class PredictionErrorReport {
+
+    private static final float NS2S = 1.0f / 1000000000.0f;
+    private static final float RAD2DEG = (float) (180.0 / Math.PI);
+
+    // predictions made before the model has seen this many samples aren't counted
+    private static final int WARM_UP_SAMPLES = 10;
+
+    public static final long[] DEFAULT_LOOKAHEADS_NS = {
+            0L, 10000000L, 20000000L, 30000000L, 40000000L, 50000000L, 75000000L, 100000000L
+    };
+
+    private PredictionErrorReport() {
+    }
+
+    /**
+     * @param model motion model to evaluate, or null to measure the error of not predicting
+     * @return RMS angular error in radians for each of the given lookaheads
+     */
+    public static float[] measure(long[] timestamps, float[] ratesX, float[] ratesY, int count,
+                                  PosePredictor.Model model, long[] lookaheadsNs) {
+        // ground truth: the pose the trace reaches at each sample
+        float[] posesX = new float[count];
+        float[] posesY = new float[count];
+        for (int i = 1; i < count; i++) {
+            float dT = (timestamps[i] - timestamps[i - 1]) * NS2S;
+            posesX[i] = posesX[i - 1] + ratesX[i] * dT;
+            posesY[i] = posesY[i - 1] + ratesY[i] * dT;
+        }
+
+        float[] rmsErrors = new float[lookaheadsNs.length];
+        PosePredictor predictor = new PosePredictor();
+        if (model != null) {
+            predictor.setModel(model);
+        }
+        float[] delta = new float[2];
+
+        for (int l = 0; l < lookaheadsNs.length; l++) {
+            predictor.reset();
+            double sumSquares = 0.0;
+            int samples = 0;
+            int future = 0;
+
+            for (int i = 0; i < count; i++) {
+                predictor.addSample(timestamps[i], ratesX[i], ratesY[i]);
+
+                long target = timestamps[i] + lookaheadsNs[l];
+                while (future < count && timestamps[future] < target) {
+                    future++;
+                }
+                if (future >= count) {
+                    break;
+                }
+                if (i < WARM_UP_SAMPLES) {
+                    continue;
+                }
+
+                float actualX = interpolate(timestamps, posesX, future, target);
+                float actualY = interpolate(timestamps, posesY, future, target);
+
+                if (model != null) {
+                    predictor.predictDelta(target, delta);
+                } else {
+                    delta[0] = delta[1] = 0.0f;
+                }
+                float errorX = posesX[i] + delta[0] - actualX;
+                float errorY = posesY[i] + delta[1] - actualY;
+                sumSquares += errorX * errorX + errorY * errorY;
+                samples++;
+            }
+
+            rmsErrors[l] = samples > 0 ? (float) Math.sqrt(sumSquares / samples) : Float.NaN;
+        }
+        return rmsErrors;
+    }
+
+    /**
+     * Error-vs-lookahead table for every model, in degrees.
+     */
+    public static String format(long[] timestamps, float[] ratesX, float[] ratesY, int count,
+                                long[] lookaheadsNs) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "%-24s", "rms error (deg)"));
+        for (long lookahead : lookaheadsNs) {
+            report.append(String.format(Locale.US, "%9.0fms", lookahead / 1000000.0));
+        }
+        report.append('\n');
+
+        appendRow(report, "NONE", measure(timestamps, ratesX, ratesY, count, null, lookaheadsNs));
+        for (PosePredictor.Model model : PosePredictor.Model.values()) {
+            appendRow(report, model.name(), measure(timestamps, ratesX, ratesY, count, model, lookaheadsNs));
+        }
+        return report.toString();
+    }
+
+    private static void appendRow(StringBuilder report, String name, float[] errors) {
+        report.append(String.format(Locale.US, "%-24s", name));
+        for (float error : errors) {
+            report.append(String.format(Locale.US, "%11.3f", error * RAD2DEG));
+        }
+        report.append('\n');
+    }
+
+    private static float interpolate(long[] timestamps, float[] poses, int after, long target) {
+        if (after == 0) {
+            return poses[0];
+        }
+        long t0 = timestamps[after - 1];
+        long t1 = timestamps[after];
+        float fraction = (float) (target - t0) / (float) (t1 - t0);
+        return poses[after - 1] + (poses[after] - poses[after - 1]) * fraction;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: PredictionErrorReport <trace.csv>");
+            System.exit(1);
+        }
+
+        long[] timestamps = new long[1024];
+        float[] ratesX = new float[1024];
+        float[] ratesY = new float[1024];
+        int count = 0;
+
+        BufferedReader reader = new BufferedReader(new FileReader(args[0]));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (count == timestamps.length) {
+                    timestamps = Arrays.copyOf(timestamps, count * 2);
+                    ratesX = Arrays.copyOf(ratesX, count * 2);
+                    ratesY = Arrays.copyOf(ratesY, count * 2);
+                }
+                timestamps[count] = Long.parseLong(fields[0].trim());
+                ratesX[count] = Float.parseFloat(fields[1].trim());
+                ratesY[count] = Float.parseFloat(fields[2].trim());
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+
+        System.out.println(count + " samples over "
+                + (count > 1 ? (timestamps[count - 1] - timestamps[0]) * NS2S : 0) + "s");
+        System.out.print(format(timestamps, ratesX, ratesY, count, DEFAULT_LOOKAHEADS_NS));
+    }
+}
@@ -0,0 +1,157 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line front end to the {@link SoftwareRasterizer}, for checking the hologram's
+ * projection and drawing on machines without a GPU:
+ * <pre>
+ *   RasterTool render out.png [model] [x y]    draw one frame with the device rotated x and y degrees
+ *   RasterTool bench [model] [frames]         triangles and pixels per second, 1 thread vs. all
+ * </pre>
+ * Frames are 1280x720 and the model is the cube unless one is given (.obj, .ply or .hmesh).
+ * The drawing itself is checked against golden images by SoftwareRasterizerGoldenTest.
+ */
+public final class RasterTool {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    private static final float DEG2RAD = (float) (Math.PI / 180.0);
+
+    private static final int DEFAULT_BENCH_FRAMES = 20;
+    private static final float BENCH_SCALE = 15.0f;
+
+    private RasterTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if ((args.length == 2 || args.length == 3 || args.length == 4 || args.length == 5) && args[0].equals("render")) {
+            // a model and/or rotations, the model can't be a number
+            int rotations = args.length >= 4 ? args.length - 2 : 0;
+            String model = args.length == 3 || args.length == 5 ? args[2] : null;
+            float xRot = rotations > 0 ? Float.parseFloat(args[args.length - 2]) : 0.0f;
+            float yRot = rotations > 0 ? Float.parseFloat(args[args.length - 1]) : 0.0f;
+            render(new File(args[1]), loadModel(model), new Scene("render", xRot, yRot, 0.0f, 5.0f));
+        } else if (args.length >= 1 && args.length <= 3 && args[0].equals("bench")) {
+            bench(loadModel(args.length >= 2 ? args[1] : null),
+                    args.length == 3 ? Integer.parseInt(args[2]) : DEFAULT_BENCH_FRAMES);
+        } else {
+            System.err.println("usage: RasterTool render <out.png> [model] [xdegrees ydegrees]");
+            System.err.println("       RasterTool bench [model] [frames]");
+            System.exit(1);
+        }
+    }
+
+    private static final class Scene {
+        final String name;
+        final float xRotDegrees;
+        final float yRotDegrees;
+        final float rotAxisZOffset;
+        final float scale;
+
+        Scene(String name, float xRotDegrees, float yRotDegrees, float rotAxisZOffset, float scale) {
+            this.name = name;
+            this.xRotDegrees = xRotDegrees;
+            this.yRotDegrees = yRotDegrees;
+            this.rotAxisZOffset = rotAxisZOffset;
+            this.scale = scale;
+        }
+    }
+
+    private static Mesh loadModel(String path) throws IOException {
+        if (path == null) {
+            return Cube.create();
+        }
+        File file = new File(path);
+        if (path.endsWith(MeshCache.EXTENSION)) {
+            return MeshCache.map(file);
+        }
+        MeshData mesh = MeshLoader.importMesh(file);
+        MeshLoader.prepare(mesh);
+        return mesh.toMesh();
+    }
+
+    /**
+     * Draws a scene the way the hologram renderer does for a device held at the scene's rotation.
+     */
+    private static void draw(SoftwareRasterizer rasterizer, Mesh mesh, Scene scene, FrameMatrices matrices) {
+        float xRotRads = scene.xRotDegrees * DEG2RAD;
+        float yRotRads = scene.yRotDegrees * DEG2RAD;
+        float[] frustum = new float[3];
+        PoseIntegrator.frustumForRotation(xRotRads, yRotRads, frustum);
+        matrices.update((float) rasterizer.getWidth() / rasterizer.getHeight(),
+                frustum[PoseIntegrator.FRUSTUM_X_OFFSET], frustum[PoseIntegrator.FRUSTUM_Y_OFFSET],
+                frustum[PoseIntegrator.FRUSTUM_Z_NEAR], xRotRads, yRotRads, scene.rotAxisZOffset, scene.scale);
+
+        rasterizer.beginFrame(matrices.projection);
+        rasterizer.drawMesh(mesh, matrices.modelView, matrices.modelViewProjection);
+        rasterizer.endFrame();
+    }
+
+    private static SoftwareRasterizer createRasterizer(ForkJoinPool pool) {
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer(pool);
+        rasterizer.onSurfaceCreated();
+        rasterizer.onSurfaceChanged(WIDTH, HEIGHT);
+        return rasterizer;
+    }
+
+    private static void render(File out, Mesh mesh, Scene scene) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            SoftwareRasterizer rasterizer = createRasterizer(pool);
+            draw(rasterizer, mesh, scene, new FrameMatrices());
+            rasterizer.toImage().write(out);
+            System.out.println(String.format(Locale.US, "%d triangles drawn, %d pixels covered",
+                    rasterizer.getTrianglesRasterized(), rasterizer.getFragments()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void bench(Mesh mesh, int frames) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        benchWith(mesh, frames, 1);
+        if (threads > 1) {
+            benchWith(mesh, frames, threads);
+        }
+    }
+
+    private static void benchWith(Mesh mesh, int frames, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            SoftwareRasterizer rasterizer = createRasterizer(pool);
+            FrameMatrices matrices = new FrameMatrices();
+            // warm up, and get the mesh copied in
+            for (int frame = 0; frame < 3; frame++) {
+                draw(rasterizer, mesh, benchScene(frame, frames), matrices);
+            }
+            rasterizer.resetStatistics();
+
+            long start = System.nanoTime();
+            for (int frame = 0; frame < frames; frame++) {
+                draw(rasterizer, mesh, benchScene(frame, frames), matrices);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.println(String.format(Locale.US,
+                    "%2d threads: %6.1f ms/frame, %7.2f M triangles/s submitted, %7.2f M drawn, %8.2f M pixels/s",
+                    threads, seconds * 1000.0 / frames, rasterizer.getTrianglesSubmitted() / seconds / 1e6,
+                    rasterizer.getTrianglesRasterized() / seconds / 1e6, rasterizer.getFragments() / seconds / 1e6));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The device swinging through a range of poses, so the benchmark isn't one lucky view, with
+     * the model scaled up to fill a good part of the frame so filling gets a workout too.
+     */
+    private static Scene benchScene(int frame, int frames) {
+        double phase = 2.0 * Math.PI * frame / Math.max(1, frames);
+        return new Scene("bench", (float) (20.0 * Math.sin(phase)), (float) (30.0 * Math.cos(phase)), 0.0f, BENCH_SCALE);
+    }
+}
@@ -0,0 +1,378 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line tool for the scene graph, run on a desktop JVM:
+ * <pre>
+ *   SceneTool bench [nodes] [frames]           update, cull and sort times and draw calls per frame for a large scene
+ *   SceneTool render out.png [layout] [x y] [stereo]
+ *                                              draw a {@link HologramScene} with the device rotated
+ *                                              x and y degrees, through the software rasterizer,
+ *                                              in one of the {@link StereoProjection} modes
+ * </pre>
+ */
+public final class SceneTool {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    private static final float DEG2RAD = (float) (Math.PI / 180.0);
+
+    private static final int DEFAULT_BENCH_NODES = 10000;
+    private static final int DEFAULT_BENCH_FRAMES = 600;
+
+    // the bench scene: this many models per group, groups per group above, and so on
+    private static final int BENCH_BRANCHING = 16;
+    // distinct meshes, standing in for different models, handed out at random
+    private static final int BENCH_MESHES = 4;
+    // the fraction of models that move each frame
+    private static final float BENCH_MOVING = 0.02f;
+    // half the width and height of the volume the models are spread through, in model units
+    private static final float BENCH_EXTENT = 60.0f;
+
+    private static final float INTEROCULAR_DISTANCE = 0.1f;
+
+    private SceneTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 1 && args.length <= 3 && args[0].equals("bench")) {
+            bench(args.length >= 2 ? Integer.parseInt(args[1]) : DEFAULT_BENCH_NODES,
+                    args.length == 3 ? Integer.parseInt(args[2]) : DEFAULT_BENCH_FRAMES);
+        } else if (args.length >= 2 && args.length <= 6 && args.length != 4 && args[0].equals("render")) {
+            HologramScene.Layout layout = args.length >= 3
+                    ? HologramScene.Layout.valueOf(args[2]) : HologramScene.Layout.CUBE_FIELD;
+            float xRot = args.length >= 5 ? Float.parseFloat(args[3]) : 0.0f;
+            float yRot = args.length >= 5 ? Float.parseFloat(args[4]) : 0.0f;
+            StereoProjection.Mode stereo = args.length == 6
+                    ? StereoProjection.Mode.valueOf(args[5]) : StereoProjection.Mode.MONO;
+            render(new File(args[1]), layout, xRot, yRot, stereo);
+        } else {
+            System.err.println("usage: SceneTool bench [nodes] [frames]");
+            System.err.println("       SceneTool render <out.png> [MODEL|CUBE_FIELD] [xdegrees ydegrees [MONO|SIDE_BY_SIDE|ANAGLYPH]]");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The frame matrices the hologram renderer would use with the device at the given rotation.
+     */
+    private static void poseMatrices(FrameMatrices matrices, float xRotDegrees, float yRotDegrees) {
+        poseMatrices(matrices, xRotDegrees, yRotDegrees, (float) WIDTH / HEIGHT);
+    }
+
+    private static void poseMatrices(FrameMatrices matrices, float xRotDegrees, float yRotDegrees,
+                                     float screenWidthRatio) {
+        float xRotRads = xRotDegrees * DEG2RAD;
+        float yRotRads = yRotDegrees * DEG2RAD;
+        float[] frustum = new float[3];
+        PoseIntegrator.frustumForRotation(xRotRads, yRotRads, frustum);
+        matrices.update(screenWidthRatio, frustum[PoseIntegrator.FRUSTUM_X_OFFSET],
+                frustum[PoseIntegrator.FRUSTUM_Y_OFFSET], frustum[PoseIntegrator.FRUSTUM_Z_NEAR],
+                xRotRads, yRotRads, 0.0f, 5.0f);
+    }
+
+    /**
+     * Draws a frame the way the app's HologramRenderer does: one traversal, then the queue
+     * replayed into each view.
+     */
+    private static void render(File out, HologramScene.Layout layout, float xRot, float yRot,
+                               StereoProjection.Mode stereoMode) throws IOException {
+        SceneNode scene = HologramScene.create(layout, LodChain.single(Cube.create()));
+        StereoProjection stereo = new StereoProjection();
+        stereo.setMode(stereoMode, INTEROCULAR_DISTANCE);
+        stereo.setSurfaceSize(WIDTH, HEIGHT);
+        FrameMatrices matrices = new FrameMatrices();
+        poseMatrices(matrices, xRot, yRot, stereo.getViewRatio());
+        stereo.update(matrices);
+
+        FrustumCuller culler = new FrustumCuller();
+        RenderQueue queue = new RenderQueue();
+        scene.update();
+        culler.setFrustum(stereo.getCullFrame().modelViewProjection);
+        culler.cull(scene, queue);
+        queue.sort(stereo.getCullFrame(), stereo.getViewWidth(), HEIGHT);
+
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            SoftwareRasterizer rasterizer = new SoftwareRasterizer(pool);
+            rasterizer.onSurfaceCreated();
+            rasterizer.onSurfaceChanged(WIDTH, HEIGHT);
+            rasterizer.beginFrame(matrices.projection);
+            for (int view = 0; view < stereo.getViewCount(); view++) {
+                if (stereo.getViewCount() > 1) {
+                    stereo.beginView(rasterizer, view);
+                }
+                queue.project(stereo.getView(view));
+                queue.draw(rasterizer);
+            }
+            rasterizer.endFrame();
+            rasterizer.toImage().write(out);
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println(String.format(Locale.US, "%d models drawn, %d bounding spheres tested, %d culled",
+                queue.size(), culler.getNodesTested(), culler.getNodesCulled()));
+    }
+
+    /**
+     * Builds a tree of about the given number of models spread through a volume much bigger
+     * than the view, so a good part of it gets culled, and times keeping it up to date and
+     * working out what to draw as the device swings about and a few of the models move.
+     */
+    private static void bench(int nodeCount, int frames) {
+        Random random = new Random(1);
+        LodChain[] meshes = new LodChain[BENCH_MESHES];
+        for (int i = 0; i < meshes.length; i++) {
+            meshes[i] = LodChain.single(Cube.create());
+        }
+
+        SceneNode[] models = new SceneNode[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            models[i] = new SceneNode(meshes[random.nextInt(meshes.length)]);
+            models[i].setPosition((random.nextFloat() * 2.0f - 1.0f) * BENCH_EXTENT,
+                    (random.nextFloat() * 2.0f - 1.0f) * BENCH_EXTENT, -random.nextFloat() * BENCH_EXTENT);
+            models[i].setScale(0.5f);
+        }
+        sortSpatially(models, 0, nodeCount, 0);
+        SceneNode root = group(models, 0, nodeCount);
+        int totalNodes = countNodes(root);
+
+        FrameMatrices matrices = new FrameMatrices();
+        FrustumCuller culler = new FrustumCuller();
+        RenderQueue queue = new RenderQueue();
+        SceneRenderer drawCounter = new SceneRenderer() {
+            @Override
+            public void onSurfaceCreated() {
+            }
+
+            @Override
+            public void onSurfaceChanged(int width, int height) {
+            }
+
+            @Override
+            public void beginFrame(float[] projection) {
+            }
+
+            @Override
+            public float setRenderScale(float scale) {
+                return 1.0f;
+            }
+
+            @Override
+            public void beginView(float[] projection, int x, int width, boolean red, boolean green, boolean blue) {
+            }
+
+            @Override
+            public void drawMesh(Mesh mesh, float[] modelView, float[] modelViewProjection) {
+            }
+
+            @Override
+            public int drawInstances(Mesh mesh, float[] modelViews, float[] modelViewProjections, float[] colors,
+                                     int first, int count) {
+                // what the GLES3 backend would need at its default threshold
+                return count >= SceneRenderer.DEFAULT_INSTANCING_THRESHOLD ? 1 : count;
+            }
+
+            @Override
+            public boolean setBackground(KtxFile background) {
+                return true;
+            }
+
+            @Override
+            public void drawBackground(float[] modelViewProjection) {
+            }
+
+            @Override
+            public void endFrame() {
+            }
+        };
+
+        // the same frames again, mono and in stereo with full width views, to see what the
+        // second eye costs
+        StereoProjection mono = new StereoProjection();
+        mono.setSurfaceSize(WIDTH, HEIGHT);
+        StereoProjection stereo = new StereoProjection();
+        stereo.setMode(StereoProjection.Mode.ANAGLYPH, INTEROCULAR_DISTANCE);
+        stereo.setSurfaceSize(WIDTH, HEIGHT);
+
+        final int moving = Math.max(1, (int) (nodeCount * BENCH_MOVING));
+        long updateNs = 0;
+        long fullUpdateNs = 0;
+        long cullNs = 0;
+        long sortNs = 0;
+        long monoViewNs = 0;
+        long monoFrameNs = 0;
+        long stereoFrameNs = 0;
+        long visible = 0;
+        long meshChanges = 0;
+        long drawCalls = 0;
+        long spheresTested = 0;
+        // the first frames warm up the JIT and aren't counted
+        final int warmup = Math.min(frames, 100);
+        for (int frame = -warmup; frame < frames; frame++) {
+            for (int i = 0; i < moving; i++) {
+                models[random.nextInt(nodeCount)].setRotation(random.nextFloat(), random.nextFloat());
+            }
+            double phase = 2.0 * Math.PI * frame / Math.max(1, frames);
+            final float xRot = (float) (20.0 * Math.sin(phase));
+            final float yRot = (float) (30.0 * Math.cos(phase));
+            poseMatrices(matrices, xRot, yRot);
+
+            long start = System.nanoTime();
+            root.update();
+            long updated = System.nanoTime();
+            queue.clear();
+            culler.setFrustum(matrices.modelViewProjection);
+            culler.resetStatistics();
+            culler.cull(root, queue);
+            long culled = System.nanoTime();
+            final long frameSpheresTested = culler.getNodesTested();
+            queue.sort(matrices, WIDTH, HEIGHT);
+            long sorted = System.nanoTime();
+            queue.project(matrices);
+            queue.draw(drawCounter);
+            long drawn = System.nanoTime();
+            final int frameVisible = queue.size();
+            final int frameMeshChanges = queue.getMeshChanges();
+            final int frameDrawCalls = queue.getDrawCalls();
+
+            // taking turns at going first, so neither always gets the caches the other warmed
+            long monoFrame;
+            long stereoFrame;
+            if ((frame & 1) == 0) {
+                monoFrame = drawViews(root, culler, queue, mono, matrices, xRot, yRot, drawCounter);
+                stereoFrame = drawViews(root, culler, queue, stereo, matrices, xRot, yRot, drawCounter);
+            } else {
+                stereoFrame = drawViews(root, culler, queue, stereo, matrices, xRot, yRot, drawCounter);
+                monoFrame = drawViews(root, culler, queue, mono, matrices, xRot, yRot, drawCounter);
+            }
+
+            // and once more with everything moving, which is what an update costs without the
+            // dirty flags
+            root.setPosition(0.0f, 0.0f, (frame & 1) * 1e-3f);
+            long fullStart = System.nanoTime();
+            root.update();
+            long fullEnd = System.nanoTime();
+
+            if (frame >= 0) {
+                updateNs += updated - start;
+                cullNs += culled - updated;
+                sortNs += sorted - culled;
+                monoViewNs += drawn - sorted;
+                monoFrameNs += monoFrame;
+                stereoFrameNs += stereoFrame;
+                fullUpdateNs += fullEnd - fullStart;
+                visible += frameVisible;
+                meshChanges += frameMeshChanges;
+                drawCalls += frameDrawCalls;
+                spheresTested += frameSpheresTested;
+            }
+        }
+
+        frames = Math.max(1, frames);
+        System.out.println(String.format(Locale.US, "%d models, %d nodes in all, %d moving per frame, %d frames",
+                nodeCount, totalNodes, moving, frames));
+        System.out.println(String.format(Locale.US,
+                "update %7.1f us/frame (%.1f us with every node moved), cull %7.1f us/frame, sort %7.1f us/frame",
+                updateNs / 1e3 / frames, fullUpdateNs / 1e3 / frames, cullNs / 1e3 / frames, sortNs / 1e3 / frames));
+        System.out.println(String.format(Locale.US,
+                "%.0f models visible per frame (%.1f%%), %.1f mesh changes per frame, %.0f spheres tested",
+                (double) visible / frames, 100.0 * visible / frames / nodeCount,
+                (double) meshChanges / frames, (double) spheresTested / frames));
+        System.out.println(String.format(Locale.US,
+                "%.1f draw calls per frame instancing runs of %d or more, %.0f without",
+                (double) drawCalls / frames, SceneRenderer.DEFAULT_INSTANCING_THRESHOLD, (double) visible / frames));
+        System.out.println(String.format(Locale.US,
+                "project and draw %7.1f us/view; cull to draw mono %7.1f us/frame, stereo %7.1f us/frame (%.2fx)",
+                monoViewNs / 1e3 / frames, monoFrameNs / 1e3 / frames, stereoFrameNs / 1e3 / frames,
+                (double) stereoFrameNs / Math.max(1, monoFrameNs)));
+    }
+
+    /**
+     * Culls, sorts and draws an already updated scene the way the app's HologramRenderer does,
+     * into however many views the projection has.
+     *
+     * @return how long it took
+     */
+    private static long drawViews(SceneNode root, FrustumCuller culler, RenderQueue queue, StereoProjection views,
+                                  FrameMatrices matrices, float xRot, float yRot, SceneRenderer renderer) {
+        long start = System.nanoTime();
+        poseMatrices(matrices, xRot, yRot, views.getViewRatio());
+        views.update(matrices);
+        queue.clear();
+        culler.setFrustum(views.getCullFrame().modelViewProjection);
+        culler.cull(root, queue);
+        queue.sort(views.getCullFrame(), views.getViewWidth(), HEIGHT);
+        for (int view = 0; view < views.getViewCount(); view++) {
+            if (views.getViewCount() > 1) {
+                views.beginView(renderer, view);
+            }
+            queue.project(views.getView(view));
+            queue.draw(renderer);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Orders models so that neighbours in the array are neighbours in space, splitting along
+     * x, y and z in turn, so the groups built from runs of them are compact.
+     */
+    private static void sortSpatially(SceneNode[] models, int start, int end, final int axis) {
+        if (end - start <= BENCH_BRANCHING) {
+            return;
+        }
+        Arrays.sort(models, start, end, new Comparator<SceneNode>() {
+            @Override
+            public int compare(SceneNode a, SceneNode b) {
+                return Float.compare(position(a, axis), position(b, axis));
+            }
+        });
+        int middle = (start + end) >>> 1;
+        sortSpatially(models, start, middle, (axis + 1) % 3);
+        sortSpatially(models, middle, end, (axis + 1) % 3);
+    }
+
+    private static float position(SceneNode node, int axis) {
+        node.update();
+        return node.getWorldMatrix()[12 + axis];
+    }
+
+    /**
+     * @return a tree with models[start, end) as its leaves and up to BENCH_BRANCHING
+     * children per group
+     */
+    private static SceneNode group(SceneNode[] models, int start, int end) {
+        SceneNode group = new SceneNode();
+        int count = end - start;
+        if (count <= BENCH_BRANCHING) {
+            for (int i = start; i < end; i++) {
+                group.addChild(models[i]);
+            }
+            return group;
+        }
+        int span = BENCH_BRANCHING;
+        while (span * BENCH_BRANCHING < count) {
+            span *= BENCH_BRANCHING;
+        }
+        for (int i = start; i < end; i += span) {
+            group.addChild(group(models, i, Math.min(end, i + span)));
+        }
+        return group;
+    }
+
+    private static int countNodes(SceneNode node) {
+        int count = 1;
+        for (int i = 0; i < node.getChildCount(); i++) {
+            count += countNodes(node.getChild(i));
+        }
+        return count;
+    }
+}
@@ -0,0 +1,236 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Runs the {@link FrameScheduler} against a simulated display, render thread and sensor on a
+ * desktop JVM, to compare frame scheduling policies without a device:
+ * <pre>
+ *   ScheduleTool simulate [seconds [seed]]    each policy's frames, skips and misses, and how
+ *                                             old the pose was when frames were submitted and
+ *                                             when they were shown
+ * </pre>
+ * The simulation is of a 60 Hz display whose vsync callbacks run a little late on the main
+ * thread, now and then very late, a render thread whose frames take a few milliseconds to
+ * prepare and a few more to submit, with the odd slow one, and a 200 Hz sensor whose events
+ * arrive a little after they're stamped. A frame submitted by a vsync is taken to be shown at
+ * it; the compositor adds the same on top for every policy. FrameSchedulerTest runs the same
+ * simulation and checks late latching comes out ahead.
+ */
+public final class ScheduleTool {
+
+    private static final long PERIOD_NS = FrameScheduler.DEFAULT_PERIOD_NS;
+    private static final long SENSOR_INTERVAL_NS = 5000000L;
+    private static final long START_NS = 1000000000L;
+    private static final double DEFAULT_SECONDS = 60.0;
+    private static final long DEFAULT_SEED = 24;
+
+    // main thread, from vsync to its callback running, and the render thread waking up for it
+    private static final long CALLBACK_DELAY_NS = 500000L;
+    private static final long CALLBACK_JITTER_NS = 1500000L;
+    private static final double CALLBACK_SPIKE_CHANCE = 0.03;
+    private static final long CALLBACK_SPIKE_NS = 10000000L;
+    private static final long WAKE_NS = 200000L;
+
+    // render thread. Preparing is settings and the scene's bounds, submitting is culling,
+    // sorting and the GL calls
+    private static final long PREPARE_NS = 2500000L;
+    private static final long SUBMIT_NS = 3000000L;
+    private static final long COST_JITTER_NS = 1000000L;
+    private static final double COST_SPIKE_CHANCE = 0.02;
+    private static final long COST_SPIKE_NS = 6000000L;
+    // sleeping until the latch wakes up this much late, at most
+    private static final long SLEEP_OVERSHOOT_NS = 500000L;
+
+    // from a sensor event's timestamp to it reaching the pose tracker
+    private static final long SENSOR_DELAY_NS = 1000000L;
+    private static final long SENSOR_JITTER_NS = 2000000L;
+
+    private ScheduleTool() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length >= 1 && args.length <= 3 && args[0].equals("simulate")) {
+            final double seconds = args.length >= 2 ? Double.parseDouble(args[1]) : DEFAULT_SECONDS;
+            final long seed = args.length == 3 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+            simulate(seconds, seed);
+        } else {
+            System.err.println("usage: ScheduleTool simulate [seconds [seed]]");
+            System.exit(1);
+        }
+    }
+
+    private static final class SimulatedClock implements Clock {
+        long nowNs;
+
+        @Override
+        public long nanoTime() {
+            return nowNs;
+        }
+    }
+
+    /**
+     * What a policy did over a simulated run.
+     */
+    static final class Result {
+        final String name;
+        final FrameScheduler scheduler;
+        final LatencyHistogram poseAgeShown;
+        int vsyncs;
+        int shown;
+        double shownAgeSum;
+        int onTime;
+        double onTimeAgeSum;
+        double onTimeAgeSquares;
+
+        Result(String name, FrameScheduler scheduler) {
+            this.name = name;
+            this.scheduler = scheduler;
+            poseAgeShown = new LatencyHistogram("pose at show");
+        }
+
+        void recordShown(long ageNs, boolean wasOnTime) {
+            poseAgeShown.record(ageNs);
+            shown++;
+            shownAgeSum += ageNs / 1e6;
+            if (wasOnTime) {
+                onTime++;
+                onTimeAgeSum += ageNs / 1e6;
+                onTimeAgeSquares += (ageNs / 1e6) * (ageNs / 1e6);
+            }
+        }
+
+        double meanShownAgeMs() {
+            return shownAgeSum / shown;
+        }
+
+        // how much the pose's age varies between frames shown on time, which shows up as judder.
+        // A missed frame is a vsync older on top, and counted separately
+        double shownAgeSpreadMs() {
+            final double mean = onTimeAgeSum / onTime;
+            return Math.sqrt(Math.max(0.0, onTimeAgeSquares / onTime - mean * mean));
+        }
+
+        String format() {
+            return String.format(Locale.US,
+                    "%s: %d of %d vsyncs shown a new frame, pose age shown mean %.2f ms, spread on time %.2f ms\n%s\n%s",
+                    name, shown, vsyncs, meanShownAgeMs(), shownAgeSpreadMs(), scheduler.formatSummary(),
+                    poseAgeShown.formatSummary());
+        }
+    }
+
+    private static void simulate(double seconds, long seed) {
+        System.out.println(run("immediate", FrameSchedulingPolicy.IMMEDIATE, seconds, seed).format());
+        System.out.println(run("late latch", new LateLatchPolicy(), seconds, seed).format());
+    }
+
+    // where a simulated frame is up to
+    private static final int IDLE = 0;
+    private static final int PREPARING = 1;
+    private static final int WAITING = 2;
+    private static final int SUBMITTING = 3;
+
+    /**
+     * Steps vsync callbacks and the render thread's frames in time order, the same random
+     * costs for every policy given the same seed.
+     */
+    static Result run(String name, FrameSchedulingPolicy policy, double seconds, long seed) {
+        final SimulatedClock clock = new SimulatedClock();
+        final FrameScheduler scheduler = new FrameScheduler(clock);
+        scheduler.setPolicy(policy);
+        scheduler.setVsyncPeriod(PERIOD_NS);
+        final Result result = new Result(name, scheduler);
+        final Random main = new Random(seed);
+        final Random render = new Random(seed + 1);
+        final Random sensor = new Random(seed + 2);
+
+        final long endNs = START_NS + (long) (seconds * 1e9);
+        long vsyncNs = START_NS;
+        long callbackNs = vsyncNs + callbackDelay(main);
+        // the render thread's next step, at stepNs. Idle with a step due is a frame starting
+        int state = IDLE;
+        long stepNs = Long.MAX_VALUE;
+        // a frame asked for while the last one's still going starts once it's done
+        boolean requested = false;
+        long poseTimestampNs = 0;
+        long lastShownVsyncNs = 0;
+
+        while (vsyncNs < endNs) {
+            if (callbackNs <= stepNs) {
+                clock.nowNs = callbackNs;
+                result.vsyncs++;
+                if (scheduler.onVsync(vsyncNs)) {
+                    if (state == IDLE && stepNs == Long.MAX_VALUE) {
+                        stepNs = callbackNs + WAKE_NS;
+                    } else {
+                        requested = true;
+                    }
+                }
+                vsyncNs += PERIOD_NS;
+                // the main thread runs one callback at a time
+                callbackNs = Math.max(callbackNs, vsyncNs + callbackDelay(main));
+                continue;
+            }
+
+            clock.nowNs = stepNs;
+            if (state == IDLE) {
+                scheduler.beginFrame();
+                state = PREPARING;
+                stepNs = clock.nowNs + cost(render, PREPARE_NS);
+            } else if (state == PREPARING) {
+                final long latchNs = scheduler.onPrepared();
+                state = WAITING;
+                stepNs = latchNs > clock.nowNs
+                        ? latchNs + (long) (render.nextDouble() * SLEEP_OVERSHOOT_NS) : clock.nowNs;
+            } else if (state == WAITING) {
+                poseTimestampNs = latestPose(clock.nowNs, sensor);
+                scheduler.onLatched(poseTimestampNs);
+                state = SUBMITTING;
+                stepNs = clock.nowNs + cost(render, SUBMIT_NS);
+            } else {
+                scheduler.endFrame();
+                // shown at the first vsync it's in time for, unless an earlier frame already
+                // took that one
+                final long shownVsyncNs = START_NS
+                        + ((clock.nowNs - START_NS + PERIOD_NS - 1) / PERIOD_NS) * PERIOD_NS;
+                if (shownVsyncNs > lastShownVsyncNs) {
+                    result.recordShown(shownVsyncNs - poseTimestampNs, shownVsyncNs == scheduler.getDeadline());
+                    lastShownVsyncNs = shownVsyncNs;
+                }
+                state = IDLE;
+                stepNs = requested ? clock.nowNs : Long.MAX_VALUE;
+                requested = false;
+            }
+        }
+        return result;
+    }
+
+    private static long callbackDelay(Random random) {
+        long delayNs = CALLBACK_DELAY_NS + (long) (random.nextDouble() * CALLBACK_JITTER_NS);
+        if (random.nextDouble() < CALLBACK_SPIKE_CHANCE) {
+            delayNs += (long) (random.nextDouble() * CALLBACK_SPIKE_NS);
+        }
+        return delayNs;
+    }
+
+    private static long cost(Random random, long typicalNs) {
+        long costNs = typicalNs + (long) ((random.nextDouble() - 0.5) * COST_JITTER_NS);
+        if (random.nextDouble() < COST_SPIKE_CHANCE) {
+            costNs += (long) (random.nextDouble() * COST_SPIKE_NS);
+        }
+        return costNs;
+    }
+
+    /**
+     * @return the timestamp of the newest sensor event to have arrived by nowNs
+     */
+    private static long latestPose(long nowNs, Random random) {
+        long timestampNs = START_NS + ((nowNs - START_NS) / SENSOR_INTERVAL_NS) * SENSOR_INTERVAL_NS;
+        // events arrive after a varying delay, so the newest one stamped may not be in yet
+        while (timestampNs + SENSOR_DELAY_NS + (long) (random.nextDouble() * SENSOR_JITTER_NS) > nowNs) {
+            timestampNs -= SENSOR_INTERVAL_NS;
+        }
+        return timestampNs;
+    }
+}
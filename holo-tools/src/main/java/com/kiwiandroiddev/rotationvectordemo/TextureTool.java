@@ -0,0 +1,229 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Prepares background textures offline, so the app only ever memory-maps them and hands them
+ * to the driver:
+ * <pre>
+ *   TextureTool convert in.png out.ktx          ETC2 texture with every mip level
+ *   TextureTool cubemap px.png nx.png py.png ny.png pz.png nz.png out.ktx
+ *                                               ETC2 cube map, faces in GL's order, square and
+ *                                               all the same size
+ *   TextureTool sky out.ktx [size]              a generated sky and ground grid cube map, for a
+ *                                               background without any art
+ *   TextureTool info file.ktx                   what's in a KTX file and what it costs on the GPU
+ * </pre>
+ * Output uses only ETC1's modes (see {@link EtcCodec}) and is marked as such, so the app can
+ * upload it on ES 2.0 as well as 3.0. Set a cube map as the background in the app's settings.
+ */
+public final class TextureTool {
+
+    private static final int DEFAULT_SKY_SIZE = 512;
+
+    private TextureTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("convert")) {
+            final PngImage image = PngImage.read(new File(args[1]));
+            report(write(new File(args[2]), Collections.singletonList(image)), new File(args[2]));
+        } else if (args.length == 8 && args[0].equals("cubemap")) {
+            final List<PngImage> faces = new ArrayList<PngImage>(KtxFile.CUBE_FACES);
+            for (int face = 0; face < KtxFile.CUBE_FACES; face++) {
+                faces.add(PngImage.read(new File(args[1 + face])));
+            }
+            report(write(new File(args[7]), faces), new File(args[7]));
+        } else if ((args.length == 2 || args.length == 3) && args[0].equals("sky")) {
+            final List<PngImage> faces = sky(args.length == 3 ? Integer.parseInt(args[2]) : DEFAULT_SKY_SIZE);
+            report(write(new File(args[1]), faces), new File(args[1]));
+        } else if (args.length == 2 && args[0].equals("info")) {
+            info(KtxFile.map(new File(args[1])));
+        } else {
+            System.err.println("usage: TextureTool convert in.png out.ktx");
+            System.err.println("       TextureTool cubemap px.png nx.png py.png ny.png pz.png nz.png out.ktx");
+            System.err.println("       TextureTool sky out.ktx [size]");
+            System.err.println("       TextureTool info file.ktx");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compresses each face's full mip chain and writes them as one texture.
+     *
+     * @return worst PSNR of any level, in dB
+     */
+    static double write(File file, List<PngImage> faces) throws IOException {
+        final PngImage first = faces.get(0);
+        for (PngImage face : faces) {
+            if (face.width != first.width || face.height != first.height) {
+                throw new IOException("faces are different sizes");
+            }
+            if (faces.size() == KtxFile.CUBE_FACES && face.width != face.height) {
+                throw new IOException("cube map faces must be square");
+            }
+        }
+        final int levels = MipChain.levelCount(first.width, first.height);
+        final byte[][][] images = new byte[levels][faces.size()][];
+        double worstPsnr = Double.POSITIVE_INFINITY;
+        for (int face = 0; face < faces.size(); face++) {
+            final List<PngImage> chain = MipChain.build(faces.get(face));
+            for (int level = 0; level < levels; level++) {
+                final PngImage image = chain.get(level);
+                images[level][face] = EtcCodec.encode(image.argb, image.width, image.height);
+                worstPsnr = Math.min(worstPsnr, psnr(image,
+                        EtcCodec.decode(images[level][face], 0, image.width, image.height)));
+            }
+        }
+        KtxFile.write(file, KtxFile.GL_COMPRESSED_RGB8_ETC2, KtxFile.GL_RGB, first.width, first.height, images,
+                Collections.singletonMap(KtxFile.KEY_ETC1_COMPATIBLE, "true"));
+        return worstPsnr;
+    }
+
+    private static void report(double worstPsnr, File file) throws IOException {
+        info(KtxFile.map(file));
+        System.out.println(String.format(Locale.US, "worst level PSNR %.1f dB", worstPsnr));
+    }
+
+    private static void info(KtxFile ktx) {
+        System.out.println(String.format(Locale.US, "%s, %dx%d, %s, %d levels", formatName(ktx.glInternalFormat),
+                ktx.width, ktx.height, ktx.isCubeMap() ? "cube map" : "2D", ktx.levels));
+        for (Map.Entry<String, String> entry : ktx.getKeyValues().entrySet()) {
+            System.out.println("  " + entry.getKey() + " = " + entry.getValue());
+        }
+        final long rgba = rgbaSize(ktx.width, ktx.height, ktx.levels) * ktx.faces;
+        System.out.println(String.format(Locale.US, "GPU memory %d KB, %d KB as RGBA8888 (%.1fx)",
+                ktx.getDataSize() / 1024, rgba / 1024, (double) rgba / ktx.getDataSize()));
+    }
+
+    private static String formatName(int glInternalFormat) {
+        switch (glInternalFormat) {
+            case KtxFile.GL_COMPRESSED_RGB8_ETC2:
+                return "ETC2 RGB8";
+            case KtxFile.GL_ETC1_RGB8_OES:
+                return "ETC1 RGB8";
+            default:
+                return String.format(Locale.US, "format 0x%04x", glInternalFormat);
+        }
+    }
+
+    // what an uncompressed texture with the same levels would take
+    private static long rgbaSize(int width, int height, int levels) {
+        long size = 0;
+        for (int level = 0; level < levels; level++) {
+            size += 4L * Math.max(1, width >> level) * Math.max(1, height >> level);
+        }
+        return size;
+    }
+
+    private static double psnr(PngImage image, int[] decoded) {
+        double squared = 0.0;
+        for (int i = 0; i < image.argb.length; i++) {
+            for (int shift = 0; shift < 24; shift += 8) {
+                final int error = ((image.argb[i] >> shift) & 0xff) - ((decoded[i] >> shift) & 0xff);
+                squared += error * error;
+            }
+        }
+        final double mse = squared / (3.0 * image.argb.length);
+        return mse == 0.0 ? 99.0 : 10.0 * Math.log10(255.0 * 255.0 / mse);
+    }
+
+    /**
+     * A sky fading from the horizon up to the zenith, with a sun, over a dark ground with a
+     * grid on it, as cube map faces in GL's order (+X, -X, +Y, -Y, +Z, -Z). +Y is up.
+     */
+    static List<PngImage> sky(int size) {
+        final List<PngImage> faces = new ArrayList<PngImage>(KtxFile.CUBE_FACES);
+        final float[] sun = normalize(new float[]{0.4f, 0.5f, -0.75f});
+        for (int face = 0; face < KtxFile.CUBE_FACES; face++) {
+            final int[] argb = new int[size * size];
+            for (int j = 0; j < size; j++) {
+                for (int i = 0; i < size; i++) {
+                    final float u = 2.0f * (i + 0.5f) / size - 1.0f;
+                    final float v = 2.0f * (j + 0.5f) / size - 1.0f;
+                    argb[j * size + i] = skyColor(normalize(faceDirection(face, u, v)), sun);
+                }
+            }
+            faces.add(new PngImage(size, size, argb));
+        }
+        return faces;
+    }
+
+    /**
+     * @return the direction GL samples for face coordinates u (left to right) and v (top to
+     * bottom), both in -1 to 1
+     */
+    private static float[] faceDirection(int face, float u, float v) {
+        switch (face) {
+            case 0:
+                return new float[]{1.0f, -v, -u};
+            case 1:
+                return new float[]{-1.0f, -v, u};
+            case 2:
+                return new float[]{u, 1.0f, v};
+            case 3:
+                return new float[]{u, -1.0f, -v};
+            case 4:
+                return new float[]{u, -v, 1.0f};
+            default:
+                return new float[]{-u, -v, -1.0f};
+        }
+    }
+
+    private static int skyColor(float[] direction, float[] sun) {
+        final float up = direction[1];
+        float r, g, b;
+        if (up >= 0.0f) {
+            // horizon to zenith
+            final float t = (float) Math.sqrt(up);
+            r = lerp(0.85f, 0.18f, t);
+            g = lerp(0.88f, 0.35f, t);
+            b = lerp(0.92f, 0.75f, t);
+            final float toSun = direction[0] * sun[0] + direction[1] * sun[1] + direction[2] * sun[2];
+            final float glow = (float) Math.pow(Math.max(0.0f, toSun), 64.0);
+            final float disc = toSun > 0.9995f ? 1.0f : 0.0f;
+            r = Math.min(1.0f, r + 0.6f * glow + disc);
+            g = Math.min(1.0f, g + 0.5f * glow + disc);
+            b = Math.min(1.0f, b + 0.3f * glow + disc);
+        } else {
+            // a grid on the ground plane one unit down, fading out towards the horizon
+            final float x = direction[0] / -up;
+            final float z = direction[2] / -up;
+            final float line = Math.max(gridLine(x), gridLine(z)) * Math.min(1.0f, -up * 4.0f);
+            final float haze = (float) Math.pow(1.0f + up, 8.0);
+            r = lerp(lerp(0.12f, 0.2f, line), 0.6f, haze);
+            g = lerp(lerp(0.13f, 0.75f, line), 0.62f, haze);
+            b = lerp(lerp(0.16f, 0.85f, line), 0.66f, haze);
+        }
+        return 0xff000000 | channel(r) << 16 | channel(g) << 8 | channel(b);
+    }
+
+    // 1 on a line every half unit, fading to 0 either side
+    private static float gridLine(float coordinate) {
+        final float cell = coordinate * 2.0f;
+        final float distance = Math.abs(cell - Math.round(cell));
+        return Math.max(0.0f, 1.0f - distance * 20.0f);
+    }
+
+    private static float lerp(float a, float b, float t) {
+        return a + (b - a) * t;
+    }
+
+    private static int channel(float value) {
+        return Math.max(0, Math.min(255, Math.round(value * 255.0f)));
+    }
+
+    private static float[] normalize(float[] v) {
+        final float length = (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+        v[0] /= length;
+        v[1] /= length;
+        v[2] /= length;
+        return v;
+    }
+}
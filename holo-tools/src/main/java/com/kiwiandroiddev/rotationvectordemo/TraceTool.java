@@ -0,0 +1,380 @@
+package com.kiwiandroiddev.rotationvectordemo;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Command line front end to recorded sensor traces, for reproducing and measuring the sensor
+ * path off-device:
+ * <pre>
+ *   TraceTool info trace.htrace               event counts, rates and duration per sensor
+ *   TraceTool replay trace.htrace [realtime]  run the trace through the pose integration and
+ *                                             frame math, report the final pose and throughput
+ *   TraceTool drift trace.htrace              compare orientation drift of each fusion mode
+ *   TraceTool demand trace.htrace [degrees]   frames rendering on demand would draw, idle and active
+ *   TraceTool ingest trace.htrace             wakeups, integration cost and pose age per frame with
+ *                                             sensor batching and frame aligned sampling
+ *   TraceTool csv trace.htrace out.csv        export gyro events for {@link PredictionErrorReport}
+ *   TraceTool synth 60 out.htrace             write a synthetic trace of the given length
+ * </pre>
+ */
+public final class TraceTool {
+
+    private static final float RAD2DEG = (float) (180.0 / Math.PI);
+
+    private static final long FRAME_INTERVAL_NS = 16666667L;
+    private static final long PREDICTION_LOOKAHEAD_NS = 20000000L;
+
+    // length of each back-and-forth motion in synthetic traces
+    private static final long SYNTH_SEGMENT_NS = 4000000000L;
+
+    // roughly what SENSOR_DELAY_UI delivers, the gyro rate the app drops to while idle
+    private static final long IDLE_GYRO_INTERVAL_NS = 66666667L;
+
+    private TraceTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 2 && args[0].equals("info")) {
+            info(SensorTraceReader.open(new File(args[1])));
+        } else if ((args.length == 2 || args.length == 3) && args[0].equals("replay")) {
+            replay(SensorTraceReader.open(new File(args[1])), args.length == 3 && args[2].equals("realtime"));
+        } else if (args.length == 2 && args[0].equals("drift")) {
+            drift(SensorTraceReader.open(new File(args[1])));
+        } else if ((args.length == 2 || args.length == 3) && args[0].equals("demand")) {
+            demand(SensorTraceReader.open(new File(args[1])), args.length == 3 ? Float.parseFloat(args[2]) : 0.1f);
+        } else if (args.length == 2 && args[0].equals("ingest")) {
+            ingest(SensorTraceReader.open(new File(args[1])));
+        } else if (args.length == 3 && args[0].equals("csv")) {
+            writeCsv(SensorTraceReader.open(new File(args[1])), new File(args[2]));
+        } else if (args.length == 3 && args[0].equals("synth")) {
+            writeSynthetic(Float.parseFloat(args[1]), new File(args[2]));
+        } else {
+            System.err.println("usage: TraceTool info <trace" + SensorTrace.EXTENSION + ">");
+            System.err.println("       TraceTool replay <trace" + SensorTrace.EXTENSION + "> [realtime]");
+            System.err.println("       TraceTool drift <trace" + SensorTrace.EXTENSION + ">");
+            System.err.println("       TraceTool demand <trace" + SensorTrace.EXTENSION + "> [degrees]");
+            System.err.println("       TraceTool ingest <trace" + SensorTrace.EXTENSION + ">");
+            System.err.println("       TraceTool csv <trace" + SensorTrace.EXTENSION + "> <out.csv>");
+            System.err.println("       TraceTool synth <seconds> <out" + SensorTrace.EXTENSION + ">");
+            System.exit(1);
+        }
+    }
+
+    private static void info(SensorTraceReader reader) throws IOException {
+        // sensor types are small, vendor ones aside
+        long[] counts = new long[64];
+        long[] first = new long[64];
+        long[] last = new long[64];
+        long other = 0;
+        while (reader.next()) {
+            int type = reader.sensorType;
+            if (type < 0 || type >= counts.length) {
+                other++;
+                continue;
+            }
+            if (counts[type]++ == 0) {
+                first[type] = reader.timestampNs;
+            }
+            last[type] = reader.timestampNs;
+        }
+        for (int type = 0; type < counts.length; type++) {
+            if (counts[type] == 0) {
+                continue;
+            }
+            double seconds = (last[type] - first[type]) / 1e9;
+            System.out.println(String.format(Locale.US, "sensor type %2d: %8d events over %8.2f s, %7.1f Hz",
+                    type, counts[type], seconds, seconds > 0 ? (counts[type] - 1) / seconds : 0.0));
+        }
+        if (other > 0) {
+            System.out.println(other + " events from other sensors");
+        }
+    }
+
+    /**
+     * Replays the trace into the same integration and frame math the app runs, with a simulated
+     * 60 fps frame loop that predicts ahead like the renderer does.
+     */
+    private static void replay(SensorTraceReader reader, boolean realTime) throws IOException {
+        final PoseExchange exchange = new PoseExchange();
+        final PoseIntegrator integrator = new PoseIntegrator(exchange, new PosePredictor(), Clock.SYSTEM);
+        final FrameMatrices matrices = new FrameMatrices();
+
+        TraceReplayer replayer = new TraceReplayer(reader, integrator);
+        replayer.setRealTime(realTime, Clock.SYSTEM);
+        replayer.setFrames(FRAME_INTERVAL_NS, new TraceReplayer.FrameCallback() {
+            @Override
+            public void onFrame(long frameTimeNs) {
+                float[] pose = exchange.acquire();
+                matrices.updateFromPose(pose, exchange.getTimestamp(), frameTimeNs + PREDICTION_LOOKAHEAD_NS,
+                        0.0f, 0.0f, 16.0f / 9.0f, 0.0f, 5.0f);
+            }
+        });
+        TraceReplayer.Result result = replayer.run();
+
+        System.out.println(result);
+        System.out.println(String.format(Locale.US, "final rotation x %.3f deg, y %.3f deg",
+                integrator.getXRotRads() * RAD2DEG, integrator.getYRotRads() * RAD2DEG));
+        if (result.elapsedNs > 0) {
+            System.out.println(String.format(Locale.US, "%.1f ns per sample including frames, %.0fx real time",
+                    (double) result.elapsedNs / Math.max(1, result.sampleCount),
+                    (double) result.traceDurationNs / result.elapsedNs));
+        }
+    }
+
+    private static void writeCsv(SensorTraceReader reader, File file) throws IOException {
+        Writer out = new BufferedWriter(new FileWriter(file));
+        try {
+            while (reader.next()) {
+                if (reader.sensorType == SensorSampleSink.TYPE_GYROSCOPE) {
+                    out.write(reader.timestampNs + "," + reader.values[0] + "," + reader.values[1] + "\n");
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Runs the trace through an {@link OrientationEngine} with each fusion mode and reports where
+     * each thinks the device ended up relative to where it started. For a trace that ends with
+     * the device back where it began, like those from synth, that's the accumulated drift.
+     */
+    private static void drift(SensorTraceReader reader) throws IOException {
+        float[] quaternion = new float[4];
+        for (OrientationEngine.Fusion fusion : OrientationEngine.Fusion.values()) {
+            OrientationEngine engine = new OrientationEngine();
+            engine.setFusion(fusion);
+            TraceReplayer.Result result = new TraceReplayer(reader, engine).run();
+
+            engine.getRelativeQuaternion(quaternion);
+            double angle = 2.0 * Math.acos(Math.min(1.0, Math.abs(quaternion[0])));
+            System.out.println(String.format(Locale.US,
+                    "%-16s x %8.3f deg  y %8.3f deg  total %8.3f deg  over %.0f s, %.1f ns per sample",
+                    fusion, engine.getXRotRads() * RAD2DEG, engine.getYRotRads() * RAD2DEG, angle * RAD2DEG,
+                    result.traceDurationNs / 1e9, (double) result.elapsedNs / Math.max(1, result.sampleCount)));
+        }
+    }
+
+    /**
+     * Replays the trace the way rendering on demand sees it and reports how many frames it asks
+     * for per minute, idle and active, against the 3600 a continuous 60 fps loop draws. While
+     * idle the gyro events are thinned out to the rate the app drops the sensor to, so the
+     * integration runs on what the device would really deliver.
+     */
+    private static void demand(SensorTraceReader reader, float epsilonDegrees) throws IOException {
+        final PoseExchange exchange = new PoseExchange();
+        final PoseIntegrator integrator = new PoseIntegrator(exchange, new PosePredictor(), Clock.SYSTEM);
+        final int[] stateChanges = new int[1];
+        final RenderDemandController controller = new RenderDemandController(new RenderDemandController.Listener() {
+            @Override
+            public void onRenderRequested() {
+            }
+
+            @Override
+            public void onStateChanged(RenderDemandController.State state) {
+                stateChanges[0]++;
+            }
+        });
+        controller.setEpsilon((float) Math.toRadians(epsilonDegrees));
+
+        final long[] gyroEvents = new long[1];
+        TraceReplayer.Result result = new TraceReplayer(reader, new SensorSampleSink() {
+            private long mLastGyroNs;
+
+            @Override
+            public void onSensorSample(int sensorType, long timestampNs, float[] values, int valueCount, int accuracy) {
+                if (sensorType == TYPE_GYROSCOPE) {
+                    if (controller.getState() == RenderDemandController.State.IDLE
+                            && timestampNs - mLastGyroNs < IDLE_GYRO_INTERVAL_NS) {
+                        return;
+                    }
+                    mLastGyroNs = timestampNs;
+                    gyroEvents[0]++;
+                }
+                integrator.onSensorSample(sensorType, timestampNs, values, valueCount, accuracy);
+                if (sensorType == TYPE_GYROSCOPE) {
+                    controller.onPose(timestampNs, integrator.getXRotRads(), integrator.getYRotRads(),
+                            values[0], values[1], values[2]);
+                }
+            }
+        }).run();
+
+        System.out.println(controller.formatSummary());
+        long frames = 0;
+        long timeNs = 0;
+        for (RenderDemandController.State state : RenderDemandController.State.values()) {
+            frames += controller.getFrameCount(state);
+            timeNs += controller.getTimeInState(state);
+        }
+        System.out.println(String.format(Locale.US,
+                "overall %.0f frames/min (continuous 60 fps: %.0f), %d idle/active changes, %d of %d gyro events delivered",
+                timeNs > 0 ? frames * 60e9 / timeNs : 0.0, 60e9 / FRAME_INTERVAL_NS, stateChanges[0],
+                gyroEvents[0], result.sampleCount));
+    }
+
+    /**
+     * Replays the trace through a {@link SensorIngestor} the way the app's PoseTracker drives it,
+     * with and without batching and frame aligned sampling. Batches are delivered the way a
+     * sensor hub FIFO flushes them, once the oldest event in it has waited the report latency.
+     * Pose age is how old the newest integrated event is when a frame starts, before
+     * prediction.
+     */
+    private static void ingest(SensorTraceReader reader) throws IOException {
+        final long[] latenciesMs = {0, 20, 100, 0, 50};
+        final boolean[] aligned = {false, false, false, true, true};
+        // the first round warms the JIT up and isn't reported
+        for (int round = 0; round < 2; round++) {
+            float firstXRot = 0.0f, firstYRot = 0.0f;
+            for (int config = 0; config < latenciesMs.length; config++) {
+                final PoseExchange exchange = new PoseExchange();
+                final PoseIntegrator integrator = new PoseIntegrator(exchange, new PosePredictor(), Clock.SYSTEM);
+                final SensorIngestor ingestor = new SensorIngestor(new SensorSampleRing(), integrator, null, Clock.SYSTEM);
+                // events the sensor hub is holding back
+                final SensorSampleRing fifo = new SensorSampleRing();
+                final long latencyNs = latenciesMs[config] * 1000000L;
+                final boolean frameAligned = aligned[config];
+                final long[] poseAge = new long[2];
+
+                TraceReplayer replayer = new TraceReplayer(reader, new SensorSampleSink() {
+                    private long mOldestQueuedNs = -1;
+
+                    @Override
+                    public void onSensorSample(int sensorType, long timestampNs, float[] values, int valueCount, int accuracy) {
+                        fifo.onSensorSample(sensorType, timestampNs, values, valueCount, accuracy);
+                        if (mOldestQueuedNs < 0) {
+                            mOldestQueuedNs = timestampNs;
+                        }
+                        if (timestampNs - mOldestQueuedNs >= latencyNs) {
+                            mOldestQueuedNs = -1;
+                            fifo.drain(ingestor);
+                            ingestor.onDelivery();
+                            if (!frameAligned) {
+                                ingestor.drain();
+                            }
+                        }
+                    }
+                });
+                replayer.setFrames(FRAME_INTERVAL_NS, new TraceReplayer.FrameCallback() {
+                    @Override
+                    public void onFrame(long frameTimeNs) {
+                        if (frameAligned) {
+                            ingestor.drainUntil(frameTimeNs);
+                        }
+                        exchange.acquire();
+                        if (exchange.getTimestamp() != 0) {
+                            poseAge[0] += frameTimeNs - exchange.getTimestamp();
+                            poseAge[1]++;
+                        }
+                    }
+                });
+                TraceReplayer.Result result = replayer.run();
+                fifo.drain(ingestor);
+                ingestor.drain();
+
+                if (config == 0) {
+                    firstXRot = integrator.getXRotRads();
+                    firstYRot = integrator.getYRotRads();
+                }
+                if (round == 0) {
+                    continue;
+                }
+                final double seconds = Math.max(1, result.traceDurationNs) / 1e9;
+                System.out.println(String.format(Locale.US,
+                        "%-28s %6.1f wakeups/s, %6.1f ns per event, pose age %5.2f ms, final pose off by %.2g deg",
+                        (latencyNs == 0 ? "unbatched" : "batched " + latenciesMs[config] + " ms")
+                                + (frameAligned ? ", frame aligned" : ""),
+                        ingestor.getDeliveries() / seconds, ingestor.getNsPerSample(),
+                        poseAge[1] > 0 ? poseAge[0] / 1e6 / poseAge[1] : 0.0,
+                        Math.max(Math.abs(integrator.getXRotRads() - firstXRot),
+                                Math.abs(integrator.getYRotRads() - firstYRot)) * RAD2DEG));
+            }
+        }
+    }
+
+    /**
+     * A device held tilted back 60 degrees, rocked about each of its axes in turn and then held
+     * still for a while, with the readings a phone would give: gyro at 200 Hz with a constant
+     * bias and noise of realistic size, accelerometer at 100 Hz and rotation vector at 50 Hz,
+     * both noisy.
+     *
+     * Each rocking motion returns to where it started, so the device ends every
+     * {@link #SYNTH_SEGMENT_NS} segment exactly back at its starting orientation and anything
+     * else an integrator reports at the end is drift. Always the same for the same length, so it
+     * can stand in for a recording in regression checks.
+     */
+    private static void writeSynthetic(float seconds, File file) throws IOException {
+        final long gyroIntervalNs = 5000000L;
+        final double amplitude = 0.6;
+        final double[] bias = {0.002, -0.001, 0.0015};
+        final double gyroNoise = 0.01;
+        final double accelNoise = 0.05;
+        final double rotationVectorNoise = 0.002;
+        final double tilt = Math.toRadians(-60.0);
+        Random random = new Random(seconds > 0 ? Float.floatToIntBits(seconds) : 0);
+
+        SensorTraceRecorder recorder = new SensorTraceRecorder(file);
+        float[] values = new float[4];
+        double[] orientation = new double[4];
+        final long startNs = 1000000000L;
+        final long segments = Math.max(1, (long) (seconds * 1e9 / SYNTH_SEGMENT_NS));
+        final long count = segments * SYNTH_SEGMENT_NS / gyroIntervalNs;
+        for (long i = 0; i <= count; i++) {
+            final long elapsed = i * gyroIntervalNs;
+            // every fourth segment is spent still
+            final int axis = (int) ((elapsed / SYNTH_SEGMENT_NS) % 4);
+            final boolean still = axis == 3;
+            final double phase = 2.0 * Math.PI * (elapsed % SYNTH_SEGMENT_NS) / SYNTH_SEGMENT_NS;
+            final double segmentSeconds = SYNTH_SEGMENT_NS / 1e9;
+            final double rate = still ? 0.0 : amplitude * Math.sin(phase);
+            final double angle = still ? 0.0 : amplitude * segmentSeconds / (2.0 * Math.PI) * (1.0 - Math.cos(phase));
+
+            // true orientation: the tilt about x, then the rocking about the segment's axis
+            double halfTilt = tilt * 0.5;
+            double halfAngle = angle * 0.5;
+            double[] rock = {Math.cos(halfAngle), 0.0, 0.0, 0.0};
+            if (!still) {
+                rock[1 + axis] = Math.sin(halfAngle);
+            }
+            orientation[0] = Math.cos(halfTilt) * rock[0] - Math.sin(halfTilt) * rock[1];
+            orientation[1] = Math.cos(halfTilt) * rock[1] + Math.sin(halfTilt) * rock[0];
+            orientation[2] = Math.cos(halfTilt) * rock[2] - Math.sin(halfTilt) * rock[3];
+            orientation[3] = Math.cos(halfTilt) * rock[3] + Math.sin(halfTilt) * rock[2];
+
+            final long timestamp = startNs + elapsed;
+            for (int component = 0; component < 3; component++) {
+                values[component] = (float) ((component == axis ? rate : 0.0) + bias[component]
+                        + random.nextGaussian() * gyroNoise);
+            }
+            recorder.onSensorSample(SensorSampleSink.TYPE_GYROSCOPE, timestamp, values, 3, 3);
+
+            if (i % 2 == 0) {
+                // gravity reaction (world up) seen in the body frame: the third row of the matrix
+                double w = orientation[0], x = orientation[1], y = orientation[2], z = orientation[3];
+                values[0] = (float) (9.81 * 2.0 * (x * z - w * y) + random.nextGaussian() * accelNoise);
+                values[1] = (float) (9.81 * 2.0 * (y * z + w * x) + random.nextGaussian() * accelNoise);
+                values[2] = (float) (9.81 * (1.0 - 2.0 * (x * x + y * y)) + random.nextGaussian() * accelNoise);
+                recorder.onSensorSample(SensorSampleSink.TYPE_ACCELEROMETER, timestamp + 1000, values, 3, 3);
+            }
+            if (i % 4 == 0) {
+                values[0] = (float) (orientation[1] + random.nextGaussian() * rotationVectorNoise);
+                values[1] = (float) (orientation[2] + random.nextGaussian() * rotationVectorNoise);
+                values[2] = (float) (orientation[3] + random.nextGaussian() * rotationVectorNoise);
+                values[3] = (float) orientation[0];
+                recorder.onSensorSample(SensorSampleSink.TYPE_ROTATION_VECTOR, timestamp + 2000, values, 4, 3);
+            }
+
+            if ((i & 1023) == 1023) {
+                // a real sensor can't outrun the writer, but this loop can
+                recorder.flush();
+            }
+        }
+        recorder.close();
+        System.out.println("wrote " + recorder.getRecordCount() + " events, " + recorder.getDroppedCount() + " dropped");
+    }
+}